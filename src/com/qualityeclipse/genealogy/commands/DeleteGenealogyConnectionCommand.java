@@ -22,14 +22,16 @@ public class DeleteGenealogyConnectionCommand extends Command
 	 */
 	public void execute() {
 		connType = 0;
-		if (conn.person.getMarriage() == conn.marriage) {
+		if (conn.isOffspringConnection()) {
+			if (conn.person.getParentsMarriage() == conn.marriage) {
+				connType = 2;
+				conn.person.setParentsMarriage(null);
+			}
+		}
+		else if (conn.person.getMarriage() == conn.marriage) {
 			connType = 1;
 			conn.person.setMarriage(null);
 		}
-		if (conn.person.getParentsMarriage() == conn.marriage) {
-			connType = 2;
-			conn.person.setParentsMarriage(null);
-		}
 	}
 	
 	/**
@@ -1,26 +1,43 @@
 package com.qualityeclipse.genealogy.editor;
 
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
 import java.util.EventObject;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 import org.eclipse.core.resources.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
 import org.eclipse.gef.*;
+import org.eclipse.gef.commands.*;
 import org.eclipse.gef.dnd.*;
-import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
 import org.eclipse.gef.palette.*;
 import org.eclipse.gef.ui.actions.DirectEditAction;
 import org.eclipse.gef.ui.palette.*;
 import org.eclipse.gef.ui.parts.*;
 import org.eclipse.jface.action.IAction;
 import org.eclipse.jface.dialogs.*;
+import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.jface.viewers.*;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.*;
+import org.eclipse.swt.layout.*;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.*;
 import org.eclipse.ui.dialogs.SaveAsDialog;
 import org.eclipse.ui.part.FileEditorInput;
 import org.eclipse.ui.services.IServiceLocator;
 
-import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.figures.NoteFigure;
+import com.qualityeclipse.genealogy.model.*;
 import com.qualityeclipse.genealogy.model.io.*;
 import com.qualityeclipse.genealogy.parts.*;
 
@@ -31,9 +48,372 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 {
 	private final GenealogyGraph genealogyGraph = new GenealogyGraph();
 	private DirectEditAction directEditAction;
+	private Job saveJob;
+	private boolean saveFailed;
+	private boolean isDisposed;
+
+	/**
+	 * The maximum number of people or notes found by the find boxes
+	 */
+	private static final int MAX_FIND_HITS = 1000;
+
+	private final PersonNameIndex nameIndex = new PersonNameIndex(genealogyGraph);
+	private Text findText;
+
+	/**
+	 * The people matching the text in the find box and the index of the person selected,
+	 * or <code>null</code> if the text has not been searched for
+	 */
+	private List<Person> findHits;
+	private int findHitIndex;
+
+	private final NoteTextIndex noteIndex = new NoteTextIndex(genealogyGraph);
+	private Text noteText;
+
+	/**
+	 * The notes matching the query in the note find box and the index of the note
+	 * selected, or <code>null</code> if the query has not been searched for
+	 */
+	private List<Note> noteHits;
+	private int noteHitIndex;
+
+	/**
+	 * The query whose matches are highlighted in the notes found,
+	 * or <code>null</code> if none
+	 */
+	private String highlightQuery;
+
+	private final YearIndex yearIndex = new YearIndex(genealogyGraph);
+	private Text yearText;
+
+	/**
+	 * The first and last year to which the diagram is filtered,
+	 * or <code>null</code> if the diagram is not filtered
+	 */
+	private int[] yearFilter;
+
+	/**
+	 * The people and marriages during the years in the year filter,
+	 * or <code>null</code> if the diagram is not filtered
+	 */
+	private Set<Object> yearShown;
+
+	/**
+	 * The journal recording changes since the last save,
+	 * or <code>null</code> if every save writes the entire file
+	 */
+	private GenealogyGraphJournal journal;
+
+	/**
+	 * The length and checksum of the file to which the journal applies,
+	 * or -1 if the file must be written in its entirety by the next save
+	 */
+	private long baseLength = -1;
+	private long baseChecksum;
+
+	/**
+	 * The number of bytes at the start of the journal that have been successfully saved
+	 */
+	private long journalLength;
+
+	/**
+	 * The journal is not allowed to grow beyond half the size of the file or this minimum,
+	 * whichever is larger, before the entire file is written and the journal is deleted
+	 */
+	private static final long MIN_COMPACT_SIZE = 64 * 1024;
 
 	public GenealogyGraphEditor() {
-		setEditDomain(new DefaultEditDomain(this));
+		DefaultEditDomain editDomain = new DefaultEditDomain(this);
+		editDomain.setCommandStack(new BatchingCommandStack());
+		setEditDomain(editDomain);
+	}
+
+	/**
+	 * A command stack that executes, undoes, and redoes each command as a single batch of
+	 * model changes so that edit parts are notified once of the final state of each
+	 * element rather than once for each field changed by the command. The year filter is
+	 * then applied again so that it includes any figures added or changed by the command.
+	 */
+	private final class BatchingCommandStack extends CommandStack
+	{
+		public void execute(final Command command) {
+			genealogyGraph.batch(new Runnable() {
+				public void run() {
+					BatchingCommandStack.super.execute(command);
+				}
+			});
+			if (yearFilter != null)
+				applyYearFilter();
+		}
+
+		public void undo() {
+			genealogyGraph.batch(new Runnable() {
+				public void run() {
+					BatchingCommandStack.super.undo();
+				}
+			});
+			if (yearFilter != null)
+				applyYearFilter();
+		}
+
+		public void redo() {
+			genealogyGraph.batch(new Runnable() {
+				public void run() {
+					BatchingCommandStack.super.redo();
+				}
+			});
+			if (yearFilter != null)
+				applyYearFilter();
+		}
+	}
+
+	/**
+	 * Extend the superclass behavior to add a box above the canvas that finds people by
+	 * name as the user types. Pressing Enter in the box selects the next person found.
+	 * Beside it is a box that finds and highlights words and phrases in notes, and a box
+	 * that hides everything other than the people alive and the marriages during a year
+	 * or range of years such as "1900-1920".
+	 */
+	public void createPartControl(Composite parent) {
+		Composite composite = new Composite(parent, SWT.NONE);
+		GridLayout layout = new GridLayout(3, false);
+		layout.marginWidth = 0;
+		layout.marginHeight = 0;
+		layout.verticalSpacing = 0;
+		composite.setLayout(layout);
+
+		findText = new Text(composite, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+		findText.setMessage("Find person by name");
+		findText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		findText.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent e) {
+				findHits = null;
+				findPerson();
+			}
+		});
+		findText.addSelectionListener(new SelectionAdapter() {
+			public void widgetDefaultSelected(SelectionEvent e) {
+				findPerson();
+			}
+		});
+
+		noteText = new Text(composite, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+		noteText.setMessage("Find in notes");
+		noteText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		noteText.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent e) {
+				highlightNotes(null);
+				noteHits = null;
+				findNote();
+			}
+		});
+		noteText.addSelectionListener(new SelectionAdapter() {
+			public void widgetDefaultSelected(SelectionEvent e) {
+				findNote();
+			}
+		});
+
+		yearText = new Text(composite, SWT.SEARCH | SWT.ICON_CANCEL);
+		yearText.setMessage("Filter by years");
+		GridData yearData = new GridData(SWT.FILL, SWT.CENTER, false, false);
+		yearData.widthHint = 120;
+		yearText.setLayoutData(yearData);
+		yearText.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent e) {
+				int[] range = YearIndex.parseRange(yearText.getText());
+				if (range == null && yearFilter == null)
+					return;
+				yearFilter = range;
+				applyYearFilter();
+			}
+		});
+
+		// The palette and viewer are created within a single composite added by the superclass
+		super.createPartControl(composite);
+		Control[] children = composite.getChildren();
+		children[children.length - 1].setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 3, 1));
+	}
+
+	/**
+	 * Select and reveal the next note matching the query in the note find box, and
+	 * highlight the matching words in each note found when the query is first searched.
+	 */
+	private void findNote() {
+		String query = noteText.getText();
+		if (noteHits == null) {
+			noteHits = noteIndex.search(query, MAX_FIND_HITS);
+			noteHitIndex = 0;
+			highlightNotes(query);
+		}
+		else if (!noteHits.isEmpty())
+			noteHitIndex = (noteHitIndex + 1) % noteHits.size();
+		String message = null;
+		if (!noteHits.isEmpty()) {
+			Note n = noteHits.get(noteHitIndex);
+			NoteContainer container = noteIndex.getContainer(n);
+			selectAndReveal(n, container instanceof Person ? (Person) container : n);
+			message = "Note " + (noteHitIndex + 1) + " of " + noteHits.size();
+		}
+		else if (query.trim().length() > 0)
+			message = "No note found matching \"" + query + "\"";
+		getEditorSite().getActionBars().getStatusLineManager().setMessage(message);
+	}
+
+	/**
+	 * Highlight the words matching the specified query in each note found,
+	 * or remove the highlights if the query is <code>null</code>
+	 */
+	private void highlightNotes(String query) {
+		highlightQuery = query;
+		if (noteHits == null)
+			return;
+		Map<?, ?> registry = getGraphicalViewer().getEditPartRegistry();
+		for (Note n : noteHits) {
+			Object part = registry.get(n);
+			if (part instanceof NoteEditPart)
+				highlightNote((NoteEditPart) part);
+		}
+	}
+
+	/**
+	 * Highlight the words in the specified note matching the query last searched,
+	 * or remove the highlights if the note was not found by that query
+	 */
+	private void highlightNote(NoteEditPart part) {
+		Note n = part.getModel();
+		int[] ranges = null;
+		if (highlightQuery != null && noteHits != null && noteHits.contains(n))
+			ranges = NoteTextIndex.getMatchRanges(highlightQuery, n.getText());
+		((NoteFigure) part.getFigure()).setHighlights(ranges);
+	}
+
+	/**
+	 * Select and reveal the edit part of the specified element, first displaying the top
+	 * level element containing it in case only the elements near the visible part of the
+	 * diagram are displayed
+	 */
+	private void selectAndReveal(GenealogyElement elem, GenealogyElement topLevel) {
+		GraphicalViewer viewer = getGraphicalViewer();
+		((GenealogyGraphEditPart) viewer.getContents()).realize(topLevel);
+		Object part = viewer.getEditPartRegistry().get(elem);
+		if (part instanceof EditPart) {
+			viewer.select((EditPart) part);
+			viewer.reveal((EditPart) part);
+		}
+	}
+
+	/**
+	 * Apply the year filter and the note highlights to a top level edit part added to the
+	 * diagram, such as when the diagram is scrolled and only the elements near the
+	 * visible part of the diagram are displayed
+	 */
+	private void childAdded(GraphicalEditPart child) {
+		if (yearShown != null) {
+			child.getFigure().setVisible(isInYears(child.getModel()));
+			updateConnectionVisibility(child.getSourceConnections());
+			updateConnectionVisibility(child.getTargetConnections());
+		}
+		if (highlightQuery != null) {
+			if (child instanceof NoteEditPart)
+				highlightNote((NoteEditPart) child);
+			for (Object each : child.getChildren())
+				if (each instanceof NoteEditPart)
+					highlightNote((NoteEditPart) each);
+		}
+	}
+
+	/**
+	 * Show only the figures of the people alive and the marriages during the years in the
+	 * year filter, where a marriage of unknown year is shown if either spouse is shown,
+	 * and show only the connections between figures that are shown. If there is no year
+	 * filter then show every figure and connection.
+	 */
+	private void applyYearFilter() {
+		yearShown = null;
+		if (yearFilter != null) {
+			yearShown = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+			for (Person p : yearIndex.getPeopleAlive(yearFilter[0], yearFilter[1]))
+				yearShown.add(p);
+			for (Marriage m : yearIndex.getMarriages(yearFilter[0], yearFilter[1]))
+				yearShown.add(m);
+		}
+		List<?> children = getGraphicalViewer().getContents().getChildren();
+		for (Object child : children) {
+			GraphicalEditPart part = (GraphicalEditPart) child;
+			part.getFigure().setVisible(isInYears(part.getModel()));
+		}
+		for (Object child : children)
+			updateConnectionVisibility(((GraphicalEditPart) child).getSourceConnections());
+	}
+
+	/**
+	 * Answer <code>true</code> if the figure of the specified model object is shown by the
+	 * year filter
+	 */
+	private boolean isInYears(Object model) {
+		if (yearShown == null)
+			return true;
+		if (model instanceof Person)
+			return yearShown.contains(model);
+		if (model instanceof Marriage) {
+			Marriage m = (Marriage) model;
+			return yearShown.contains(m) || yearShown.contains(m.getHusband()) || yearShown.contains(m.getWife());
+		}
+		return true;
+	}
+
+	/**
+	 * Show each of the specified connections only if the figures at both ends are shown,
+	 * ignoring a connection whose other end is still being added
+	 */
+	private void updateConnectionVisibility(List<?> connections) {
+		for (Object each : connections) {
+			GraphicalEditPart connection = (GraphicalEditPart) each;
+			GraphicalEditPart source = (GraphicalEditPart) ((ConnectionEditPart) connection).getSource();
+			GraphicalEditPart target = (GraphicalEditPart) ((ConnectionEditPart) connection).getTarget();
+			if (source == null || target == null)
+				continue;
+			connection.getFigure().setVisible(source.getFigure().isVisible() && target.getFigure().isVisible());
+		}
+	}
+
+	/**
+	 * Select and reveal the next person whose name matches the text in the find box,
+	 * matching the start of the words in each name or, if nothing matches, how those
+	 * words sound.
+	 */
+	private void findPerson() {
+		String text = findText.getText();
+		if (findHits == null) {
+			findHits = nameIndex.findByPrefix(text, MAX_FIND_HITS);
+			if (findHits.isEmpty())
+				findHits = nameIndex.findBySound(text, MAX_FIND_HITS);
+			findHitIndex = 0;
+		}
+		else if (!findHits.isEmpty())
+			findHitIndex = (findHitIndex + 1) % findHits.size();
+		String message = null;
+		if (!findHits.isEmpty()) {
+			Person p = findHits.get(findHitIndex);
+			selectAndReveal(p, p);
+			message = p.getName() + " (" + (findHitIndex + 1) + " of " + findHits.size() + ")";
+		}
+		else if (text.trim().length() > 0)
+			message = "No person found matching \"" + text + "\"";
+		getEditorSite().getActionBars().getStatusLineManager().setMessage(message);
+	}
+
+	/**
+	 * Create a viewer that caches the diagram in tiles so that scrolling copies those
+	 * tiles rather than painting every figure again
+	 */
+	protected void createGraphicalViewer(Composite parent) {
+		GraphicalViewer viewer = new GenealogyGraphicalViewer();
+		viewer.createControl(parent);
+		setGraphicalViewer(viewer);
+		configureGraphicalViewer();
+		hookGraphicalViewer();
+		initializeGraphicalViewer();
 	}
 
 	/**
@@ -43,7 +423,7 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		super.configureGraphicalViewer();
 		final GraphicalViewer viewer = getGraphicalViewer();
 		viewer.setEditPartFactory(new GenealogyEditPartFactory());
-		viewer.setRootEditPart(new ScalableFreeformRootEditPart());
+		viewer.setRootEditPart(new GenealogyRootEditPart());
 		
 		// Two different approaches for dynamically modifying the selection
 		// to exclude nested figures when that figure's ancestor is selected
@@ -53,6 +433,13 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		
 		// Option #2
 		viewer.setSelectionManager(new ModifiedSelectionManager(viewer));
+
+		// Show how two selected people are related
+		viewer.addSelectionChangedListener(new ISelectionChangedListener() {
+			public void selectionChanged(SelectionChangedEvent event) {
+				showRelationship(event.getSelection());
+			}
+		});
 		
 		
 		
@@ -70,12 +457,38 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		getActionRegistry().registerAction(directEditAction);
 	}
 
+	/**
+	 * If the specified selection is two people,
+	 * show their relationship in the status line
+	 */
+	private void showRelationship(ISelection selection) {
+		String message = null;
+		if (selection instanceof IStructuredSelection && ((IStructuredSelection) selection).size() == 2) {
+			Object[] parts = ((IStructuredSelection) selection).toArray();
+			if (parts[0] instanceof PersonEditPart && parts[1] instanceof PersonEditPart) {
+				Person first = ((PersonEditPart) parts[0]).getModel();
+				Person second = ((PersonEditPart) parts[1]).getModel();
+				Relationship relationship = Relationship.between(first, second);
+				if (relationship != null)
+					message = relationship.toString();
+				else
+					message = second.getName() + " is not related to " + first.getName();
+			}
+		}
+		getEditorSite().getActionBars().getStatusLineManager().setMessage(message);
+	}
+
 	/**
 	 * Initialize the viewer to display the specific genealogy graph being edited
 	 */
 	protected void initializeGraphicalViewer() {
 		super.initializeGraphicalViewer();
 		getGraphicalViewer().setContents(genealogyGraph);
+		getGraphicalViewer().getContents().addEditPartListener(new EditPartListener.Stub() {
+			public void childAdded(EditPart child, int index) {
+				GenealogyGraphEditor.this.childAdded((GraphicalEditPart) child);
+			}
+		});
 		getGraphicalViewer().addDropTargetListener(
 			new TemplateTransferDropTargetListener(getGraphicalViewer()));
 		
@@ -83,6 +496,38 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 	
 	public void dispose() {
 		getEditorSite().getKeyBindingService().unregisterAction(directEditAction);
+		nameIndex.dispose();
+		noteIndex.dispose();
+		yearIndex.dispose();
+		isDisposed = true;
+		
+		// A save in progress holds its own snapshot of the content and finishes on its
+		// own. Show a busy cursor while waiting for it so that closing the workbench does
+		// not discard the content being saved, without blocking the UI thread, which the
+		// job may need, and allowing the user to stop waiting.
+		
+		final Job job = saveJob;
+		if (job != null) {
+			try {
+				PlatformUI.getWorkbench().getProgressService().busyCursorWhile(new IRunnableWithProgress() {
+					public void run(IProgressMonitor monitor) throws InterruptedException {
+						monitor.beginTask("Waiting for " + job.getName(), IProgressMonitor.UNKNOWN);
+						while (job.getState() != Job.NONE) {
+							if (monitor.isCanceled())
+								throw new InterruptedException();
+							Thread.sleep(100);
+						}
+						monitor.done();
+					}
+				});
+			}
+			catch (InvocationTargetException e) {
+				e.printStackTrace();
+			}
+			catch (InterruptedException e) {
+				// The user chose to stop waiting, so the save continues in the background
+			}
+		}
 		super.dispose();
 	}
 
@@ -93,6 +538,10 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		super.setInput(input);
 		IFile file = ((IFileEditorInput) input).getFile();
 		setPartName(file.getName());
+		if (journal != null)
+			journal.dispose();
+		journal = null;
+		baseLength = -1;
 
 		// For the purposes of this book, if the file is empty
 		// then load some default content into the model
@@ -102,7 +551,7 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 			boolean isEmpty = stream.read() == -1;
 			stream.close();
 			if (isEmpty) {
-				readAndClose(getClass().getResourceAsStream("../view/genealogy.xml"));
+				readAndClose(getClass().getResourceAsStream("../view/genealogy.xml"), GenealogyGraphFormat.XML);
 				return;
 			}
 		}
@@ -111,10 +560,20 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 			return;
 		}
 
-		// Read the content from the stream into the model
+		// Read the content from the file into the model. Read from the local file
+		// when possible so that large indexed files can be memory mapped
+		// rather than read in their entirety
 
+		GenealogyGraphFormat format = GenealogyGraphFormat.forFileName(file.getName());
+		IPath location = file.getLocation();
+		if (location != null) {
+			read(location.toFile(), format);
+			if (baseLength != -1)
+				openJournal(getJournalFile(file));
+			return;
+		}
 		try {
-			readAndClose(file.getContents());
+			readAndClose(file.getContents(), format);
 		}
 		catch (CoreException e) {
 			handleException(e);
@@ -126,11 +585,12 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 	 * Read the content from the stream into the model
 	 * 
 	 * @param stream the stream to be read and closed (not <code>null</code>)
+	 * @param format the format of the stream content (not <code>null</code>)
 	 */
-	private void readAndClose(InputStream stream) {
+	private void readAndClose(InputStream stream, GenealogyGraphFormat format) {
 		genealogyGraph.clear();
 		try {
-			new GenealogyGraphReader(genealogyGraph).read(stream);
+			logUnresolvedReferences(format.read(genealogyGraph, stream));
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -145,33 +605,199 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		}
 	}
 
+	/**
+	 * Read the content from the local file into the model. If changes to the file can be
+	 * journaled, then also record the file's length and checksum so that the journal can
+	 * be matched to the file.
+	 * 
+	 * @param file the file to be read (not <code>null</code>)
+	 * @param format the format of the file content (not <code>null</code>)
+	 */
+	private void read(File file, GenealogyGraphFormat format) {
+		genealogyGraph.clear();
+		try {
+			logUnresolvedReferences(format.read(genealogyGraph, file));
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return;
+		}
+		if (!isJournaled(format))
+			return;
+
+		// Compute the checksum separately rather than while reading
+		// so that large files can be read using several threads
+		
+		CRC32 crc = new CRC32();
+		try {
+			InputStream stream = new FileInputStream(file);
+			try {
+				byte[] buffer = new byte[8192];
+				int count;
+				while ((count = stream.read(buffer)) != -1)
+					crc.update(buffer, 0, count);
+			}
+			finally {
+				stream.close();
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		baseLength = file.length();
+		baseChecksum = crc.getValue();
+	}
+
+	/**
+	 * Log a warning listing the references to people that did not appear in the content
+	 * that was read, and tell the user in the status line that relationships were lost
+	 * 
+	 * @param references the descriptions of the references (not <code>null</code>)
+	 */
+	private void logUnresolvedReferences(List<String> references) {
+		if (references.isEmpty())
+			return;
+		String message = references.size() + " relationship(s) in " + getPartName()
+			+ " refer to people that do not exist and were not read";
+		MultiStatus status = new MultiStatus("com.qualityeclipse.genealogy", 0, message, null);
+		for (String reference : references)
+			status.add(new Status(IStatus.WARNING, "com.qualityeclipse.genealogy", "Unresolved reference: " + reference));
+		Platform.getLog(Platform.getBundle("com.qualityeclipse.genealogy")).log(status);
+		getEditorSite().getActionBars().getStatusLineManager().setErrorMessage(message);
+	}
+
+	/**
+	 * Apply the changes recorded in the specified journal, if any, to the model
+	 * and begin recording subsequent changes
+	 * 
+	 * @param journalFile the journal of changes to the file that was read (not <code>null</code>)
+	 */
+	private void openJournal(IFile journalFile) {
+		journal = new GenealogyGraphJournal(genealogyGraph);
+		journalLength = 0;
+		File file = journalFile.getLocation().toFile();
+		if (file.exists()) {
+			try {
+				InputStream stream = new FileInputStream(file);
+				try {
+					journalLength = Math.max(journal.replay(stream, baseLength, baseChecksum), 0);
+				}
+				finally {
+					stream.close();
+				}
+			}
+			catch (IOException e) {
+				
+				// The model may be partially updated,
+				// so write the entire file when it is next saved
+				
+				e.printStackTrace();
+				baseLength = -1;
+			}
+		}
+		journal.start();
+	}
+
+	/**
+	 * Answer the journal of changes to the specified file
+	 */
+	private static IFile getJournalFile(IFile file) {
+		return file.getParent().getFile(new Path(file.getName() + ".journal"));
+	}
+
+	/**
+	 * Answer <code>true</code> if changes to a local file in the specified format are
+	 * journaled. Indexed files, and any file whose elements the model reads on demand from
+	 * a source such as a large binary file, are not journaled because the journal numbers
+	 * and listens to every element, defeating the purpose of reading elements on demand.
+	 */
+	private boolean isJournaled(GenealogyGraphFormat format) {
+		return format != GenealogyGraphFormat.INDEXED && genealogyGraph.getSource() == null;
+	}
+
 	/**
 	 * Save the model being edited into the file associated with this editor,
 	 * then update the editor state to indicate that the contents have been saved.
+	 * If possible, only the changes since the last save are appended to the file's
+	 * journal. Otherwise a snapshot of the model is taken, which copies nothing until the
+	 * model is next modified, and is then copied, serialized, and written by a background
+	 * job so that the user may continue editing while the save is in progress. If the
+	 * model reads elements on demand from a memory mapped file, then every element is
+	 * first loaded into the model and the mapping is released, because some platforms do
+	 * not permit a mapped file to be overwritten. If a newer save is started before an
+	 * older save completes, then the older save is canceled and the newer save writes the
+	 * entire file. If the newest save fails, then the editor is marked dirty again.
 	 * 
-	 * @param monitor the progress monitor
+	 * @param monitor the progress monitor (ignored because the save runs in the background)
 	 */
 	public void doSave(IProgressMonitor monitor) {
-		
-		// Serialize the model
-		
-		StringWriter writer = new StringWriter(5000);
-		new GenealogyGraphWriter(genealogyGraph).write(new PrintWriter(writer));
-		ByteArrayInputStream stream = new ByteArrayInputStream(writer.toString().getBytes());
 
-		// Store the serialized model in the file
+		// Append the recorded changes to the journal if the journal applies to the file
+		// and has not grown too large. Changes taken from the journal are not recorded
+		// again, so if they cannot be appended then the next save writes the entire file.
 		
 		IFile file = ((IFileEditorInput) getEditorInput()).getFile();
-		try {
-			if (file.exists())
-				file.setContents(stream, false, true, monitor);
-			else
-				file.create(stream, false, monitor);
+		IFile journalFile = getJournalFile(file);
+		Job job = null;
+		if (saveJob == null && !saveFailed && journal != null && journal.isComplete() && baseLength != -1) {
+			byte[] changes = journal.takeChanges();
+			if (changes == null) {
+				getCommandStack().markSaveLocation();
+				firePropertyChange(PROP_DIRTY);
+				return;
+			}
+			if (journalLength + changes.length <= Math.max(MIN_COMPACT_SIZE, baseLength / 2)) {
+				job = new GenealogyGraphJournalJob(file, journalFile,
+					GenealogyGraphJournal.header(baseLength, baseChecksum), journalLength, changes);
+			}
 		}
-		catch (CoreException e) { 
-			handleException(e);
-			return;
+
+		// Otherwise take a snapshot that can be copied and written while the model
+		// continues to be modified, and renumber the journal to match the file that
+		// will be written
+		
+		if (job == null) {
+			baseLength = -1;
+			if (file.getLocation() != null && isJournaled(GenealogyGraphFormat.forFileName(file.getName()))) {
+				if (journal == null) {
+					journal = new GenealogyGraphJournal(genealogyGraph);
+					journal.start();
+				}
+				else
+					journal.rebase();
+			}
+			else if (journal != null) {
+				journal.dispose();
+				journal = null;
+			}
+			GenealogyElementSource source = genealogyGraph.getSource();
+			if (source instanceof MappedGenealogyArchive) {
+				genealogyGraph.detachSource();
+				source.close();
+			}
+			job = new GenealogyGraphSaveJob(file, journalFile, genealogyGraph.snapshot());
 		}
+
+		final Job newJob = job;
+		newJob.addJobChangeListener(new JobChangeAdapter() {
+			public void done(IJobChangeEvent event) {
+				final IStatus result = event.getResult();
+				Display display = PlatformUI.getWorkbench().getDisplay();
+				if (display.isDisposed())
+					return;
+				display.asyncExec(new Runnable() {
+					public void run() {
+						saveDone(newJob, result);
+					}
+				});
+			}
+		});
+		Job oldJob = saveJob;
+		saveJob = newJob;
+		if (oldJob != null)
+			oldJob.cancel();
+		newJob.schedule();
 		
 		// Update the editor state to indicate that the contents 
 		// have been saved and notify all listeners about the change in state
@@ -180,6 +806,40 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		firePropertyChange(PROP_DIRTY);
 	}
 
+	/**
+	 * Called on the UI thread when a save job completes. Only the result of the newest
+	 * save is significant because any older save has been or will be overwritten.
+	 * 
+	 * @param job the save job that completed (not <code>null</code>)
+	 * @param result the result of the save job (not <code>null</code>)
+	 */
+	private void saveDone(Job job, IStatus result) {
+		if (job != saveJob)
+			return;
+		saveJob = null;
+		if (isDisposed)
+			return;
+		saveFailed = !result.isOK();
+		if (!saveFailed) {
+			if (job instanceof GenealogyGraphSaveJob) {
+				baseLength = ((GenealogyGraphSaveJob) job).getLength();
+				baseChecksum = ((GenealogyGraphSaveJob) job).getChecksum();
+				journalLength = 0;
+			}
+			else
+				journalLength = ((GenealogyGraphJournalJob) job).getLength();
+		}
+		firePropertyChange(PROP_DIRTY);
+	}
+
+	/**
+	 * Override the superclass implementation to answer <code>true</code> if the most
+	 * recent save failed or was canceled, even if the command stack is at its save location
+	 */
+	public boolean isDirty() {
+		return saveFailed || super.isDirty();
+	}
+
 	/**
 	 * Log the specified exception and notify the user that an problem has occurred
 	 * 
@@ -230,6 +890,7 @@ public class GenealogyGraphEditor extends GraphicalEditorWithFlyoutPalette
 		
 		IFile file = ResourcesPlugin.getWorkspace().getRoot().getFile(path);
 		super.setInput(new FileEditorInput(file));
+		baseLength = -1;
 		doSave(null);
 		setPartName(file.getName());
 		firePropertyChange(PROP_INPUT);
@@ -8,22 +8,18 @@ import org.eclipse.jface.resource.ImageDescriptor;
 
 import com.qualityeclipse.genealogy.figures.*;
 import com.qualityeclipse.genealogy.model.*;
+import com.qualityeclipse.genealogy.parts.GenealogyMarqueeSelectionTool;
 
 /**
  * A factory for constructing the {@link GenealogyGraphEditor}'s palette
  */
 public class GenealogyGraphEditorPaletteFactory
 {
-	private static final ImageDescriptor FEMALE_IMAGE_DESCRIPTOR 
-							= ImageDescriptor.createFromImage(PersonFigure.FEMALE);
-	private static final ImageDescriptor MALE_IMAGE_DESCRIPTOR 
-							= ImageDescriptor.createFromImage(PersonFigure.MALE);
-	private static final ImageDescriptor MARRIAGE_IMAGE_DESCRIPTOR 
-							= ImageDescriptor.createFromImage(MarriageFigure.MARRIAGE_IMAGE);
-	private static final ImageDescriptor NOTE_IMAGE_DESCRIPTOR 
-							= ImageDescriptor.createFromImage(NoteFigure.NOTE_IMAGE);
-	private static final ImageDescriptor CONNECTION_IMAGE_DESCRIPTOR
-							= ImageDescriptor.createFromImage(MarriageFigure.CONNECTION_IMAGE);
+	private static final ImageDescriptor FEMALE_IMAGE_DESCRIPTOR = PersonFigure.FEMALE;
+	private static final ImageDescriptor MALE_IMAGE_DESCRIPTOR = PersonFigure.MALE;
+	private static final ImageDescriptor MARRIAGE_IMAGE_DESCRIPTOR = MarriageFigure.MARRIAGE_IMAGE;
+	private static final ImageDescriptor NOTE_IMAGE_DESCRIPTOR = NoteFigure.NOTE_IMAGE;
+	private static final ImageDescriptor CONNECTION_IMAGE_DESCRIPTOR = MarriageFigure.CONNECTION_IMAGE;
 	
 	/**
 	 * Construct and return a new palette for a {@link GenealogyGraphEditor}
@@ -48,7 +44,9 @@ public class GenealogyGraphEditorPaletteFactory
 		palette.setDefaultEntry(tool);
 	
 		// Add a marquee tool to the group
-		toolbar.add(new MarqueeToolEntry());
+		MarqueeToolEntry marquee = new MarqueeToolEntry();
+		marquee.setToolClass(GenealogyMarqueeSelectionTool.class);
+		toolbar.add(marquee);
 		
 		return toolbar;
 	}
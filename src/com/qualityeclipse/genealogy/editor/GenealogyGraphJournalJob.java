@@ -0,0 +1,84 @@
+package com.qualityeclipse.genealogy.editor;
+
+import java.io.*;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.qualityeclipse.genealogy.model.io.GenealogyGraphJournal;
+
+/**
+ * A background job that appends a block of changes recorded by a
+ * {@link GenealogyGraphJournal} to the journal of a file. Anything in the journal after
+ * the last block known to have been appended, such as the remains of an earlier append
+ * that was interrupted, is discarded first. The journal is forced to the storage device
+ * before the job completes so that the changes survive a crash.
+ */
+class GenealogyGraphJournalJob extends Job
+{
+	private final IFile journalFile;
+	private final byte[] header;
+	private final byte[] block;
+	private long length;
+
+	/**
+	 * Construct a new job to append the specified changes
+	 *
+	 * @param file the file to which the journal applies (not <code>null</code>)
+	 * @param journalFile the journal, which must be a local file (not <code>null</code>)
+	 * @param header the journal header written if the journal is empty (not <code>null</code>)
+	 * @param length the number of bytes at the start of the journal to be retained
+	 * @param block the changes to be appended (not <code>null</code>)
+	 */
+	GenealogyGraphJournalJob(IFile file, IFile journalFile, byte[] header, long length, byte[] block) {
+		super("Saving " + file.getName());
+		this.journalFile = journalFile;
+		this.header = header;
+		this.length = length;
+		this.block = block;
+		setRule(GenealogyGraphSaveJob.getRule(file, journalFile));
+	}
+
+	/**
+	 * Answer the length of the journal once the job has completed successfully
+	 */
+	long getLength() {
+		return length;
+	}
+
+	protected IStatus run(IProgressMonitor monitor) {
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(journalFile.getLocation().toFile(), "rw");
+			try {
+				if (length == 0) {
+					raf.setLength(0);
+					raf.write(header);
+					length = header.length;
+				}
+				else if (raf.length() < length)
+					throw new IOException("Journal truncated: " + journalFile.getName());
+				raf.setLength(length);
+				raf.seek(length);
+				raf.write(block);
+				raf.getFD().sync();
+				length += block.length;
+			}
+			finally {
+				raf.close();
+			}
+			journalFile.refreshLocal(IResource.DEPTH_ZERO, null);
+		}
+		catch (Exception e) {
+			e.printStackTrace();
+			return new Status(
+				IStatus.ERROR,
+				"com.qualityeclipse.genealogy",
+				"An exception occurred while saving the file",
+				e);
+		}
+		return Status.OK_STATUS;
+	}
+}
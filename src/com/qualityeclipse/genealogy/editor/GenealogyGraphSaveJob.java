@@ -0,0 +1,213 @@
+package com.qualityeclipse.genealogy.editor;
+
+import java.io.*;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.*;
+
+import com.qualityeclipse.genealogy.model.*;
+import com.qualityeclipse.genealogy.model.io.GenealogyGraphFormat;
+
+/**
+ * A background job that copies a snapshot of a {@link GenealogyGraph} and serializes the
+ * copy into a file. Because the snapshot retains the state of anything modified after it
+ * was taken, the graph being edited may continue to be modified while the job runs. Jobs
+ * saving the same file are run one at a time, and a job that is canceled or fails after
+ * the file has been partially written restores the file's previous content. Once the file
+ * has been written, any journal of changes to the file's previous content is deleted.
+ * The graph must not be reading elements on demand from the file being saved.
+ */
+class GenealogyGraphSaveJob extends Job
+{
+	private final IFile file;
+	private final IFile journalFile;
+	private final GenealogyGraphSnapshot snapshot;
+	private long length;
+	private long checksum;
+
+	/**
+	 * Construct a new job to save the specified snapshot. The snapshot is closed when the
+	 * job completes or is canceled.
+	 *
+	 * @param file the file into which the snapshot is to be saved (not <code>null</code>)
+	 * @param journalFile the journal to be deleted once the file has been saved
+	 * @param snapshot the snapshot to be copied and saved (not <code>null</code>)
+	 */
+	GenealogyGraphSaveJob(IFile file, IFile journalFile, final GenealogyGraphSnapshot snapshot) {
+		super("Saving " + file.getName());
+		this.file = file;
+		this.journalFile = journalFile;
+		this.snapshot = snapshot;
+		setRule(getRule(file, journalFile));
+		addJobChangeListener(new JobChangeAdapter() {
+			public void done(IJobChangeEvent event) {
+				snapshot.close();
+			}
+		});
+	}
+
+	/**
+	 * Answer a rule allowing the specified file and its journal to be created or modified
+	 */
+	static ISchedulingRule getRule(IFile file, IFile journalFile) {
+		IResourceRuleFactory ruleFactory = ResourcesPlugin.getWorkspace().getRuleFactory();
+		return MultiRule.combine(new ISchedulingRule[] {
+			ruleFactory.modifyRule(file), ruleFactory.createRule(file),
+			ruleFactory.modifyRule(journalFile), ruleFactory.deleteRule(journalFile)});
+	}
+
+	/**
+	 * Answer the file into which the snapshot is saved
+	 */
+	IFile getFile() {
+		return file;
+	}
+
+	/**
+	 * Answer the length of the saved file once the job has completed successfully
+	 */
+	long getLength() {
+		return length;
+	}
+
+	/**
+	 * Answer the CRC-32 of the saved file once the job has completed successfully
+	 */
+	long getChecksum() {
+		return checksum;
+	}
+
+	/**
+	 * Copy the snapshot, then serialize the copy in the format associated with the file
+	 * extension directly into the file as the file's new content is read from the stream.
+	 * Copying and writing each take half of the progress.
+	 */
+	protected IStatus run(IProgressMonitor monitor) {
+		if (monitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		SubMonitor progress = SubMonitor.convert(monitor, getName(), 2);
+		GenealogyGraph copy;
+		try {
+			copy = snapshot.copy();
+		}
+		catch (IllegalStateException e) {
+
+			// A newer save has taken its own snapshot and closed this one
+
+			monitor.done();
+			return Status.CANCEL_STATUS;
+		}
+		finally {
+			snapshot.close();
+		}
+		progress.worked(1);
+		boolean exists = file.exists();
+		IFileState[] history = getHistory(file);
+		GenealogyGraphSaveStream stream;
+		try {
+			stream = new GenealogyGraphSaveStream(
+				copy, GenealogyGraphFormat.forFileName(file.getName()), progress);
+		}
+		catch (IOException e) {
+			return newErrorStatus(e);
+		}
+		try {
+			if (exists)
+				file.setContents(stream, false, true, progress.split(1));
+			else
+				file.create(stream, false, progress.split(1));
+		}
+		catch (OperationCanceledException e) {
+			restoreContents(file, exists, history);
+			return Status.CANCEL_STATUS;
+		}
+		catch (CoreException e) {
+			restoreContents(file, exists, history);
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			return newErrorStatus(e);
+		}
+		finally {
+			try {
+				stream.close();
+			}
+			catch (IOException e) {
+				e.printStackTrace();
+			}
+			monitor.done();
+		}
+		length = stream.getLength();
+		checksum = stream.getChecksum();
+		deleteJournal();
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Delete the journal, which no longer applies to the file content. If it cannot be
+	 * deleted then it is ignored when the file is next opened because the checksum does
+	 * not match.
+	 */
+	private void deleteJournal() {
+		try {
+			if (journalFile.exists())
+				journalFile.delete(true, false, null);
+		}
+		catch (CoreException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static IStatus newErrorStatus(Exception ex) {
+		ex.printStackTrace();
+		return new Status(
+			IStatus.ERROR,
+			"com.qualityeclipse.genealogy",
+			"An exception occurred while saving the file",
+			ex);
+	}
+
+	/**
+	 * Answer the local history for the specified file
+	 */
+	private static IFileState[] getHistory(IFile file) {
+		try {
+			if (file.exists())
+				return file.getHistory(null);
+		}
+		catch (CoreException e) {
+			e.printStackTrace();
+		}
+		return new IFileState[0];
+	}
+
+	/**
+	 * Called when a save fails or is canceled after the file may have been partially
+	 * written. If a new file was being created, then delete it. If an existing file was
+	 * being overwritten and its previous content was added to the local history, then
+	 * restore that content.
+	 *
+	 * @param file the file being saved (not <code>null</code>)
+	 * @param existed <code>true</code> if the file existed before the save
+	 * @param oldHistory the local history of the file before the save
+	 */
+	private static void restoreContents(IFile file, boolean existed, IFileState[] oldHistory) {
+		try {
+			if (!existed) {
+				if (file.exists())
+					file.delete(true, false, null);
+				return;
+			}
+			IFileState[] history = file.getHistory(null);
+			if (history.length == 0)
+				return;
+			if (oldHistory.length > 0 && history.length == oldHistory.length
+				&& history[0].getModificationTime() == oldHistory[0].getModificationTime())
+				return;
+			file.setContents(history[0], true, false, null);
+		}
+		catch (CoreException e) {
+			e.printStackTrace();
+		}
+	}
+}
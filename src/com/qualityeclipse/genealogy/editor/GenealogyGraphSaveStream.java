@@ -0,0 +1,146 @@
+package com.qualityeclipse.genealogy.editor;
+
+import java.io.*;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.*;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.io.GenealogyGraphFormat;
+
+/**
+ * An {@link InputStream} whose content is produced by serializing a
+ * {@link GenealogyGraph} on a background thread as the stream is read. This allows the
+ * serialized graph to be passed directly to {@link IFile#setContents} without first
+ * holding the entire serialized graph in memory. Progress is reported to and
+ * cancellation is checked against the progress monitor as the stream is read.
+ * <p>
+ * The graph must not be modified until the stream has been closed.
+ */
+class GenealogyGraphSaveStream extends InputStream
+{
+	private static final int PIPE_SIZE = 64 * 1024;
+	private static final int REPORT_INTERVAL = 256 * 1024;
+
+	private final PipedInputStream pipe;
+	private final IProgressMonitor monitor;
+	private final CRC32 checksum = new CRC32();
+	private volatile Throwable writeError;
+	private long bytesRead;
+	private long nextReport = REPORT_INTERVAL;
+
+	/**
+	 * Start serializing the specified graph in the specified format
+	 *
+	 * @param graph the graph to be serialized (not <code>null</code>)
+	 * @param format the format in which the graph is to be serialized (not <code>null</code>)
+	 * @param monitor the progress monitor or <code>null</code> if none
+	 */
+	GenealogyGraphSaveStream(final GenealogyGraph graph, final GenealogyGraphFormat format, IProgressMonitor monitor)
+		throws IOException
+	{
+		this.monitor = monitor != null ? monitor : new NullProgressMonitor();
+		pipe = new PipedInputStream(PIPE_SIZE);
+		final PipedOutputStream out = new PipedOutputStream(pipe);
+		Thread writerThread = new Thread("Save Genealogy Graph") {
+			public void run() {
+				try {
+					format.write(graph, out);
+				}
+				catch (Throwable e) {
+					writeError = e;
+				}
+				finally {
+					try {
+						out.close();
+					}
+					catch (IOException e) {
+						if (writeError == null)
+							writeError = e;
+					}
+				}
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	public int read() throws IOException {
+		checkCanceled();
+		int b = pipe.read();
+		if (b == -1)
+			checkWriteError();
+		else {
+			checksum.update(b);
+			bytesRead(1);
+		}
+		return b;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		checkCanceled();
+		int count = pipe.read(buffer, offset, length);
+		if (count == -1)
+			checkWriteError();
+		else {
+			checksum.update(buffer, offset, count);
+			bytesRead(count);
+		}
+		return count;
+	}
+
+	public int available() throws IOException {
+		return pipe.available();
+	}
+
+	/**
+	 * Close the pipe, which causes the writer thread to stop
+	 * if it has not already finished serializing the graph
+	 */
+	public void close() throws IOException {
+		pipe.close();
+	}
+
+	/**
+	 * Answer the number of bytes read from the receiver
+	 */
+	long getLength() {
+		return bytesRead;
+	}
+
+	/**
+	 * Answer the CRC-32 of the bytes read from the receiver
+	 */
+	long getChecksum() {
+		return checksum.getValue();
+	}
+
+	private void checkCanceled() throws IOException {
+		if (monitor.isCanceled())
+			throw new InterruptedIOException("Save canceled");
+	}
+
+	/**
+	 * Called when the end of the stream has been reached to ensure that the content is
+	 * not mistaken for a complete graph if the writer thread failed.
+	 */
+	private void checkWriteError() throws IOException {
+		Throwable e = writeError;
+		if (e == null)
+			return;
+		if (e instanceof IOException)
+			throw (IOException) e;
+		IOException ioe = new IOException("Failed to serialize genealogy graph");
+		ioe.initCause(e);
+		throw ioe;
+	}
+
+	private void bytesRead(int count) {
+		bytesRead += count;
+		if (bytesRead >= nextReport) {
+			nextReport = bytesRead + REPORT_INTERVAL;
+			monitor.subTask("Saved " + (bytesRead / 1024) + " KB");
+		}
+	}
+}
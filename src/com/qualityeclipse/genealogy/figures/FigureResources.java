@@ -0,0 +1,134 @@
+package com.qualityeclipse.genealogy.figures;
+
+import java.util.*;
+
+import org.eclipse.jface.resource.*;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.graphics.*;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * The images and gradient patterns painted by the genealogy figures displayed in one
+ * control. Each resource is created when first requested and then answered again for the
+ * same description rather than being created each time a figure is painted.
+ * <p>
+ * The resources are allocated through a JFace {@link LocalResourceManager}, which shares
+ * each resource with the other controls on the same display by reference counting it in
+ * the display's shared {@link JFaceResources} manager and which releases the resources
+ * of the control when the control is disposed, so that a long session opening
+ * and closing diagrams does not exhaust the operating system's graphics handles.
+ */
+public final class FigureResources
+{
+	/**
+	 * The name of the property under which a GEF viewer holds its resources
+	 */
+	public static final String VIEWER_PROPERTY = FigureResources.class.getName();
+
+	/**
+	 * The width and height of a gradient, in pixels at the scale at which it is painted,
+	 * are rounded up to a multiple of this size so that figures of similar sizes share
+	 * a gradient
+	 */
+	public static final int SIZE_BUCKET = 8;
+
+	private final ResourceManager manager;
+
+	/**
+	 * The resources already allocated by the manager, keyed by their descriptors,
+	 * so that each is allocated and reference counted once
+	 */
+	private final Map<Object, Object> resources = new HashMap<Object, Object>();
+
+	public FigureResources(Control control) {
+		manager = new LocalResourceManager(JFaceResources.getResources(control.getDisplay()), control);
+		control.addDisposeListener(new DisposeListener() {
+			public void widgetDisposed(DisposeEvent e) {
+				resources.clear();
+			}
+		});
+	}
+
+	/**
+	 * Answer the image described by the specified descriptor
+	 */
+	public Image getImage(ImageDescriptor descriptor) {
+		Image image = (Image) resources.get(descriptor);
+		if (image == null) {
+			image = manager.createImage(descriptor);
+			resources.put(descriptor, image);
+		}
+		return image;
+	}
+
+	/**
+	 * Answer a linear gradient from the top left to the bottom right of a rectangle of the
+	 * specified size whose top left corner is at 0, 0. The pattern is created at the size
+	 * of the rectangle when painted at the specified scale because patterns are not
+	 * scaled with the graphics on which they are painted.
+	 *
+	 * @param width the width of the rectangle
+	 * @param height the height of the rectangle
+	 * @param scale the scale at which the rectangle is painted
+	 * @param from the color at the top left
+	 * @param to the color at the bottom right
+	 */
+	public Pattern getGradient(int width, int height, double scale, Color from, Color to) {
+		GradientDescriptor descriptor = new GradientDescriptor(bucket(width * scale), bucket(height * scale),
+			from.getRGB(), to.getRGB());
+		Pattern pattern = (Pattern) resources.get(descriptor);
+		if (pattern == null) {
+			pattern = (Pattern) manager.create(descriptor);
+			resources.put(descriptor, pattern);
+		}
+		return pattern;
+	}
+
+	private static int bucket(double size) {
+		return ((int) Math.ceil(size) + SIZE_BUCKET - 1) / SIZE_BUCKET * SIZE_BUCKET;
+	}
+
+	/**
+	 * Describes a linear gradient pattern by its size and colors
+	 */
+	private static final class GradientDescriptor extends DeviceResourceDescriptor
+	{
+		private final int width, height;
+		private final RGB from, to;
+
+		GradientDescriptor(int width, int height, RGB from, RGB to) {
+			this.width = width;
+			this.height = height;
+			this.from = from;
+			this.to = to;
+		}
+
+		public Object createResource(Device device) throws DeviceResourceException {
+			Color color1 = new Color(device, from);
+			Color color2 = new Color(device, to);
+			try {
+				return new Pattern(device, 0, 0, width, height, color1, color2);
+			}
+			finally {
+				color1.dispose();
+				color2.dispose();
+			}
+		}
+
+		public void destroyResource(Object previouslyCreatedObject) {
+			((Pattern) previouslyCreatedObject).dispose();
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof GradientDescriptor))
+				return false;
+			GradientDescriptor other = (GradientDescriptor) obj;
+			return width == other.width && height == other.height && from.equals(other.from) && to.equals(other.to);
+		}
+
+		public int hashCode() {
+			return ((width * 31 + height) * 31 + from.hashCode()) * 31 + to.hashCode();
+		}
+	}
+}
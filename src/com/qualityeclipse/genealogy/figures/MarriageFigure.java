@@ -2,25 +2,25 @@ package com.qualityeclipse.genealogy.figures;
 
 import org.eclipse.draw2d.*;
 import org.eclipse.draw2d.geometry.*;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Display;
+import org.eclipse.jface.resource.ImageDescriptor;
 
 import com.qualityeclipse.genealogy.anchors.MarriageAnchor;
 import com.qualityeclipse.genealogy.editor.GenealogyGraphEditor;
 import com.qualityeclipse.genealogy.view.*;
 
 /**
- * A custom figure for the GenealogyView visually linking related people
+ * A custom figure for the GenealogyView visually linking related people. The year of the
+ * marriage is not painted when zoomed out, as described by {@link Detail}.
  */
 public class MarriageFigure extends PolygonShape {
 	public static final int RADIUS = 26;
 	private static final PointList ARROWHEAD = new PointList(new int[] { 0, 0,
 			-2, 2, -2, 0, -2, -2, 0, 0 });
 	
-	public static final Image MARRIAGE_IMAGE = new Image(Display.getCurrent(),
-		MarriageFigure.class.getResourceAsStream("marriage.png"));
-	public static final Image CONNECTION_IMAGE = new Image(Display.getCurrent(),
-		MarriageFigure.class.getResourceAsStream("connection.png"));
+	public static final ImageDescriptor MARRIAGE_IMAGE = ImageDescriptor.createFromFile(MarriageFigure.class,
+		"marriage.png");
+	public static final ImageDescriptor CONNECTION_IMAGE = ImageDescriptor.createFromFile(MarriageFigure.class,
+		"connection.png");
 
 	private final Label yearMarriedFigure;
 
@@ -44,6 +44,11 @@ public class MarriageFigure extends PolygonShape {
 			public boolean containsPoint(int x, int y) {
 				return false;
 			}
+
+			public void paint(Graphics graphics) {
+				if (Detail.of(graphics) == Detail.FULL)
+					super.paint(graphics);
+			}
 		};
 		add(yearMarriedFigure);
 	}
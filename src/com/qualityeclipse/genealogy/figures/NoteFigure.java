@@ -2,30 +2,92 @@ package com.qualityeclipse.genealogy.figures;
 
 import org.eclipse.draw2d.*;
 import org.eclipse.draw2d.geometry.*;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Display;
+import org.eclipse.jface.resource.ImageDescriptor;
+import org.eclipse.swt.graphics.Font;
 
 import com.qualityeclipse.genealogy.borders.NoteBorder;
 
 public class NoteFigure extends Label {
 
-	public static final Image NOTE_IMAGE = new Image(Display.getCurrent(),
-		MarriageFigure.class.getResourceAsStream("note.png"));
+	public static final ImageDescriptor NOTE_IMAGE = ImageDescriptor.createFromFile(NoteFigure.class, "note.png");
+
+	/**
+	 * The start and end of each range of characters to be highlighted as successive pairs
+	 * of offsets in the text, or <code>null</code> if nothing is highlighted
+	 */
+	private int[] highlights;
 
 	public NoteFigure(String note) {
 		super(note);
 		setBorder(new NoteBorder());
 	}
+
+	/**
+	 * Highlight the specified ranges of characters until the text changes
+	 * 
+	 * @param ranges the start and end of each range as successive pairs of offsets in the
+	 *            text, or <code>null</code> if nothing is to be highlighted
+	 */
+	public void setHighlights(int[] ranges) {
+		highlights = ranges != null && ranges.length > 0 ? ranges : null;
+		repaint();
+	}
+
+	/**
+	 * Extend the superclass behavior to discard any highlights
+	 */
+	public void setText(String s) {
+		highlights = null;
+		super.setText(s);
+	}
 	
+	/**
+	 * Paint the receiver only if zoomed in far enough to show everything,
+	 * as described by {@link Detail}
+	 */
+	public void paint(Graphics graphics) {
+		if (Detail.of(graphics) == Detail.FULL)
+			super.paint(graphics);
+	}
+
 	protected void paintFigure(Graphics graphics) {
 		graphics.setBackgroundColor(ColorConstants.white);
 		Rectangle b = getBounds();
 		final int fold = NoteBorder.FOLD;
 		graphics.fillRectangle(b.x + fold, b.y, b.width - fold, fold);
 		graphics.fillRectangle(b.x, b.y + fold, b.width, b.height - fold);
+		if (highlights != null)
+			paintHighlights(graphics);
 		super.paintFigure(graphics);
 	}
 
+	/**
+	 * Fill the background of each highlighted range of characters that is displayed.
+	 * The lines of text are drawn left aligned from the text location, so each range is
+	 * offset by the width of the characters preceding it on the same line.
+	 */
+	private void paintHighlights(Graphics graphics) {
+		String text = getText();
+		String shown = getSubStringText();
+		Font font = getFont();
+		int lineHeight = FigureUtilities.getFontMetrics(font).getHeight();
+		Point origin = getTextLocation().getTranslated(getBounds().getLocation());
+		graphics.setBackgroundColor(ColorConstants.yellow);
+		for (int i = 0; i + 1 < highlights.length; i += 2) {
+			int start = highlights[i];
+			int end = highlights[i + 1];
+			if (end > shown.length() || !shown.regionMatches(start, text, start, end - start))
+				continue;
+			int lineStart = shown.lastIndexOf('\n', start - 1) + 1;
+			int line = 0;
+			for (int j = shown.indexOf('\n'); j != -1 && j < start; j = shown.indexOf('\n', j + 1))
+				line++;
+			int x = FigureUtilities.getTextWidth(shown.substring(lineStart, start), font);
+			int width = FigureUtilities.getTextWidth(shown.substring(start, end), font);
+			graphics.fillRectangle(origin.x + x, origin.y + line * lineHeight, width, lineHeight);
+		}
+	}
+
 	/**
 	 * Adjust the receiver's appearance based upon whether the receiver is selected
 	 * 
@@ -2,26 +2,27 @@ package com.qualityeclipse.genealogy.figures;
 
 import org.eclipse.draw2d.*;
 import org.eclipse.draw2d.geometry.*;
+import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.Pattern;
-import org.eclipse.swt.widgets.Display;
 
 /**
- * A custom figure for the GenealogyView displaying a person's information
+ * A custom figure for the GenealogyView displaying a person's information. When zoomed
+ * out, the dates and notes are not painted and then the person is painted as a flat box,
+ * as described by {@link Detail}.
  */
 public class PersonFigure extends Figure {
 
-	public static final Image MALE = new Image(Display.getCurrent(),
-			PersonFigure.class.getResourceAsStream("male.png"));
-	public static final Image FEMALE = new Image(Display.getCurrent(),
-		PersonFigure.class.getResourceAsStream("female.png"));
+	public static final ImageDescriptor MALE = ImageDescriptor.createFromFile(PersonFigure.class, "male.png");
+	public static final ImageDescriptor FEMALE = ImageDescriptor.createFromFile(PersonFigure.class, "female.png");
 
+	private final FigureResources resources;
 	private final Label nameFigure;
 	private final Label datesFigure;
 	private final IFigure notesContainer;
 	private final LineBorder lineBorder;
 
-	public PersonFigure(String name, Image image, int birthYear, int deathYear) {
+	public PersonFigure(FigureResources resources, String name, Image image, int birthYear, int deathYear) {
+		this.resources = resources;
 		final ToolbarLayout layout = new ToolbarLayout();
 		layout.setSpacing(1);
 		setLayoutManager(layout);
@@ -47,12 +48,22 @@ public class PersonFigure extends Figure {
 		nameDates.add(nameFigure);
 
 		// Display the year of birth and death
-		datesFigure = new Label();
+		datesFigure = new Label() {
+			public void paint(Graphics graphics) {
+				if (Detail.of(graphics) == Detail.FULL)
+					super.paint(graphics);
+			}
+		};
 		nameDates.add(datesFigure);
 		setBirthAndDeathYear(birthYear, deathYear);
 
 		// Add a container for notes
-		notesContainer = new Figure();
+		notesContainer = new Figure() {
+			public void paint(Graphics graphics) {
+				if (Detail.of(graphics) == Detail.FULL)
+					super.paint(graphics);
+			}
+		};
 		final ToolbarLayout notesLayout = new ToolbarLayout();
 		notesLayout.setSpacing(1);
 		notesContainer.setLayoutManager(notesLayout);
@@ -63,12 +74,31 @@ public class PersonFigure extends Figure {
 		return notesContainer;
 	}
 
+	/**
+	 * Fill the receiver with a gradient shared with the other people of about the same
+	 * size, translated so that it starts at the receiver's top left corner
+	 */
 	public void paintFigure(Graphics graphics) {
 		Rectangle r = getBounds();
-		graphics.setBackgroundPattern(new Pattern(Display.getCurrent(), r.x,
-				r.y, r.x + r.width, r.y + r.height, ColorConstants.white,
-				ColorConstants.lightGray));
-		graphics.fillRectangle(r);
+		if (Detail.of(graphics) == Detail.OUTLINE) {
+			graphics.setBackgroundColor(ColorConstants.lightGray);
+			graphics.fillRectangle(r);
+			return;
+		}
+		graphics.pushState();
+		graphics.translate(r.x, r.y);
+		graphics.setBackgroundPattern(resources.getGradient(r.width, r.height, graphics.getAbsoluteScale(),
+			ColorConstants.white, ColorConstants.lightGray));
+		graphics.fillRectangle(0, 0, r.width, r.height);
+		graphics.popState();
+	}
+
+	/**
+	 * Paint the nested figures only if zoomed in far enough to show names
+	 */
+	protected void paintClientArea(Graphics graphics) {
+		if (Detail.of(graphics) != Detail.OUTLINE)
+			super.paintClientArea(graphics);
 	}
 
 	public void setName(String newName) {
@@ -0,0 +1,261 @@
+package com.qualityeclipse.genealogy.figures;
+
+import java.util.*;
+
+import org.eclipse.draw2d.*;
+import org.eclipse.draw2d.geometry.*;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * A {@link ScalableFreeformLayeredPane} that paints its layers into offscreen images of
+ * {@link #TILE_SIZE} pixels square at each scale and then paints the diagram by copying
+ * those images, so that scrolling a diagram that is not changing copies images rather
+ * than painting every figure again. After painting, the tiles just beyond the visible
+ * area in the direction in which the diagram last scrolled are painted in advance.
+ * <p>
+ * A tile is painted again only after a figure within the receiver has reported that an
+ * area of that tile must be repainted. Those reports are passed to the receiver by a
+ * {@link TiledUpdateManager}, so the receiver paints its layers directly, without
+ * caching, unless it is displayed by a lightweight system using that update manager.
+ * The least recently painted tiles are discarded once there are {@link #MAX_TILES}.
+ */
+public class TiledLayeredPane extends ScalableFreeformLayeredPane
+{
+	/**
+	 * The width and height of each tile in pixels
+	 */
+	public static final int TILE_SIZE = 256;
+	private static final int TILE_SHIFT = 8;
+
+	/**
+	 * The maximum number of tiles held at all scales
+	 */
+	public static final int MAX_TILES = 128;
+
+	/**
+	 * The tiles in the order in which they were last painted
+	 */
+	private final LinkedHashMap<Tile, Image> tiles = new LinkedHashMap<Tile, Image>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Tile, Image> eldest) {
+			if (size() <= MAX_TILES)
+				return false;
+			eldest.getValue().dispose();
+			return true;
+		}
+	};
+
+	private boolean scaling;
+	private Point lastViewLocation;
+	private boolean prerenderPending;
+
+	/**
+	 * Extend the superclass behavior so that repainting the receiver at the new scale
+	 * does not discard the tiles at the old scale
+	 */
+	public void setScale(double newZoom) {
+		scaling = true;
+		try {
+			super.setScale(newZoom);
+		}
+		finally {
+			scaling = false;
+		}
+	}
+
+	/**
+	 * Discard the tiles when the receiver is no longer displayed
+	 */
+	public void removeNotify() {
+		for (Image image : tiles.values())
+			image.dispose();
+		tiles.clear();
+		super.removeNotify();
+	}
+
+	/**
+	 * Discard the tiles overlapping an area that a figure within the receiver must
+	 * repaint. Called by {@link TiledUpdateManager}.
+	 *
+	 * @param figure the receiver or a figure within it
+	 * @param area the area to be repainted in the coordinates of the figure's bounds
+	 */
+	void repaint(IFigure figure, Rectangle area) {
+		if (tiles.isEmpty() || figure == this && scaling)
+			return;
+		Rectangle r = area.getCopy();
+		for (IFigure walker = figure; walker != this;) {
+			walker = walker.getParent();
+			walker.translateToParent(r);
+		}
+		invalidate(r);
+	}
+
+	/**
+	 * Discard the tiles overlapping the specified area at the current scale
+	 * and the same area at every other scale
+	 */
+	private void invalidate(Rectangle area) {
+		double scale = getScale();
+		Iterator<Map.Entry<Tile, Image>> iter = tiles.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Tile, Image> entry = iter.next();
+			Tile tile = entry.getKey();
+			double factor = tile.scale / scale;
+			int x = (int) Math.floor(area.x * factor) - 1;
+			int y = (int) Math.floor(area.y * factor) - 1;
+			int right = (int) Math.ceil((area.x + area.width) * factor) + 1;
+			int bottom = (int) Math.ceil((area.y + area.height) * factor) + 1;
+			int tileX = tile.column * TILE_SIZE;
+			int tileY = tile.row * TILE_SIZE;
+			if (x < tileX + TILE_SIZE && tileX < right && y < tileY + TILE_SIZE && tileY < bottom) {
+				entry.getValue().dispose();
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * Paint the layers by copying the tiles overlapping the area being painted,
+	 * painting any tile that is not cached
+	 */
+	protected void paintClientArea(Graphics graphics) {
+		if (getChildren().isEmpty())
+			return;
+		Rectangle clip = graphics.getClip(new Rectangle()).intersect(getBounds());
+		int left = clip.x >> TILE_SHIFT;
+		int top = clip.y >> TILE_SHIFT;
+		int right = (clip.x + clip.width - 1) >> TILE_SHIFT;
+		int bottom = (clip.y + clip.height - 1) >> TILE_SHIFT;
+		if (!(getUpdateManager() instanceof TiledUpdateManager) || clip.isEmpty()
+			|| (right - left + 1) * (bottom - top + 1) > MAX_TILES / 2)
+		{
+			super.paintClientArea(graphics);
+			return;
+		}
+		for (int row = top; row <= bottom; row++)
+			for (int column = left; column <= right; column++)
+				graphics.drawImage(getTile(column, row), column * TILE_SIZE, row * TILE_SIZE);
+		schedulePrerender();
+	}
+
+	/**
+	 * Answer the image of the specified tile at the current scale, painting it if it is
+	 * not cached
+	 */
+	private Image getTile(int column, int row) {
+		Tile tile = new Tile(getScale(), column, row);
+		Image image = tiles.get(tile);
+		if (image == null) {
+			image = paintTile(column, row);
+			tiles.put(tile, image);
+		}
+		return image;
+	}
+
+	private Image paintTile(int column, int row) {
+		Image image = new Image(Display.getCurrent(), TILE_SIZE, TILE_SIZE);
+		GC gc = new GC(image);
+		SWTGraphics graphics = new SWTGraphics(gc);
+		try {
+			Rectangle area = new Rectangle(column * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+			graphics.translate(-area.x, -area.y);
+			graphics.setClip(area);
+			graphics.setFont(getFont());
+			graphics.setForegroundColor(getForegroundColor());
+			graphics.setBackgroundColor(getBackgroundColor());
+			graphics.fillRectangle(area);
+			super.paintClientArea(graphics);
+		}
+		finally {
+			graphics.dispose();
+			gc.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * If the diagram has scrolled since last painted, paint the tiles just beyond the
+	 * visible area in the direction in which it scrolled once the current painting is
+	 * complete
+	 */
+	private void schedulePrerender() {
+		final Viewport viewport = getViewport();
+		if (viewport == null)
+			return;
+		Point location = viewport.getViewLocation();
+		Point last = lastViewLocation;
+		lastViewLocation = location;
+		if (last == null || last.equals(location) || prerenderPending)
+			return;
+		final int dx = Integer.signum(location.x - last.x);
+		final int dy = Integer.signum(location.y - last.y);
+		prerenderPending = true;
+		Display.getCurrent().asyncExec(new Runnable() {
+			public void run() {
+				prerenderPending = false;
+				if (getUpdateManager() instanceof TiledUpdateManager)
+					prerender(viewport, dx, dy);
+			}
+		});
+	}
+
+	private void prerender(Viewport viewport, int dx, int dy) {
+		Rectangle visible = viewport.getClientArea(new Rectangle());
+		viewport.translateToAbsolute(visible);
+		getParent().translateToRelative(visible);
+		int left = visible.x >> TILE_SHIFT;
+		int top = visible.y >> TILE_SHIFT;
+		int right = (visible.x + visible.width - 1) >> TILE_SHIFT;
+		int bottom = (visible.y + visible.height - 1) >> TILE_SHIFT;
+		if (dx != 0) {
+			int column = dx > 0 ? right + 1 : left - 1;
+			for (int row = top; row <= bottom; row++)
+				getTile(column, row);
+		}
+		if (dy != 0) {
+			int row = dy > 0 ? bottom + 1 : top - 1;
+			for (int column = left; column <= right; column++)
+				getTile(column, row);
+		}
+	}
+
+	/**
+	 * Answer the viewport through which the receiver is displayed, or <code>null</code>
+	 * if none
+	 */
+	private Viewport getViewport() {
+		for (IFigure walker = getParent(); walker != null; walker = walker.getParent())
+			if (walker instanceof Viewport)
+				return (Viewport) walker;
+		return null;
+	}
+
+	/**
+	 * Identifies a tile by its scale and its position in the grid of tiles
+	 */
+	private static final class Tile
+	{
+		final double scale;
+		final int column, row;
+
+		Tile(double scale, int column, int row) {
+			this.scale = scale;
+			this.column = column;
+			this.row = row;
+		}
+
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Tile))
+				return false;
+			Tile other = (Tile) obj;
+			return scale == other.scale && column == other.column && row == other.row;
+		}
+
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(scale);
+			return ((int) (bits ^ bits >>> 32) * 31 + column) * 31 + row;
+		}
+	}
+}
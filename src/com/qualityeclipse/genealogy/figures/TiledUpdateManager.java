@@ -0,0 +1,35 @@
+package com.qualityeclipse.genealogy.figures;
+
+import org.eclipse.draw2d.*;
+import org.eclipse.draw2d.geometry.Rectangle;
+
+/**
+ * An update manager that tells each {@link TiledLayeredPane} which areas of its cached
+ * tiles are no longer valid because a figure within that pane must be repainted. Areas
+ * repainted because the diagram scrolled or the window was uncovered are reported by
+ * figures outside the pane and so do not discard any tiles.
+ */
+public class TiledUpdateManager extends DeferredUpdateManager
+{
+	/**
+	 * Answer a lightweight system using this update manager, to be passed to the
+	 * constructor of a {@link FigureCanvas}
+	 */
+	public static LightweightSystem createLightweightSystem() {
+		LightweightSystem lws = new LightweightSystem();
+		lws.setUpdateManager(new TiledUpdateManager());
+		return lws;
+	}
+
+	public synchronized void addDirtyRegion(IFigure figure, int x, int y, int w, int h) {
+		if (w > 0 && h > 0) {
+			for (IFigure walker = figure; walker != null; walker = walker.getParent()) {
+				if (walker instanceof TiledLayeredPane) {
+					((TiledLayeredPane) walker).repaint(figure, new Rectangle(x, y, w, h));
+					break;
+				}
+			}
+		}
+		super.addDirtyRegion(figure, x, y, w, h);
+	}
+}
@@ -0,0 +1,468 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * An index of the people, marriages, and notes in a {@link GenealogyGraph} by their
+ * bounds, used to find the elements in an area of the diagram or nearest a point without
+ * visiting every element. Notes belonging to people are not indexed because they are
+ * displayed within the bounds of those people.
+ * <p>
+ * The diagram is divided into square cells of {@link #CELL_SIZE} and each element is held
+ * in a hash table under each cell that its bounds overlap, so the cost of a query depends
+ * upon the number of cells and elements in the area searched rather than upon the size of
+ * the graph. An element overlapping more than {@link #MAX_CELLS} cells is held in a
+ * separate list that every query searches.
+ * <p>
+ * An element whose width or height is negative is displayed at the preferred size of its
+ * figure, which is not known to the model. Such an element is answered by every query of
+ * an area that extends below and to the right of its location, so the caller should
+ * compare the bounds of its figure with the area searched. Its location alone is used to
+ * find the nearest element and the extent of the diagram.
+ * <p>
+ * The index is built when first searched and is then kept up to date by listening to the
+ * graph for elements being added, removed, moved, and resized, without listening to each
+ * element. It is discarded when the entire content of the graph is replaced and built
+ * again when next searched. Within {@link GenealogyGraph#batch(Runnable)}, the index is
+ * updated only when the batch completes. Call {@link #dispose()} when the index is no
+ * longer needed so that it stops listening to the graph.
+ */
+public final class BoundsIndex
+{
+	/**
+	 * The width and height of each cell, which is a few times the size of a person
+	 */
+	public static final int CELL_SIZE = 256;
+	private static final int CELL_SHIFT = 8;
+
+	/**
+	 * The maximum number of cells in which an element is held
+	 */
+	public static final int MAX_CELLS = 64;
+
+	private final GenealogyGraph graph;
+	private final GraphTracker graphTracker = new GraphTracker();
+
+	/**
+	 * The bounds by which each element is indexed,
+	 * or <code>null</code> if the index has not been built
+	 */
+	private Map<GenealogyElement, ElementBounds> elements;
+
+	/**
+	 * The elements overlapping each cell, keyed by {@link #key(int, int)}
+	 */
+	private Map<Long, List<ElementBounds>> cells;
+
+	/**
+	 * The elements overlapping too many cells to be held in each of them
+	 */
+	private List<ElementBounds> large;
+
+	/**
+	 * The smallest rectangle containing every element as x, y, right, and bottom,
+	 * or <code>null</code> if it must be calculated again
+	 */
+	private int[] extent;
+
+	/**
+	 * Incremented by each query so that an element held in several cells is answered once
+	 */
+	private int queryCount;
+
+	public BoundsIndex(GenealogyGraph graph) {
+		this.graph = graph;
+		graph.addGenealogyGraphListener(graphTracker);
+		graph.addElementListener(graphTracker);
+	}
+
+	/**
+	 * Stop listening to the graph and discard the index
+	 */
+	public void dispose() {
+		graph.removeGenealogyGraphListener(graphTracker);
+		graph.removeElementListener(graphTracker);
+		discard();
+	}
+
+	//============================================================
+	// Searching
+
+	/**
+	 * Answer the elements whose bounds intersect the specified rectangle, in no particular
+	 * order. The rectangle 1 pixel square at a point answers the elements containing that
+	 * point.
+	 */
+	public List<GenealogyElement> query(int x, int y, int width, int height) {
+		List<GenealogyElement> result = new ArrayList<GenealogyElement>();
+		if (width <= 0 || height <= 0)
+			return result;
+		build();
+		int count = ++queryCount;
+		int right = x + width;
+		int bottom = y + height;
+		int left = x >> CELL_SHIFT;
+		int top = y >> CELL_SHIFT;
+		int last = (right - 1) >> CELL_SHIFT;
+		int lastRow = (bottom - 1) >> CELL_SHIFT;
+		if ((long) (last - left + 1) * (lastRow - top + 1) > cells.size()) {
+			// The area covers more cells than hold elements
+			for (List<ElementBounds> list : cells.values())
+				collect(list, x, y, right, bottom, count, result);
+		}
+		else {
+			for (int row = top; row <= lastRow; row++) {
+				for (int column = left; column <= last; column++) {
+					List<ElementBounds> list = cells.get(key(column, row));
+					if (list != null)
+						collect(list, x, y, right, bottom, count, result);
+				}
+			}
+		}
+		collect(large, x, y, right, bottom, count, result);
+		return result;
+	}
+
+	private static void collect(List<ElementBounds> list, int x, int y, int right, int bottom, int count,
+		List<GenealogyElement> result)
+	{
+		for (ElementBounds t : list) {
+			if (t.queryCount == count)
+				continue;
+			t.queryCount = count;
+			if (t.x < right && t.y < bottom && (t.unsized || t.right > x && t.bottom > y))
+				result.add(t.element);
+		}
+	}
+
+	/**
+	 * Answer the element whose bounds are nearest the specified point, which is an element
+	 * containing that point if there is one, or <code>null</code> if there are no elements.
+	 */
+	public GenealogyElement nearest(int x, int y) {
+		build();
+		ElementBounds best = null;
+		long bestDistance = Long.MAX_VALUE;
+		for (ElementBounds t : large) {
+			long d = t.distance(x, y);
+			if (d < bestDistance) {
+				best = t;
+				bestDistance = d;
+			}
+		}
+
+		// Search the rings of cells around the cell containing the point. Before searching
+		// ring r, every element not yet found is at least r - 1 cells away.
+		int column = x >> CELL_SHIFT;
+		int row = y >> CELL_SHIFT;
+		for (int r = 0; !elements.isEmpty(); r++) {
+			long reach = (long) (r - 1) * CELL_SIZE;
+			if (best != null && r > 0 && bestDistance <= reach * reach)
+				break;
+			if ((2L * r + 1) * (2L * r + 1) > 4L * cells.size()) {
+				// The rings have become larger than the occupied cells
+				for (ElementBounds t : elements.values()) {
+					long d = t.distance(x, y);
+					if (d < bestDistance) {
+						best = t;
+						bestDistance = d;
+					}
+				}
+				break;
+			}
+			for (int i = -r; i <= r; i++) {
+				for (int j = -r; j <= r; j += (i == -r || i == r) ? 1 : 2 * r) {
+					List<ElementBounds> list = cells.get(key(column + j, row + i));
+					if (list == null)
+						continue;
+					for (ElementBounds t : list) {
+						long d = t.distance(x, y);
+						if (d < bestDistance) {
+							best = t;
+							bestDistance = d;
+						}
+					}
+				}
+			}
+		}
+		return best != null ? best.element : null;
+	}
+
+	/**
+	 * Answer the smallest rectangle containing every element as x, y, width, and height,
+	 * or <code>null</code> if there are no elements
+	 */
+	public int[] getExtent() {
+		build();
+		if (elements.isEmpty())
+			return null;
+		if (extent == null) {
+			for (ElementBounds t : elements.values())
+				addToExtent(t);
+		}
+		return new int[] {
+			extent[0], extent[1], extent[2] - extent[0], extent[3] - extent[1]
+		};
+	}
+
+	private void addToExtent(ElementBounds t) {
+		if (extent == null)
+			extent = new int[] {
+				t.x, t.y, t.right, t.bottom
+			};
+		else {
+			extent[0] = Math.min(extent[0], t.x);
+			extent[1] = Math.min(extent[1], t.y);
+			extent[2] = Math.max(extent[2], t.right);
+			extent[3] = Math.max(extent[3], t.bottom);
+		}
+	}
+
+	/**
+	 * Answer <code>true</code> if the extent would be unchanged
+	 * by removing the specified element
+	 */
+	private boolean isInsideExtent(ElementBounds t) {
+		return t.x > extent[0] && t.y > extent[1] && t.right < extent[2] && t.bottom < extent[3];
+	}
+
+	//============================================================
+	// Indexing
+
+	private void build() {
+		if (elements != null)
+			return;
+		elements = new IdentityHashMap<GenealogyElement, ElementBounds>();
+		cells = new HashMap<Long, List<ElementBounds>>();
+		large = new ArrayList<ElementBounds>();
+		extent = null;
+		for (Person p : graph.getPeople())
+			add(p);
+		for (Marriage m : graph.getMarriages())
+			add(m);
+		for (Note n : graph.getNotes())
+			add(n);
+	}
+
+	private void discard() {
+		elements = null;
+		cells = null;
+		large = null;
+		extent = null;
+	}
+
+	private void add(GenealogyElement element) {
+		if (elements.containsKey(element))
+			return;
+		ElementBounds bounds = new ElementBounds(element);
+		elements.put(element, bounds);
+		index(bounds);
+	}
+
+	private void remove(GenealogyElement element) {
+		ElementBounds bounds = elements.remove(element);
+		if (bounds != null)
+			unindex(bounds);
+	}
+
+	/**
+	 * Record the current bounds of the specified element and add it to the cells that
+	 * those bounds overlap. An element with no width or height is held in the cell
+	 * containing its location.
+	 */
+	private void index(ElementBounds t) {
+		GenealogyElement e = t.element;
+		t.x = e.getX();
+		t.y = e.getY();
+		t.right = t.x + Math.max(e.getWidth(), 0);
+		t.bottom = t.y + Math.max(e.getHeight(), 0);
+		t.unsized = e.getWidth() < 0 || e.getHeight() < 0;
+		t.left = t.x >> CELL_SHIFT;
+		t.top = t.y >> CELL_SHIFT;
+		t.last = (Math.max(t.right, t.x + 1) - 1) >> CELL_SHIFT;
+		t.lastRow = (Math.max(t.bottom, t.y + 1) - 1) >> CELL_SHIFT;
+		if (t.isLarge())
+			large.add(t);
+		else {
+			for (int row = t.top; row <= t.lastRow; row++) {
+				for (int column = t.left; column <= t.last; column++) {
+					Long key = key(column, row);
+					List<ElementBounds> list = cells.get(key);
+					if (list == null) {
+						list = new ArrayList<ElementBounds>(4);
+						cells.put(key, list);
+					}
+					list.add(t);
+				}
+			}
+		}
+		if (extent != null)
+			addToExtent(t);
+	}
+
+	private void unindex(ElementBounds t) {
+		if (extent != null && !isInsideExtent(t))
+			extent = null;
+		if (t.isLarge()) {
+			large.remove(t);
+			return;
+		}
+		for (int row = t.top; row <= t.lastRow; row++) {
+			for (int column = t.left; column <= t.last; column++) {
+				Long key = key(column, row);
+				List<ElementBounds> list = cells.get(key);
+				list.remove(t);
+				if (list.isEmpty())
+					cells.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Reindex an element in the index that has moved or been resized
+	 */
+	private void update(GenealogyElement element) {
+		if (elements == null)
+			return;
+		ElementBounds t = elements.get(element);
+		if (t == null)
+			return;
+		unindex(t);
+		index(t);
+	}
+
+	private static Long key(int column, int row) {
+		return ((long) column << 32) | (row & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * The bounds and cells by which an element is indexed
+	 */
+	private static final class ElementBounds
+	{
+		final GenealogyElement element;
+		int x, y, right, bottom;
+		int left, top, last, lastRow;
+		boolean unsized;
+		int queryCount;
+
+		ElementBounds(GenealogyElement element) {
+			this.element = element;
+		}
+
+		/**
+		 * Answer <code>true</code> if the element is held in the list searched by every
+		 * query rather than in the cells that it overlaps
+		 */
+		boolean isLarge() {
+			return unsized || (long) (last - left + 1) * (lastRow - top + 1) > MAX_CELLS;
+		}
+
+		/**
+		 * Answer the square of the distance from the specified point to the bounds,
+		 * which is zero if the bounds contain the point
+		 */
+		long distance(int px, int py) {
+			long dx = Math.max(0, Math.max((long) x - px, (long) px - right));
+			long dy = Math.max(0, Math.max((long) y - py, (long) py - bottom));
+			return dx * dx + dy * dy;
+		}
+	}
+
+	//============================================================
+	// Listeners
+
+	/**
+	 * Keeps the index up to date as elements are added, removed, moved, and resized
+	 */
+	private final class GraphTracker
+		implements GenealogyGraphListener, GenealogyGraphElementListener
+	{
+		public void personAdded(Person p) {
+			if (elements != null)
+				add(p);
+		}
+
+		public void personRemoved(Person p) {
+			if (elements != null)
+				remove(p);
+		}
+
+		public void marriageAdded(Marriage m) {
+			if (elements != null)
+				add(m);
+		}
+
+		public void marriageRemoved(Marriage m) {
+			if (elements != null)
+				remove(m);
+		}
+
+		public void noteAdded(int index, Note n) {
+			if (elements != null)
+				add(n);
+		}
+
+		public void noteRemoved(Note n) {
+			if (elements != null)
+				remove(n);
+		}
+
+		public void graphCleared() {
+			discard();
+		}
+
+		public void graphLoaded() {
+			discard();
+		}
+
+		public void locationChanged(GenealogyElement elem, int x, int y) {
+			update(elem);
+		}
+
+		public void sizeChanged(GenealogyElement elem, int width, int height) {
+			update(elem);
+		}
+
+		public void nameChanged(Person p, String newName) {
+		}
+
+		public void birthYearChanged(Person p, int birthYear) {
+		}
+
+		public void deathYearChanged(Person p, int deathYear) {
+		}
+
+		public void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void noteAdded(Person p, int index, Note n) {
+		}
+
+		public void noteRemoved(Person p, Note n) {
+		}
+
+		public void yearMarriedChanged(Marriage m, int yearMarried) {
+		}
+
+		public void husbandChanged(Marriage m, Person husband, Person oldHusband) {
+		}
+
+		public void wifeChanged(Marriage m, Person wife, Person oldWife) {
+		}
+
+		public void offspringAdded(Marriage m, Person p) {
+		}
+
+		public void offspringRemoved(Marriage m, Person p) {
+		}
+
+		public void textChanged(Note n, String newText) {
+		}
+	}
+}
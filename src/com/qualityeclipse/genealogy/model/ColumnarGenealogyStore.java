@@ -0,0 +1,405 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+/**
+ * Holds the content of a very large {@link GenealogyGraph} in primitive arrays rather than
+ * as one object per element, and supplies {@link Person}, {@link Marriage}, and
+ * {@link Note} objects on demand as a {@link GenealogyElementSource}. Each attribute is a
+ * separate array indexed by element, names and note text are packed into shared character
+ * pools, and the offspring of each marriage and the notes of each person are stored
+ * contiguously with the position of the first in a separate array, so a person occupies
+ * about 40 bytes plus its name rather than several hundred.
+ * <p>
+ * A store is created by a {@link Builder}, typically by an importer as it reads, as
+ * {@link com.qualityeclipse.genealogy.model.io.GenealogyGraphBinaryReader} does for large
+ * streams, or from an existing graph by {@link #copyOf(GenealogyGraph)}, and is then
+ * opened with {@link GenealogyGraph#load(GenealogyElementSource)}. The store itself is never modified;
+ * changes are made to the elements it supplies, which are retained once modified.
+ */
+public class ColumnarGenealogyStore extends GenealogyElementSource
+{
+	private static final byte MALE = 0;
+	private static final byte FEMALE = 1;
+
+	// People
+	private final int personCount;
+	private final byte[] genders;
+	private final int[] birthYears;
+	private final int[] deathYears;
+	private final int[] personMarriages;
+	private final int[] parentsMarriages;
+	private final int[] personBounds;
+	private final int[] nameStarts;
+	private final char[] names;
+	private final int[] firstNotes;
+
+	// Marriages
+	private final int marriageCount;
+	private final int[] yearsMarried;
+	private final int[] husbands;
+	private final int[] wives;
+	private final int[] marriageBounds;
+	private final int[] firstOffspring;
+	private final int[] offspring;
+
+	// Notes, those of each person in person order followed by those of the graph
+	private final int noteCount;
+	private final int[] noteBounds;
+	private final int[] textStarts;
+	private final int[] textEnds;
+	private final char[] text;
+
+	private ColumnarGenealogyStore(Builder b) {
+		personCount = b.personCount;
+		genders = Arrays.copyOf(b.genders, personCount);
+		birthYears = Arrays.copyOf(b.birthYears, personCount);
+		deathYears = Arrays.copyOf(b.deathYears, personCount);
+		personMarriages = Arrays.copyOf(b.personMarriages, personCount);
+		parentsMarriages = Arrays.copyOf(b.parentsMarriages, personCount);
+		personBounds = Arrays.copyOf(b.personBounds, personCount * 4);
+		nameStarts = Arrays.copyOf(b.nameStarts, personCount + 1);
+		nameStarts[personCount] = b.namesLength;
+		names = Arrays.copyOf(b.names, b.namesLength);
+
+		marriageCount = b.marriageCount;
+		yearsMarried = Arrays.copyOf(b.yearsMarried, marriageCount);
+		husbands = Arrays.copyOf(b.husbands, marriageCount);
+		wives = Arrays.copyOf(b.wives, marriageCount);
+		marriageBounds = Arrays.copyOf(b.marriageBounds, marriageCount * 4);
+
+		// Group the offspring by marriage, retaining the order in which they were added
+
+		firstOffspring = new int[marriageCount + 1];
+		offspring = new int[b.offspringCount];
+		int[] order = groupBy(b.offspringMarriages, b.offspringCount, marriageCount, firstOffspring);
+		for (int i = 0; i < b.offspringCount; i++)
+			offspring[i] = b.offspringChildren[order[i]];
+
+		// Group the notes by person, followed by the notes of the graph
+
+		noteCount = b.noteCount;
+		int[] owners = new int[noteCount];
+		for (int i = 0; i < noteCount; i++)
+			owners[i] = b.noteOwners[i] != -1 ? b.noteOwners[i] : personCount;
+		firstNotes = new int[personCount + 2];
+		order = groupBy(owners, noteCount, personCount + 1, firstNotes);
+		noteBounds = new int[noteCount * 4];
+		textStarts = new int[noteCount];
+		textEnds = new int[noteCount];
+		for (int i = 0; i < noteCount; i++) {
+			int n = order[i];
+			System.arraycopy(b.noteBounds, n * 4, noteBounds, i * 4, 4);
+			textStarts[i] = b.textStarts[n];
+			textEnds[i] = b.textEnds[n];
+		}
+		text = Arrays.copyOf(b.text, b.textLength);
+	}
+
+	/**
+	 * Answer the positions of the specified items sorted by key, retaining the original
+	 * order of items with the same key, and record in <code>starts</code> the position of
+	 * the first item with each key, followed by the number of items
+	 */
+	private static int[] groupBy(int[] keys, int count, int keyCount, int[] starts) {
+		for (int i = 0; i < count; i++)
+			starts[keys[i] + 1]++;
+		for (int k = 0; k < keyCount; k++)
+			starts[k + 1] += starts[k];
+		int[] next = Arrays.copyOf(starts, keyCount);
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++)
+			order[next[keys[i]]++] = i;
+		return order;
+	}
+
+	/**
+	 * Answer a new store containing the content of the specified graph,
+	 * with people and marriages in the order in which they occur in the graph
+	 */
+	public static ColumnarGenealogyStore copyOf(GenealogyGraph graph) {
+		Builder b = new Builder();
+		int[] personIndices = new int[graph.getPeople().size()];
+		for (Person p : graph.getPeople()) {
+			int index = b.addPerson(p.getGender(), p.getName(), p.getBirthYear(), p.getDeathYear());
+			b.setPersonBounds(index, p.getX(), p.getY(), p.getWidth(), p.getHeight());
+			for (Note n : p.getNotes())
+				b.setNoteBounds(b.addNote(index, n.getText()), n.getX(), n.getY(), n.getWidth(), n.getHeight());
+			if (p.id >= personIndices.length)
+				personIndices = Arrays.copyOf(personIndices, Math.max(p.id + 1, personIndices.length * 2));
+			personIndices[p.id] = index;
+		}
+		for (Marriage m : graph.getMarriages()) {
+			int index = b.addMarriage(m.getYearMarried());
+			b.setMarriageBounds(index, m.getX(), m.getY(), m.getWidth(), m.getHeight());
+			if (m.getHusband() != null && graph.getPerson(m.getHusband().id) == m.getHusband())
+				b.setHusband(index, personIndices[m.getHusband().id]);
+			if (m.getWife() != null && graph.getPerson(m.getWife().id) == m.getWife())
+				b.setWife(index, personIndices[m.getWife().id]);
+			for (Person p : m.getOffspring())
+				if (graph.getPerson(p.id) == p)
+					b.addOffspring(index, personIndices[p.id]);
+		}
+		for (Note n : graph.getNotes())
+			b.setNoteBounds(b.addNote(-1, n.getText()), n.getX(), n.getY(), n.getWidth(), n.getHeight());
+		return b.build();
+	}
+
+	public int getPersonCount() {
+		return personCount;
+	}
+
+	public int getMarriageCount() {
+		return marriageCount;
+	}
+
+	public int getFirstGraphNote() {
+		return firstNotes[personCount];
+	}
+
+	public int getGraphNoteCount() {
+		return noteCount - firstNotes[personCount];
+	}
+
+	protected Person createPerson(int index) {
+		checkIndex(index, personCount);
+		Person p = newPerson(
+			genders[index] == MALE ? Person.Gender.MALE : Person.Gender.FEMALE,
+			new String(names, nameStarts[index], nameStarts[index + 1] - nameStarts[index]),
+			birthYears[index],
+			deathYears[index],
+			personMarriages[index],
+			parentsMarriages[index],
+			firstNotes[index],
+			firstNotes[index + 1] - firstNotes[index]);
+		setBounds(p, personBounds, index);
+		return p;
+	}
+
+	protected Marriage createMarriage(int index) {
+		checkIndex(index, marriageCount);
+		int first = firstOffspring[index];
+		Marriage m = newMarriage(yearsMarried[index], husbands[index], wives[index],
+			Arrays.copyOfRange(offspring, first, firstOffspring[index + 1]));
+		setBounds(m, marriageBounds, index);
+		return m;
+	}
+
+	protected Note createNote(int index) {
+		checkIndex(index, noteCount);
+		Note n = newNote(new String(text, textStarts[index], textEnds[index] - textStarts[index]));
+		setBounds(n, noteBounds, index);
+		return n;
+	}
+
+	private static void setBounds(GenealogyElement elem, int[] bounds, int index) {
+		int pos = index * 4;
+		setBounds(elem, bounds[pos], bounds[pos + 1], bounds[pos + 2], bounds[pos + 3]);
+	}
+
+	private static void checkIndex(int index, int count) {
+		if (index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+	}
+
+	//============================================================
+	// Building
+
+	/**
+	 * Accumulates the content of a {@link ColumnarGenealogyStore}. Elements are identified
+	 * by the index answered when they are added, and are supplied by the store at that
+	 * index. Relationships are established with the same rules as
+	 * {@link GenealogyGraph.BulkLoad}.
+	 */
+	public static final class Builder
+	{
+		private int personCount;
+		private byte[] genders = new byte[16];
+		private int[] birthYears = new int[16];
+		private int[] deathYears = new int[16];
+		private int[] personMarriages = new int[16];
+		private int[] parentsMarriages = new int[16];
+		private int[] personBounds = new int[64];
+		private int[] nameStarts = new int[16];
+		private char[] names = new char[256];
+		private int namesLength;
+
+		private int marriageCount;
+		private int[] yearsMarried = new int[16];
+		private int[] husbands = new int[16];
+		private int[] wives = new int[16];
+		private int[] marriageBounds = new int[64];
+
+		private int offspringCount;
+		private int[] offspringMarriages = new int[16];
+		private int[] offspringChildren = new int[16];
+
+		private int noteCount;
+		private int[] noteOwners = new int[16];
+		private int[] noteBounds = new int[64];
+		private int[] textStarts = new int[16];
+		private int[] textEnds = new int[16];
+		private char[] text = new char[256];
+		private int textLength;
+
+		/**
+		 * Add a person with the specified attributes and answer its index
+		 */
+		public int addPerson(Person.Gender gender, String name, int birthYear, int deathYear) {
+			int index = personCount++;
+			if (index == genders.length) {
+				int length = index * 2;
+				genders = Arrays.copyOf(genders, length);
+				birthYears = Arrays.copyOf(birthYears, length);
+				deathYears = Arrays.copyOf(deathYears, length);
+				personMarriages = Arrays.copyOf(personMarriages, length);
+				parentsMarriages = Arrays.copyOf(parentsMarriages, length);
+				personBounds = Arrays.copyOf(personBounds, length * 4);
+				nameStarts = Arrays.copyOf(nameStarts, length + 1);
+			}
+			genders[index] = gender == Person.Gender.MALE ? MALE : FEMALE;
+			birthYears[index] = birthYear;
+			deathYears[index] = deathYear;
+			personMarriages[index] = -1;
+			parentsMarriages[index] = -1;
+			nameStarts[index] = namesLength;
+			names = append(names, namesLength, name);
+			namesLength += name != null ? name.length() : 0;
+			return index;
+		}
+
+		public void setPersonBounds(int person, int x, int y, int width, int height) {
+			checkIndex(person, personCount);
+			setBounds(personBounds, person, x, y, width, height);
+		}
+
+		/**
+		 * Add a marriage with the specified year and answer its index
+		 */
+		public int addMarriage(int yearMarried) {
+			int index = marriageCount++;
+			if (index == yearsMarried.length) {
+				int length = index * 2;
+				yearsMarried = Arrays.copyOf(yearsMarried, length);
+				husbands = Arrays.copyOf(husbands, length);
+				wives = Arrays.copyOf(wives, length);
+				marriageBounds = Arrays.copyOf(marriageBounds, length * 4);
+			}
+			yearsMarried[index] = yearMarried;
+			husbands[index] = -1;
+			wives[index] = -1;
+			return index;
+		}
+
+		public void setMarriageBounds(int marriage, int x, int y, int width, int height) {
+			checkIndex(marriage, marriageCount);
+			setBounds(marriageBounds, marriage, x, y, width, height);
+		}
+
+		/**
+		 * Add a note with the specified text to the person at the specified index, or to
+		 * the graph if the index is -1, and answer the index of the note
+		 */
+		public int addNote(int person, String noteText) {
+			if (person != -1)
+				checkIndex(person, personCount);
+			int index = noteCount++;
+			if (index == noteOwners.length) {
+				int length = index * 2;
+				noteOwners = Arrays.copyOf(noteOwners, length);
+				noteBounds = Arrays.copyOf(noteBounds, length * 4);
+				textStarts = Arrays.copyOf(textStarts, length);
+				textEnds = Arrays.copyOf(textEnds, length);
+			}
+			noteOwners[index] = person;
+			textStarts[index] = textLength;
+			text = append(text, textLength, noteText);
+			textLength += noteText != null ? noteText.length() : 0;
+			textEnds[index] = textLength;
+			return index;
+		}
+
+		public void setNoteBounds(int note, int x, int y, int width, int height) {
+			checkIndex(note, noteCount);
+			setBounds(noteBounds, note, x, y, width, height);
+		}
+
+		/**
+		 * Record the specified person as the husband of the specified marriage.
+		 *
+		 * @return <code>true</code> if the husband was set, or <code>false</code> if the
+		 *         person is not male or is already married, or the marriage already has a
+		 *         husband
+		 */
+		public boolean setHusband(int marriage, int person) {
+			return setSpouse(marriage, person, MALE, husbands);
+		}
+
+		/**
+		 * Record the specified person as the wife of the specified marriage.
+		 *
+		 * @return <code>true</code> if the wife was set, or <code>false</code> if the
+		 *         person is not female or is already married, or the marriage already has
+		 *         a wife
+		 */
+		public boolean setWife(int marriage, int person) {
+			return setSpouse(marriage, person, FEMALE, wives);
+		}
+
+		private boolean setSpouse(int marriage, int person, byte gender, int[] spouses) {
+			checkIndex(marriage, marriageCount);
+			checkIndex(person, personCount);
+			if (genders[person] != gender || personMarriages[person] != -1 || spouses[marriage] != -1)
+				return false;
+			spouses[marriage] = person;
+			personMarriages[person] = marriage;
+			return true;
+		}
+
+		/**
+		 * Record the specified person as an offspring of the specified marriage.
+		 *
+		 * @return <code>true</code> if the offspring was added, or <code>false</code> if
+		 *         the person already has parents
+		 */
+		public boolean addOffspring(int marriage, int person) {
+			checkIndex(marriage, marriageCount);
+			checkIndex(person, personCount);
+			if (parentsMarriages[person] != -1)
+				return false;
+			parentsMarriages[person] = marriage;
+			if (offspringCount == offspringMarriages.length) {
+				offspringMarriages = Arrays.copyOf(offspringMarriages, offspringCount * 2);
+				offspringChildren = Arrays.copyOf(offspringChildren, offspringCount * 2);
+			}
+			offspringMarriages[offspringCount] = marriage;
+			offspringChildren[offspringCount] = person;
+			offspringCount++;
+			return true;
+		}
+
+		/**
+		 * Answer a new store containing everything added to the receiver
+		 */
+		public ColumnarGenealogyStore build() {
+			return new ColumnarGenealogyStore(this);
+		}
+
+		private static void setBounds(int[] bounds, int index, int x, int y, int width, int height) {
+			int pos = index * 4;
+			bounds[pos] = x;
+			bounds[pos + 1] = y;
+			bounds[pos + 2] = width;
+			bounds[pos + 3] = height;
+		}
+
+		private static char[] append(char[] pool, int length, String s) {
+			if (s == null)
+				return pool;
+			if (length + s.length() > pool.length)
+				pool = Arrays.copyOf(pool, Math.max(length + s.length(), pool.length * 2));
+			s.getChars(0, s.length(), pool, length);
+			return pool;
+		}
+	}
+}
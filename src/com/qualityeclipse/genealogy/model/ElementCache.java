@@ -0,0 +1,84 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.lang.ref.*;
+import java.util.*;
+
+/**
+ * Maps indices to elements created by a {@link GenealogyElementSource} so that the same
+ * index always answers the same element for as long as that element is in use. Elements
+ * are weakly referenced so that they can be reclaimed once nothing else refers to them.
+ * The most recently accessed elements are strongly referenced up to a fixed capacity, and
+ * pinned elements are strongly referenced until the cache is discarded.
+ */
+final class ElementCache<T extends GenealogyElement>
+{
+	private final Map<Integer, IndexedReference<T>> refs = new HashMap<Integer, IndexedReference<T>>();
+	private final ReferenceQueue<T> queue = new ReferenceQueue<T>();
+	private final Map<Integer, T> recent;
+	private final Map<Integer, T> pinned = new HashMap<Integer, T>();
+
+	ElementCache(final int capacity) {
+		recent = new LinkedHashMap<Integer, T>(Math.min(capacity, 1024), 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Answer the element at the specified index or <code>null</code> if that element has
+	 * not been created or has been reclaimed.
+	 */
+	T get(int index) {
+		purge();
+		IndexedReference<T> ref = refs.get(index);
+		if (ref == null)
+			return null;
+		T elem = ref.get();
+		if (elem != null)
+			recent.put(index, elem);
+		return elem;
+	}
+
+	void put(int index, T elem) {
+		purge();
+		refs.put(index, new IndexedReference<T>(index, elem, queue));
+		recent.put(index, elem);
+	}
+
+	/**
+	 * Retain the specified element until the cache is discarded
+	 */
+	void pin(int index, T elem) {
+		pinned.put(index, elem);
+	}
+
+	/**
+	 * Answer a copy of the pinned elements by index
+	 */
+	Map<Integer, T> getPinned() {
+		return new HashMap<Integer, T>(pinned);
+	}
+
+	/**
+	 * Discard the entries for elements that have been reclaimed
+	 */
+	private void purge() {
+		Reference<? extends T> ref;
+		while ((ref = queue.poll()) != null) {
+			int index = ((IndexedReference<?>) ref).index;
+			if (refs.get(index) == ref)
+				refs.remove(index);
+		}
+	}
+
+	private static final class IndexedReference<T> extends WeakReference<T>
+	{
+		final int index;
+
+		IndexedReference(int index, T elem, ReferenceQueue<T> queue) {
+			super(elem, queue);
+			this.index = index;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+/**
+ * The people, marriages, or notes of a {@link GenealogyGraph} indexed by identifier.
+ * Identifiers are given out from a counter so that they remain dense, and an element is
+ * found with a single array access rather than by hashing. An identifier is never given
+ * to another element once given out, so removing an element leaves a hole in the array
+ * rather than renumbering the elements that remain. While the graph is supplying elements from
+ * a {@link GenealogyElementSource}, the identifier of each element supplied by the source
+ * is its index in the source, those elements are answered by the source rather than being
+ * held in the array, and identifiers given out start at the number of elements in the
+ * source.
+ */
+abstract class ElementIndex<T extends GenealogyElement>
+{
+	private GenealogyElement[] elements = new GenealogyElement[16];
+	private int base;
+	private int nextId;
+
+	/**
+	 * Answer the element supplied by the source at the specified index
+	 */
+	protected abstract T getSourceElement(int index);
+
+	/**
+	 * Answer <code>true</code> if the specified element is in the graph
+	 */
+	protected abstract boolean contains(T elem);
+
+	/**
+	 * Answer the element in the graph with the specified identifier,
+	 * or <code>null</code> if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	T get(int id) {
+		if (id < 0)
+			return null;
+		if (id < base) {
+			T elem = getSourceElement(id);
+			return elem.id == id && contains(elem) ? elem : null;
+		}
+		id -= base;
+		return id < elements.length ? (T) elements[id] : null;
+	}
+
+	/**
+	 * Index an element that has just been added to the graph. The element retains the
+	 * identifier previously given out by this index, if any, unless another element now
+	 * has that identifier, otherwise the element is given the next unused identifier.
+	 */
+	void add(T elem) {
+		if (!isAvailable(elem))
+			elem.id = nextId++;
+		if (elem.id >= base)
+			put(elem);
+	}
+
+	private boolean isAvailable(T elem) {
+		int id = elem.id;
+		if (id < 0 || id >= nextId)
+			return false;
+		if (id < base)
+			return getSourceElement(id) == elem;
+		GenealogyElement existing = id - base < elements.length ? elements[id - base] : null;
+		return existing == null || existing == elem;
+	}
+
+	/**
+	 * Remove an element that has just been removed from the graph. The element retains
+	 * its identifier in case it is added again, and that identifier is not given out to
+	 * any other element.
+	 */
+	void remove(T elem) {
+		int index = elem.id - base;
+		if (index >= 0 && index < elements.length && elements[index] == elem)
+			elements[index] = null;
+	}
+
+	/**
+	 * Discard all elements. Identifiers less than the specified base are those of
+	 * elements supplied by the graph's source.
+	 */
+	void reset(int newBase) {
+		elements = new GenealogyElement[16];
+		base = newBase;
+		nextId = newBase;
+	}
+
+	/**
+	 * Replace the content of the receiver with the specified elements, which are all of
+	 * the elements of this type in the graph. Elements retain their identifiers except for
+	 * those whose identifier is -1, is the same as that of an earlier element, or is far
+	 * larger than the number of elements, which are given the next unused identifier.
+	 */
+	void rebuild(Collection<? extends T> all) {
+		int limit = all.size() * 16 + 65536;
+		base = 0;
+		nextId = 0;
+		for (T elem : all)
+			if (elem.id >= 0 && elem.id < limit)
+				nextId = Math.max(nextId, elem.id + 1);
+		elements = new GenealogyElement[Math.max(16, nextId)];
+		for (T elem : all) {
+			if (elem.id < 0 || elem.id >= limit || elements[elem.id] != null)
+				elem.id = nextId++;
+			put(elem);
+		}
+	}
+
+	private void put(T elem) {
+		int index = elem.id - base;
+		if (index >= elements.length)
+			elements = Arrays.copyOf(elements, Math.max(index + 1, elements.length * 2));
+		elements[index] = elem;
+	}
+}
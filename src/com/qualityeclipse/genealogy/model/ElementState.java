@@ -0,0 +1,36 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.List;
+
+/**
+ * The values of a {@link Person}, {@link Marriage}, or {@link Note} at one moment, used by
+ * {@link GenealogyGraphSnapshot} to copy an element as it was when the snapshot was taken.
+ * Relationships not yet resolved from a {@link GenealogyElementSource} are recorded as the
+ * source indices in which they are held rather than being resolved.
+ */
+final class ElementState
+{
+	int x, y, width, height;
+
+	// Person
+	Person.Gender gender;
+	String name;
+	int birthYear;
+	int deathYear;
+	List<Note> notes;
+
+	// Marriage
+	int yearMarried;
+	Person husband;
+	Person wife;
+	List<Person> offspring;
+
+	// Note
+	String text;
+
+	/**
+	 * The unresolved relationships of a person or marriage in the form recorded by
+	 * {@link GenealogyElementSource}, or <code>null</code> if they have been resolved
+	 */
+	int[] refs;
+}
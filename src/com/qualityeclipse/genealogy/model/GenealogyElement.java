@@ -1,5 +1,7 @@
 package com.qualityeclipse.genealogy.model;
 
+import com.qualityeclipse.genealogy.model.listener.GenealogyGraphElementListener;
+
 /**
  * An element of {@link GenealogyGraph} that has location and size.
  * This is the abstract superclass of {@link Person}, {@link Marriage}, and {@link Note}.
@@ -8,6 +10,40 @@ public abstract class GenealogyElement
 {
 	private int x, y, width, height;
 
+	/**
+	 * The identifier of the receiver, unique among elements of the same type in the graph
+	 * containing the receiver, or -1 if the receiver has never been added to a graph.
+	 */
+	int id = -1;
+
+	/**
+	 * The index of the receiver in the {@link GenealogyElementSource} that created it,
+	 * or -1 if the receiver was not created by a source.
+	 */
+	int sourceIndex = -1;
+
+	/**
+	 * The graph containing the receiver, or <code>null</code> if the receiver is not in a
+	 * graph. A note is contained by the graph containing the person to which it belongs.
+	 * Changes to the receiver are batched with other changes to this graph.
+	 * 
+	 * @see GenealogyGraph#batch(Runnable)
+	 */
+	GenealogyGraph graph;
+
+	/**
+	 * Answer the identifier of the receiver, or -1 if the receiver has never been added to
+	 * a graph. The identifier is assigned by the graph when the element is first added,
+	 * either directly or as a note of a person in that graph, is retained if the element
+	 * is removed and added again, and is unique among elements of the same type in that
+	 * graph. Removing an element does not change the identifiers of other elements. The
+	 * identifiers of people are stored in XML files so that they are the same each time a
+	 * file is read.
+	 */
+	public int getId() {
+		return id;
+	}
+
 	public int getX() {
 		return x;
 	}
@@ -19,9 +55,11 @@ public abstract class GenealogyElement
 	public boolean setLocation(int newX, int newY) {
 		if (x == newX && y == newY)
 			return false;
+		willChange();
 		x = newX;
 		y = newY;
-		fireLocationChanged(x, y);
+		if (!NotificationBatch.defer(this, NotificationBatch.LOCATION, null, null, x, y))
+			dispatchLocation(x, y);
 		return true;
 	}
 
@@ -38,11 +76,85 @@ public abstract class GenealogyElement
 	public boolean setSize(int newWidth, int newHeight) {
 		if (width == newWidth && height == newHeight)
 			return false;
+		willChange();
 		width = newWidth;
 		height = newHeight;
-		fireSizeChanged(width, height);
+		if (!NotificationBatch.defer(this, NotificationBatch.SIZE, null, null, width, height))
+			dispatchSize(width, height);
 		return true;
 	}
 
 	protected abstract void fireSizeChanged(int newWidth, int newHeight);
+
+	/**
+	 * Notify the listeners of the receiver and of the graph containing it that the
+	 * location has changed. Called immediately or when a batch completes.
+	 */
+	final void dispatchLocation(int newX, int newY) {
+		fireLocationChanged(newX, newY);
+		for (GenealogyGraphElementListener l : getGraphListeners())
+			l.locationChanged(this, newX, newY);
+	}
+
+	/**
+	 * Notify the listeners of the receiver and of the graph containing it that the size
+	 * has changed. Called immediately or when a batch completes.
+	 */
+	final void dispatchSize(int newWidth, int newHeight) {
+		fireSizeChanged(newWidth, newHeight);
+		for (GenealogyGraphElementListener l : getGraphListeners())
+			l.sizeChanged(this, newWidth, newHeight);
+	}
+
+	/**
+	 * Answer the listeners notified of changes to every element of the graph containing
+	 * the receiver, or none if the receiver is not in a graph
+	 * 
+	 * @see GenealogyGraph#addElementListener(GenealogyGraphElementListener)
+	 */
+	final GenealogyGraphElementListener[] getGraphListeners() {
+		GenealogyGraph g = graph;
+		return g != null ? g.getElementListeners() : GenealogyGraph.NO_ELEMENT_LISTENERS;
+	}
+
+	/**
+	 * Record the graph containing the receiver
+	 */
+	void setGraph(GenealogyGraph newGraph) {
+		willChange();
+		graph = newGraph;
+	}
+
+	/**
+	 * Called before the receiver is modified so that a snapshot of the graph containing
+	 * the receiver can retain the receiver's current state
+	 * 
+	 * @see GenealogyGraph#snapshot()
+	 */
+	final void willChange() {
+		GenealogyGraph g = graph;
+		if (g != null)
+			g.willChange(this);
+	}
+
+	/**
+	 * Record the current values of the receiver without resolving any relationships
+	 */
+	void saveState(ElementState state) {
+		state.x = x;
+		state.y = y;
+		state.width = width;
+		state.height = height;
+	}
+
+	/**
+	 * Set the location and size without notifying listeners.
+	 * Used by {@link GenealogyGraph.BulkLoad} while loading a graph.
+	 */
+	void loadBounds(int newX, int newY, int newWidth, int newHeight) {
+		x = newX;
+		y = newY;
+		width = newWidth;
+		height = newHeight;
+	}
 }
@@ -0,0 +1,284 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.Map;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * Supplies the people, marriages, and notes of a {@link GenealogyGraph} on demand so that
+ * a very large graph can be opened without first creating every element. Subclasses
+ * decode individual elements by index from some backing store.
+ * <p>
+ * Each element is created the first time it is requested, and relationships between
+ * elements are recorded as indices and only resolved when first accessed. An element is
+ * retained for as long as it is referenced elsewhere, the most recently requested
+ * elements are additionally retained up to a fixed capacity, and any element that is
+ * modified is retained for the lifetime of the source so that changes are never lost.
+ * <p>
+ * The decoding methods may be called on any thread while the source is in use, by
+ * {@link GenealogyGraphSnapshot} copying elements on a background thread, so they must
+ * not modify the source.
+ *
+ * @see GenealogyGraph#load(GenealogyElementSource)
+ */
+public abstract class GenealogyElementSource
+{
+	public static final int DEFAULT_CACHE_CAPACITY = 10000;
+
+	private final ElementCache<Person> personCache;
+	private final ElementCache<Marriage> marriageCache;
+	private final ElementCache<Note> noteCache;
+
+	/**
+	 * The graph into which the receiver was loaded, which contains the elements it creates
+	 */
+	GenealogyGraph graph;
+
+	protected GenealogyElementSource() {
+		this(DEFAULT_CACHE_CAPACITY);
+	}
+
+	/**
+	 * @param cacheCapacity the number of recently requested people, marriages, and notes
+	 *            to retain in addition to those that are referenced elsewhere
+	 */
+	protected GenealogyElementSource(int cacheCapacity) {
+		personCache = new ElementCache<Person>(cacheCapacity);
+		marriageCache = new ElementCache<Marriage>(cacheCapacity);
+		noteCache = new ElementCache<Note>(cacheCapacity);
+	}
+
+	/**
+	 * Release any resources held by the receiver, such as a memory mapped file. Called
+	 * once the graph no longer reads from the receiver, after which no elements may be
+	 * requested from it. The default implementation does nothing.
+	 *
+	 * @see GenealogyGraph#detachSource()
+	 */
+	public void close() {
+	}
+
+	public abstract int getPersonCount();
+
+	public abstract int getMarriageCount();
+
+	/**
+	 * Answer the index of the first note contained directly by the graph rather than by
+	 * a person. The graph's notes occupy consecutive indices.
+	 */
+	public abstract int getFirstGraphNote();
+
+	public abstract int getGraphNoteCount();
+
+	/**
+	 * Decode the person at the specified index, typically by calling
+	 * {@link #newPerson(Person.Gender, String, int, int, int, int, int, int)}
+	 */
+	protected abstract Person createPerson(int index);
+
+	/**
+	 * Decode the marriage at the specified index, typically by calling
+	 * {@link #newMarriage(int, int, int, int[])}
+	 */
+	protected abstract Marriage createMarriage(int index);
+
+	/**
+	 * Decode the note at the specified index, typically by calling
+	 * {@link #newNote(String)}
+	 */
+	protected abstract Note createNote(int index);
+
+	//============================================================
+	// Access
+
+	public final Person getPerson(int index) {
+		Person p = personCache.get(index);
+		if (p == null) {
+			p = createPerson(index);
+			p.sourceIndex = index;
+			p.id = index;
+			p.graph = graph;
+			personCache.put(index, p);
+			p.addPersonListener(new ChangeTracker<Person>(personCache, p));
+		}
+		return p;
+	}
+
+	public final Marriage getMarriage(int index) {
+		Marriage m = marriageCache.get(index);
+		if (m == null) {
+			m = createMarriage(index);
+			m.sourceIndex = index;
+			m.id = index;
+			m.graph = graph;
+			marriageCache.put(index, m);
+			m.addMarriageListener(new ChangeTracker<Marriage>(marriageCache, m));
+		}
+		return m;
+	}
+
+	public final Note getNote(int index) {
+		Note n = noteCache.get(index);
+		if (n == null) {
+			n = createNote(index);
+			n.sourceIndex = index;
+			n.id = index;
+			n.graph = graph;
+			noteCache.put(index, n);
+			n.addNoteListener(new ChangeTracker<Note>(noteCache, n));
+		}
+		return n;
+	}
+
+	//============================================================
+	// Element creation for subclasses
+
+	/**
+	 * Answer a new person whose relationships are resolved from the receiver when first
+	 * accessed. Indices of -1 indicate that there is no such relationship.
+	 */
+	protected final Person newPerson(Person.Gender gender, String name, int birthYear, int deathYear,
+		int marriage, int parentsMarriage, int firstNote, int noteCount)
+	{
+		Person p = new Person(gender);
+		p.load(name, birthYear, deathYear);
+		if (marriage != -1 || parentsMarriage != -1 || noteCount > 0)
+			p.setUnresolvedLinks(new UnresolvedLinks(this, new int[]{
+				marriage, parentsMarriage, firstNote, noteCount
+			}));
+		return p;
+	}
+
+	/**
+	 * Answer a new marriage whose spouses and offspring are resolved from the receiver
+	 * when first accessed. Indices of -1 indicate that there is no such spouse.
+	 */
+	protected final Marriage newMarriage(int yearMarried, int husband, int wife, int[] offspring) {
+		Marriage m = new Marriage();
+		m.loadYearMarried(yearMarried);
+		if (husband != -1 || wife != -1 || offspring.length > 0) {
+			int[] refs = new int[offspring.length + 2];
+			refs[0] = husband;
+			refs[1] = wife;
+			System.arraycopy(offspring, 0, refs, 2, offspring.length);
+			m.setUnresolvedLinks(new UnresolvedLinks(this, refs));
+		}
+		return m;
+	}
+
+	protected final Note newNote(String text) {
+		Note n = new Note();
+		n.loadText(text);
+		return n;
+	}
+
+	protected static void setBounds(GenealogyElement elem, int x, int y, int width, int height) {
+		elem.loadBounds(x, y, width, height);
+	}
+
+	/**
+	 * Answer the people that have been modified, by index
+	 */
+	Map<Integer, Person> getModifiedPeople() {
+		return personCache.getPinned();
+	}
+
+	/**
+	 * Answer the marriages that have been modified, by index
+	 */
+	Map<Integer, Marriage> getModifiedMarriages() {
+		return marriageCache.getPinned();
+	}
+
+	/**
+	 * Answer the notes that have been modified, by index
+	 */
+	Map<Integer, Note> getModifiedNotes() {
+		return noteCache.getPinned();
+	}
+
+	//============================================================
+	// Change tracking
+
+	/**
+	 * Pins an element in the cache the first time that element is modified
+	 */
+	private static final class ChangeTracker<T extends GenealogyElement>
+		implements PersonListener, MarriageListener, NoteListener
+	{
+		private ElementCache<T> cache;
+		private final T elem;
+
+		ChangeTracker(ElementCache<T> cache, T elem) {
+			this.cache = cache;
+			this.elem = elem;
+		}
+
+		private void changed() {
+			if (cache != null) {
+				cache.pin(elem.sourceIndex, elem);
+				cache = null;
+			}
+		}
+
+		public void locationChanged(int x, int y) {
+			changed();
+		}
+
+		public void sizeChanged(int width, int height) {
+			changed();
+		}
+
+		public void noteAdded(int index, Note n) {
+			changed();
+		}
+
+		public void noteRemoved(Note n) {
+			changed();
+		}
+
+		public void nameChanged(String newName) {
+			changed();
+		}
+
+		public void birthYearChanged(int birthYear) {
+			changed();
+		}
+
+		public void deathYearChanged(int deathYear) {
+			changed();
+		}
+
+		public void marriageChanged(Marriage marriage, Marriage oldMarriage) {
+			changed();
+		}
+
+		public void parentsMarriageChanged(Marriage marriage, Marriage oldMarriage) {
+			changed();
+		}
+
+		public void yearMarriedChanged(int yearMarried) {
+			changed();
+		}
+
+		public void husbandChanged(Person husband, Person oldHusband) {
+			changed();
+		}
+
+		public void wifeChanged(Person wife, Person oldWife) {
+			changed();
+		}
+
+		public void offspringAdded(Person p) {
+			changed();
+		}
+
+		public void offspringRemoved(Person p) {
+			changed();
+		}
+
+		public void textChanged(String text) {
+			changed();
+		}
+	}
+}
@@ -1,7 +1,9 @@
 package com.qualityeclipse.genealogy.model;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
+import com.qualityeclipse.genealogy.model.listener.GenealogyGraphElementListener;
 import com.qualityeclipse.genealogy.model.listener.GenealogyGraphListener;
 
 /**
@@ -11,65 +13,151 @@ import com.qualityeclipse.genealogy.model.listener.GenealogyGraphListener;
 public class GenealogyGraph
 	implements NoteContainer
 {
-	private final Collection<Person> people = new HashSet<Person>();
-	private final Collection<Marriage> marriages = new HashSet<Marriage>();
+	private Collection<Person> people = new LinkedHashSet<Person>();
+	private Collection<Marriage> marriages = new LinkedHashSet<Marriage>();
 	private final List<Note> notes = new ArrayList<Note>();
-	private final Collection<GenealogyGraphListener> listeners = new HashSet<GenealogyGraphListener>();
+	private GenealogyElementSource source;
+	private final ElementIndex<Person> personIndex = new ElementIndex<Person>() {
+		protected Person getSourceElement(int index) {
+			return source.getPerson(index);
+		}
+
+		protected boolean contains(Person p) {
+			return people.contains(p);
+		}
+	};
+	private final ElementIndex<Marriage> marriageIndex = new ElementIndex<Marriage>() {
+		protected Marriage getSourceElement(int index) {
+			return source.getMarriage(index);
+		}
+
+		protected boolean contains(Marriage m) {
+			return marriages.contains(m);
+		}
+	};
+	private final ElementIndex<Note> noteIndex = new ElementIndex<Note>() {
+		protected Note getSourceElement(int index) {
+			return source.getNote(index);
+		}
+
+		protected boolean contains(Note n) {
+			return n.graph == GenealogyGraph.this;
+		}
+	};
+	private static final GenealogyGraphListener[] NO_LISTENERS = new GenealogyGraphListener[0];
+	private final ListenerList<GenealogyGraphListener> listeners = new ListenerList<GenealogyGraphListener>(NO_LISTENERS);
+	static final GenealogyGraphElementListener[] NO_ELEMENT_LISTENERS = new GenealogyGraphElementListener[0];
+	private final ListenerList<GenealogyGraphElementListener> elementListeners = new ListenerList<GenealogyGraphElementListener>(NO_ELEMENT_LISTENERS);
+
+	/**
+	 * The snapshot that must be told before the receiver or its elements are modified,
+	 * or <code>null</code> if there is none
+	 */
+	private final AtomicReference<GenealogyGraphSnapshot> snapshot = new AtomicReference<GenealogyGraphSnapshot>();
 	
 	/**
 	 * Discard all elements so that new information can be loaded
 	 */
 	public void clear() {
-		people.clear();
-		marriages.clear();
+		reset();
+		fire(NotificationBatch.GRAPH_CLEARED, null, 0);
+	}
+
+	/**
+	 * Discard all elements without notifying listeners
+	 */
+	private void reset() {
+		willChangeStructure();
+		people = new LinkedHashSet<Person>();
+		marriages = new LinkedHashSet<Marriage>();
 		notes.clear();
-		for (GenealogyGraphListener l : listeners)
-			l.graphCleared();
+		personIndex.reset(0);
+		marriageIndex.reset(0);
+		noteIndex.reset(0);
+		source = null;
 	}
 
 	//============================================================
 	// People
 
+	/**
+	 * Answer the people in the graph in the order in which they were added
+	 */
 	public Collection<Person> getPeople() {
 		return people;
 	}
 
+	/**
+	 * Answer the person in the graph with the specified identifier,
+	 * or <code>null</code> if there is none
+	 * 
+	 * @see GenealogyElement#getId()
+	 */
+	public Person getPerson(int id) {
+		return personIndex.get(id);
+	}
+
 	public boolean addPerson(Person p) {
-		if (p == null || !people.add(p))
+		if (p == null || people.contains(p))
 			return false;
-		for (GenealogyGraphListener l : listeners)
-			l.personAdded(p);
+		willChangeStructure();
+		people.add(p);
+		personIndex.add(p);
+		p.setGraph(this);
+		fire(NotificationBatch.PERSON_ADDED, p, 0);
 		return true;
 	}
 
 	public boolean removePerson(Person p) {
-		if (!people.remove(p))
+		if (!people.contains(p))
 			return false;
-		for (GenealogyGraphListener l : listeners)
-			l.personRemoved(p);
+		willChangeStructure();
+		people.remove(p);
+		personIndex.remove(p);
+		p.setGraph(null);
+		fire(NotificationBatch.PERSON_REMOVED, p, 0);
 		return true;
 	}
 
 	//============================================================
 	// Marriages
 
+	/**
+	 * Answer the marriages in the graph in the order in which they were added
+	 */
 	public Collection<Marriage> getMarriages() {
 		return marriages;
 	}
 
+	/**
+	 * Answer the marriage in the graph with the specified identifier,
+	 * or <code>null</code> if there is none
+	 * 
+	 * @see GenealogyElement#getId()
+	 */
+	public Marriage getMarriage(int id) {
+		return marriageIndex.get(id);
+	}
+
 	public boolean addMarriage(Marriage m) {
-		if (m == null || !marriages.add(m))
+		if (m == null || marriages.contains(m))
 			return false;
-		for (GenealogyGraphListener l : listeners)
-			l.marriageAdded(m);
+		willChangeStructure();
+		marriages.add(m);
+		marriageIndex.add(m);
+		m.setGraph(this);
+		fire(NotificationBatch.MARRIAGE_ADDED, m, 0);
 		return true;
 	}
 
 	public boolean removeMarriage(Marriage m) {
-		if (!marriages.remove(m))
+		if (!marriages.contains(m))
 			return false;
-		for (GenealogyGraphListener l : listeners)
-			l.marriageRemoved(m);
+		willChangeStructure();
+		marriages.remove(m);
+		marriageIndex.remove(m);
+		m.setGraph(null);
+		fire(NotificationBatch.MARRIAGE_REMOVED, m, 0);
 		return true;
 	}
 
@@ -80,6 +168,16 @@ public class GenealogyGraph
 		return notes;
 	}
 
+	/**
+	 * Answer the note with the specified identifier, which is either in the graph or
+	 * belongs to a person in the graph, or <code>null</code> if there is none
+	 * 
+	 * @see GenealogyElement#getId()
+	 */
+	public Note getNote(int id) {
+		return noteIndex.get(id);
+	}
+
 	public boolean addNote(Note n) {
 		return addNote(notes.size(), n);
 	}
@@ -87,20 +185,445 @@ public class GenealogyGraph
 	public boolean addNote(int index, Note n) {
 		if (n == null || notes.contains(n))
 			return false;
+		willChangeStructure();
 		notes.add(index, n);
-		for (GenealogyGraphListener l : listeners)
-			l.noteAdded(index, n);
+		n.setGraph(this);
+		fire(NotificationBatch.NOTE_ADDED, n, index);
 		return true;
 	}
 
 	public boolean removeNote(Note n) {
-		if (n == null || !notes.remove(n))
+		if (n == null || !notes.contains(n))
 			return false;
-		for (GenealogyGraphListener l : listeners)
-			l.noteRemoved(n);
+		willChangeStructure();
+		notes.remove(n);
+		n.setGraph(null);
+		fire(NotificationBatch.NOTE_REMOVED, n, 0);
 		return true;
 	}
 
+	/**
+	 * Give an identifier to the specified note, which has just been added to the receiver
+	 * either directly or as a note of a person in the receiver
+	 */
+	void indexNote(Note n) {
+		noteIndex.add(n);
+	}
+
+	/**
+	 * Called when the specified note has just been removed from the receiver
+	 */
+	void unindexNote(Note n) {
+		noteIndex.remove(n);
+	}
+
+	/**
+	 * Answer the notes in the graph followed by the notes of each person in the graph
+	 */
+	private Collection<Note> getAllNotes() {
+		Collection<Note> all = new ArrayList<Note>(notes);
+		for (Person p : people)
+			all.addAll(p.getNotes());
+		return all;
+	}
+
+	//============================================================
+	// Bulk Loading
+
+	/**
+	 * Discard all elements and answer a new session for loading a large number of
+	 * elements directly into the receiver. Elements are added and linked without
+	 * notifying any listeners. Once loading is complete, call {@link BulkLoad#finish()}
+	 * so that each listener receives a single {@link GenealogyGraphListener#graphLoaded()}
+	 * notification rather than one notification per element and attribute. If loading
+	 * fails, call {@link BulkLoad#abort()} instead.
+	 */
+	public BulkLoad beginBulkLoad() {
+		reset();
+		return new BulkLoad();
+	}
+
+	/**
+	 * A session for populating a {@link GenealogyGraph} without notifying listeners.
+	 * Elements created through this session are fully linked in both directions, exactly
+	 * as if they had been created through the public setters.
+	 */
+	public final class BulkLoad
+	{
+		private boolean finished;
+
+		private BulkLoad() {
+		}
+
+		public Person addPerson(Person.Gender gender, String name, int birthYear, int deathYear) {
+			return addPerson(-1, gender, name, birthYear, deathYear);
+		}
+
+		/**
+		 * Create a new person with the specified identifier. If the identifier is -1 or
+		 * is the same as that of a person previously added, then the next unused
+		 * identifier is assigned to the person when the session is finished.
+		 */
+		public Person addPerson(int id, Person.Gender gender, String name, int birthYear, int deathYear) {
+			Person p = new Person(gender);
+			p.load(name, birthYear, deathYear);
+			p.id = id;
+			p.graph = GenealogyGraph.this;
+			people.add(p);
+			return p;
+		}
+
+		public Marriage addMarriage(int yearMarried) {
+			return addMarriage(-1, yearMarried);
+		}
+
+		/**
+		 * Create a new marriage with the specified identifier. If the identifier is -1 or
+		 * is the same as that of a marriage previously added, then the next unused
+		 * identifier is assigned to the marriage when the session is finished.
+		 */
+		public Marriage addMarriage(int id, int yearMarried) {
+			Marriage m = new Marriage();
+			m.loadYearMarried(yearMarried);
+			m.id = id;
+			m.graph = GenealogyGraph.this;
+			marriages.add(m);
+			return m;
+		}
+
+		/**
+		 * Create a new note and add it to the specified container, which must be either
+		 * the graph being loaded or a person created by this session.
+		 */
+		public Note addNote(NoteContainer container, String text) {
+			return addNote(-1, container, text);
+		}
+
+		/**
+		 * Create a new note with the specified identifier and add it to the specified
+		 * container. If the identifier is -1 or is the same as that of a note previously
+		 * added, then the next unused identifier is assigned to the note when the session
+		 * is finished.
+		 */
+		public Note addNote(int id, NoteContainer container, String text) {
+			Note n = new Note();
+			n.loadText(text);
+			n.id = id;
+			if (container == GenealogyGraph.this) {
+				n.graph = GenealogyGraph.this;
+				notes.add(n);
+			}
+			else
+				((Person) container).loadNote(n);
+			return n;
+		}
+
+		public void setBounds(GenealogyElement elem, int x, int y, int width, int height) {
+			elem.loadBounds(x, y, width, height);
+		}
+
+		public void setText(Note n, String text) {
+			n.loadText(text);
+		}
+
+		/**
+		 * Record the specified person as the husband of the specified marriage.
+		 * 
+		 * @return <code>true</code> if the husband was set, or <code>false</code> if the
+		 *         person is <code>null</code>, is not male, or is already a husband or
+		 *         wife, or the marriage already has a husband
+		 */
+		public boolean setHusband(Marriage m, Person p) {
+			if (p == null || p.getGender() != Person.Gender.MALE || p.getMarriage() != null
+				|| m.getHusband() != null)
+				return false;
+			m.loadHusband(p);
+			p.loadMarriage(m);
+			return true;
+		}
+
+		/**
+		 * Record the specified person as the wife of the specified marriage.
+		 * 
+		 * @return <code>true</code> if the wife was set, or <code>false</code> if the
+		 *         person is <code>null</code>, is not female, or is already a husband or
+		 *         wife, or the marriage already has a wife
+		 */
+		public boolean setWife(Marriage m, Person p) {
+			if (p == null || p.getGender() != Person.Gender.FEMALE || p.getMarriage() != null
+				|| m.getWife() != null)
+				return false;
+			m.loadWife(p);
+			p.loadMarriage(m);
+			return true;
+		}
+
+		/**
+		 * Record the specified person as an offspring of the specified marriage.
+		 * 
+		 * @return <code>true</code> if the offspring was added, or <code>false</code> if
+		 *         the person is <code>null</code> or already has parents
+		 */
+		public boolean addOffspring(Marriage m, Person p) {
+			if (p == null || p.getParentsMarriage() != null)
+				return false;
+			m.getOffspring().add(p);
+			p.loadParentsMarriage(m);
+			return true;
+		}
+
+		/**
+		 * Remove the relationship between the specified person and the marriage in which
+		 * that person is a husband or wife, if any, so that the person can be recorded as a
+		 * spouse in another marriage
+		 */
+		public void removeSpouse(Person p) {
+			Marriage m = p.getMarriage();
+			if (m == null)
+				return;
+			if (m.getHusband() == p)
+				m.loadHusband(null);
+			if (m.getWife() == p)
+				m.loadWife(null);
+			p.loadMarriage(null);
+		}
+
+		/**
+		 * Remove the relationship between the specified person and the marriage of which
+		 * that person is an offspring, if any, so that the person can be recorded as an
+		 * offspring of another marriage
+		 */
+		public void removeOffspring(Person p) {
+			Marriage m = p.getParentsMarriage();
+			if (m == null)
+				return;
+			m.getOffspring().remove(p);
+			p.loadParentsMarriage(null);
+		}
+
+		/**
+		 * Move the specified offspring of the specified marriage after the other offspring
+		 * of that marriage, so that offspring recorded out of order can be put in order.
+		 * This has no effect if the person is not an offspring of the marriage.
+		 */
+		public void moveOffspringToEnd(Marriage m, Person p) {
+			Collection<Person> offspring = m.getOffspring();
+			if (offspring.remove(p))
+				offspring.add(p);
+		}
+
+		/**
+		 * Move every element from the specified graph into the graph being loaded, after
+		 * any elements already loaded. The specified graph must have been populated by its
+		 * own bulk load session, and is left empty without notifying its listeners.
+		 */
+		public void addAll(GenealogyGraph other) {
+			other.detachSource();
+			for (Person p : other.people)
+				p.setGraph(GenealogyGraph.this);
+			for (Marriage m : other.marriages)
+				m.setGraph(GenealogyGraph.this);
+			for (Note n : other.notes)
+				n.setGraph(GenealogyGraph.this);
+			people.addAll(other.people);
+			marriages.addAll(other.marriages);
+			notes.addAll(other.notes);
+			other.reset();
+		}
+
+		/**
+		 * Complete the session and notify listeners that the graph content has been
+		 * replaced. Subsequent calls have no effect.
+		 */
+		public void finish() {
+			if (finished)
+				return;
+			finished = true;
+			personIndex.rebuild(people);
+			marriageIndex.rebuild(marriages);
+			noteIndex.rebuild(getAllNotes());
+			fire(NotificationBatch.GRAPH_LOADED, null, 0);
+		}
+
+		/**
+		 * Discard the elements loaded by an incomplete session, leaving the graph empty,
+		 * and notify listeners that the graph has been cleared rather than loaded.
+		 * This has no effect if the session has already been finished or aborted, so it
+		 * can be called in a <code>finally</code> block after {@link #finish()}.
+		 */
+		public void abort() {
+			if (finished)
+				return;
+			finished = true;
+			reset();
+			fire(NotificationBatch.GRAPH_CLEARED, null, 0);
+		}
+	}
+
+	//============================================================
+	// Copying
+
+	/**
+	 * Answer a new graph containing a copy of every element in the receiver. No
+	 * listeners are notified while the copy is created and the copy shares no mutable
+	 * state with the receiver, so for example the copy can be serialized on a background
+	 * thread while the receiver continues to be modified. Each person and marriage in the
+	 * copy has the same identifier as the element from which it was copied, as does each
+	 * note.
+	 */
+	public GenealogyGraph copy() {
+		GenealogyGraph copy = new GenealogyGraph();
+		BulkLoad load = copy.beginBulkLoad();
+		Person[] idToCopy = new Person[people.size()];
+		for (Person p : people) {
+			Person c = load.addPerson(p.id, p.getGender(), p.getName(), p.getBirthYear(), p.getDeathYear());
+			copyBounds(load, p, c);
+			copyNotes(load, p, c);
+			if (p.id >= idToCopy.length)
+				idToCopy = Arrays.copyOf(idToCopy, Math.max(p.id + 1, idToCopy.length * 2));
+			idToCopy[p.id] = c;
+		}
+		for (Marriage m : marriages) {
+			Marriage c = load.addMarriage(m.id, m.getYearMarried());
+			copyBounds(load, m, c);
+			load.setHusband(c, copyOf(idToCopy, m.getHusband()));
+			load.setWife(c, copyOf(idToCopy, m.getWife()));
+			for (Person p : m.getOffspring())
+				load.addOffspring(c, copyOf(idToCopy, p));
+		}
+		copyNotes(load, this, copy);
+		load.finish();
+		return copy;
+	}
+
+	/**
+	 * Answer the copy of the specified person,
+	 * or <code>null</code> if the person is not in the receiver
+	 */
+	private Person copyOf(Person[] idToCopy, Person p) {
+		return p != null && getPerson(p.id) == p ? idToCopy[p.id] : null;
+	}
+
+	private static void copyBounds(BulkLoad load, GenealogyElement elem, GenealogyElement copy) {
+		load.setBounds(copy, elem.getX(), elem.getY(), elem.getWidth(), elem.getHeight());
+	}
+
+	private static void copyNotes(BulkLoad load, NoteContainer container, NoteContainer copy) {
+		for (Note n : container.getNotes())
+			copyBounds(load, n, load.addNote(n.id, copy, n.getText()));
+	}
+
+	//============================================================
+	// Snapshots
+
+	/**
+	 * Answer a snapshot of the receiver's current content that can be copied on another
+	 * thread by {@link GenealogyGraphSnapshot#copy()} while the receiver continues to be
+	 * modified. Taking a snapshot does not copy any elements; instead the state of each
+	 * element is retained when that element is first modified after the snapshot was
+	 * taken. Elements supplied by a source that have never been modified are decoded
+	 * again from that source when copied rather than being loaded into the receiver.
+	 * Any previous snapshot is closed. Close the snapshot when it is no longer needed.
+	 */
+	public GenealogyGraphSnapshot snapshot() {
+		GenealogyGraphSnapshot newSnapshot = new GenealogyGraphSnapshot(this);
+		GenealogyGraphSnapshot oldSnapshot = snapshot.getAndSet(newSnapshot);
+		if (oldSnapshot != null)
+			oldSnapshot.close();
+		return newSnapshot;
+	}
+
+	/**
+	 * Stop telling the specified snapshot about modifications
+	 */
+	void snapshotClosed(GenealogyGraphSnapshot closed) {
+		snapshot.compareAndSet(closed, null);
+	}
+
+	/**
+	 * Called before the specified element is modified
+	 */
+	void willChange(GenealogyElement elem) {
+		GenealogyGraphSnapshot s = snapshot.get();
+		if (s != null)
+			s.preserve(elem);
+	}
+
+	/**
+	 * Called before elements are added to or removed from the receiver
+	 */
+	private void willChangeStructure() {
+		GenealogyGraphSnapshot s = snapshot.get();
+		if (s != null)
+			s.preserveStructure();
+	}
+
+	//============================================================
+	// Lazy Loading
+
+	/**
+	 * Discard all elements and replace them with people, marriages, and notes supplied on
+	 * demand by the specified source. Listeners receive a single
+	 * {@link GenealogyGraphListener#graphLoaded()} notification.
+	 */
+	public void load(final GenealogyElementSource newSource) {
+		reset();
+		source = newSource;
+		source.graph = this;
+		people = new SourceElementCollection<Person>(source.getPersonCount()) {
+			protected Person get(int index) {
+				return newSource.getPerson(index);
+			}
+		};
+		marriages = new SourceElementCollection<Marriage>(source.getMarriageCount()) {
+			protected Marriage get(int index) {
+				return newSource.getMarriage(index);
+			}
+		};
+		int firstNote = source.getFirstGraphNote();
+		int noteCount = source.getGraphNoteCount();
+		noteIndex.reset(firstNote + noteCount);
+		for (int i = 0; i < noteCount; i++) {
+			Note n = source.getNote(firstNote + i);
+			n.setGraph(this);
+			notes.add(n);
+		}
+		personIndex.reset(source.getPersonCount());
+		marriageIndex.reset(source.getMarriageCount());
+		fire(NotificationBatch.GRAPH_LOADED, null, 0);
+	}
+
+	/**
+	 * Answer the source supplying elements on demand,
+	 * or <code>null</code> if all elements are held in memory.
+	 */
+	public GenealogyElementSource getSource() {
+		return source;
+	}
+
+	/**
+	 * Create and resolve every element supplied by the source, if any, so that the graph
+	 * no longer depends upon that source. This must be called before the storage from
+	 * which the source reads its elements is modified or overwritten.
+	 */
+	public void detachSource() {
+		if (source == null)
+			return;
+		willChangeStructure();
+		Collection<Person> allPeople = new LinkedHashSet<Person>(people);
+		Collection<Marriage> allMarriages = new LinkedHashSet<Marriage>(marriages);
+		for (Person p : allPeople)
+			p.resolveLinks();
+		for (Marriage m : allMarriages)
+			m.resolveLinks();
+		people = allPeople;
+		marriages = allMarriages;
+		personIndex.rebuild(allPeople);
+		marriageIndex.rebuild(allMarriages);
+		noteIndex.rebuild(getAllNotes());
+		source = null;
+	}
+
 	//============================================================
 	// Listeners
 	
@@ -111,4 +634,102 @@ public class GenealogyGraph
 	public void removeGenealogyGraphListener(GenealogyGraphListener l) {
 		listeners.remove(l);
 	}
+
+	/**
+	 * Add a listener notified of changes to every person, marriage, and note in the
+	 * receiver, including people and marriages supplied by a source once they are loaded.
+	 * Elements not yet loaded from a source have not changed, so they are not loaded in
+	 * order to listen to them.
+	 */
+	public void addElementListener(GenealogyGraphElementListener l) {
+		elementListeners.add(l);
+	}
+
+	public void removeElementListener(GenealogyGraphElementListener l) {
+		elementListeners.remove(l);
+	}
+
+	/**
+	 * Answer the listeners notified of changes to the elements of the receiver.
+	 * The array must not be modified.
+	 */
+	GenealogyGraphElementListener[] getElementListeners() {
+		return elementListeners.get();
+	}
+
+	//============================================================
+	// Batching
+
+	/**
+	 * Run the specified operation, deferring listener notifications until it completes.
+	 * Notifications for all changes made on the current thread to the receiver and to the
+	 * elements it contains are queued while the operation runs, merged so that listeners
+	 * are told only about the final state of each element, and then delivered once when
+	 * the operation completes or throws an exception. Changes to other graphs and to
+	 * elements not in any graph are not deferred unless a batch is running for them. For
+	 * example, an element that is moved several times notifies its listeners of its final
+	 * location, and a person that is added and then removed is not reported at all, nor
+	 * are any changes to that person. A call made while another operation is running for
+	 * the receiver on the same thread joins that operation's batch. An exception thrown by
+	 * a listener while the notifications are delivered does not prevent delivery of the
+	 * remaining notifications. The first such exception is then thrown by this method,
+	 * with any later ones added to it as suppressed exceptions, unless the operation
+	 * itself threw an exception, to which they are added instead.
+	 * <p>
+	 * Listeners must not assume that a notification describes the only change since the
+	 * previous notification. For example, a listener that is added during the delivery
+	 * of {@link GenealogyGraphListener#personAdded(Person)} may receive notifications for
+	 * changes to that person that are already reflected in its state.
+	 */
+	public void batch(Runnable operation) {
+		NotificationBatch.run(this, operation);
+	}
+
+	/**
+	 * Notify listeners of a change, or queue the notification if a batch is running
+	 */
+	private void fire(int event, Object value, int i) {
+		if (!NotificationBatch.defer(this, event, value, null, i, 0))
+			dispatch(event, value, null, i);
+	}
+
+	/**
+	 * Notify listeners of a change. Called immediately or when a batch completes.
+	 */
+	void dispatch(int event, Object value, Object oldValue, int i) {
+		switch (event) {
+			case NotificationBatch.PERSON_ADDED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.personAdded((Person) value);
+				break;
+			case NotificationBatch.PERSON_REMOVED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.personRemoved((Person) value);
+				break;
+			case NotificationBatch.MARRIAGE_ADDED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.marriageAdded((Marriage) value);
+				break;
+			case NotificationBatch.MARRIAGE_REMOVED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.marriageRemoved((Marriage) value);
+				break;
+			case NotificationBatch.NOTE_ADDED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.noteAdded(i, (Note) value);
+				break;
+			case NotificationBatch.NOTE_REMOVED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.noteRemoved((Note) value);
+				break;
+			case NotificationBatch.GRAPH_CLEARED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.graphCleared();
+				break;
+			case NotificationBatch.GRAPH_LOADED :
+				for (GenealogyGraphListener l : listeners.get())
+					l.graphLoaded();
+				break;
+		}
+	}
 }
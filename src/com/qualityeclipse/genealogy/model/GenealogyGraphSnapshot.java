@@ -0,0 +1,282 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+/**
+ * The content of a {@link GenealogyGraph} at the moment {@link GenealogyGraph#snapshot()}
+ * was called, which can be copied on another thread while the graph continues to be
+ * modified. Rather than copying the graph when the snapshot is taken, the graph tells
+ * the snapshot before it or any of its elements is modified, and the snapshot retains
+ * the state being replaced. Copying reads each element as retained or, if it has not
+ * been modified since, as it currently is. Elements supplied by a
+ * {@link GenealogyElementSource} that had not been modified when the snapshot was taken
+ * are decoded again from that source, so copying neither loads them into the graph nor
+ * depends upon which of them happen to be in memory.
+ * <p>
+ * Only the graph's thread may modify the graph, but {@link #copy()} and {@link #close()}
+ * may be called on any thread. Close the snapshot once it has been copied so that the
+ * graph stops retaining state for it.
+ */
+public final class GenealogyGraphSnapshot
+{
+	private final GenealogyGraph graph;
+
+	/**
+	 * The source supplying the graph's elements, or <code>null</code> if all elements are
+	 * held in memory
+	 */
+	private final GenealogyElementSource source;
+
+	// Source elements, captured when the snapshot is taken
+	private int personCount;
+	private int marriageCount;
+	private BitSet removedPeople;
+	private BitSet removedMarriages;
+	private Map<Integer, Person> modifiedPeople;
+	private Map<Integer, Marriage> modifiedMarriages;
+	private Map<Integer, Note> modifiedNotes;
+
+	/**
+	 * The people, marriages, and notes of the graph other than those supplied by its
+	 * source, or <code>null</code> if they have not yet been captured
+	 */
+	private List<Person> people;
+	private List<Marriage> marriages;
+	private List<Note> notes;
+
+	/**
+	 * The state of each element before it was first modified after the snapshot was taken
+	 */
+	private final Map<GenealogyElement, ElementState> states = new IdentityHashMap<GenealogyElement, ElementState>();
+
+	private boolean closed;
+
+	/**
+	 * Construct a snapshot of the specified graph. Called on the graph's thread.
+	 */
+	@SuppressWarnings("unchecked")
+	GenealogyGraphSnapshot(GenealogyGraph graph) {
+		this.graph = graph;
+		source = graph.getSource();
+		if (source == null)
+			return;
+
+		// Capture which source elements are in the graph and which have been modified.
+		// This is proportional to the number of changes rather than to the size of the
+		// graph, apart from a bit per source element.
+
+		SourceElementCollection<Person> sourcePeople = (SourceElementCollection<Person>) graph.getPeople();
+		SourceElementCollection<Marriage> sourceMarriages = (SourceElementCollection<Marriage>) graph.getMarriages();
+		personCount = sourcePeople.getCount();
+		marriageCount = sourceMarriages.getCount();
+		removedPeople = sourcePeople.getRemoved();
+		removedMarriages = sourceMarriages.getRemoved();
+		people = sourcePeople.getAdded();
+		marriages = sourceMarriages.getAdded();
+		notes = new ArrayList<Note>(graph.getNotes());
+		modifiedPeople = source.getModifiedPeople();
+		modifiedMarriages = source.getModifiedMarriages();
+		modifiedNotes = source.getModifiedNotes();
+	}
+
+	/**
+	 * Stop retaining state for the receiver. Any copy in progress fails.
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		states.clear();
+		graph.snapshotClosed(this);
+	}
+
+	//============================================================
+	// Retaining state
+
+	/**
+	 * Retain the current state of the specified element if it has not already been
+	 * retained. Called on the graph's thread before the element is modified.
+	 */
+	synchronized void preserve(GenealogyElement elem) {
+		if (closed || states.containsKey(elem))
+			return;
+		ElementState state = new ElementState();
+		elem.saveState(state);
+		states.put(elem, state);
+	}
+
+	/**
+	 * Capture the people, marriages, and notes of the graph if they have not already been
+	 * captured. Called on the graph's thread before elements are added or removed, and by
+	 * {@link #copy()} before copying.
+	 */
+	synchronized void preserveStructure() {
+		if (closed || people != null)
+			return;
+		people = new ArrayList<Person>(graph.getPeople());
+		marriages = new ArrayList<Marriage>(graph.getMarriages());
+		notes = new ArrayList<Note>(graph.getNotes());
+	}
+
+	/**
+	 * Answer the state of the specified element when the snapshot was taken
+	 */
+	private synchronized ElementState stateOf(GenealogyElement elem) {
+		checkClosed();
+		ElementState state = states.get(elem);
+		if (state == null) {
+			state = new ElementState();
+			elem.saveState(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Answer the state of an element just decoded from the source, which is not shared
+	 */
+	private static ElementState decodedState(GenealogyElement elem) {
+		ElementState state = new ElementState();
+		elem.saveState(state);
+		return state;
+	}
+
+	private synchronized void checkClosed() {
+		if (closed)
+			throw new IllegalStateException("Snapshot closed");
+	}
+
+	//============================================================
+	// Copying
+
+	/**
+	 * Answer a new graph containing a copy of every element in the graph as it was when
+	 * the snapshot was taken, in the same order and with the same identifiers. No
+	 * listeners are notified while the copy is created.
+	 *
+	 * @throws IllegalStateException if the snapshot is closed before the copy is complete
+	 */
+	public GenealogyGraph copy() {
+		preserveStructure();
+		checkClosed();
+		GenealogyGraph copy = new GenealogyGraph();
+		GenealogyGraph.BulkLoad load = copy.beginBulkLoad();
+		Copies<Person> personCopies = new Copies<Person>();
+		Copies<Marriage> marriageCopies = new Copies<Marriage>();
+		if (source != null) {
+			for (int i = removedPeople.nextClearBit(0); i < personCount; i = removedPeople.nextClearBit(i + 1)) {
+				Person p = modifiedPeople.get(i);
+				copyPerson(load, personCopies, i, p, p != null ? stateOf(p) : decodedState(source.createPerson(i)));
+			}
+		}
+		for (Person p : people)
+			copyPerson(load, personCopies, p.id, p, stateOf(p));
+		if (source != null) {
+			for (int i = removedMarriages.nextClearBit(0); i < marriageCount; i = removedMarriages.nextClearBit(i + 1)) {
+				Marriage m = modifiedMarriages.get(i);
+				copyMarriage(load, personCopies, marriageCopies, i, m,
+					m != null ? stateOf(m) : decodedState(source.createMarriage(i)));
+			}
+		}
+		for (Marriage m : marriages)
+			copyMarriage(load, personCopies, marriageCopies, m.id, m, stateOf(m));
+		for (Note n : notes)
+			copyNote(load, copy, n.id, stateOf(n));
+		load.finish();
+		return copy;
+	}
+
+	private void copyPerson(GenealogyGraph.BulkLoad load, Copies<Person> copies, int id, Person p, ElementState state) {
+		Person c = load.addPerson(id, state.gender, state.name, state.birthYear, state.deathYear);
+		copyBounds(load, c, state);
+		copies.put(id, c, p);
+		if (state.refs != null) {
+			int firstNote = state.refs[2];
+			for (int i = 0; i < state.refs[3]; i++) {
+				Note n = modifiedNotes.get(firstNote + i);
+				copyNote(load, c, firstNote + i, n != null ? stateOf(n) : decodedState(source.createNote(firstNote + i)));
+			}
+		}
+		else {
+			for (Note n : state.notes)
+				copyNote(load, c, n.id, stateOf(n));
+		}
+	}
+
+	private void copyMarriage(GenealogyGraph.BulkLoad load, Copies<Person> personCopies,
+		Copies<Marriage> marriageCopies, int id, Marriage m, ElementState state)
+	{
+		Marriage c = load.addMarriage(id, state.yearMarried);
+		copyBounds(load, c, state);
+		marriageCopies.put(id, c, m);
+		if (state.refs != null) {
+			for (int i = 0; i < state.refs.length; i++) {
+				Person p = state.refs[i] != -1 ? personCopies.get(state.refs[i]) : null;
+				if (i == 0)
+					load.setHusband(c, p);
+				else if (i == 1)
+					load.setWife(c, p);
+				else
+					load.addOffspring(c, p);
+			}
+		}
+		else {
+			load.setHusband(c, personCopies.copyOf(state.husband));
+			load.setWife(c, personCopies.copyOf(state.wife));
+			for (Person p : state.offspring)
+				load.addOffspring(c, personCopies.copyOf(p));
+		}
+	}
+
+	private static void copyNote(GenealogyGraph.BulkLoad load, NoteContainer container, int id, ElementState state) {
+		copyBounds(load, load.addNote(id, container, state.text), state);
+	}
+
+	private static void copyBounds(GenealogyGraph.BulkLoad load, GenealogyElement copy, ElementState state) {
+		load.setBounds(copy, state.x, state.y, state.width, state.height);
+	}
+
+	/**
+	 * The copies of the people or marriages in the snapshot indexed by identifier, along
+	 * with the element from which each was copied or <code>null</code> if it was decoded
+	 * from the source
+	 */
+	private static final class Copies<T extends GenealogyElement>
+	{
+		private GenealogyElement[] copies = new GenealogyElement[16];
+		private GenealogyElement[] originals = new GenealogyElement[16];
+
+		void put(int id, T copy, T original) {
+			if (id >= copies.length) {
+				int length = Math.max(id + 1, copies.length * 2);
+				copies = Arrays.copyOf(copies, length);
+				originals = Arrays.copyOf(originals, length);
+			}
+			copies[id] = copy;
+			originals[id] = original;
+		}
+
+		/**
+		 * Answer the copy with the specified identifier, or <code>null</code> if none
+		 */
+		@SuppressWarnings("unchecked")
+		T get(int id) {
+			return id >= 0 && id < copies.length ? (T) copies[id] : null;
+		}
+
+		/**
+		 * Answer the copy of the specified element, or <code>null</code> if the element
+		 * is <code>null</code> or was not in the graph when the snapshot was taken. An
+		 * element supplied by the source is copied from that source unless it had been
+		 * modified, so it is found by its index in the source.
+		 */
+		T copyOf(T elem) {
+			if (elem == null)
+				return null;
+			T copy = get(elem.id);
+			if (copy == null)
+				return null;
+			GenealogyElement original = originals[elem.id];
+			return original == elem || original == null && elem.sourceIndex == elem.id ? copy : null;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * Answers the ancestors, descendants, and generation of people in a
+ * {@link GenealogyGraph}. Every traversal uses an explicit stack or queue rather than
+ * recursion so that lines of any length can be traversed, and each person is answered at
+ * most once even if related to the starting person in more than one way.
+ * <p>
+ * The generation of each person is remembered once calculated. The receiver listens to
+ * the graph for changes to the parents of each person whose generation it remembers, and
+ * to the spouses and offspring of the marriage of that person's parents, so that when a
+ * person's parents change only the generation of that person and of that person's
+ * descendants is forgotten. Call {@link #dispose()} when the receiver is no longer needed
+ * so that it stops listening to the graph. Within
+ * {@link GenealogyGraph#batch(Runnable)}, generations are forgotten only when the batch
+ * completes, so a generation answered during a batch may not reflect changes made in it.
+ */
+public final class GenealogyTraversal
+{
+	/**
+	 * The order in which related people are answered
+	 */
+	public enum Order {
+		/**
+		 * All people one generation away, then all people two generations away, etc.
+		 */
+		BREADTH_FIRST,
+
+		/**
+		 * Each person followed by that person's relatives, fathers before mothers and
+		 * offspring in the order in which they were added to the marriage.
+		 */
+		DEPTH_FIRST
+	};
+
+	/**
+	 * A depth that does not limit a traversal
+	 */
+	public static final int UNLIMITED = Integer.MAX_VALUE;
+
+	private static final int UNKNOWN = -1;
+	private static final int CALCULATING = -2;
+
+	private final GenealogyGraph graph;
+	private final Map<Person, Generation> people = new IdentityHashMap<Person, Generation>();
+
+	/**
+	 * The marriages of the parents of the people whose generations are remembered
+	 */
+	private final Set<Marriage> marriages = Collections.newSetFromMap(new IdentityHashMap<Marriage, Boolean>());
+	private final GraphTracker graphTracker = new GraphTracker();
+
+	public GenealogyTraversal(GenealogyGraph graph) {
+		this.graph = graph;
+		graph.addGenealogyGraphListener(graphTracker);
+		graph.addElementListener(graphTracker);
+	}
+
+	/**
+	 * Stop listening to the graph and forget all generations
+	 */
+	public void dispose() {
+		graph.removeGenealogyGraphListener(graphTracker);
+		graph.removeElementListener(graphTracker);
+		forgetAll();
+	}
+
+	//============================================================
+	// Ancestors and Descendants
+
+	/**
+	 * Answer the ancestors of the specified person, not including that person
+	 *
+	 * @param p the person (not <code>null</code>)
+	 * @param order the order in which ancestors are answered
+	 * @param maxDepth the maximum number of generations, where 1 answers only the
+	 *            parents, or {@link #UNLIMITED}
+	 */
+	public List<Person> getAncestors(Person p, Order order, int maxDepth) {
+		return traverse(p, order, maxDepth, true);
+	}
+
+	/**
+	 * Answer the descendants of the specified person, not including that person
+	 *
+	 * @param p the person (not <code>null</code>)
+	 * @param order the order in which descendants are answered
+	 * @param maxDepth the maximum number of generations, where 1 answers only the
+	 *            offspring, or {@link #UNLIMITED}
+	 */
+	public List<Person> getDescendants(Person p, Order order, int maxDepth) {
+		return traverse(p, order, maxDepth, false);
+	}
+
+	private List<Person> traverse(Person p, Order order, int maxDepth, boolean ancestors) {
+		List<Person> result = new ArrayList<Person>();
+		if (maxDepth <= 0)
+			return result;
+		Set<Person> seen = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+		seen.add(p);
+		if (order == Order.BREADTH_FIRST) {
+			// The result is also the queue, one generation following another
+			addRelatives(p, ancestors, seen, result);
+			int start = 0;
+			for (int depth = 1; depth < maxDepth && start < result.size(); depth++) {
+				int end = result.size();
+				for (int i = start; i < end; i++)
+					addRelatives(result.get(i), ancestors, seen, result);
+				start = end;
+			}
+			return result;
+		}
+		// The depth of each person on the stack is held in a parallel array
+		List<Person> stack = new ArrayList<Person>();
+		int[] depths = new int[16];
+		Person next = p;
+		int depth = 0;
+		while (true) {
+			int top = stack.size();
+			if (depth < maxDepth) {
+				addRelatives(next, ancestors, seen, stack);
+				Collections.reverse(stack.subList(top, stack.size()));
+				if (stack.size() > depths.length)
+					depths = Arrays.copyOf(depths, Math.max(stack.size(), depths.length * 2));
+				Arrays.fill(depths, top, stack.size(), depth + 1);
+			}
+			if (stack.isEmpty())
+				return result;
+			top = stack.size() - 1;
+			next = stack.remove(top);
+			depth = depths[top];
+			result.add(next);
+		}
+	}
+
+	/**
+	 * Append the parents or offspring of the specified person
+	 * that have not already been seen to the specified list
+	 */
+	private static void addRelatives(Person p, boolean ancestors, Set<Person> seen, List<Person> list) {
+		if (ancestors) {
+			Marriage m = p.getParentsMarriage();
+			if (m != null) {
+				addIfUnseen(m.getHusband(), seen, list);
+				addIfUnseen(m.getWife(), seen, list);
+			}
+		}
+		else {
+			Marriage m = p.getMarriage();
+			if (m != null) {
+				for (Person child : m.getOffspring())
+					addIfUnseen(child, seen, list);
+			}
+		}
+	}
+
+	private static void addIfUnseen(Person p, Set<Person> seen, List<Person> list) {
+		if (p != null && seen.add(p))
+			list.add(p);
+	}
+
+	//============================================================
+	// Generations
+
+	/**
+	 * Answer the generation of the specified person, which is zero for a person whose
+	 * parents are not recorded, and otherwise one more than the larger of the generations
+	 * of that person's parents. If the graph records a person as his or her own ancestor,
+	 * then the relationship that completes the cycle is ignored.
+	 */
+	public int getGeneration(Person p) {
+		Generation g = track(p);
+		if (g.generation >= 0)
+			return g.generation;
+		List<Generation> stack = new ArrayList<Generation>();
+		stack.add(g);
+		while (!stack.isEmpty()) {
+			Generation top = stack.get(stack.size() - 1);
+			if (top.generation >= 0) {
+				// Already calculated on behalf of another descendant
+				stack.remove(stack.size() - 1);
+				continue;
+			}
+			Marriage m = top.person.getParentsMarriage();
+			Generation father = null, mother = null;
+			if (m != null) {
+				track(m);
+				father = track(m.getHusband());
+				mother = track(m.getWife());
+			}
+			if (top.generation == UNKNOWN) {
+				// Calculate the parents first, then visit this person again
+				top.generation = CALCULATING;
+				if (father != null && father.generation == UNKNOWN)
+					stack.add(father);
+				if (mother != null && mother.generation == UNKNOWN)
+					stack.add(mother);
+				continue;
+			}
+			stack.remove(stack.size() - 1);
+			int generation = 0;
+			if (father != null && father.generation >= 0)
+				generation = father.generation + 1;
+			if (mother != null && mother.generation >= 0)
+				generation = Math.max(generation, mother.generation + 1);
+			top.generation = generation;
+		}
+		return g.generation;
+	}
+
+	/**
+	 * Answer the generation record for the specified person, creating it if necessary,
+	 * or <code>null</code> if the person is <code>null</code>
+	 */
+	private Generation track(Person p) {
+		if (p == null)
+			return null;
+		Generation g = people.get(p);
+		if (g == null) {
+			g = new Generation(p);
+			people.put(p, g);
+		}
+		return g;
+	}
+
+	private void track(Marriage m) {
+		marriages.add(m);
+	}
+
+	/**
+	 * Forget the generation of the specified person and that person's descendants.
+	 * If the generation of a person is not known, then neither is the generation of any
+	 * of that person's descendants, so the descendants of that person are not visited.
+	 */
+	private void forget(Person p) {
+		List<Person> stack = new ArrayList<Person>();
+		stack.add(p);
+		while (!stack.isEmpty()) {
+			Generation g = people.get(stack.remove(stack.size() - 1));
+			if (g == null || g.generation < 0)
+				continue;
+			g.generation = UNKNOWN;
+			Marriage m = g.person.getMarriage();
+			if (m != null)
+				stack.addAll(m.getOffspring());
+		}
+	}
+
+	/**
+	 * Forget the generations of the offspring of the specified marriage
+	 * if it is the marriage of the parents of a person whose generation is remembered
+	 */
+	private void forgetOffspring(Marriage m) {
+		if (!marriages.contains(m))
+			return;
+		for (Person p : m.getOffspring())
+			forget(p);
+	}
+
+	private void forgetAll() {
+		people.clear();
+		marriages.clear();
+	}
+
+	/**
+	 * The generation of a person
+	 */
+	private static final class Generation
+	{
+		final Person person;
+		int generation = UNKNOWN;
+
+		Generation(Person person) {
+			this.person = person;
+		}
+	}
+
+	//============================================================
+	// Listeners
+
+	/**
+	 * Forgets the generation of a person when that person's parents change or when a
+	 * spouse of their parents' marriage changes, and every generation when the entire
+	 * content of the graph is replaced
+	 */
+	private final class GraphTracker
+		implements GenealogyGraphListener, GenealogyGraphElementListener
+	{
+		public void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+			forget(p);
+		}
+
+		public void husbandChanged(Marriage m, Person husband, Person oldHusband) {
+			forgetOffspring(m);
+		}
+
+		public void wifeChanged(Marriage m, Person wife, Person oldWife) {
+			forgetOffspring(m);
+		}
+
+		public void offspringAdded(Marriage m, Person p) {
+			forget(p);
+		}
+
+		public void offspringRemoved(Marriage m, Person p) {
+			forget(p);
+		}
+
+		public void graphCleared() {
+			forgetAll();
+		}
+
+		public void graphLoaded() {
+			forgetAll();
+		}
+
+		public void personAdded(Person p) {
+		}
+
+		public void personRemoved(Person p) {
+		}
+
+		public void marriageAdded(Marriage m) {
+		}
+
+		public void marriageRemoved(Marriage m) {
+		}
+
+		public void noteAdded(int index, Note n) {
+		}
+
+		public void noteRemoved(Note n) {
+		}
+
+		public void nameChanged(Person p, String newName) {
+		}
+
+		public void birthYearChanged(Person p, int birthYear) {
+		}
+
+		public void deathYearChanged(Person p, int deathYear) {
+		}
+
+		public void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void noteAdded(Person p, int index, Note n) {
+		}
+
+		public void noteRemoved(Person p, Note n) {
+		}
+
+		public void yearMarriedChanged(Marriage m, int yearMarried) {
+		}
+
+		public void textChanged(Note n, String newText) {
+		}
+
+		public void locationChanged(GenealogyElement elem, int x, int y) {
+		}
+
+		public void sizeChanged(GenealogyElement elem, int width, int height) {
+		}
+	}
+}
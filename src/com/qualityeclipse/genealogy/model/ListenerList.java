@@ -0,0 +1,60 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.Arrays;
+
+/**
+ * The listeners of a model object, held in an array that is replaced rather than modified
+ * when a listener is added or removed. Notifying listeners iterates over the array
+ * answered by {@link #get()} without allocating an iterator, and a listener may add or
+ * remove listeners while being notified, as an edit part does when it is removed, without
+ * affecting the notification in progress. A listener removed during a notification may
+ * still receive that notification.
+ */
+final class ListenerList<T>
+{
+	private T[] listeners;
+
+	/**
+	 * @param none an empty array of the listener type, shared by all lists of that type
+	 */
+	ListenerList(T[] none) {
+		listeners = none;
+	}
+
+	/**
+	 * Answer the current listeners. The array must not be modified.
+	 */
+	T[] get() {
+		return listeners;
+	}
+
+	/**
+	 * Add the specified listener if it is not already present
+	 */
+	void add(T l) {
+		if (l == null || indexOf(l) != -1)
+			return;
+		T[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+		newListeners[listeners.length] = l;
+		listeners = newListeners;
+	}
+
+	/**
+	 * Remove the specified listener if it is present
+	 */
+	void remove(T l) {
+		int index = indexOf(l);
+		if (index == -1)
+			return;
+		T[] newListeners = Arrays.copyOf(listeners, listeners.length - 1);
+		System.arraycopy(listeners, index + 1, newListeners, index, newListeners.length - index);
+		listeners = newListeners;
+	}
+
+	private int indexOf(T l) {
+		for (int i = 0; i < listeners.length; i++)
+			if (listeners[i] == l)
+				return i;
+		return -1;
+	}
+}
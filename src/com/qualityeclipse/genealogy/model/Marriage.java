@@ -2,6 +2,7 @@ package com.qualityeclipse.genealogy.model;
 
 import java.util.*;
 
+import com.qualityeclipse.genealogy.model.listener.GenealogyGraphElementListener;
 import com.qualityeclipse.genealogy.model.listener.MarriageListener;
 
 /**
@@ -12,8 +13,10 @@ public final class Marriage extends GenealogyElement
 	private int yearMarried = -1;
 	private Person husband;
 	private Person wife;
-	private final Collection<Person> offspring = new HashSet<Person>();
-	private final Collection<MarriageListener> listeners = new HashSet<MarriageListener>();
+	private final Collection<Person> offspring = new LinkedHashSet<Person>();
+	private UnresolvedLinks links;
+	private static final MarriageListener[] NO_LISTENERS = new MarriageListener[0];
+	private final ListenerList<MarriageListener> listeners = new ListenerList<MarriageListener>(NO_LISTENERS);
 
 	public Marriage() {
 	}
@@ -29,9 +32,9 @@ public final class Marriage extends GenealogyElement
 	public boolean setYearMarried(int newYearMarried) {
 		if (yearMarried == newYearMarried)
 			return false;
+		willChange();
 		yearMarried = newYearMarried;
-		for (MarriageListener l : listeners)
-			l.yearMarriedChanged(yearMarried);
+		fire(NotificationBatch.YEAR_MARRIED, null, null, yearMarried);
 		return true;
 	}
 
@@ -39,14 +42,17 @@ public final class Marriage extends GenealogyElement
 	// Husband and Wife
 	
 	public Person getHusband() {
+		resolveLinks();
 		return husband;
 	}
 	
 	public boolean setHusband(Person newHusband) {
+		resolveLinks();
 		if (newHusband != null && newHusband.getGender() != Person.Gender.MALE)
 			return false;
 		if (husband == newHusband)
 			return false;
+		willChange();
 		final Person oldHusband = husband;
 		if (husband != null) {
 			husband = null;
@@ -55,20 +61,22 @@ public final class Marriage extends GenealogyElement
 		husband = newHusband;
 		if (husband != null)
 			husband.setMarriage(this);
-		for (MarriageListener l : listeners)
-			l.husbandChanged(husband, oldHusband);
+		fire(NotificationBatch.HUSBAND, husband, oldHusband, 0);
 		return true;
 	}
 	
 	public Person getWife() {
+		resolveLinks();
 		return wife;
 	}
 	
 	public boolean setWife(Person newWife) {
+		resolveLinks();
 		if (newWife != null && newWife.getGender() != Person.Gender.FEMALE)
 			return false;
 		if (wife == newWife)
 			return false;
+		willChange();
 		final Person oldWife = wife;
 		if (wife != null) {
 			wife = null;
@@ -77,8 +85,7 @@ public final class Marriage extends GenealogyElement
 		wife = newWife;
 		if (wife != null)
 			wife.setMarriage(this);
-		for (MarriageListener l : listeners)
-			l.wifeChanged(wife, oldWife);
+		fire(NotificationBatch.WIFE, wife, oldWife, 0);
 		return true;
 	}
 
@@ -86,27 +93,78 @@ public final class Marriage extends GenealogyElement
 	// Offspring
 	
 	public Collection<Person> getOffspring() {
+		resolveLinks();
 		return offspring;
 	}
 	
 	public boolean addOffspring(Person p) {
-		if (p == null || !offspring.add(p))
+		resolveLinks();
+		if (p == null || offspring.contains(p))
 			return false;
+		willChange();
+		offspring.add(p);
 		p.setParentsMarriage(this);
-		for (MarriageListener l : listeners)
-			l.offspringAdded(p);
+		fire(NotificationBatch.OFFSPRING_ADDED, p, null, 0);
 		return true;
 	}
 	
 	public boolean removeOffspring(Person p) {
-		if (!offspring.remove(p))
+		resolveLinks();
+		if (!offspring.contains(p))
 			return false;
+		willChange();
+		offspring.remove(p);
 		p.setParentsMarriage(null);
-		for (MarriageListener l : listeners)
-			l.offspringRemoved(p);
+		fire(NotificationBatch.OFFSPRING_REMOVED, p, null, 0);
 		return true;
 	}
 
+	//============================================================
+	// Bulk Loading
+
+	/**
+	 * Set the husband, wife, and year married without updating the people involved or
+	 * notifying listeners. Used by {@link GenealogyGraph.BulkLoad} while loading a graph.
+	 */
+	void loadHusband(Person newHusband) {
+		husband = newHusband;
+	}
+
+	void loadWife(Person newWife) {
+		wife = newWife;
+	}
+
+	void loadYearMarried(int newYearMarried) {
+		yearMarried = newYearMarried;
+	}
+
+	/**
+	 * Record the spouses and offspring of a marriage created by a
+	 * {@link GenealogyElementSource} so that they can be resolved when first accessed.
+	 */
+	void setUnresolvedLinks(UnresolvedLinks newLinks) {
+		links = newLinks;
+	}
+
+	/**
+	 * Resolve the spouses and offspring of a marriage created by a
+	 * {@link GenealogyElementSource}. This has no effect if they are already resolved.
+	 */
+	void resolveLinks() {
+		UnresolvedLinks l = links;
+		if (l == null)
+			return;
+		willChange();
+		links = null;
+		int[] refs = l.refs;
+		if (refs[0] != -1)
+			husband = l.source.getPerson(refs[0]);
+		if (refs[1] != -1)
+			wife = l.source.getPerson(refs[1]);
+		for (int i = 2; i < refs.length; i++)
+			offspring.add(l.source.getPerson(refs[i]));
+	}
+
 	//============================================================
 	// Listeners
 	
@@ -118,16 +176,77 @@ public final class Marriage extends GenealogyElement
 		listeners.remove(l);
 	}
 
+	/**
+	 * Notify listeners of a change, or queue the notification if a batch is running
+	 * 
+	 * @see GenealogyGraph#batch(Runnable)
+	 */
+	private void fire(int event, Object value, Object oldValue, int i) {
+		if (!NotificationBatch.defer(this, event, value, oldValue, i, 0))
+			dispatch(event, value, oldValue, i);
+	}
+
+	/**
+	 * Notify the listeners of the receiver and of the graph containing it of a change.
+	 * Called immediately or when a batch completes.
+	 */
+	void dispatch(int event, Object value, Object oldValue, int i) {
+		switch (event) {
+			case NotificationBatch.YEAR_MARRIED :
+				for (MarriageListener l : listeners.get())
+					l.yearMarriedChanged(i);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.yearMarriedChanged(this, i);
+				break;
+			case NotificationBatch.HUSBAND :
+				for (MarriageListener l : listeners.get())
+					l.husbandChanged((Person) value, (Person) oldValue);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.husbandChanged(this, (Person) value, (Person) oldValue);
+				break;
+			case NotificationBatch.WIFE :
+				for (MarriageListener l : listeners.get())
+					l.wifeChanged((Person) value, (Person) oldValue);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.wifeChanged(this, (Person) value, (Person) oldValue);
+				break;
+			case NotificationBatch.OFFSPRING_ADDED :
+				for (MarriageListener l : listeners.get())
+					l.offspringAdded((Person) value);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.offspringAdded(this, (Person) value);
+				break;
+			case NotificationBatch.OFFSPRING_REMOVED :
+				for (MarriageListener l : listeners.get())
+					l.offspringRemoved((Person) value);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.offspringRemoved(this, (Person) value);
+				break;
+		}
+	}
+
 	//============================================================
 	// GenealogyElement
+
+	void saveState(ElementState state) {
+		super.saveState(state);
+		state.yearMarried = yearMarried;
+		if (links != null)
+			state.refs = links.refs;
+		else {
+			state.husband = husband;
+			state.wife = wife;
+			state.offspring = new ArrayList<Person>(offspring);
+		}
+	}
 	
 	protected void fireLocationChanged(int newX, int newY) {
-		for (MarriageListener l : listeners)
+		for (MarriageListener l : listeners.get())
 			l.locationChanged(newX, newY);
 	}
 
 	protected void fireSizeChanged(int newWidth, int newHeight) {
-		for (MarriageListener l : listeners)
+		for (MarriageListener l : listeners.get())
 			l.sizeChanged(newWidth, newHeight);
 	}
 }
@@ -1,13 +1,13 @@
 package com.qualityeclipse.genealogy.model;
 
-import java.util.*;
-
+import com.qualityeclipse.genealogy.model.listener.GenealogyGraphElementListener;
 import com.qualityeclipse.genealogy.model.listener.NoteListener;
 
 public final class Note extends GenealogyElement
 {
 	private String text = "";
-	private final Collection<NoteListener> listeners = new HashSet<NoteListener>();
+	private static final NoteListener[] NO_LISTENERS = new NoteListener[0];
+	private final ListenerList<NoteListener> listeners = new ListenerList<NoteListener>(NO_LISTENERS);
 	
 	public Note() {
 	}
@@ -25,12 +25,21 @@ public final class Note extends GenealogyElement
 			newText = "";
 		if (text.equals(newText))
 			return false;
+		willChange();
 		text = newText;
-		for (NoteListener l : listeners)
-			l.textChanged(text);
+		if (!NotificationBatch.defer(this, NotificationBatch.TEXT, text, null, 0, 0))
+			dispatch(NotificationBatch.TEXT, text, null, 0);
 		return true;
 	}
 
+	/**
+	 * Set the text without notifying listeners.
+	 * Used by {@link GenealogyGraph.BulkLoad} while loading a graph.
+	 */
+	void loadText(String newText) {
+		text = newText != null ? newText : "";
+	}
+
 	//============================================================
 	// Listeners
 	
@@ -42,16 +51,49 @@ public final class Note extends GenealogyElement
 		listeners.remove(l);
 	}
 
+	/**
+	 * Notify the listeners of the receiver and of the graph containing it of a change.
+	 * Called immediately or when a batch completes.
+	 */
+	void dispatch(int event, Object value, Object oldValue, int i) {
+		if (event == NotificationBatch.TEXT) {
+			for (NoteListener l : listeners.get())
+				l.textChanged((String) value);
+			for (GenealogyGraphElementListener l : getGraphListeners())
+				l.textChanged(this, (String) value);
+		}
+	}
+
 	//============================================================
 	// GenealogyElement
+
+	/**
+	 * Give the receiver an identifier in the graph to which it has been added, either
+	 * directly or as a note of a person in that graph
+	 */
+	void setGraph(GenealogyGraph newGraph) {
+		GenealogyGraph oldGraph = graph;
+		super.setGraph(newGraph);
+		if (oldGraph == newGraph)
+			return;
+		if (oldGraph != null)
+			oldGraph.unindexNote(this);
+		if (newGraph != null)
+			newGraph.indexNote(this);
+	}
+
+	void saveState(ElementState state) {
+		super.saveState(state);
+		state.text = text;
+	}
 	
 	protected void fireLocationChanged(int newX, int newY) {
-		for (NoteListener l : listeners)
+		for (NoteListener l : listeners.get())
 			l.locationChanged(newX, newY);
 	}
 
 	protected void fireSizeChanged(int newWidth, int newHeight) {
-		for (NoteListener l : listeners)
+		for (NoteListener l : listeners.get())
 			l.sizeChanged(newWidth, newHeight);
 	}
 }
@@ -0,0 +1,595 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * An inverted index of the words in the text of the notes in a {@link GenealogyGraph},
+ * including the notes of each person, used to find notes containing words and phrases.
+ * Words are sequences of letters and digits compared without regard to case.
+ * <p>
+ * A query is a sequence of terms, each of which is a word or a phrase in double quotes,
+ * and a note matches if it contains every term. A term preceded by "-" excludes the notes
+ * containing that term, and "OR" between two sequences of terms matches the notes that
+ * match either sequence. For example, <code>"county cork" emigrated -ship OR steerage</code>
+ * finds the notes containing the phrase "county cork" and the word "emigrated" but not the
+ * word "ship", and the notes containing the word "steerage".
+ * <p>
+ * The index numbers each note and holds the numbers of the notes containing each word in
+ * a sorted array of int, so that terms are combined by merging arrays. Phrases are matched
+ * by finding the notes containing every word of the phrase and then comparing the words
+ * of each of those notes. The index is built when first searched and is then kept up to
+ * date by listening to the graph for people and notes being added and removed and for
+ * changes to the text of notes, without listening to each person and note. It is
+ * discarded when the entire content of the graph is replaced and built again when next
+ * searched. Call {@link #dispose()} when the index is no longer needed so that it stops
+ * listening to the graph.
+ */
+public final class NoteTextIndex
+{
+	private static final int[] NO_NUMBERS = new int[0];
+
+	private final GenealogyGraph graph;
+	private final GraphTracker graphTracker = new GraphTracker();
+
+	/**
+	 * The container, number, and words of each indexed note,
+	 * or <code>null</code> if the index has not been built
+	 */
+	private Map<Note, IndexedNote> notes;
+
+	/**
+	 * The people whose notes are indexed
+	 */
+	private Set<Person> people;
+
+	/**
+	 * The note with each number, or <code>null</code> if the number is not in use
+	 */
+	private List<IndexedNote> numbers;
+
+	/**
+	 * Numbers no longer in use, to be used again before new numbers
+	 */
+	private int[] freeNumbers;
+	private int freeCount;
+
+	/**
+	 * The numbers of the notes containing each word
+	 */
+	private Map<String, Postings> postings;
+
+	public NoteTextIndex(GenealogyGraph graph) {
+		this.graph = graph;
+		graph.addGenealogyGraphListener(graphTracker);
+		graph.addElementListener(graphTracker);
+	}
+
+	/**
+	 * Stop listening to the graph and discard the index
+	 */
+	public void dispose() {
+		graph.removeGenealogyGraphListener(graphTracker);
+		graph.removeElementListener(graphTracker);
+		discard();
+	}
+
+	//============================================================
+	// Searching
+
+	/**
+	 * Answer the notes matching the specified query, in no particular order
+	 *
+	 * @param query the words and phrases to be found, as described in {@link NoteTextIndex}
+	 * @param limit the maximum number of notes answered
+	 */
+	public List<Note> search(String query, int limit) {
+		List<Note> result = new ArrayList<Note>();
+		if (limit <= 0)
+			return result;
+		build();
+		int[] matches = NO_NUMBERS;
+		for (List<Term> clause : parse(query)) {
+			int[] clauseMatches = null;
+			for (Term term : clause)
+				if (!term.excluded)
+					clauseMatches = clauseMatches == null ? find(term) : intersect(clauseMatches, find(term));
+			if (clauseMatches == null)
+				continue;
+			for (Term term : clause)
+				if (term.excluded)
+					clauseMatches = subtract(clauseMatches, find(term));
+			matches = union(matches, clauseMatches);
+		}
+		for (int i = 0; i < matches.length && result.size() < limit; i++)
+			result.add(numbers.get(matches[i]).note);
+		return result;
+	}
+
+	/**
+	 * Answer the person or graph containing the specified note,
+	 * or <code>null</code> if the note is not in the graph
+	 */
+	public NoteContainer getContainer(Note n) {
+		build();
+		IndexedNote entry = notes.get(n);
+		return entry != null ? entry.container : null;
+	}
+
+	/**
+	 * Answer the start and end of each word in the specified text that is, or is part of
+	 * an occurrence of, a word or phrase that the specified query requires or allows, as
+	 * successive pairs of character offsets in order, so that those words can be
+	 * highlighted
+	 */
+	public static int[] getMatchRanges(String query, String text) {
+		int[] bounds = wordBounds(text);
+		String[] words = words(text, bounds);
+		Set<String> single = new HashSet<String>();
+		List<String[]> phrases = new ArrayList<String[]>();
+		for (List<Term> clause : parse(query)) {
+			for (Term term : clause) {
+				if (term.excluded)
+					continue;
+				if (term.words.length == 1)
+					single.add(term.words[0]);
+				else
+					phrases.add(term.words);
+			}
+		}
+		// Mark the words to be highlighted, then answer the bounds of those words
+		boolean[] marked = new boolean[words.length];
+		for (int i = 0; i < words.length; i++) {
+			if (single.contains(words[i]))
+				marked[i] = true;
+			for (String[] phrase : phrases)
+				if (startsWith(words, i, phrase))
+					Arrays.fill(marked, i, i + phrase.length, true);
+		}
+		int[] ranges = new int[words.length * 2];
+		int count = 0;
+		for (int i = 0; i < words.length; i++) {
+			if (marked[i]) {
+				ranges[count++] = bounds[i * 2];
+				ranges[count++] = bounds[i * 2 + 1];
+			}
+		}
+		return Arrays.copyOf(ranges, count);
+	}
+
+	/**
+	 * Answer the numbers of the notes containing the specified term, in order
+	 */
+	private int[] find(Term term) {
+		Postings first = postings.get(term.words[0]);
+		if (first == null)
+			return NO_NUMBERS;
+		int[] result = first.toArray();
+		for (int i = 1; i < term.words.length && result.length > 0; i++) {
+			Postings next = postings.get(term.words[i]);
+			result = next == null ? NO_NUMBERS : intersect(result, next.toArray());
+		}
+		if (term.words.length == 1)
+			return result;
+		int count = 0;
+		for (int number : result)
+			if (containsPhrase(numbers.get(number).words, term.words))
+				result[count++] = number;
+		return Arrays.copyOf(result, count);
+	}
+
+	private static boolean containsPhrase(String[] words, String[] phrase) {
+		for (int i = 0; i + phrase.length <= words.length; i++)
+			if (startsWith(words, i, phrase))
+				return true;
+		return false;
+	}
+
+	private static boolean startsWith(String[] words, int start, String[] phrase) {
+		if (start + phrase.length > words.length)
+			return false;
+		for (int j = 0; j < phrase.length; j++)
+			if (!words[start + j].equals(phrase[j]))
+				return false;
+		return true;
+	}
+
+	//============================================================
+	// Queries
+
+	/**
+	 * A word or phrase in a query
+	 */
+	private static final class Term
+	{
+		final String[] words;
+		final boolean excluded;
+
+		Term(String[] words, boolean excluded) {
+			this.words = words;
+			this.excluded = excluded;
+		}
+	}
+
+	/**
+	 * Answer the sequences of terms in the specified query separated by "OR", omitting
+	 * terms that contain no words
+	 */
+	private static List<List<Term>> parse(String query) {
+		List<List<Term>> clauses = new ArrayList<List<Term>>();
+		List<Term> clause = new ArrayList<Term>();
+		clauses.add(clause);
+		int length = query.length();
+		int i = 0;
+		while (i < length) {
+			char ch = query.charAt(i);
+			if (Character.isWhitespace(ch)) {
+				i++;
+				continue;
+			}
+			boolean excluded = ch == '-';
+			if (excluded && ++i == length)
+				break;
+			int end;
+			String text;
+			if (query.charAt(i) == '"') {
+				end = query.indexOf('"', i + 1);
+				if (end == -1)
+					end = length;
+				text = query.substring(i + 1, end);
+				end++;
+			}
+			else {
+				end = i;
+				while (end < length && !Character.isWhitespace(query.charAt(end)))
+					end++;
+				text = query.substring(i, end);
+				if (!excluded && text.equals("OR")) {
+					clause = new ArrayList<Term>();
+					clauses.add(clause);
+					i = end;
+					continue;
+				}
+			}
+			i = end;
+			String[] words = words(text, wordBounds(text));
+			if (words.length > 0)
+				clause.add(new Term(words, excluded));
+		}
+		return clauses;
+	}
+
+	/**
+	 * Answer the start and end of each word in the specified text as successive pairs of
+	 * character offsets, where a word is a sequence of letters and digits
+	 */
+	private static int[] wordBounds(String text) {
+		int length = text.length();
+		int[] bounds = new int[8];
+		int count = 0;
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean inWord = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start == -1)
+				start = i;
+			else if (!inWord && start != -1) {
+				if (count + 2 > bounds.length)
+					bounds = Arrays.copyOf(bounds, bounds.length * 2);
+				bounds[count++] = start;
+				bounds[count++] = i;
+				start = -1;
+			}
+		}
+		return Arrays.copyOf(bounds, count);
+	}
+
+	private static String[] words(String text, int[] bounds) {
+		String[] words = new String[bounds.length / 2];
+		for (int i = 0; i < words.length; i++)
+			words[i] = text.substring(bounds[i * 2], bounds[i * 2 + 1]).toLowerCase(Locale.ENGLISH);
+		return words;
+	}
+
+	//============================================================
+	// Sorted Arrays
+
+	private static int[] intersect(int[] a, int[] b) {
+		int[] result = new int[Math.min(a.length, b.length)];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.length && j < b.length;) {
+			if (a[i] < b[j])
+				i++;
+			else if (a[i] > b[j])
+				j++;
+			else {
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int[] union(int[] a, int[] b) {
+		int[] result = new int[a.length + b.length];
+		int count = 0;
+		int i = 0, j = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j])
+				result[count++] = a[i++];
+			else if (a[i] > b[j])
+				result[count++] = b[j++];
+			else {
+				result[count++] = a[i++];
+				j++;
+			}
+		}
+		while (i < a.length)
+			result[count++] = a[i++];
+		while (j < b.length)
+			result[count++] = b[j++];
+		return Arrays.copyOf(result, count);
+	}
+
+	private static int[] subtract(int[] a, int[] b) {
+		int[] result = new int[a.length];
+		int count = 0;
+		for (int i = 0, j = 0; i < a.length; i++) {
+			while (j < b.length && b[j] < a[i])
+				j++;
+			if (j == b.length || b[j] != a[i])
+				result[count++] = a[i];
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * The numbers of the notes containing a word, in order
+	 */
+	private static final class Postings
+	{
+		int[] numbers = new int[2];
+		int size;
+
+		void add(int number) {
+			int index = Arrays.binarySearch(numbers, 0, size, number);
+			if (index >= 0)
+				return;
+			index = -index - 1;
+			if (size == numbers.length)
+				numbers = Arrays.copyOf(numbers, size * 2);
+			System.arraycopy(numbers, index, numbers, index + 1, size - index);
+			numbers[index] = number;
+			size++;
+		}
+
+		void remove(int number) {
+			int index = Arrays.binarySearch(numbers, 0, size, number);
+			if (index < 0)
+				return;
+			System.arraycopy(numbers, index + 1, numbers, index, size - index - 1);
+			size--;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(numbers, size);
+		}
+	}
+
+	//============================================================
+	// Indexing
+
+	private void build() {
+		if (notes != null)
+			return;
+		notes = new IdentityHashMap<Note, IndexedNote>();
+		people = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+		numbers = new ArrayList<IndexedNote>();
+		freeNumbers = new int[16];
+		freeCount = 0;
+		postings = new HashMap<String, Postings>();
+		for (Note n : graph.getNotes())
+			add(n, graph);
+		for (Person p : graph.getPeople())
+			add(p);
+	}
+
+	private void discard() {
+		notes = null;
+		people = null;
+		numbers = null;
+		freeNumbers = null;
+		postings = null;
+	}
+
+	private void add(Person p) {
+		if (!people.add(p))
+			return;
+		for (Note n : p.getNotes())
+			add(n, p);
+	}
+
+	private void remove(Person p) {
+		if (!people.remove(p))
+			return;
+		for (Note n : p.getNotes())
+			remove(n);
+	}
+
+	private void add(Note n, NoteContainer container) {
+		if (notes.containsKey(n))
+			return;
+		int number;
+		if (freeCount > 0)
+			number = freeNumbers[--freeCount];
+		else {
+			number = numbers.size();
+			numbers.add(null);
+		}
+		IndexedNote entry = new IndexedNote(n, container, number);
+		numbers.set(number, entry);
+		notes.put(n, entry);
+		index(entry, n.getText());
+	}
+
+	private void remove(Note n) {
+		IndexedNote entry = notes.remove(n);
+		if (entry == null)
+			return;
+		unindex(entry);
+		numbers.set(entry.number, null);
+		if (freeCount == freeNumbers.length)
+			freeNumbers = Arrays.copyOf(freeNumbers, freeCount * 2);
+		freeNumbers[freeCount++] = entry.number;
+	}
+
+	/**
+	 * Reindex a note in the index whose text has changed
+	 */
+	private void update(Note n, String text) {
+		if (notes == null)
+			return;
+		IndexedNote entry = notes.get(n);
+		if (entry == null)
+			return;
+		unindex(entry);
+		index(entry, text);
+	}
+
+	private void index(IndexedNote entry, String text) {
+		entry.words = words(text, wordBounds(text));
+		for (String word : entry.words) {
+			Postings list = postings.get(word);
+			if (list == null) {
+				list = new Postings();
+				postings.put(word, list);
+			}
+			list.add(entry.number);
+		}
+	}
+
+	private void unindex(IndexedNote entry) {
+		for (String word : entry.words) {
+			Postings list = postings.get(word);
+			if (list == null)
+				continue;
+			list.remove(entry.number);
+			if (list.size == 0)
+				postings.remove(word);
+		}
+		entry.words = null;
+	}
+
+	/**
+	 * The container, number, and words of an indexed note
+	 */
+	private static final class IndexedNote
+	{
+		final Note note;
+		final NoteContainer container;
+		final int number;
+		String[] words;
+
+		IndexedNote(Note note, NoteContainer container, int number) {
+			this.note = note;
+			this.container = container;
+			this.number = number;
+		}
+	}
+
+	//============================================================
+	// Listeners
+
+	/**
+	 * Keeps the index up to date as people and notes are added and removed
+	 * and as the text of notes changes
+	 */
+	private final class GraphTracker
+		implements GenealogyGraphListener, GenealogyGraphElementListener
+	{
+		public void personAdded(Person p) {
+			if (notes != null)
+				add(p);
+		}
+
+		public void personRemoved(Person p) {
+			if (notes != null)
+				remove(p);
+		}
+
+		public void marriageAdded(Marriage m) {
+		}
+
+		public void marriageRemoved(Marriage m) {
+		}
+
+		public void noteAdded(int index, Note n) {
+			if (notes != null)
+				add(n, graph);
+		}
+
+		public void noteRemoved(Note n) {
+			if (notes != null)
+				remove(n);
+		}
+
+		public void graphCleared() {
+			discard();
+		}
+
+		public void graphLoaded() {
+			discard();
+		}
+
+		public void noteAdded(Person p, int index, Note n) {
+			if (notes != null && people.contains(p))
+				add(n, p);
+		}
+
+		public void noteRemoved(Person p, Note n) {
+			if (notes != null && people.contains(p))
+				remove(n);
+		}
+
+		public void textChanged(Note n, String newText) {
+			update(n, newText);
+		}
+
+		public void nameChanged(Person p, String newName) {
+		}
+
+		public void birthYearChanged(Person p, int birthYear) {
+		}
+
+		public void deathYearChanged(Person p, int deathYear) {
+		}
+
+		public void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void yearMarriedChanged(Marriage m, int yearMarried) {
+		}
+
+		public void husbandChanged(Marriage m, Person husband, Person oldHusband) {
+		}
+
+		public void wifeChanged(Marriage m, Person wife, Person oldWife) {
+		}
+
+		public void offspringAdded(Marriage m, Person p) {
+		}
+
+		public void offspringRemoved(Marriage m, Person p) {
+		}
+
+		public void locationChanged(GenealogyElement elem, int x, int y) {
+		}
+
+		public void sizeChanged(GenealogyElement elem, int width, int height) {
+		}
+	}
+}
@@ -0,0 +1,373 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The listener notifications deferred while {@link GenealogyGraph#batch(Runnable)} is
+ * running for a graph on the current thread. A batch applies only to changes made on
+ * that thread to its graph and to the elements in that graph, so batches for different
+ * graphs may be nested without delaying each other. Notifications are merged as they
+ * are queued so that each listener is told about the final state of an element once:
+ * <ul>
+ * <li>a change to a value such as the location or name of an element replaces any
+ * earlier change to that value</li>
+ * <li>a change to a relationship such as the husband of a marriage replaces any earlier
+ * change to that relationship, retaining the original old value, and is discarded if
+ * the relationship ends where it started</li>
+ * <li>a removal cancels an earlier addition of the same element, and a person, marriage,
+ * or note whose addition is cancelled is not mentioned in any notification delivered</li>
+ * <li>clearing or loading the graph discards everything queued before it</li>
+ * </ul>
+ * A notification that replaces an earlier one is moved to the end of the queue so that it
+ * is delivered after any notification on which it depends, such as the addition of the
+ * person that is the new husband of a marriage.
+ */
+final class NotificationBatch
+{
+	// Changes to values
+	static final int LOCATION = 0;
+	static final int SIZE = 1;
+	static final int NAME = 2;
+	static final int BIRTH_YEAR = 3;
+	static final int DEATH_YEAR = 4;
+	static final int YEAR_MARRIED = 5;
+	static final int TEXT = 6;
+
+	// Changes to relationships
+	static final int MARRIAGE = 7;
+	static final int PARENTS_MARRIAGE = 8;
+	static final int HUSBAND = 9;
+	static final int WIFE = 10;
+
+	// Additions and removals, each removal immediately following its addition
+	static final int OFFSPRING_ADDED = 11;
+	static final int OFFSPRING_REMOVED = 12;
+	static final int PERSON_ADDED = 13;
+	static final int PERSON_REMOVED = 14;
+	static final int MARRIAGE_ADDED = 15;
+	static final int MARRIAGE_REMOVED = 16;
+	static final int NOTE_ADDED = 17;
+	static final int NOTE_REMOVED = 18;
+
+	// Replacement of the entire graph content
+	static final int GRAPH_CLEARED = 19;
+	static final int GRAPH_LOADED = 20;
+
+	/**
+	 * The innermost batch running on each thread
+	 */
+	private static final ThreadLocal<NotificationBatch> current = new ThreadLocal<NotificationBatch>();
+
+	/**
+	 * The number of batches running on all threads, so that changes made
+	 * while there are none are not slowed by looking up the current batch
+	 */
+	private static final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * The notifications in the order they are to be delivered,
+	 * with <code>null</code> in place of those merged or cancelled
+	 */
+	private final List<Notification> queue = new ArrayList<Notification>();
+
+	/**
+	 * The notifications queued for each element or graph
+	 */
+	private final Map<Object, List<Notification>> pending = new IdentityHashMap<Object, List<Notification>>();
+
+	/**
+	 * The people, marriages, and notes whose addition has been cancelled by their removal,
+	 * or <code>null</code> if there are none
+	 */
+	private Set<Object> discarded;
+
+	/**
+	 * The graph whose changes are deferred
+	 */
+	private final GenealogyGraph graph;
+
+	/**
+	 * The batch running for another graph on the same thread when the receiver started
+	 */
+	private final NotificationBatch outer;
+
+	private NotificationBatch(GenealogyGraph graph, NotificationBatch outer) {
+		this.graph = graph;
+		this.outer = outer;
+	}
+
+	/**
+	 * Run the specified operation, deferring notifications of changes to the specified
+	 * graph until it completes. If a batch is already running for that graph on the
+	 * current thread, then the operation joins that batch. If a listener throws an
+	 * exception, then the first such exception is thrown once all notifications have
+	 * been delivered, or is suppressed by the exception thrown by the operation.
+	 */
+	static void run(GenealogyGraph graph, Runnable operation) {
+		NotificationBatch outer = running.get() > 0 ? current.get() : null;
+		if (find(outer, graph) != null) {
+			operation.run();
+			return;
+		}
+		NotificationBatch batch = new NotificationBatch(graph, outer);
+		current.set(batch);
+		running.incrementAndGet();
+		Throwable thrown = null;
+		try {
+			operation.run();
+		}
+		catch (RuntimeException e) {
+			thrown = e;
+			throw e;
+		}
+		catch (Error e) {
+			thrown = e;
+			throw e;
+		}
+		finally {
+			running.decrementAndGet();
+			if (outer != null)
+				current.set(outer);
+			else
+				current.remove();
+			RuntimeException failure = batch.deliver();
+			if (failure != null) {
+				if (thrown != null)
+					thrown.addSuppressed(failure);
+				else
+					throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Queue the specified notification if a batch is running on the current thread for
+	 * the graph that is or contains the specified source.
+	 *
+	 * @return <code>true</code> if the notification was queued, or <code>false</code> if
+	 *         the caller should notify its listeners immediately
+	 */
+	static boolean defer(Object source, int event, Object value, Object oldValue, int i, int j) {
+		if (running.get() == 0)
+			return false;
+		GenealogyGraph graph = source instanceof GenealogyElement
+			? ((GenealogyElement) source).graph
+			: (GenealogyGraph) source;
+		if (graph == null)
+			return false;
+		NotificationBatch batch = find(current.get(), graph);
+		if (batch == null)
+			return false;
+		batch.queue(source, event, value, oldValue, i, j);
+		return true;
+	}
+
+	/**
+	 * Answer the batch for the specified graph among the specified batch and those
+	 * outside it, or <code>null</code> if there is none
+	 */
+	private static NotificationBatch find(NotificationBatch batch, GenealogyGraph graph) {
+		while (batch != null && batch.graph != graph)
+			batch = batch.outer;
+		return batch;
+	}
+
+	private void queue(Object source, int event, Object value, Object oldValue, int i, int j) {
+		Notification n;
+		switch (event) {
+			case GRAPH_CLEARED :
+			case GRAPH_LOADED :
+				queue.clear();
+				pending.clear();
+				discarded = null;
+				break;
+
+			case PERSON_ADDED :
+			case MARRIAGE_ADDED :
+			case NOTE_ADDED :
+				if (discarded != null)
+					discarded.remove(value);
+				break;
+
+			case PERSON_REMOVED :
+			case MARRIAGE_REMOVED :
+				n = find(source, event - 1, value);
+				if (n != null) {
+					cancel(n);
+					discard(value);
+					return;
+				}
+				break;
+
+			case OFFSPRING_REMOVED :
+				n = find(source, event - 1, value);
+				if (n != null) {
+					cancel(n);
+					return;
+				}
+				break;
+
+			case NOTE_REMOVED :
+				// Note additions carry an index, so only cancel an addition
+				// if no other note of the same container has changed since
+				n = findLastNoteChange(source);
+				if (n != null && n.event == NOTE_ADDED && n.value == value) {
+					cancel(n);
+					discard(value);
+					return;
+				}
+				break;
+
+			case MARRIAGE :
+			case PARENTS_MARRIAGE :
+			case HUSBAND :
+			case WIFE :
+				n = find(source, event, null);
+				if (n != null) {
+					if (value == n.oldValue)
+						cancel(n);
+					else {
+						n.value = value;
+						moveToEnd(n);
+					}
+					return;
+				}
+				break;
+
+			default :
+				if (event <= TEXT) {
+					n = find(source, event, null);
+					if (n != null) {
+						n.value = value;
+						n.i = i;
+						n.j = j;
+						moveToEnd(n);
+						return;
+					}
+				}
+				break;
+		}
+		n = new Notification(source, event, value, oldValue, i, j);
+		n.position = queue.size();
+		queue.add(n);
+		List<Notification> list = pending.get(source);
+		if (list == null) {
+			list = new ArrayList<Notification>(4);
+			pending.put(source, list);
+		}
+		list.add(n);
+	}
+
+	/**
+	 * Answer the notification queued for the specified source with the specified event
+	 * and, unless the specified value is <code>null</code>, the specified value.
+	 */
+	private Notification find(Object source, int event, Object value) {
+		List<Notification> list = pending.get(source);
+		if (list == null)
+			return null;
+		for (int k = list.size() - 1; k >= 0; k--) {
+			Notification n = list.get(k);
+			if (n.event == event && (value == null || n.value == value))
+				return n;
+		}
+		return null;
+	}
+
+	private Notification findLastNoteChange(Object source) {
+		List<Notification> list = pending.get(source);
+		if (list == null)
+			return null;
+		for (int k = list.size() - 1; k >= 0; k--) {
+			Notification n = list.get(k);
+			if (n.event == NOTE_ADDED || n.event == NOTE_REMOVED)
+				return n;
+		}
+		return null;
+	}
+
+	private void moveToEnd(Notification n) {
+		queue.set(n.position, null);
+		n.position = queue.size();
+		queue.add(n);
+	}
+
+	private void cancel(Notification n) {
+		queue.set(n.position, null);
+		pending.get(n.source).remove(n);
+	}
+
+	/**
+	 * Record that the addition of the specified element has been cancelled, so that
+	 * notifications about that element or referring to it are not delivered unless it is
+	 * added again. Those notifications are retained until delivery rather than discarded
+	 * now so that a later change reversing one of them can still cancel it.
+	 */
+	private void discard(Object elem) {
+		if (discarded == null)
+			discarded = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		discarded.add(elem);
+	}
+
+	/**
+	 * Deliver the queued notifications to the listeners registered at the time of
+	 * delivery. Changes made by those listeners notify their own listeners immediately.
+	 * Each notification is delivered separately so that an exception thrown by one
+	 * listener does not prevent the remaining notifications from being delivered.
+	 *
+	 * @return the first exception thrown by a listener, to which any later exceptions
+	 *         have been added as suppressed, or <code>null</code> if none was thrown
+	 */
+	private RuntimeException deliver() {
+		RuntimeException failure = null;
+		for (Notification n : queue) {
+			if (n == null || discarded != null && (discarded.contains(n.source) || discarded.contains(n.value)))
+				continue;
+			try {
+				n.deliver();
+			}
+			catch (RuntimeException e) {
+				if (failure == null)
+					failure = e;
+				else
+					failure.addSuppressed(e);
+			}
+		}
+		return failure;
+	}
+
+	private static final class Notification
+	{
+		final Object source;
+		final int event;
+		Object value;
+		final Object oldValue;
+		int i, j;
+		int position;
+
+		Notification(Object source, int event, Object value, Object oldValue, int i, int j) {
+			this.source = source;
+			this.event = event;
+			this.value = value;
+			this.oldValue = oldValue;
+			this.i = i;
+			this.j = j;
+		}
+
+		void deliver() {
+			if (event == LOCATION)
+				((GenealogyElement) source).dispatchLocation(i, j);
+			else if (event == SIZE)
+				((GenealogyElement) source).dispatchSize(i, j);
+			else if (source instanceof Person)
+				((Person) source).dispatch(event, value, oldValue, i);
+			else if (source instanceof Marriage)
+				((Marriage) source).dispatch(event, value, oldValue, i);
+			else if (source instanceof Note)
+				((Note) source).dispatch(event, value, oldValue, i);
+			else
+				((GenealogyGraph) source).dispatch(event, value, oldValue, i);
+		}
+	}
+}
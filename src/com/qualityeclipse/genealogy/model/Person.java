@@ -2,6 +2,8 @@ package com.qualityeclipse.genealogy.model;
 
 import java.util.*;
 
+import com.qualityeclipse.genealogy.model.connection.GenealogyConnection;
+import com.qualityeclipse.genealogy.model.listener.GenealogyGraphElementListener;
 import com.qualityeclipse.genealogy.model.listener.PersonListener;
 
 /**
@@ -20,8 +22,12 @@ public class Person extends GenealogyElement
 	private int deathYear = -1;
 	private Marriage marriage;
 	private Marriage parentsMarriage;
-	private final List<Note> notes = new ArrayList<Note>();
-	private final Collection<PersonListener> listeners = new HashSet<PersonListener>();
+	private GenealogyConnection spouseConnection;
+	private GenealogyConnection offspringConnection;
+	private List<Note> notes = Collections.emptyList();
+	private UnresolvedLinks links;
+	private static final PersonListener[] NO_LISTENERS = new PersonListener[0];
+	private final ListenerList<PersonListener> listeners = new ListenerList<PersonListener>(NO_LISTENERS);
 
 	public Person(Gender gender) {
 		this.gender = gender;
@@ -43,9 +49,9 @@ public class Person extends GenealogyElement
 			newName = "";
 		if (name.equals(newName))
 			return false;
+		willChange();
 		name = newName;
-		for (PersonListener l : listeners)
-			l.nameChanged(newName);
+		fire(NotificationBatch.NAME, newName, null, 0);
 		return true;
 	}
 
@@ -59,9 +65,9 @@ public class Person extends GenealogyElement
 	public boolean setBirthYear(int newBirthYear) {
 		if (birthYear == newBirthYear)
 			return false;
+		willChange();
 		birthYear = newBirthYear;
-		for (PersonListener l : listeners)
-			l.birthYearChanged(birthYear);
+		fire(NotificationBatch.BIRTH_YEAR, null, null, birthYear);
 		return true;
 	}
 
@@ -72,9 +78,9 @@ public class Person extends GenealogyElement
 	public boolean setDeathYear(int newDeathYear) {
 		if (deathYear == newDeathYear)
 			return false;
+		willChange();
 		deathYear = newDeathYear;
-		for (PersonListener l : listeners)
-			l.deathYearChanged(deathYear);
+		fire(NotificationBatch.DEATH_YEAR, null, null, deathYear);
 		return true;
 	}
 
@@ -86,6 +92,7 @@ public class Person extends GenealogyElement
 	 * if this person is not currently a husband or wife
 	 */
 	public Marriage getMarriage() {
+		resolveLinks();
 		return marriage;
 	}
 
@@ -94,8 +101,10 @@ public class Person extends GenealogyElement
 	 * this person is not currently a husband or wife
 	 */
 	public boolean setMarriage(Marriage newMarriage) {
+		resolveLinks();
 		if (marriage == newMarriage)
 			return false;
+		willChange();
 		final Marriage oldMarriage = marriage;
 		if (marriage != null) {
 			marriage = null;
@@ -111,8 +120,7 @@ public class Person extends GenealogyElement
 			else
 				marriage.setWife(this);
 		}
-		for (PersonListener l : listeners)
-			l.marriageChanged(marriage, oldMarriage);
+		fire(NotificationBatch.MARRIAGE, marriage, oldMarriage, 0);
 		return true;
 	}
 
@@ -121,6 +129,7 @@ public class Person extends GenealogyElement
 	 * this person is not currently recorded as an offspring.
 	 */
 	public Marriage getParentsMarriage() {
+		resolveLinks();
 		return parentsMarriage;
 	}
 
@@ -129,8 +138,10 @@ public class Person extends GenealogyElement
 	 * person is not currently recorded as an offspring.
 	 */
 	public boolean setParentsMarriage(Marriage newParentMarriage) {
+		resolveLinks();
 		if (parentsMarriage == newParentMarriage)
 			return false;
+		willChange();
 		final Marriage oldParentMarriage = parentsMarriage;
 		if (parentsMarriage != null) {
 			parentsMarriage = null;
@@ -139,39 +150,146 @@ public class Person extends GenealogyElement
 		parentsMarriage = newParentMarriage;
 		if (parentsMarriage != null)
 			parentsMarriage.addOffspring(this);
-		for (PersonListener l : listeners)
-			l.parentsMarriageChanged(parentsMarriage, oldParentMarriage);
+		fire(NotificationBatch.PARENTS_MARRIAGE, parentsMarriage, oldParentMarriage, 0);
 		return true;
 	}
 
+	/**
+	 * Answer the connection between this person and the marriage for which this person is
+	 * a husband or wife, or <code>null</code> if this person is not currently a husband or
+	 * wife. The same instance is answered for as long as this person is a spouse in the
+	 * same marriage.
+	 */
+	public GenealogyConnection getSpouseConnection() {
+		Marriage m = getMarriage();
+		if (m == null)
+			return null;
+		if (spouseConnection == null || spouseConnection.marriage != m)
+			spouseConnection = new GenealogyConnection(this, m, false);
+		return spouseConnection;
+	}
+
+	/**
+	 * Answer the connection between this person and the marriage for which this person is
+	 * an offspring, or <code>null</code> if this person is not currently recorded as an
+	 * offspring. The same instance is answered for as long as this person is an offspring
+	 * of the same marriage.
+	 */
+	public GenealogyConnection getOffspringConnection() {
+		Marriage m = getParentsMarriage();
+		if (m == null)
+			return null;
+		if (offspringConnection == null || offspringConnection.marriage != m)
+			offspringConnection = new GenealogyConnection(this, m, true);
+		return offspringConnection;
+	}
+
 	//============================================================
 	// Notes
 
+	/**
+	 * Answer the notes of this person. The list must not be modified directly, and an
+	 * immutable empty list is answered if this person has never had notes.
+	 */
 	public List<Note> getNotes() {
+		resolveLinks();
 		return notes;
 	}
 
 	public boolean addNote(Note n) {
-		return addNote(notes.size(), n);
+		return addNote(getNotes().size(), n);
 	}
 
 	public boolean addNote(int index, Note n) {
+		resolveLinks();
 		if (n == null || notes.contains(n))
 			return false;
+		willChange();
+		if (notes == Collections.<Note> emptyList())
+			notes = new ArrayList<Note>(2);
 		notes.add(index, n);
-		for (PersonListener l : listeners)
-			l.noteAdded(index, n);
+		n.setGraph(graph);
+		fire(NotificationBatch.NOTE_ADDED, n, null, index);
 		return true;
 	}
 
 	public boolean removeNote(Note n) {
-		if (n == null || !notes.remove(n))
+		resolveLinks();
+		if (n == null || !notes.contains(n))
 			return false;
-		for (PersonListener l : listeners)
-			l.noteRemoved(n);
+		willChange();
+		notes.remove(n);
+		n.setGraph(null);
+		fire(NotificationBatch.NOTE_REMOVED, n, null, 0);
 		return true;
 	}
 
+	//============================================================
+	// Bulk Loading
+
+	/**
+	 * Set the name, birth year, and death year without notifying listeners.
+	 * Used by {@link GenealogyGraph.BulkLoad} while loading a graph.
+	 */
+	void load(String newName, int newBirthYear, int newDeathYear) {
+		name = newName != null ? newName : "";
+		birthYear = newBirthYear;
+		deathYear = newDeathYear;
+	}
+
+	/**
+	 * Add a note without notifying listeners. Used by {@link GenealogyGraph.BulkLoad}.
+	 */
+	void loadNote(Note n) {
+		if (notes == Collections.<Note> emptyList())
+			notes = new ArrayList<Note>(2);
+		notes.add(n);
+		n.graph = graph;
+	}
+
+	/**
+	 * Set the marriage for which this person is a husband or wife without updating the
+	 * marriage or notifying listeners. Used by {@link GenealogyGraph.BulkLoad}.
+	 */
+	void loadMarriage(Marriage newMarriage) {
+		marriage = newMarriage;
+	}
+
+	/**
+	 * Set the marriage for which this person is an offspring without updating the
+	 * marriage or notifying listeners. Used by {@link GenealogyGraph.BulkLoad}.
+	 */
+	void loadParentsMarriage(Marriage newParentsMarriage) {
+		parentsMarriage = newParentsMarriage;
+	}
+
+	/**
+	 * Record the marriage, parents' marriage, and notes of a person created by a
+	 * {@link GenealogyElementSource} so that they can be resolved when first accessed.
+	 */
+	void setUnresolvedLinks(UnresolvedLinks newLinks) {
+		links = newLinks;
+	}
+
+	/**
+	 * Resolve the marriage, parents' marriage, and notes of a person created by a
+	 * {@link GenealogyElementSource}. This has no effect if they are already resolved.
+	 */
+	void resolveLinks() {
+		UnresolvedLinks l = links;
+		if (l == null)
+			return;
+		willChange();
+		links = null;
+		int[] refs = l.refs;
+		if (refs[0] != -1)
+			marriage = l.source.getMarriage(refs[0]);
+		if (refs[1] != -1)
+			parentsMarriage = l.source.getMarriage(refs[1]);
+		for (int i = 0; i < refs[3]; i++)
+			loadNote(l.source.getNote(refs[2] + i));
+	}
+
 	//============================================================
 	// Listeners
 	
@@ -182,17 +300,100 @@ public class Person extends GenealogyElement
 	public void removePersonListener(PersonListener l) {
 		listeners.remove(l);
 	}
+
+	/**
+	 * Notify listeners of a change, or queue the notification if a batch is running
+	 * 
+	 * @see GenealogyGraph#batch(Runnable)
+	 */
+	private void fire(int event, Object value, Object oldValue, int i) {
+		if (!NotificationBatch.defer(this, event, value, oldValue, i, 0))
+			dispatch(event, value, oldValue, i);
+	}
+
+	/**
+	 * Notify the listeners of the receiver and of the graph containing it of a change.
+	 * Called immediately or when a batch completes.
+	 */
+	void dispatch(int event, Object value, Object oldValue, int i) {
+		switch (event) {
+			case NotificationBatch.NAME :
+				for (PersonListener l : listeners.get())
+					l.nameChanged((String) value);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.nameChanged(this, (String) value);
+				break;
+			case NotificationBatch.BIRTH_YEAR :
+				for (PersonListener l : listeners.get())
+					l.birthYearChanged(i);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.birthYearChanged(this, i);
+				break;
+			case NotificationBatch.DEATH_YEAR :
+				for (PersonListener l : listeners.get())
+					l.deathYearChanged(i);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.deathYearChanged(this, i);
+				break;
+			case NotificationBatch.MARRIAGE :
+				for (PersonListener l : listeners.get())
+					l.marriageChanged((Marriage) value, (Marriage) oldValue);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.marriageChanged(this, (Marriage) value, (Marriage) oldValue);
+				break;
+			case NotificationBatch.PARENTS_MARRIAGE :
+				for (PersonListener l : listeners.get())
+					l.parentsMarriageChanged((Marriage) value, (Marriage) oldValue);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.parentsMarriageChanged(this, (Marriage) value, (Marriage) oldValue);
+				break;
+			case NotificationBatch.NOTE_ADDED :
+				for (PersonListener l : listeners.get())
+					l.noteAdded(i, (Note) value);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.noteAdded(this, i, (Note) value);
+				break;
+			case NotificationBatch.NOTE_REMOVED :
+				for (PersonListener l : listeners.get())
+					l.noteRemoved((Note) value);
+				for (GenealogyGraphElementListener l : getGraphListeners())
+					l.noteRemoved(this, (Note) value);
+				break;
+		}
+	}
 	
 	//============================================================
 	// GenealogyElement
 
+	/**
+	 * Record the graph containing the receiver and its notes. Notes that have not yet been
+	 * resolved from a source are recorded when they are resolved.
+	 */
+	void setGraph(GenealogyGraph newGraph) {
+		super.setGraph(newGraph);
+		for (Note n : notes)
+			n.setGraph(newGraph);
+	}
+
+	void saveState(ElementState state) {
+		super.saveState(state);
+		state.gender = gender;
+		state.name = name;
+		state.birthYear = birthYear;
+		state.deathYear = deathYear;
+		if (links != null)
+			state.refs = links.refs;
+		else
+			state.notes = new ArrayList<Note>(notes);
+	}
+
 	protected void fireLocationChanged(int newX, int newY) {
-		for (PersonListener l : listeners)
+		for (PersonListener l : listeners.get())
 			l.locationChanged(newX, newY);
 	}
 
 	protected void fireSizeChanged(int newWidth, int newHeight) {
-		for (PersonListener l : listeners)
+		for (PersonListener l : listeners.get())
 			l.sizeChanged(newWidth, newHeight);
 	}
 }
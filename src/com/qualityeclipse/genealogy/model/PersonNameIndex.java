@@ -0,0 +1,423 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * An index of the people in a {@link GenealogyGraph} by the words of their names, used to
+ * find people by the start of any of those words or by how those words sound. Words are
+ * compared without regard to case, so "sch" finds "John Schmidt", and "Smyth" sounds the
+ * same as "Smith" because the words have the same Soundex code.
+ * <p>
+ * The index is built when first searched and is then kept up to date by listening to the
+ * graph for people being added and removed and for changes to the names of the people in
+ * it, without listening to each person. It is discarded when the entire content of the
+ * graph is replaced and built again when next searched. Call {@link #dispose()} when the
+ * index is no longer needed so that it stops listening to the graph.
+ */
+public final class PersonNameIndex
+{
+	/**
+	 * The Soundex digit for each letter A to Z, where zero is a letter that is not coded
+	 */
+	private static final String SOUNDEX_DIGITS = "01230120022455012623010202";
+
+	private final GenealogyGraph graph;
+	private final GraphTracker graphTracker = new GraphTracker();
+
+	/**
+	 * The people with each word in their names,
+	 * or <code>null</code> if the index has not been built
+	 */
+	private Map<String, List<Person>> words;
+
+	/**
+	 * The words in the index when it was built or last sorted, in order. A word in this
+	 * array may no longer be in the index, and words added since are held in
+	 * {@link #newWords} so that adding a word does not copy this array.
+	 */
+	private String[] sortedWords;
+
+	/**
+	 * Words added to the index since {@link #sortedWords} was sorted
+	 */
+	private TreeSet<String> newWords;
+
+	/**
+	 * The people with a word in their names having each Soundex code
+	 */
+	private Map<String, List<Person>> sounds;
+
+	/**
+	 * The name by which each person is indexed
+	 */
+	private Map<Person, String> people;
+
+	public PersonNameIndex(GenealogyGraph graph) {
+		this.graph = graph;
+		graph.addGenealogyGraphListener(graphTracker);
+		graph.addElementListener(graphTracker);
+	}
+
+	/**
+	 * Stop listening to the graph and discard the index
+	 */
+	public void dispose() {
+		graph.removeGenealogyGraphListener(graphTracker);
+		graph.removeElementListener(graphTracker);
+		discard();
+	}
+
+	//============================================================
+	// Searching
+
+	/**
+	 * Answer the people for whom each word in the specified text is the start of a word
+	 * in that person's name, in order by the word matching the first word of the text.
+	 *
+	 * @param text one or more words, such as "jo sch"
+	 * @param limit the maximum number of people answered
+	 */
+	public List<Person> findByPrefix(String text, int limit) {
+		List<String> query = split(text);
+		List<Person> result = new ArrayList<Person>();
+		if (query.isEmpty() || limit <= 0)
+			return result;
+		build();
+		String first = query.get(0);
+		String last = first + Character.MAX_VALUE;
+		Set<Person> seen = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+
+		// Merge the matching sorted and new words so that they are visited in order
+		int index = Arrays.binarySearch(sortedWords, first);
+		if (index < 0)
+			index = -index - 1;
+		Iterator<String> added = newWords.subSet(first, last).iterator();
+		String nextAdded = added.hasNext() ? added.next() : null;
+		while (true) {
+			String word;
+			if (index < sortedWords.length && sortedWords[index].startsWith(first)
+				&& (nextAdded == null || sortedWords[index].compareTo(nextAdded) < 0))
+				word = sortedWords[index++];
+			else if (nextAdded != null) {
+				word = nextAdded;
+				nextAdded = added.hasNext() ? added.next() : null;
+			}
+			else
+				return result;
+			List<Person> list = words.get(word);
+			if (list == null)
+				continue;
+			for (Person p : list) {
+				if (seen.add(p) && matchesAll(p, query)) {
+					result.add(p);
+					if (result.size() == limit)
+						return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Answer the people with a word in their names that sounds like each word
+	 * in the specified text
+	 *
+	 * @param text one or more words, such as "Smyth"
+	 * @param limit the maximum number of people answered
+	 */
+	public List<Person> findBySound(String text, int limit) {
+		List<String> query = split(text);
+		List<Person> result = new ArrayList<Person>();
+		if (query.isEmpty() || limit <= 0)
+			return result;
+		build();
+		List<String> codes = new ArrayList<String>(query.size());
+		for (String word : query) {
+			String code = soundex(word);
+			if (code == null)
+				return result;
+			codes.add(code);
+		}
+		List<Person> list = sounds.get(codes.get(0));
+		if (list == null)
+			return result;
+		Set<Person> seen = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+		for (Person p : list) {
+			if (seen.add(p) && soundsLikeAll(p, codes)) {
+				result.add(p);
+				if (result.size() == limit)
+					break;
+			}
+		}
+		return result;
+	}
+
+	private boolean matchesAll(Person p, List<String> query) {
+		if (query.size() == 1)
+			return true;
+		List<String> name = split(people.get(p));
+		for (String q : query) {
+			boolean found = false;
+			for (String word : name)
+				if (word.startsWith(q)) {
+					found = true;
+					break;
+				}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	private boolean soundsLikeAll(Person p, List<String> codes) {
+		if (codes.size() == 1)
+			return true;
+		Set<String> name = new HashSet<String>();
+		for (String word : split(people.get(p)))
+			name.add(soundex(word));
+		return name.containsAll(codes);
+	}
+
+	//============================================================
+	// Indexing
+
+	/**
+	 * Build the index if it has not already been built, and sort the words added since
+	 * the index was last sorted if there are enough of them to slow searching
+	 */
+	private void build() {
+		if (words == null) {
+			int size = graph.getPeople().size();
+			words = new HashMap<String, List<Person>>(size * 2);
+			sounds = new HashMap<String, List<Person>>();
+			people = new IdentityHashMap<Person, String>(size);
+			newWords = new TreeSet<String>();
+			for (Person p : graph.getPeople())
+				add(p);
+		}
+		else if (newWords.size() <= 1024 + sortedWords.length / 16)
+			return;
+		sortedWords = words.keySet().toArray(new String[words.size()]);
+		Arrays.sort(sortedWords);
+		newWords.clear();
+	}
+
+	private void discard() {
+		words = null;
+		sortedWords = null;
+		newWords = null;
+		sounds = null;
+		people = null;
+	}
+
+	private void add(Person p) {
+		if (people.containsKey(p))
+			return;
+		String name = p.getName();
+		people.put(p, name);
+		index(p, name);
+	}
+
+	private void remove(Person p) {
+		if (people.containsKey(p))
+			unindex(p, people.remove(p));
+	}
+
+	/**
+	 * Reindex a person in the index whose name has changed
+	 */
+	private void rename(Person p, String newName) {
+		if (words == null || !people.containsKey(p))
+			return;
+		unindex(p, people.put(p, newName));
+		index(p, newName);
+	}
+
+	private void index(Person p, String name) {
+		for (String word : split(name)) {
+			if (put(words, word, p) && sortedWords != null)
+				newWords.add(word);
+			String code = soundex(word);
+			if (code != null)
+				put(sounds, code, p);
+		}
+	}
+
+	private void unindex(Person p, String name) {
+		for (String word : split(name)) {
+			remove(words, word, p);
+			String code = soundex(word);
+			if (code != null)
+				remove(sounds, code, p);
+		}
+	}
+
+	/**
+	 * Add the specified person to the list for the specified key
+	 * 
+	 * @return <code>true</code> if the key is new
+	 */
+	private static boolean put(Map<String, List<Person>> map, String key, Person p) {
+		List<Person> list = map.get(key);
+		if (list != null) {
+			list.add(p);
+			return false;
+		}
+		list = new ArrayList<Person>(1);
+		list.add(p);
+		map.put(key, list);
+		return true;
+	}
+
+	private static void remove(Map<String, List<Person>> map, String key, Person p) {
+		List<Person> list = map.get(key);
+		if (list == null)
+			return;
+		for (int i = list.size() - 1; i >= 0; i--)
+			if (list.get(i) == p) {
+				list.remove(i);
+				break;
+			}
+		if (list.isEmpty())
+			map.remove(key);
+	}
+
+	/**
+	 * Answer the lower case words in the specified text,
+	 * which are separated by anything other than a letter or digit
+	 */
+	static List<String> split(String text) {
+		List<String> result = new ArrayList<String>(2);
+		int length = text.length();
+		int start = -1;
+		for (int i = 0; i <= length; i++) {
+			boolean inWord = i < length && Character.isLetterOrDigit(text.charAt(i));
+			if (inWord && start == -1)
+				start = i;
+			else if (!inWord && start != -1) {
+				result.add(text.substring(start, i).toLowerCase(Locale.ENGLISH));
+				start = -1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Answer the American Soundex code of the specified word, such as "S530" for both
+	 * "smith" and "smyth", or <code>null</code> if the word contains no letter A to Z
+	 */
+	static String soundex(String word) {
+		char[] code = new char[] {
+			0, '0', '0', '0'
+		};
+		int count = 0;
+		char last = 0;
+		for (int i = 0; i < word.length() && count < 4; i++) {
+			char ch = Character.toUpperCase(word.charAt(i));
+			if (ch < 'A' || ch > 'Z')
+				continue;
+			char digit = SOUNDEX_DIGITS.charAt(ch - 'A');
+			if (count == 0) {
+				code[count++] = ch;
+				last = digit;
+			}
+			else if (digit == '0') {
+				// Vowels separate letters having the same code, but H and W do not
+				if (ch != 'H' && ch != 'W')
+					last = digit;
+			}
+			else if (digit != last) {
+				code[count++] = digit;
+				last = digit;
+			}
+		}
+		return count == 0 ? null : new String(code);
+	}
+
+	//============================================================
+	// Listeners
+
+	/**
+	 * Keeps the index up to date as people are added, removed, and renamed
+	 */
+	private final class GraphTracker
+		implements GenealogyGraphListener, GenealogyGraphElementListener
+	{
+		public void personAdded(Person p) {
+			if (words != null)
+				add(p);
+		}
+
+		public void personRemoved(Person p) {
+			if (words != null)
+				remove(p);
+		}
+
+		public void nameChanged(Person p, String newName) {
+			rename(p, newName);
+		}
+
+		public void marriageAdded(Marriage m) {
+		}
+
+		public void marriageRemoved(Marriage m) {
+		}
+
+		public void noteAdded(int index, Note n) {
+		}
+
+		public void noteRemoved(Note n) {
+		}
+
+		public void graphCleared() {
+			discard();
+		}
+
+		public void graphLoaded() {
+			discard();
+		}
+
+		public void birthYearChanged(Person p, int birthYear) {
+		}
+
+		public void deathYearChanged(Person p, int deathYear) {
+		}
+
+		public void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void noteAdded(Person p, int index, Note n) {
+		}
+
+		public void noteRemoved(Person p, Note n) {
+		}
+
+		public void yearMarriedChanged(Marriage m, int yearMarried) {
+		}
+
+		public void husbandChanged(Marriage m, Person husband, Person oldHusband) {
+		}
+
+		public void wifeChanged(Marriage m, Person wife, Person oldWife) {
+		}
+
+		public void offspringAdded(Marriage m, Person p) {
+		}
+
+		public void offspringRemoved(Marriage m, Person p) {
+		}
+
+		public void textChanged(Note n, String newText) {
+		}
+
+		public void locationChanged(GenealogyElement elem, int x, int y) {
+		}
+
+		public void sizeChanged(GenealogyElement elem, int width, int height) {
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+/**
+ * The relationship of one person to another, such as "wife", "grandfather", "half-sister",
+ * or "second cousin twice removed". Blood relationships are determined by the nearest
+ * common ancestors of the two people, which are found by searching the ancestors of both
+ * people one generation at a time, always extending the search that has covered fewer
+ * generations, until no undiscovered common ancestor could be nearer than those already
+ * found. The cost of a query therefore depends upon how closely the two people are
+ * related rather than upon the depth of the tree. Nothing is remembered between queries,
+ * so each relationship reflects the graph as it is when requested.
+ */
+public final class Relationship
+{
+	private static final String[] ORDINALS = {
+		"zeroth", "first", "second", "third", "fourth", "fifth", "sixth", "seventh", "eighth",
+		"ninth", "tenth"
+	};
+
+	private final Person first;
+	private final Person second;
+	private final int firstGenerations;
+	private final int secondGenerations;
+	private final List<Person> commonAncestors;
+	private final boolean spouse;
+
+	private Relationship(Person first, Person second, int firstGenerations, int secondGenerations,
+		List<Person> commonAncestors, boolean spouse)
+	{
+		this.first = first;
+		this.second = second;
+		this.firstGenerations = firstGenerations;
+		this.secondGenerations = secondGenerations;
+		this.commonAncestors = Collections.unmodifiableList(commonAncestors);
+		this.spouse = spouse;
+	}
+
+	/**
+	 * Answer the relationship of the second person to the first,
+	 * or <code>null</code> if they are not related
+	 *
+	 * @param first the person to whom the relationship is described (not <code>null</code>)
+	 * @param second the person whose relationship is described (not <code>null</code>)
+	 */
+	public static Relationship between(Person first, Person second) {
+		if (first == second)
+			return new Relationship(first, second, 0, 0, Collections.singletonList(first), false);
+		Marriage m = first.getMarriage();
+		if (m != null && m == second.getMarriage())
+			return new Relationship(first, second, -1, -1, Collections.<Person> emptyList(), true);
+		return new Search(first, second).run();
+	}
+
+	/**
+	 * A search of the ancestors of two people for their nearest common ancestors
+	 */
+	private static final class Search
+	{
+		private final Person first;
+		private final Person second;
+		private final Map<Person, Integer> firstDistances = new IdentityHashMap<Person, Integer>();
+		private final Map<Person, Integer> secondDistances = new IdentityHashMap<Person, Integer>();
+		private List<Person> firstFrontier = new ArrayList<Person>();
+		private List<Person> secondFrontier = new ArrayList<Person>();
+		private int firstLevel, secondLevel;
+		private int best = Integer.MAX_VALUE;
+		private final List<Person> found = new ArrayList<Person>();
+
+		Search(Person first, Person second) {
+			this.first = first;
+			this.second = second;
+			firstDistances.put(first, 0);
+			secondDistances.put(second, 0);
+			firstFrontier.add(first);
+			secondFrontier.add(second);
+		}
+
+		Relationship run() {
+			while (true) {
+				// A common ancestor not yet found must be more than
+				// one of the levels already searched away from its person
+				boolean extendFirst = !firstFrontier.isEmpty();
+				boolean extendSecond = !secondFrontier.isEmpty();
+				if (extendFirst && extendSecond) {
+					extendFirst = firstLevel <= secondLevel;
+					extendSecond = !extendFirst;
+				}
+				if (extendFirst) {
+					if (firstLevel + 1 > best)
+						break;
+					firstFrontier = extend(firstFrontier, ++firstLevel, firstDistances, secondDistances);
+				}
+				else if (extendSecond) {
+					if (secondLevel + 1 > best)
+						break;
+					secondFrontier = extend(secondFrontier, ++secondLevel, secondDistances, firstDistances);
+				}
+				else
+					break;
+			}
+			if (found.isEmpty())
+				return null;
+
+			// Of the nearest common ancestors, prefer those
+			// most nearly the same number of generations from each person
+			int firstGenerations = 0;
+			int difference = Integer.MAX_VALUE;
+			for (Person p : found) {
+				int distance = firstDistances.get(p);
+				int d = Math.abs(best - 2 * distance);
+				if (d < difference) {
+					difference = d;
+					firstGenerations = distance;
+				}
+			}
+			List<Person> ancestors = new ArrayList<Person>(2);
+			for (Person p : found)
+				if (firstDistances.get(p) == firstGenerations)
+					ancestors.add(p);
+			return new Relationship(first, second, firstGenerations, best - firstGenerations, ancestors, false);
+		}
+
+		/**
+		 * Answer the parents of the specified people not already found by this side
+		 * of the search, recording any that have already been found by the other side.
+		 */
+		private List<Person> extend(List<Person> frontier, int level, Map<Person, Integer> distances,
+			Map<Person, Integer> otherDistances)
+		{
+			List<Person> next = new ArrayList<Person>(frontier.size() * 2);
+			for (Person p : frontier) {
+				Marriage m = p.getParentsMarriage();
+				if (m == null)
+					continue;
+				visit(m.getHusband(), level, distances, otherDistances, next);
+				visit(m.getWife(), level, distances, otherDistances, next);
+			}
+			return next;
+		}
+
+		private void visit(Person parent, int level, Map<Person, Integer> distances,
+			Map<Person, Integer> otherDistances, List<Person> next)
+		{
+			if (parent == null || distances.containsKey(parent))
+				return;
+			distances.put(parent, level);
+			next.add(parent);
+			Integer otherLevel = otherDistances.get(parent);
+			if (otherLevel == null)
+				return;
+			int total = level + otherLevel;
+			if (total < best) {
+				best = total;
+				found.clear();
+			}
+			if (total == best)
+				found.add(parent);
+		}
+	}
+
+	//============================================================
+	// Accessors
+
+	public Person getFirst() {
+		return first;
+	}
+
+	public Person getSecond() {
+		return second;
+	}
+
+	/**
+	 * Answer <code>true</code> if the two people are husband and wife
+	 */
+	public boolean isSpouse() {
+		return spouse;
+	}
+
+	/**
+	 * Answer the number of generations from the first person to the common ancestors,
+	 * or -1 if the two people are related only by marriage
+	 */
+	public int getFirstGenerations() {
+		return firstGenerations;
+	}
+
+	/**
+	 * Answer the number of generations from the second person to the common ancestors,
+	 * or -1 if the two people are related only by marriage
+	 */
+	public int getSecondGenerations() {
+		return secondGenerations;
+	}
+
+	/**
+	 * Answer the nearest common ancestors through which the two people are related,
+	 * which include either person if that person is an ancestor of the other
+	 */
+	public List<Person> getCommonAncestors() {
+		return commonAncestors;
+	}
+
+	/**
+	 * Answer <code>true</code> if the two people share only one of the two parents
+	 * of a sibling, aunt, uncle, or cousin relationship
+	 */
+	public boolean isHalf() {
+		if (spouse || firstGenerations == 0 || secondGenerations == 0)
+			return false;
+		for (Person p : commonAncestors) {
+			Marriage m = p.getMarriage();
+			if (m != null && commonAncestors.contains(m.getHusband()) && commonAncestors.contains(m.getWife()))
+				return false;
+		}
+		return true;
+	}
+
+	//============================================================
+	// Description
+
+	/**
+	 * Answer a description of the relationship of the second person to the first,
+	 * such as "grandmother" or "first cousin once removed"
+	 */
+	public String getDescription() {
+		boolean male = second.getGender() == Person.Gender.MALE;
+		if (spouse)
+			return male ? "husband" : "wife";
+		int up = firstGenerations;
+		int down = secondGenerations;
+		if (up == 0 && down == 0)
+			return "self";
+		if (down == 0)
+			return lineal(up, male ? "father" : "mother");
+		if (up == 0)
+			return lineal(down, male ? "son" : "daughter");
+		String half = isHalf() ? "half-" : "";
+		if (up == 1 && down == 1)
+			return half + (male ? "brother" : "sister");
+		if (down == 1)
+			return half + greats(up - 2) + (male ? "uncle" : "aunt");
+		if (up == 1)
+			return half + greats(down - 2) + (male ? "nephew" : "niece");
+		StringBuilder buf = new StringBuilder();
+		if (half.length() > 0)
+			buf.append("half ");
+		buf.append(ordinal(Math.min(up, down) - 1)).append(" cousin");
+		int removed = Math.abs(up - down);
+		if (removed == 1)
+			buf.append(" once removed");
+		else if (removed == 2)
+			buf.append(" twice removed");
+		else if (removed > 2)
+			buf.append(' ').append(removed).append(" times removed");
+		return buf.toString();
+	}
+
+	/**
+	 * Answer a description of an ancestor or descendant the specified number of
+	 * generations away, such as "mother", "grandson", or "great-great-grandfather"
+	 */
+	private static String lineal(int generations, String parentOrChild) {
+		if (generations == 1)
+			return parentOrChild;
+		return greats(generations - 2) + "grand" + parentOrChild;
+	}
+
+	/**
+	 * Answer the prefix for the specified number of additional generations,
+	 * such as "great-great-" or "5th great-"
+	 */
+	private static String greats(int count) {
+		if (count <= 0)
+			return "";
+		if (count > 3)
+			return numbered(count) + " great-";
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < count; i++)
+			buf.append("great-");
+		return buf.toString();
+	}
+
+	private static String ordinal(int n) {
+		return n < ORDINALS.length ? ORDINALS[n] : numbered(n);
+	}
+
+	/**
+	 * Answer the specified number followed by its ordinal suffix, such as "21st"
+	 */
+	private static String numbered(int n) {
+		if (n % 100 >= 11 && n % 100 <= 13)
+			return n + "th";
+		switch (n % 10) {
+			case 1 :
+				return n + "st";
+			case 2 :
+				return n + "nd";
+			case 3 :
+				return n + "rd";
+			default :
+				return n + "th";
+		}
+	}
+
+	public String toString() {
+		return second.getName() + " is the " + getDescription() + " of " + first.getName();
+	}
+}
@@ -0,0 +1,136 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+/**
+ * The people or marriages of a {@link GenealogyGraph} whose content is supplied by a
+ * {@link GenealogyElementSource}. Elements are requested from the source as the
+ * collection is iterated rather than being held by the collection. Elements removed from
+ * the collection are recorded by index, and elements added to the collection that did
+ * not originate from the source are held separately.
+ */
+abstract class SourceElementCollection<T extends GenealogyElement> extends AbstractCollection<T>
+{
+	private final int count;
+	private final BitSet removed = new BitSet();
+	private int removedCount;
+	private final Collection<T> added = new LinkedHashSet<T>();
+
+	SourceElementCollection(int count) {
+		this.count = count;
+	}
+
+	/**
+	 * Answer the element from the source at the specified index
+	 */
+	protected abstract T get(int index);
+
+	/**
+	 * Answer the number of elements in the source
+	 */
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * Answer a copy of the indices of the source elements that have been removed
+	 */
+	BitSet getRemoved() {
+		return (BitSet) removed.clone();
+	}
+
+	/**
+	 * Answer a copy of the elements added that did not originate from the source, in order
+	 */
+	List<T> getAdded() {
+		return new ArrayList<T>(added);
+	}
+
+	public int size() {
+		return count - removedCount + added.size();
+	}
+
+	public boolean contains(Object o) {
+		if (added.contains(o))
+			return true;
+		int index = indexOf(o);
+		return index != -1 && !removed.get(index);
+	}
+
+	public boolean add(T elem) {
+		if (elem == null || contains(elem))
+			return false;
+		int index = indexOf(elem);
+		if (index != -1) {
+			removed.clear(index);
+			removedCount--;
+		}
+		else
+			added.add(elem);
+		return true;
+	}
+
+	public boolean remove(Object o) {
+		if (added.remove(o))
+			return true;
+		int index = indexOf(o);
+		if (index == -1 || removed.get(index))
+			return false;
+		removed.set(index);
+		removedCount++;
+		return true;
+	}
+
+	/**
+	 * Answer the index of the specified object in the source
+	 * or -1 if the object did not originate from the source.
+	 */
+	private int indexOf(Object o) {
+		if (!(o instanceof GenealogyElement))
+			return -1;
+		int index = ((GenealogyElement) o).sourceIndex;
+		if (index < 0 || index >= count || get(index) != o)
+			return -1;
+		return index;
+	}
+
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int nextIndex = removed.nextClearBit(0);
+			private Iterator<T> addedIter;
+			private T last;
+			private boolean lastAdded;
+
+			public boolean hasNext() {
+				if (nextIndex < count)
+					return true;
+				if (addedIter == null)
+					addedIter = added.iterator();
+				return addedIter.hasNext();
+			}
+
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				lastAdded = nextIndex >= count;
+				if (lastAdded)
+					last = addedIter.next();
+				else {
+					last = get(nextIndex);
+					nextIndex = removed.nextClearBit(nextIndex + 1);
+				}
+				return last;
+			}
+
+			public void remove() {
+				if (last == null)
+					throw new IllegalStateException();
+				if (lastAdded)
+					addedIter.remove();
+				else
+					SourceElementCollection.this.remove(last);
+				last = null;
+			}
+		};
+	}
+}
@@ -0,0 +1,16 @@
+package com.qualityeclipse.genealogy.model;
+
+/**
+ * References from a lazily created {@link Person} or {@link Marriage} to other elements,
+ * recorded as indices into a {@link GenealogyElementSource} until they are first needed.
+ */
+final class UnresolvedLinks
+{
+	final GenealogyElementSource source;
+	final int[] refs;
+
+	UnresolvedLinks(GenealogyElementSource source, int[] refs) {
+		this.source = source;
+		this.refs = refs;
+	}
+}
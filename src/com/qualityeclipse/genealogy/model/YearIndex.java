@@ -0,0 +1,426 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * An index of the people in a {@link GenealogyGraph} by the years in which they were
+ * alive and of the marriages by the year in which they took place, used to find for
+ * example everyone alive in 1850 or every marriage between 1900 and 1920.
+ * <p>
+ * A person is alive from the birth year to the death year inclusive. If only one of those
+ * years is known, the person is assumed to have lived {@link #ASSUMED_LIFESPAN} years, and
+ * a person for whom neither is known is never found, as is a marriage whose year is not
+ * known. Each interval is held in a sorted map by its first year, so a query visits only
+ * the intervals starting between the longest interval before the first year of the query
+ * and the last year of the query. Results are answered lazily as they are iterated, and
+ * the graph must not be modified while iterating.
+ * <p>
+ * The index is built when first searched and is then kept up to date by listening to the
+ * graph for people and marriages being added and removed and for changes to their years,
+ * without listening to each person and marriage. It is discarded when the entire content
+ * of the graph is replaced and built again when next searched. Call {@link #dispose()}
+ * when the index is no longer needed so that it stops listening to the graph.
+ */
+public final class YearIndex
+{
+	/**
+	 * The number of years a person is assumed to have lived
+	 * if only one of the birth and death years is known
+	 */
+	public static final int ASSUMED_LIFESPAN = 100;
+
+	private final GenealogyGraph graph;
+	private final GraphTracker graphTracker = new GraphTracker();
+
+	/**
+	 * The intervals of people and marriages,
+	 * or <code>null</code> if the index has not been built
+	 */
+	private Intervals<Person> lives;
+	private Intervals<Marriage> marriages;
+
+	public YearIndex(GenealogyGraph graph) {
+		this.graph = graph;
+		graph.addGenealogyGraphListener(graphTracker);
+		graph.addElementListener(graphTracker);
+	}
+
+	/**
+	 * Stop listening to the graph and discard the index
+	 */
+	public void dispose() {
+		graph.removeGenealogyGraphListener(graphTracker);
+		graph.removeElementListener(graphTracker);
+		discard();
+	}
+
+	/**
+	 * Parse a single year such as "1850" or a range of years such as "1900-1920"
+	 *
+	 * @return the first and last year, or <code>null</code> if the text is not a year or
+	 *         range of years
+	 */
+	public static int[] parseRange(String text) {
+		text = text.trim();
+		int dash = text.indexOf('-', 1);
+		try {
+			if (dash == -1) {
+				int year = Integer.parseInt(text);
+				return new int[] {
+					year, year
+				};
+			}
+			int first = Integer.parseInt(text.substring(0, dash).trim());
+			int last = Integer.parseInt(text.substring(dash + 1).trim());
+			return new int[] {
+				Math.min(first, last), Math.max(first, last)
+			};
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	//============================================================
+	// Searching
+
+	/**
+	 * Answer the people alive at any time from the first to the last year inclusive
+	 */
+	public Iterable<Person> getPeopleAlive(int firstYear, int lastYear) {
+		build();
+		return lives.find(firstYear, lastYear);
+	}
+
+	/**
+	 * Answer the marriages that took place from the first to the last year inclusive
+	 */
+	public Iterable<Marriage> getMarriages(int firstYear, int lastYear) {
+		build();
+		return marriages.find(firstYear, lastYear);
+	}
+
+	//============================================================
+	// Indexing
+
+	private void build() {
+		if (lives != null)
+			return;
+		lives = new Intervals<Person>();
+		marriages = new Intervals<Marriage>();
+		for (Person p : graph.getPeople())
+			add(p);
+		for (Marriage m : graph.getMarriages())
+			add(m);
+	}
+
+	private void discard() {
+		lives = null;
+		marriages = null;
+	}
+
+	private void add(Person p) {
+		if (lives.all.containsKey(p))
+			return;
+		PersonInterval i = new PersonInterval(p);
+		lives.all.put(p, i);
+		i.update();
+	}
+
+	private void add(Marriage m) {
+		if (marriages.all.containsKey(m))
+			return;
+		MarriageInterval i = new MarriageInterval(m);
+		marriages.all.put(m, i);
+		i.update();
+	}
+
+	private void remove(Person p) {
+		Interval<Person> i = lives.all.remove(p);
+		if (i != null)
+			lives.remove(i);
+	}
+
+	private void remove(Marriage m) {
+		Interval<Marriage> i = marriages.all.remove(m);
+		if (i != null)
+			marriages.remove(i);
+	}
+
+	/**
+	 * Reindex a person in the index whose birth or death year has changed
+	 */
+	private void update(Person p) {
+		if (lives == null)
+			return;
+		PersonInterval i = (PersonInterval) lives.all.get(p);
+		if (i != null)
+			i.update();
+	}
+
+	/**
+	 * Reindex a marriage in the index whose year has changed
+	 */
+	private void update(Marriage m) {
+		if (marriages == null)
+			return;
+		MarriageInterval i = (MarriageInterval) marriages.all.get(m);
+		if (i != null)
+			i.update();
+	}
+
+	/**
+	 * The years of one element
+	 */
+	private abstract class Interval<T>
+	{
+		final T element;
+		int first, last;
+		boolean indexed;
+
+		Interval(T element) {
+			this.element = element;
+		}
+	}
+
+	/**
+	 * The years in which a person was alive
+	 */
+	private final class PersonInterval extends Interval<Person>
+	{
+		PersonInterval(Person p) {
+			super(p);
+		}
+
+		void update() {
+			int birth = element.getBirthYear();
+			int death = element.getDeathYear();
+			if (birth == -1 && death != -1)
+				birth = death - ASSUMED_LIFESPAN;
+			if (death == -1 && birth != -1)
+				death = birth + ASSUMED_LIFESPAN;
+			lives.update(this, birth, Math.max(birth, death));
+		}
+	}
+
+	/**
+	 * The year of a marriage
+	 */
+	private final class MarriageInterval extends Interval<Marriage>
+	{
+		MarriageInterval(Marriage m) {
+			super(m);
+		}
+
+		void update() {
+			int year = element.getYearMarried();
+			marriages.update(this, year, year);
+		}
+	}
+
+	/**
+	 * Intervals held by first year
+	 */
+	private final class Intervals<T>
+	{
+		final Map<T, Interval<T>> all = new IdentityHashMap<T, Interval<T>>();
+		private final TreeMap<Integer, List<Interval<T>>> byFirstYear = new TreeMap<Integer, List<Interval<T>>>();
+
+		/**
+		 * The number of years spanned by the longest interval ever added, which does not
+		 * decrease when that interval is removed so that it is never too small
+		 */
+		private int maxLength;
+
+		/**
+		 * Index the specified interval with the specified years, or remove it from the
+		 * index if the first year is -1
+		 */
+		void update(Interval<T> i, int first, int last) {
+			remove(i);
+			if (first == -1)
+				return;
+			i.first = first;
+			i.last = last;
+			i.indexed = true;
+			maxLength = Math.max(maxLength, last - first);
+			List<Interval<T>> list = byFirstYear.get(first);
+			if (list == null) {
+				list = new ArrayList<Interval<T>>();
+				byFirstYear.put(first, list);
+			}
+			list.add(i);
+		}
+
+		void remove(Interval<T> i) {
+			if (!i.indexed)
+				return;
+			i.indexed = false;
+			List<Interval<T>> list = byFirstYear.get(i.first);
+			list.remove(i);
+			if (list.isEmpty())
+				byFirstYear.remove(i.first);
+		}
+
+		Iterable<T> find(final int firstYear, final int lastYear) {
+			if (lastYear < firstYear)
+				return Collections.emptyList();
+			final Collection<List<Interval<T>>> lists = byFirstYear.subMap(
+				(int) Math.max(Integer.MIN_VALUE, (long) firstYear - maxLength), true, lastYear, true).values();
+			return new Iterable<T>() {
+				public Iterator<T> iterator() {
+					return new IntervalIterator<T>(lists.iterator(), firstYear);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Answers the elements of the intervals in a sequence of lists
+	 * whose last year is at or after the specified year
+	 */
+	private static final class IntervalIterator<T>
+		implements Iterator<T>
+	{
+		private final Iterator<List<Interval<T>>> lists;
+		private final int firstYear;
+		private List<Interval<T>> list = Collections.emptyList();
+		private int index;
+		private T next;
+
+		IntervalIterator(Iterator<List<Interval<T>>> lists, int firstYear) {
+			this.lists = lists;
+			this.firstYear = firstYear;
+			advance();
+		}
+
+		private void advance() {
+			while (true) {
+				while (index < list.size()) {
+					Interval<T> i = list.get(index++);
+					if (i.last >= firstYear) {
+						next = i.element;
+						return;
+					}
+				}
+				if (!lists.hasNext()) {
+					next = null;
+					return;
+				}
+				list = lists.next();
+				index = 0;
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public T next() {
+			if (next == null)
+				throw new NoSuchElementException();
+			T result = next;
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	//============================================================
+	// Listeners
+
+	/**
+	 * Keeps the index up to date as people and marriages are added and removed
+	 * and as their years change
+	 */
+	private final class GraphTracker
+		implements GenealogyGraphListener, GenealogyGraphElementListener
+	{
+		public void personAdded(Person p) {
+			if (lives != null)
+				add(p);
+		}
+
+		public void personRemoved(Person p) {
+			if (lives != null)
+				remove(p);
+		}
+
+		public void marriageAdded(Marriage m) {
+			if (lives != null)
+				add(m);
+		}
+
+		public void marriageRemoved(Marriage m) {
+			if (lives != null)
+				remove(m);
+		}
+
+		public void birthYearChanged(Person p, int birthYear) {
+			update(p);
+		}
+
+		public void deathYearChanged(Person p, int deathYear) {
+			update(p);
+		}
+
+		public void yearMarriedChanged(Marriage m, int yearMarried) {
+			update(m);
+		}
+
+		public void noteAdded(int index, Note n) {
+		}
+
+		public void noteRemoved(Note n) {
+		}
+
+		public void graphCleared() {
+			discard();
+		}
+
+		public void graphLoaded() {
+			discard();
+		}
+
+		public void nameChanged(Person p, String newName) {
+		}
+
+		public void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage) {
+		}
+
+		public void noteAdded(Person p, int index, Note n) {
+		}
+
+		public void noteRemoved(Person p, Note n) {
+		}
+
+		public void husbandChanged(Marriage m, Person husband, Person oldHusband) {
+		}
+
+		public void wifeChanged(Marriage m, Person wife, Person oldWife) {
+		}
+
+		public void offspringAdded(Marriage m, Person p) {
+		}
+
+		public void offspringRemoved(Marriage m, Person p) {
+		}
+
+		public void textChanged(Note n, String newText) {
+		}
+
+		public void locationChanged(GenealogyElement elem, int x, int y) {
+		}
+
+		public void sizeChanged(GenealogyElement elem, int width, int height) {
+		}
+	}
+}
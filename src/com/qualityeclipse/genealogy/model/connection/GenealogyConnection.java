@@ -1,48 +1,38 @@
 package com.qualityeclipse.genealogy.model.connection;
 
-import java.util.HashMap;
-
 import com.qualityeclipse.genealogy.model.*;
 
 /**
- * A transient model object representing a connection between a {@link Person} and a
+ * A model object representing a connection between a {@link Person} and a
  * {@link Marriage}. This class is NOT a first class genealogy model element and NOT
  * persisted, but simply represents the connection information already encoded in the
  * genealogy model.
+ * <p>
+ * Each person holds one instance for the marriage in which the person is a spouse and
+ * one for the marriage of which the person is an offspring, answered by
+ * {@link Person#getSpouseConnection()} and {@link Person#getOffspringConnection()}, so
+ * that the same instance represents a connection for as long as the connection exists
+ * and instances are compared by identity.
  */
 public class GenealogyConnection
 {
 	public final Person person;
 	public final Marriage marriage;
-
-	public GenealogyConnection(Person person, Marriage marriage) {
-		this.person = person;
-		this.marriage = marriage;
-	}
-
-	/**
-	 * Implement equals so that different instances this class referencing the same person
-	 * and same marriage will be considered the equal.
-	 */
-	public boolean equals(Object obj) {
-		if (!(obj instanceof GenealogyConnection))
-			return false;
-		GenealogyConnection conn = (GenealogyConnection) obj;
-		return conn.person == person && conn.marriage == marriage;
-	}
+	private final boolean offspring;
 
 	/**
-	 * Answer a hash code based upon the person and marriage so that different instances
-	 * with the same person and same marriage will have the same hashCode and thus this
-	 * class can be used as a key in a {@link HashMap}
+	 * Construct a connection. Clients should use the instances held by {@link Person}
+	 * rather than constructing new ones.
+	 * 
+	 * @param person the spouse or offspring
+	 * @param marriage the marriage
+	 * @param offspring <code>true</code> if the person is an offspring of the marriage,
+	 *            or <code>false</code> if the person is a parent in the marriage
 	 */
-	public int hashCode() {
-		int hash = 0;
-		if (person != null)
-			hash += person.hashCode();
-		if (marriage != null)
-			hash += marriage.hashCode();
-		return hash;
+	public GenealogyConnection(Person person, Marriage marriage, boolean offspring) {
+		this.person = person;
+		this.marriage = marriage;
+		this.offspring = offspring;
 	}
 
 	/**
@@ -52,6 +42,6 @@ public class GenealogyConnection
 	 *         marriage, or false if the person is a parent in the marriage.
 	 */
 	public boolean isOffspringConnection() {
-		return marriage != null && marriage.getOffspring().contains(person);
+		return offspring;
 	}
 }
@@ -0,0 +1,47 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.GenealogyElement;
+
+/**
+ * The position of each person or marriage in the order in which it is written, indexed by
+ * {@link GenealogyElement#getId()} so that positions are found by array access rather
+ * than by hashing each element. Used by the binary writers to write references.
+ */
+final class ElementPositions
+{
+	private GenealogyElement[] elements;
+	private int[] positions;
+
+	/**
+	 * @param all the elements in the order in which they are written, each having a
+	 *            different identifier as is the case for the people or marriages of a graph
+	 */
+	ElementPositions(Collection<? extends GenealogyElement> all) {
+		elements = new GenealogyElement[Math.max(16, all.size())];
+		positions = new int[elements.length];
+		int position = 0;
+		for (GenealogyElement elem : all) {
+			int id = elem.getId();
+			if (id >= elements.length) {
+				int length = Math.max(id + 1, elements.length * 2);
+				elements = Arrays.copyOf(elements, length);
+				positions = Arrays.copyOf(positions, length);
+			}
+			elements[id] = elem;
+			positions[id] = position++;
+		}
+	}
+
+	/**
+	 * Answer the position of the specified element, or -1 if the element is
+	 * <code>null</code> or not one of the elements being written
+	 */
+	int positionOf(GenealogyElement elem) {
+		if (elem == null)
+			return -1;
+		int id = elem.getId();
+		return id >= 0 && id < elements.length && elements[id] == elem ? positions[id] : -1;
+	}
+}
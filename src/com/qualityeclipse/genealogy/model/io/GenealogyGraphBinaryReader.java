@@ -0,0 +1,245 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+
+import com.qualityeclipse.genealogy.model.*;
+
+/**
+ * Loads information from a binary stream written by {@link GenealogyGraphBinaryWriter}
+ * into a {@link GenealogyGraph}. The graph is populated through a
+ * {@link GenealogyGraph.BulkLoad} session so that no listeners are notified until the
+ * entire stream has been read.
+ * <p>
+ * A stream containing at least {@link #COLUMNAR_THRESHOLD} people is instead read into a
+ * {@link ColumnarGenealogyStore}, which is then opened with
+ * {@link GenealogyGraph#load(GenealogyElementSource)} so that the graph holds the content
+ * in primitive arrays and creates elements only as they are accessed. Either way, if the
+ * stream cannot be read after its header, the graph is left empty and listeners are told
+ * that it has been cleared.
+ */
+public class GenealogyGraphBinaryReader
+{
+	/**
+	 * The number of people at and above which a stream is read into a
+	 * {@link ColumnarGenealogyStore} rather than into objects
+	 */
+	public static final int COLUMNAR_THRESHOLD = 200000;
+
+	private final GenealogyGraph graph;
+	private final int columnarThreshold;
+	private InputStream in;
+	private String[] strings;
+
+	/**
+	 * The session populating the graph, or <code>null</code> if reading into a store
+	 */
+	private GenealogyGraph.BulkLoad load;
+	private Person[] people;
+
+	/**
+	 * The store being populated, or <code>null</code> if reading into the graph
+	 */
+	private ColumnarGenealogyStore.Builder store;
+
+	// The bounds most recently read
+	private int x, y, width, height;
+
+	public GenealogyGraphBinaryReader(GenealogyGraph graph) {
+		this(graph, COLUMNAR_THRESHOLD);
+	}
+
+	/**
+	 * @param columnarThreshold the number of people at and above which the stream is read
+	 *            into a {@link ColumnarGenealogyStore}
+	 */
+	public GenealogyGraphBinaryReader(GenealogyGraph graph, int columnarThreshold) {
+		this.graph = graph;
+		this.columnarThreshold = columnarThreshold;
+	}
+
+	public void read(InputStream stream) throws IOException {
+		in = new BufferedInputStream(stream, 8192);
+		for (int i = 0; i < GenealogyGraphBinaryWriter.MAGIC.length; i++)
+			if (readByte() != GenealogyGraphBinaryWriter.MAGIC[i])
+				throw new IOException("Not a binary genealogy graph");
+		int version = readVarInt();
+		if (version != GenealogyGraphBinaryWriter.VERSION)
+			throw new IOException("Unsupported binary genealogy graph version: " + version);
+		boolean loaded = false;
+		try {
+			readStrings();
+			int personCount = readVarInt();
+			if (personCount >= columnarThreshold)
+				store = new ColumnarGenealogyStore.Builder();
+			else {
+				load = graph.beginBulkLoad();
+				people = new Person[personCount];
+			}
+			readPeople(personCount);
+			readMarriages(personCount);
+			readNotes(-1);
+			if (store != null)
+				graph.load(store.build());
+			else
+				load.finish();
+			loaded = true;
+		}
+		finally {
+			in = null;
+			strings = null;
+			people = null;
+			store = null;
+			if (load != null) {
+				load.abort();
+				load = null;
+			}
+			else if (!loaded)
+				graph.clear();
+		}
+	}
+
+	private void readStrings() throws IOException {
+		strings = new String[readVarInt()];
+		byte[] buffer = new byte[256];
+		for (int i = 0; i < strings.length; i++) {
+			int length = readVarInt();
+			if (length > buffer.length)
+				buffer = new byte[Math.max(length, buffer.length * 2)];
+			readFully(buffer, length);
+			strings[i] = new String(buffer, 0, length, GenealogyGraphBinaryWriter.UTF8);
+		}
+	}
+
+	private void readPeople(int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			Person.Gender gender = readByte() == 0 ? Person.Gender.MALE : Person.Gender.FEMALE;
+			String name = readString();
+			int birthYear = readSignedVarInt();
+			int deathYear = readSignedVarInt();
+			readBounds();
+			if (store != null) {
+				store.addPerson(gender, name, birthYear, deathYear);
+				store.setPersonBounds(i, x, y, width, height);
+			}
+			else {
+				people[i] = load.addPerson(gender, name, birthYear, deathYear);
+				load.setBounds(people[i], x, y, width, height);
+			}
+			readNotes(i);
+		}
+	}
+
+	private void readMarriages(int personCount) throws IOException {
+		int count = readVarInt();
+		for (int i = 0; i < count; i++) {
+			readBounds();
+			int yearMarried = readSignedVarInt();
+			int husband = readPersonRef(personCount);
+			int wife = readPersonRef(personCount);
+			Marriage m = null;
+			if (store != null) {
+				store.addMarriage(yearMarried);
+				store.setMarriageBounds(i, x, y, width, height);
+				if (husband != -1)
+					store.setHusband(i, husband);
+				if (wife != -1)
+					store.setWife(i, wife);
+			}
+			else {
+				m = load.addMarriage(yearMarried);
+				load.setBounds(m, x, y, width, height);
+				load.setHusband(m, person(husband));
+				load.setWife(m, person(wife));
+			}
+			int offspringCount = readVarInt();
+			for (int j = 0; j < offspringCount; j++) {
+				int child = readPersonRef(personCount);
+				if (store != null) {
+					if (child != -1)
+						store.addOffspring(i, child);
+				}
+				else
+					load.addOffspring(m, person(child));
+			}
+		}
+	}
+
+	/**
+	 * Answer the index of the person referenced next in the stream,
+	 * or -1 if the reference is to no person
+	 */
+	private int readPersonRef(int personCount) throws IOException {
+		int ref = readVarInt();
+		if (ref > personCount)
+			throw new IOException("Invalid person reference: " + ref);
+		return ref - 1;
+	}
+
+	private Person person(int index) {
+		return index != -1 ? people[index] : null;
+	}
+
+	/**
+	 * Read the notes of the person at the specified index, or of the graph if -1
+	 */
+	private void readNotes(int person) throws IOException {
+		int count = readVarInt();
+		for (int i = 0; i < count; i++) {
+			readBounds();
+			String text = readString();
+			if (store != null)
+				store.setNoteBounds(store.addNote(person, text), x, y, width, height);
+			else {
+				Note n = load.addNote(person != -1 ? people[person] : graph, text);
+				load.setBounds(n, x, y, width, height);
+			}
+		}
+	}
+
+	private void readBounds() throws IOException {
+		x = readSignedVarInt();
+		y = readSignedVarInt();
+		width = readSignedVarInt();
+		height = readSignedVarInt();
+	}
+
+	private String readString() throws IOException {
+		int index = readVarInt();
+		if (index >= strings.length)
+			throw new IOException("Invalid string reference: " + index);
+		return strings[index];
+	}
+
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	private int readByte() throws IOException {
+		int b = in.read();
+		if (b == -1)
+			throw new EOFException();
+		return b;
+	}
+
+	private void readFully(byte[] buffer, int length) throws IOException {
+		int offset = 0;
+		while (offset < length) {
+			int count = in.read(buffer, offset, length - offset);
+			if (count == -1)
+				throw new EOFException();
+			offset += count;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.*;
+
+/**
+ * Stores information from a {@link GenealogyGraph} to a compact binary stream. The stream
+ * starts with {@link #MAGIC} and {@link #VERSION} followed by a table of all distinct
+ * names and note text, then the people, marriages, and top level notes. Integers are
+ * written as variable length quantities so that ids, coordinates, and years typically
+ * occupy one or two bytes. Strings are referenced by their index in the string table.
+ *
+ * <pre>
+ * file     := MAGIC VERSION strings people marriages notes
+ * strings  := count (length utf8-bytes)*
+ * people   := count (gender name birthYear deathYear bounds notes)*
+ * marriage := count (bounds yearMarried husband wife count child*)*
+ * notes    := count (bounds text)*
+ * bounds   := x y width height
+ * </pre>
+ *
+ * Husband, wife, and child are written as the index of the person plus one so that zero
+ * indicates no person. Signed values such as years and coordinates are zig-zag encoded.
+ *
+ * @see GenealogyGraphBinaryReader
+ */
+public class GenealogyGraphBinaryWriter
+{
+	static final byte[] MAGIC = {'G', 'G', 'B'};
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final GenealogyGraph graph;
+	private OutputStream out;
+	private Map<String, Integer> stringToIndex;
+
+	public GenealogyGraphBinaryWriter(GenealogyGraph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Write the graph to the specified stream. The stream is flushed but not closed.
+	 */
+	public void write(OutputStream stream) throws IOException {
+		out = new BufferedOutputStream(stream, 8192);
+		out.write(MAGIC);
+		writeVarInt(VERSION);
+		writeStrings();
+		writePeople();
+		writeMarriages(new ElementPositions(graph.getPeople()));
+		writeNotes(graph);
+		out.flush();
+		out = null;
+		stringToIndex = null;
+	}
+
+	/**
+	 * Collect and write the table of distinct names and note text
+	 */
+	private void writeStrings() throws IOException {
+		stringToIndex = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		for (Person p : graph.getPeople()) {
+			addString(strings, p.getName());
+			for (Note n : p.getNotes())
+				addString(strings, n.getText());
+		}
+		for (Note n : graph.getNotes())
+			addString(strings, n.getText());
+		writeVarInt(strings.size());
+		for (String s : strings) {
+			byte[] bytes = s.getBytes(UTF8);
+			writeVarInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private void addString(List<String> strings, String s) {
+		if (!stringToIndex.containsKey(s)) {
+			stringToIndex.put(s, strings.size());
+			strings.add(s);
+		}
+	}
+
+	private void writePeople() throws IOException {
+		Collection<Person> people = graph.getPeople();
+		writeVarInt(people.size());
+		for (Person p : people) {
+			out.write(p.getGender() == Person.Gender.MALE ? 0 : 1);
+			writeVarInt(stringToIndex.get(p.getName()));
+			writeSignedVarInt(p.getBirthYear());
+			writeSignedVarInt(p.getDeathYear());
+			writeBounds(p);
+			writeNotes(p);
+		}
+	}
+
+	private void writeMarriages(ElementPositions personToIndex) throws IOException {
+		writeVarInt(graph.getMarriages().size());
+		for (Marriage m : graph.getMarriages()) {
+			writeBounds(m);
+			writeSignedVarInt(m.getYearMarried());
+			writePersonRef(personToIndex, m.getHusband());
+			writePersonRef(personToIndex, m.getWife());
+			writeVarInt(m.getOffspring().size());
+			for (Person p : m.getOffspring())
+				writePersonRef(personToIndex, p);
+		}
+	}
+
+	private void writePersonRef(ElementPositions personToIndex, Person p) throws IOException {
+		writeVarInt(personToIndex.positionOf(p) + 1);
+	}
+
+	private void writeNotes(NoteContainer container) throws IOException {
+		List<Note> notes = container.getNotes();
+		writeVarInt(notes.size());
+		for (Note n : notes) {
+			writeBounds(n);
+			writeVarInt(stringToIndex.get(n.getText()));
+		}
+	}
+
+	private void writeBounds(GenealogyElement elem) throws IOException {
+		writeSignedVarInt(elem.getX());
+		writeSignedVarInt(elem.getY());
+		writeSignedVarInt(elem.getWidth());
+		writeSignedVarInt(elem.getHeight());
+	}
+
+	/**
+	 * Write a signed value using zig-zag encoding so that small negative values such as
+	 * -1 (unknown year) occupy a single byte.
+	 */
+	private void writeSignedVarInt(int value) throws IOException {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * Write an unsigned value seven bits at a time, least significant bits first, with
+	 * the high bit of each byte indicating that more bytes follow.
+	 */
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
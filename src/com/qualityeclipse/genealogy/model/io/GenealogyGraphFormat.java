@@ -0,0 +1,150 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+
+/**
+ * The file formats in which a {@link GenealogyGraph} can be stored.
+ * Use {@link #forFileName(String)} to select the format based upon the file extension.
+ */
+public enum GenealogyGraphFormat {
+
+	/**
+	 * The original XML format read by {@link GenealogyGraphReader}
+	 * and written by {@link GenealogyGraphWriter}. Files larger than
+	 * {@link #PARALLEL_READ_THRESHOLD} are read by {@link GenealogyGraphParallelReader},
+	 * and people are encoded on several threads when writing a graph that is not supplying
+	 * elements from a source.
+	 */
+	XML("gg") {
+		public List<String> read(GenealogyGraph graph, InputStream stream) throws Exception {
+			GenealogyGraphReader reader = new GenealogyGraphReader(graph);
+			reader.read(stream);
+			return reader.getUnresolvedReferences();
+		}
+
+		public List<String> read(GenealogyGraph graph, File file) throws Exception {
+			if (file.length() < PARALLEL_READ_THRESHOLD)
+				return super.read(graph, file);
+			GenealogyGraphParallelReader reader = new GenealogyGraphParallelReader(graph);
+			reader.read(file);
+			return reader.getUnresolvedReferences();
+		}
+
+		public void write(GenealogyGraph graph, OutputStream stream) throws IOException {
+			PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(stream, "UTF-8")));
+			new GenealogyGraphWriter(graph, Runtime.getRuntime().availableProcessors()).write(writer);
+			writer.flush();
+			if (writer.checkError())
+				throw new IOException("Failed to write genealogy graph");
+		}
+	},
+
+	/**
+	 * The compact binary format read by {@link GenealogyGraphBinaryReader}
+	 * and written by {@link GenealogyGraphBinaryWriter}. Streams containing at least
+	 * {@link GenealogyGraphBinaryReader#COLUMNAR_THRESHOLD} people are read into a
+	 * {@link com.qualityeclipse.genealogy.model.ColumnarGenealogyStore} that supplies
+	 * elements on demand.
+	 */
+	BINARY("ggb") {
+		public List<String> read(GenealogyGraph graph, InputStream stream) throws Exception {
+			new GenealogyGraphBinaryReader(graph).read(stream);
+			return Collections.emptyList();
+		}
+
+		public void write(GenealogyGraph graph, OutputStream stream) throws IOException {
+			new GenealogyGraphBinaryWriter(graph).write(stream);
+		}
+	},
+
+	/**
+	 * The indexed binary format written by {@link GenealogyGraphIndexWriter}. Files in this
+	 * format are memory mapped by {@link MappedGenealogyArchive} and their elements are
+	 * created on demand rather than being read when the file is opened.
+	 */
+	INDEXED("ggi") {
+		public List<String> read(GenealogyGraph graph, InputStream stream) throws Exception {
+			graph.load(MappedGenealogyArchive.read(stream));
+			return Collections.emptyList();
+		}
+
+		public List<String> read(GenealogyGraph graph, File file) throws Exception {
+			graph.load(MappedGenealogyArchive.open(file));
+			return Collections.emptyList();
+		}
+
+		public void write(GenealogyGraph graph, OutputStream stream) throws IOException {
+			new GenealogyGraphIndexWriter(graph).write(stream);
+		}
+	};
+
+	/**
+	 * The size in bytes above which XML files are read using several threads
+	 */
+	public static final long PARALLEL_READ_THRESHOLD = 32 * 1024 * 1024;
+
+	private final String extension;
+
+	private GenealogyGraphFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Answer the file extension (without the leading period) associated with the receiver
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Read the content of the specified stream into the graph.
+	 * The stream is NOT closed by this method.
+	 * 
+	 * @return a description of each reference to a person that did not appear in the
+	 *         content or was of the wrong gender, whose relationship was not
+	 *         established, or an empty list if none
+	 */
+	public abstract List<String> read(GenealogyGraph graph, InputStream stream) throws Exception;
+
+	/**
+	 * Read the content of the specified file into the graph.
+	 * 
+	 * @return a description of each reference to a person that did not appear in the
+	 *         content or was of the wrong gender, whose relationship was not
+	 *         established, or an empty list if none
+	 */
+	public List<String> read(GenealogyGraph graph, File file) throws Exception {
+		InputStream stream = new FileInputStream(file);
+		try {
+			return read(graph, stream);
+		}
+		finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Write the graph into the specified stream.
+	 * The stream is flushed but NOT closed by this method.
+	 */
+	public abstract void write(GenealogyGraph graph, OutputStream stream) throws IOException;
+
+	/**
+	 * Answer the format associated with the extension of the specified file name,
+	 * or {@link #XML} if the extension is not recognized.
+	 */
+	public static GenealogyGraphFormat forFileName(String fileName) {
+		int index = fileName.lastIndexOf('.');
+		if (index != -1) {
+			String ext = fileName.substring(index + 1);
+			for (GenealogyGraphFormat format : values())
+				if (format.extension.equalsIgnoreCase(ext))
+					return format;
+		}
+		return XML;
+	}
+}
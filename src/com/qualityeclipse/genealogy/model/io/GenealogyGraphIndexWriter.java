@@ -0,0 +1,155 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+import java.util.*;
+
+import com.qualityeclipse.genealogy.model.*;
+
+/**
+ * Stores information from a {@link GenealogyGraph} to an indexed binary stream that can
+ * be memory mapped and read on demand by {@link MappedGenealogyArchive}. Every element is
+ * stored as a fixed size record so that any element can be located directly from its
+ * index without reading the records before it.
+ *
+ * <pre>
+ * file      := header person* marriage* offspring* note* strings
+ * header    := MAGIC VERSION personCount marriageCount offspringCount noteCount
+ *              firstGraphNote graphNoteCount stringsSize
+ * person    := gender name birthYear deathYear bounds marriage parentsMarriage
+ *              firstNote noteCount
+ * marriage  := bounds yearMarried husband wife firstOffspring offspringCount
+ * offspring := person
+ * note      := bounds text
+ * bounds    := x y width height
+ * strings   := (length utf8-bytes)*
+ * </pre>
+ *
+ * All values are 4 byte big-endian integers except for {@link #MAGIC} and
+ * {@link #VERSION} which are single bytes. References to people and marriages are
+ * indices, with -1 indicating no reference, and names and note text are byte offsets
+ * into the strings section. A person's notes occupy consecutive note records followed by
+ * the notes contained directly by the graph.
+ */
+public class GenealogyGraphIndexWriter
+{
+	static final byte[] MAGIC = {'G', 'G', 'I'};
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4 + 7 * 4;
+	static final int PERSON_RECORD_SIZE = 12 * 4;
+	static final int MARRIAGE_RECORD_SIZE = 9 * 4;
+	static final int OFFSPRING_RECORD_SIZE = 4;
+	static final int NOTE_RECORD_SIZE = 5 * 4;
+
+	private final GenealogyGraph graph;
+	private DataOutputStream out;
+	private Map<String, Integer> stringToOffset;
+	private List<byte[]> strings;
+	private int stringsSize;
+
+	public GenealogyGraphIndexWriter(GenealogyGraph graph) {
+		this.graph = graph;
+	}
+
+	/**
+	 * Write the graph to the specified stream. The stream is flushed but not closed.
+	 */
+	public void write(OutputStream stream) throws IOException {
+		List<Person> people = new ArrayList<Person>(graph.getPeople());
+		List<Marriage> marriages = new ArrayList<Marriage>(graph.getMarriages());
+		ElementPositions personToIndex = new ElementPositions(people);
+		ElementPositions marriageToIndex = new ElementPositions(marriages);
+
+		// Collect the strings and count the records in each section
+		stringToOffset = new HashMap<String, Integer>();
+		strings = new ArrayList<byte[]>();
+		stringsSize = 0;
+		int noteCount = 0;
+		int offspringCount = 0;
+		for (Person p : people) {
+			addString(p.getName());
+			for (Note n : p.getNotes())
+				addString(n.getText());
+			noteCount += p.getNotes().size();
+		}
+		for (Marriage m : marriages)
+			offspringCount += m.getOffspring().size();
+		for (Note n : graph.getNotes())
+			addString(n.getText());
+
+		out = new DataOutputStream(new BufferedOutputStream(stream, 8192));
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.writeInt(people.size());
+		out.writeInt(marriages.size());
+		out.writeInt(offspringCount);
+		out.writeInt(noteCount + graph.getNotes().size());
+		out.writeInt(noteCount);
+		out.writeInt(graph.getNotes().size());
+		out.writeInt(stringsSize);
+
+		int firstNote = 0;
+		for (Person p : people) {
+			out.writeInt(p.getGender() == Person.Gender.MALE ? 0 : 1);
+			out.writeInt(stringToOffset.get(p.getName()));
+			out.writeInt(p.getBirthYear());
+			out.writeInt(p.getDeathYear());
+			writeBounds(p);
+			writeRef(marriageToIndex, p.getMarriage());
+			writeRef(marriageToIndex, p.getParentsMarriage());
+			out.writeInt(firstNote);
+			out.writeInt(p.getNotes().size());
+			firstNote += p.getNotes().size();
+		}
+		int firstOffspring = 0;
+		for (Marriage m : marriages) {
+			writeBounds(m);
+			out.writeInt(m.getYearMarried());
+			writeRef(personToIndex, m.getHusband());
+			writeRef(personToIndex, m.getWife());
+			out.writeInt(firstOffspring);
+			out.writeInt(m.getOffspring().size());
+			firstOffspring += m.getOffspring().size();
+		}
+		for (Marriage m : marriages)
+			for (Person p : m.getOffspring())
+				writeRef(personToIndex, p);
+		for (Person p : people)
+			writeNotes(p);
+		writeNotes(graph);
+		for (byte[] bytes : strings) {
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		out.flush();
+		out = null;
+		stringToOffset = null;
+		strings = null;
+	}
+
+	private void addString(String s) {
+		if (stringToOffset.containsKey(s))
+			return;
+		byte[] bytes = s.getBytes(GenealogyGraphBinaryWriter.UTF8);
+		stringToOffset.put(s, stringsSize);
+		strings.add(bytes);
+		stringsSize += 4 + bytes.length;
+	}
+
+	private void writeNotes(NoteContainer container) throws IOException {
+		for (Note n : container.getNotes()) {
+			writeBounds(n);
+			out.writeInt(stringToOffset.get(n.getText()));
+		}
+	}
+
+	private void writeRef(ElementPositions elemToIndex, GenealogyElement elem) throws IOException {
+		out.writeInt(elemToIndex.positionOf(elem));
+	}
+
+	private void writeBounds(GenealogyElement elem) throws IOException {
+		out.writeInt(elem.getX());
+		out.writeInt(elem.getY());
+		out.writeInt(elem.getWidth());
+		out.writeInt(elem.getHeight());
+	}
+}
@@ -0,0 +1,696 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import com.qualityeclipse.genealogy.model.*;
+import com.qualityeclipse.genealogy.model.listener.*;
+
+/**
+ * Records changes to a {@link GenealogyGraph} as they occur so that a save can append
+ * only those changes to a journal rather than rewriting the entire file. When the file is
+ * reopened, the journal is replayed over the content read from the file.
+ * <p>
+ * Elements are identified by their position in the graph when the journal was created or
+ * rebased, numbering people, marriages, and notes separately. Notes are numbered person
+ * by person followed by the notes contained directly by the graph. Elements first seen
+ * after that are numbered in the order in which they are seen. The journal therefore
+ * matches a file written from the graph at that time by any of the
+ * {@link GenealogyGraphFormat}s, all of which preserve the order of the graph's elements.
+ *
+ * <pre>
+ * journal := MAGIC VERSION baseLength baseChecksum block*
+ * block   := length checksum record*
+ * </pre>
+ *
+ * The base length and checksum identify the file content to which the journal applies.
+ * Each block holds the changes appended by one save and is ignored along with all blocks
+ * after it if it is incomplete or its checksum does not match, so a save interrupted
+ * while appending leaves the journal as it was before that save.
+ */
+public class GenealogyGraphJournal
+{
+	static final byte[] MAGIC = {'G', 'G', 'J'};
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 4 + 8 + 8;
+
+	private static final int PERSON = 1;
+	private static final int MARRIAGE = 2;
+	private static final int NOTE = 3;
+	private static final int ADD_PERSON = 4;
+	private static final int REMOVE_PERSON = 5;
+	private static final int ADD_MARRIAGE = 6;
+	private static final int REMOVE_MARRIAGE = 7;
+	private static final int NAME = 8;
+	private static final int BIRTH_YEAR = 9;
+	private static final int DEATH_YEAR = 10;
+	private static final int YEAR_MARRIED = 11;
+	private static final int TEXT = 12;
+	private static final int HUSBAND = 13;
+	private static final int WIFE = 14;
+	private static final int ADD_OFFSPRING = 15;
+	private static final int REMOVE_OFFSPRING = 16;
+	private static final int ADD_NOTE = 17;
+	private static final int REMOVE_NOTE = 18;
+	private static final int LOCATION = 19;
+	private static final int SIZE = 20;
+
+	private final GenealogyGraph graph;
+	private final List<Person> people = new ArrayList<Person>();
+	private final List<Marriage> marriages = new ArrayList<Marriage>();
+	private final List<Note> notes = new ArrayList<Note>();
+	private final Map<Person, PersonRecorder> personToRecorder = new HashMap<Person, PersonRecorder>();
+	private final Map<Marriage, MarriageRecorder> marriageToRecorder = new HashMap<Marriage, MarriageRecorder>();
+	private final Map<Note, NoteRecorder> noteToRecorder = new HashMap<Note, NoteRecorder>();
+	private final GraphRecorder graphRecorder = new GraphRecorder();
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private DataOutputStream out = new DataOutputStream(pending);
+	private boolean recording;
+	private boolean complete = true;
+
+	/**
+	 * Construct a new journal for the specified graph, numbering the graph's current
+	 * elements. Call {@link #replay(InputStream, long, long)} to apply a previously saved
+	 * journal, then call {@link #start()} to begin recording changes.
+	 */
+	public GenealogyGraphJournal(GenealogyGraph graph) {
+		this.graph = graph;
+		number();
+	}
+
+	/**
+	 * Number the graph's current elements
+	 */
+	private void number() {
+		for (Person p : graph.getPeople())
+			register(p);
+		for (Marriage m : graph.getMarriages())
+			register(m);
+		for (Person p : graph.getPeople())
+			for (Note n : p.getNotes())
+				register(n);
+		for (Note n : graph.getNotes())
+			register(n);
+	}
+
+	//============================================================
+	// Recording
+
+	/**
+	 * Begin recording changes to the graph
+	 */
+	public void start() {
+		if (recording)
+			return;
+		recording = true;
+		graph.addGenealogyGraphListener(graphRecorder);
+		for (Map.Entry<Person, PersonRecorder> entry : personToRecorder.entrySet())
+			entry.getKey().addPersonListener(entry.getValue());
+		for (Map.Entry<Marriage, MarriageRecorder> entry : marriageToRecorder.entrySet())
+			entry.getKey().addMarriageListener(entry.getValue());
+		for (Map.Entry<Note, NoteRecorder> entry : noteToRecorder.entrySet())
+			entry.getKey().addNoteListener(entry.getValue());
+	}
+
+	/**
+	 * Stop recording changes to the graph
+	 */
+	public void dispose() {
+		if (!recording)
+			return;
+		recording = false;
+		graph.removeGenealogyGraphListener(graphRecorder);
+		for (Map.Entry<Person, PersonRecorder> entry : personToRecorder.entrySet())
+			entry.getKey().removePersonListener(entry.getValue());
+		for (Map.Entry<Marriage, MarriageRecorder> entry : marriageToRecorder.entrySet())
+			entry.getKey().removeMarriageListener(entry.getValue());
+		for (Map.Entry<Note, NoteRecorder> entry : noteToRecorder.entrySet())
+			entry.getKey().removeNoteListener(entry.getValue());
+	}
+
+	/**
+	 * Discard all recorded changes and renumber the graph's current elements. Call this
+	 * when the entire graph is written so that the journal matches the new file.
+	 */
+	public void rebase() {
+		boolean wasRecording = recording;
+		dispose();
+		people.clear();
+		marriages.clear();
+		notes.clear();
+		personToRecorder.clear();
+		marriageToRecorder.clear();
+		noteToRecorder.clear();
+		pending = new ByteArrayOutputStream();
+		out = new DataOutputStream(pending);
+		complete = true;
+		number();
+		if (wasRecording)
+			start();
+	}
+
+	/**
+	 * Answer <code>false</code> if the graph has been cleared or reloaded since the
+	 * journal was created or rebased, in which case the recorded changes are insufficient
+	 * and the entire graph must be written.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Answer the changes recorded since the last call as a block to be appended to the
+	 * journal, or <code>null</code> if nothing has changed. The changes are discarded.
+	 */
+	public byte[] takeChanges() {
+		if (pending.size() == 0)
+			return null;
+		byte[] payload = pending.toByteArray();
+		pending.reset();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteArrayOutputStream block = new ByteArrayOutputStream(8 + payload.length);
+		DataOutputStream blockOut = new DataOutputStream(block);
+		try {
+			blockOut.writeInt(payload.length);
+			blockOut.writeInt((int) crc.getValue());
+			blockOut.write(payload);
+		}
+		catch (IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+		return block.toByteArray();
+	}
+
+	/**
+	 * Answer the header that starts a journal for the specified file content
+	 *
+	 * @param baseLength the length of the file to which the journal applies
+	 * @param baseChecksum the CRC-32 of the file to which the journal applies
+	 */
+	public static byte[] header(long baseLength, long baseChecksum) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+		DataOutputStream header = new DataOutputStream(bytes);
+		try {
+			header.write(MAGIC);
+			header.write(VERSION);
+			header.writeLong(baseLength);
+			header.writeLong(baseChecksum);
+		}
+		catch (IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private int register(Person p) {
+		PersonRecorder recorder = new PersonRecorder(people.size());
+		people.add(p);
+		personToRecorder.put(p, recorder);
+		if (recording)
+			p.addPersonListener(recorder);
+		return recorder.id;
+	}
+
+	private int register(Marriage m) {
+		MarriageRecorder recorder = new MarriageRecorder(marriages.size());
+		marriages.add(m);
+		marriageToRecorder.put(m, recorder);
+		if (recording)
+			m.addMarriageListener(recorder);
+		return recorder.id;
+	}
+
+	private int register(Note n) {
+		NoteRecorder recorder = new NoteRecorder(notes.size());
+		notes.add(n);
+		noteToRecorder.put(n, recorder);
+		if (recording)
+			n.addNoteListener(recorder);
+		return recorder.id;
+	}
+
+	/**
+	 * Answer the number of the specified person, recording the person's current state
+	 * and notes if the person has not been seen before
+	 */
+	private int idOf(Person p) {
+		if (p == null)
+			return -1;
+		PersonRecorder recorder = personToRecorder.get(p);
+		if (recorder != null)
+			return recorder.id;
+		int id = register(p);
+		write(PERSON, id);
+		writeInt(p.getGender() == Person.Gender.MALE ? 0 : 1);
+		writeString(p.getName());
+		writeInt(p.getBirthYear());
+		writeInt(p.getDeathYear());
+		writeBounds(p);
+		List<Note> personNotes = p.getNotes();
+		for (int i = 0; i < personNotes.size(); i++)
+			writeAddNote(id, i, personNotes.get(i));
+		return id;
+	}
+
+	/**
+	 * Answer the number of the specified marriage, recording the marriage's current state
+	 * and relationships if the marriage has not been seen before
+	 */
+	private int idOf(Marriage m) {
+		if (m == null)
+			return -1;
+		MarriageRecorder recorder = marriageToRecorder.get(m);
+		if (recorder != null)
+			return recorder.id;
+		int id = register(m);
+		write(MARRIAGE, id);
+		writeInt(m.getYearMarried());
+		writeBounds(m);
+		if (m.getHusband() != null)
+			writeLink(HUSBAND, id, idOf(m.getHusband()));
+		if (m.getWife() != null)
+			writeLink(WIFE, id, idOf(m.getWife()));
+		for (Person p : m.getOffspring())
+			writeLink(ADD_OFFSPRING, id, idOf(p));
+		return id;
+	}
+
+	/**
+	 * Answer the number of the specified note, recording the note's current state
+	 * if the note has not been seen before
+	 */
+	private int idOf(Note n) {
+		NoteRecorder recorder = noteToRecorder.get(n);
+		if (recorder != null)
+			return recorder.id;
+		int id = register(n);
+		write(NOTE, id);
+		writeString(n.getText());
+		writeBounds(n);
+		return id;
+	}
+
+	private void writeAddNote(int containerId, int index, Note n) {
+		int id = idOf(n);
+		write(ADD_NOTE, containerId);
+		writeInt(index);
+		writeInt(id);
+	}
+
+	private void writeLink(int op, int marriageId, int personId) {
+		write(op, marriageId);
+		writeInt(personId);
+	}
+
+	private void writeBounds(GenealogyElement elem) {
+		writeInt(elem.getX());
+		writeInt(elem.getY());
+		writeInt(elem.getWidth());
+		writeInt(elem.getHeight());
+	}
+
+	private void write(int op, int id) {
+		try {
+			out.writeByte(op);
+			out.writeInt(id);
+		}
+		catch (IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeInt(int value) {
+		try {
+			out.writeInt(value);
+		}
+		catch (IOException e) {
+			// Cannot happen when writing to a byte array
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeString(String s) {
+		byte[] bytes = s.getBytes(GenealogyGraphBinaryWriter.UTF8);
+		writeInt(bytes.length);
+		pending.write(bytes, 0, bytes.length);
+	}
+
+	private final class GraphRecorder
+		implements GenealogyGraphListener
+	{
+		public void personAdded(Person p) {
+			write(ADD_PERSON, idOf(p));
+		}
+
+		public void personRemoved(Person p) {
+			write(REMOVE_PERSON, idOf(p));
+		}
+
+		public void marriageAdded(Marriage m) {
+			write(ADD_MARRIAGE, idOf(m));
+		}
+
+		public void marriageRemoved(Marriage m) {
+			write(REMOVE_MARRIAGE, idOf(m));
+		}
+
+		public void noteAdded(int index, Note n) {
+			writeAddNote(-1, index, n);
+		}
+
+		public void noteRemoved(Note n) {
+			write(REMOVE_NOTE, -1);
+			writeInt(idOf(n));
+		}
+
+		public void graphCleared() {
+			complete = false;
+		}
+
+		public void graphLoaded() {
+			complete = false;
+		}
+	}
+
+	private abstract class ElementRecorder
+		implements GenealogyElementListener
+	{
+		final int id;
+		private final int kind;
+
+		ElementRecorder(int id, int kind) {
+			this.id = id;
+			this.kind = kind;
+		}
+
+		public void locationChanged(int x, int y) {
+			write(LOCATION, id);
+			writeInt(kind);
+			writeInt(x);
+			writeInt(y);
+		}
+
+		public void sizeChanged(int width, int height) {
+			write(SIZE, id);
+			writeInt(kind);
+			writeInt(width);
+			writeInt(height);
+		}
+	}
+
+	private final class PersonRecorder extends ElementRecorder
+		implements PersonListener
+	{
+		PersonRecorder(int id) {
+			super(id, PERSON);
+		}
+
+		public void nameChanged(String newName) {
+			write(NAME, id);
+			writeString(newName);
+		}
+
+		public void birthYearChanged(int birthYear) {
+			write(BIRTH_YEAR, id);
+			writeInt(birthYear);
+		}
+
+		public void deathYearChanged(int deathYear) {
+			write(DEATH_YEAR, id);
+			writeInt(deathYear);
+		}
+
+		// Relationships are recorded by the marriage, so only ensure
+		// that a marriage not seen before is recorded
+
+		public void marriageChanged(Marriage marriage, Marriage oldMarriage) {
+			idOf(marriage);
+		}
+
+		public void parentsMarriageChanged(Marriage marriage, Marriage oldMarriage) {
+			idOf(marriage);
+		}
+
+		public void noteAdded(int index, Note n) {
+			writeAddNote(id, index, n);
+		}
+
+		public void noteRemoved(Note n) {
+			write(REMOVE_NOTE, id);
+			writeInt(idOf(n));
+		}
+	}
+
+	private final class MarriageRecorder extends ElementRecorder
+		implements MarriageListener
+	{
+		MarriageRecorder(int id) {
+			super(id, MARRIAGE);
+		}
+
+		public void yearMarriedChanged(int yearMarried) {
+			write(YEAR_MARRIED, id);
+			writeInt(yearMarried);
+		}
+
+		public void husbandChanged(Person husband, Person oldHusband) {
+			writeLink(HUSBAND, id, idOf(husband));
+		}
+
+		public void wifeChanged(Person wife, Person oldWife) {
+			writeLink(WIFE, id, idOf(wife));
+		}
+
+		public void offspringAdded(Person p) {
+			writeLink(ADD_OFFSPRING, id, idOf(p));
+		}
+
+		public void offspringRemoved(Person p) {
+			writeLink(REMOVE_OFFSPRING, id, idOf(p));
+		}
+	}
+
+	private final class NoteRecorder extends ElementRecorder
+		implements NoteListener
+	{
+		NoteRecorder(int id) {
+			super(id, NOTE);
+		}
+
+		public void textChanged(String text) {
+			write(TEXT, id);
+			writeString(text);
+		}
+	}
+
+	//============================================================
+	// Replay
+
+	/**
+	 * Apply the changes in the specified journal to the graph. This must be called before
+	 * {@link #start()} and immediately after the graph is read from the file identified
+	 * by the specified length and checksum. The stream is NOT closed by this method.
+	 *
+	 * @param stream the journal content (not <code>null</code>)
+	 * @param baseLength the length of the file from which the graph was read
+	 * @param baseChecksum the CRC-32 of the file from which the graph was read
+	 * @return the number of bytes at the start of the journal that were applied and to
+	 *         which subsequent changes may be appended, or -1 if the journal does not
+	 *         apply to the file and was ignored
+	 */
+	public long replay(InputStream stream, long baseLength, long baseChecksum) throws IOException {
+		if (recording)
+			throw new IllegalStateException("Journal already recording");
+		DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 8192));
+		byte[] header = new byte[HEADER_SIZE];
+		if (!readFully(in, header) || !Arrays.equals(header, header(baseLength, baseChecksum)))
+			return -1;
+		long length = HEADER_SIZE;
+		CRC32 crc = new CRC32();
+		byte[] lengthAndChecksum = new byte[8];
+		while (readFully(in, lengthAndChecksum)) {
+			DataInputStream blockIn = new DataInputStream(new ByteArrayInputStream(lengthAndChecksum));
+			int payloadLength = blockIn.readInt();
+			int checksum = blockIn.readInt();
+			if (payloadLength < 0)
+				break;
+			byte[] payload = new byte[payloadLength];
+			if (!readFully(in, payload))
+				break;
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum)
+				break;
+			apply(new DataInputStream(new ByteArrayInputStream(payload)));
+			length += 8 + payloadLength;
+		}
+		return length;
+	}
+
+	/**
+	 * Fill the buffer from the stream
+	 *
+	 * @return <code>false</code> if the end of the stream was reached first
+	 */
+	private static boolean readFully(InputStream in, byte[] buffer) throws IOException {
+		int offset = 0;
+		while (offset < buffer.length) {
+			int count = in.read(buffer, offset, buffer.length - offset);
+			if (count == -1)
+				return false;
+			offset += count;
+		}
+		return true;
+	}
+
+	private void apply(DataInputStream in) throws IOException {
+		while (in.available() > 0) {
+			int op = in.readByte();
+			int id = in.readInt();
+			switch (op) {
+				case PERSON :
+					Person.Gender gender = in.readInt() == 0 ? Person.Gender.MALE : Person.Gender.FEMALE;
+					Person p = id == people.size() ? new Person(gender) : person(id);
+					if (id == people.size())
+						register(p);
+					p.setName(readString(in));
+					p.setBirthYear(in.readInt());
+					p.setDeathYear(in.readInt());
+					readBounds(in, p);
+					break;
+				case MARRIAGE :
+					Marriage m = id == marriages.size() ? new Marriage() : marriage(id);
+					if (id == marriages.size())
+						register(m);
+					m.setYearMarried(in.readInt());
+					readBounds(in, m);
+					break;
+				case NOTE :
+					Note n = id == notes.size() ? new Note() : note(id);
+					if (id == notes.size())
+						register(n);
+					n.setText(readString(in));
+					readBounds(in, n);
+					break;
+				case ADD_PERSON :
+					graph.addPerson(person(id));
+					break;
+				case REMOVE_PERSON :
+					graph.removePerson(person(id));
+					break;
+				case ADD_MARRIAGE :
+					graph.addMarriage(marriage(id));
+					break;
+				case REMOVE_MARRIAGE :
+					graph.removeMarriage(marriage(id));
+					break;
+				case NAME :
+					person(id).setName(readString(in));
+					break;
+				case BIRTH_YEAR :
+					person(id).setBirthYear(in.readInt());
+					break;
+				case DEATH_YEAR :
+					person(id).setDeathYear(in.readInt());
+					break;
+				case YEAR_MARRIED :
+					marriage(id).setYearMarried(in.readInt());
+					break;
+				case TEXT :
+					note(id).setText(readString(in));
+					break;
+				case HUSBAND :
+					marriage(id).setHusband(optionalPerson(in.readInt()));
+					break;
+				case WIFE :
+					marriage(id).setWife(optionalPerson(in.readInt()));
+					break;
+				case ADD_OFFSPRING :
+					marriage(id).addOffspring(person(in.readInt()));
+					break;
+				case REMOVE_OFFSPRING :
+					marriage(id).removeOffspring(person(in.readInt()));
+					break;
+				case ADD_NOTE :
+					NoteContainer container = id == -1 ? graph : person(id);
+					int index = in.readInt();
+					Note added = note(in.readInt());
+					if (index < 0 || index > container.getNotes().size())
+						index = container.getNotes().size();
+					if (container == graph)
+						graph.addNote(index, added);
+					else
+						((Person) container).addNote(index, added);
+					break;
+				case REMOVE_NOTE :
+					Note removed = note(in.readInt());
+					if (id == -1)
+						graph.removeNote(removed);
+					else
+						person(id).removeNote(removed);
+					break;
+				case LOCATION :
+					element(in.readInt(), id).setLocation(in.readInt(), in.readInt());
+					break;
+				case SIZE :
+					element(in.readInt(), id).setSize(in.readInt(), in.readInt());
+					break;
+				default :
+					throw new IOException("Corrupt genealogy graph journal: " + op);
+			}
+		}
+	}
+
+	private GenealogyElement element(int kind, int id) throws IOException {
+		switch (kind) {
+			case PERSON :
+				return person(id);
+			case MARRIAGE :
+				return marriage(id);
+			case NOTE :
+				return note(id);
+			default :
+				throw new IOException("Corrupt genealogy graph journal: " + kind);
+		}
+	}
+
+	private Person optionalPerson(int id) throws IOException {
+		return id == -1 ? null : person(id);
+	}
+
+	private Person person(int id) throws IOException {
+		return lookup(people, id);
+	}
+
+	private Marriage marriage(int id) throws IOException {
+		return lookup(marriages, id);
+	}
+
+	private Note note(int id) throws IOException {
+		return lookup(notes, id);
+	}
+
+	private static <T> T lookup(List<T> elements, int id) throws IOException {
+		if (id < 0 || id >= elements.size())
+			throw new IOException("Corrupt genealogy graph journal: " + id);
+		return elements.get(id);
+	}
+
+	private static void readBounds(DataInputStream in, GenealogyElement elem) throws IOException {
+		int x = in.readInt();
+		int y = in.readInt();
+		elem.setLocation(x, y);
+		elem.setSize(in.readInt(), in.readInt());
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, GenealogyGraphBinaryWriter.UTF8);
+	}
+}
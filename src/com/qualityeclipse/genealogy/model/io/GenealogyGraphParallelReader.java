@@ -0,0 +1,357 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.Person;
+
+/**
+ * Loads information from a large XML file into a {@link GenealogyGraph} using several
+ * threads. The file is split into chunks immediately before top level
+ * <code>&lt;person&gt;</code> and <code>&lt;marriage&gt;</code> elements, and each chunk
+ * is memory mapped and read by a {@link GenealogyGraphReader} into a graph of its own on a
+ * fork/join pool. Once every chunk has been read, the chunk graphs are moved into the
+ * graph in the order in which they appear in the file, and references between chunks are
+ * resolved, producing the same graph as reading the file with a single reader.
+ * <p>
+ * The file is split by searching for the element tags without parsing, so the file must
+ * be encoded in UTF-8 or another ASCII compatible encoding, and those tags must not appear
+ * within comments or CDATA sections, as is the case for files written by
+ * {@link GenealogyGraphWriter}. If no split points are found, the file is read as a single
+ * chunk.
+ */
+public class GenealogyGraphParallelReader
+{
+	private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+	private static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+	private static final int SCAN_WINDOW = 64 * 1024;
+	private static final byte[] ROOT_TAG = ascii("<genealogy");
+	private static final byte[] ROOT_END_TAG = ascii("</genealogy>");
+	private static final byte[][] SPLIT_TAGS = {ascii("<person"), ascii("<marriage")};
+
+	private final GenealogyGraph graph;
+	private final int parallelism;
+	private List<String> unresolvedReferences = Collections.emptyList();
+
+	public GenealogyGraphParallelReader(GenealogyGraph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param graph the graph into which the file is read (not <code>null</code>)
+	 * @param parallelism the number of threads reading chunks of the file
+	 */
+	public GenealogyGraphParallelReader(GenealogyGraph graph, int parallelism) {
+		this.graph = graph;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public void read(File file) throws IOException, XMLStreamException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			final List<ReadChunk> chunks = split(channel);
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					protected void compute() {
+						invokeAll(chunks);
+					}
+				});
+			}
+			finally {
+				pool.shutdown();
+			}
+			merge(chunks);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Answer a description of each reference to a person that did not appear in the
+	 * file most recently read. The relationships described were not established.
+	 */
+	public List<String> getUnresolvedReferences() {
+		return unresolvedReferences;
+	}
+
+	//============================================================
+	// Splitting
+
+	/**
+	 * Split the file into chunks of roughly equal size. Every chunk after the first is
+	 * preceded by the content of the file up to and including the root element's start
+	 * tag, and every chunk before the last is followed by the root element's end tag,
+	 * so that each chunk is read as a complete document.
+	 */
+	private List<ReadChunk> split(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long rootEnd = findRootEnd(channel, size);
+		int count = (int) Math.max(parallelism * 4L, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+		count = (int) Math.max(1, Math.min(count, size / MIN_CHUNK_SIZE));
+		List<Long> splits = new ArrayList<Long>();
+		splits.add(0L);
+		if (rootEnd != -1) {
+			long last = rootEnd;
+			for (int i = 1; i < count; i++) {
+				long split = findSplit(channel, Math.max(last, size * i / count), size);
+				if (split == -1)
+					break;
+				if (split > last) {
+					splits.add(split);
+					last = split;
+				}
+			}
+		}
+		splits.add(size);
+
+		byte[] prefix = null;
+		if (splits.size() > 2) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) rootEnd);
+			read(channel, buffer, 0);
+			prefix = buffer.array();
+		}
+		List<ReadChunk> chunks = new ArrayList<ReadChunk>(splits.size() - 1);
+		for (int i = 0; i + 1 < splits.size(); i++) {
+			boolean first = i == 0;
+			boolean last = i + 2 == splits.size();
+			chunks.add(new ReadChunk(channel, splits.get(i), splits.get(i + 1),
+				first ? null : prefix, last ? null : ROOT_END_TAG));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Answer the position immediately after the root element's start tag,
+	 * or -1 if it is not found near the start of the file
+	 */
+	private static long findRootEnd(FileChannel channel, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, SCAN_WINDOW));
+		read(channel, buffer, 0);
+		byte[] bytes = buffer.array();
+		int length = buffer.position();
+		for (int i = 0; i + ROOT_TAG.length < length; i++) {
+			if (matches(bytes, i, length, ROOT_TAG)) {
+				for (int j = i + ROOT_TAG.length; j < length; j++)
+					if (bytes[j] == '>')
+						return j + 1;
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Answer the position of the first split tag at or after the specified position,
+	 * or -1 if there is none
+	 */
+	private static long findSplit(FileChannel channel, long from, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_WINDOW);
+		byte[] bytes = buffer.array();
+		long position = from;
+		while (position < size) {
+			buffer.clear();
+			read(channel, buffer, position);
+			int length = buffer.position();
+			for (int i = 0; i < length; i++) {
+				if (bytes[i] != '<')
+					continue;
+				for (byte[] tag : SPLIT_TAGS)
+					if (matches(bytes, i, length, tag))
+						return position + i;
+			}
+
+			// Rescan the last few bytes in case a tag spans the end of the window
+
+			if (position + length >= size)
+				break;
+			position += Math.max(1, length - 16);
+		}
+		return -1;
+	}
+
+	/**
+	 * Answer <code>true</code> if the specified tag followed by whitespace or the end
+	 * of the tag occurs at the specified index
+	 */
+	private static boolean matches(byte[] bytes, int index, int length, byte[] tag) {
+		if (index + tag.length >= length)
+			return false;
+		for (int i = 0; i < tag.length; i++)
+			if (bytes[index + i] != tag[i])
+				return false;
+		byte next = bytes[index + tag.length];
+		return next == ' ' || next == '\t' || next == '\r' || next == '\n' || next == '/' || next == '>';
+	}
+
+	private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int count = channel.read(buffer, position + buffer.position());
+			if (count == -1)
+				break;
+		}
+	}
+
+	private static byte[] ascii(String s) {
+		try {
+			return s.getBytes("US-ASCII");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	//============================================================
+	// Reading and Merging
+
+	/**
+	 * Read one chunk of the file into a graph of its own
+	 */
+	private static final class ReadChunk extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long start, end;
+		private final byte[] prefix, suffix;
+		final GenealogyGraph chunkGraph = new GenealogyGraph();
+		GenealogyGraphReader reader;
+		Exception error;
+
+		ReadChunk(FileChannel channel, long start, long end, byte[] prefix, byte[] suffix) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.prefix = prefix;
+			this.suffix = suffix;
+		}
+
+		protected void compute() {
+			try {
+				ByteBuffer content = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				Vector<InputStream> streams = new Vector<InputStream>(3);
+				if (prefix != null)
+					streams.add(new ByteArrayInputStream(prefix));
+				streams.add(new ByteBufferInputStream(content));
+				if (suffix != null)
+					streams.add(new ByteArrayInputStream(suffix));
+				reader = new GenealogyGraphReader(chunkGraph, true);
+				reader.read(new SequenceInputStream(streams.elements()));
+			}
+			catch (Exception e) {
+				error = e;
+			}
+		}
+	}
+
+	/**
+	 * Move the chunk graphs into the graph in file order, then resolve references between
+	 * chunks in the order in which a single reader would have established them. A
+	 * reference to a person in a later chunk precedes every reference read in that
+	 * person's chunk, so it replaces any conflicting relationship established there,
+	 * while a reference to a person in an earlier chunk follows them. Finally the
+	 * offspring of each marriage are put in file order.
+	 */
+	private void merge(List<ReadChunk> chunks) throws IOException, XMLStreamException {
+		for (ReadChunk chunk : chunks) {
+			Exception e = chunk.error;
+			if (e instanceof IOException)
+				throw (IOException) e;
+			if (e instanceof XMLStreamException)
+				throw (XMLStreamException) e;
+			if (e instanceof RuntimeException)
+				throw (RuntimeException) e;
+			if (e != null)
+				throw new IllegalStateException(e);
+		}
+		unresolvedReferences = Collections.emptyList();
+		GenealogyGraph.BulkLoad load = graph.beginBulkLoad();
+		try {
+			IntHashMap<Person> idToPerson = new IntHashMap<Person>();
+			List<GenealogyGraphReader.PendingLink> backward = new ArrayList<GenealogyGraphReader.PendingLink>();
+			List<GenealogyGraphReader.PendingLink> forward = new ArrayList<GenealogyGraphReader.PendingLink>();
+			for (ReadChunk chunk : chunks) {
+				load.addAll(chunk.chunkGraph);
+				idToPerson.putAll(chunk.reader.getPeopleById());
+				for (GenealogyGraphReader.PendingLink pending : chunk.reader.getUnresolvedLinks())
+					(idToPerson.get(pending.personId) != null ? backward : forward).add(pending);
+			}
+			List<String> unresolved = new ArrayList<String>();
+			Set<Person> forwardSpouses = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+			Set<Person> forwardOffspring = Collections.newSetFromMap(new IdentityHashMap<Person, Boolean>());
+			for (GenealogyGraphReader.PendingLink pending : forward) {
+				Person p = idToPerson.get(pending.personId);
+				if (p == null) {
+					unresolved.add(pending.toString());
+					continue;
+				}
+				if (pending.kind == GenealogyGraphReader.PendingLink.CHILD) {
+					if (forwardOffspring.add(p))
+						load.removeOffspring(p);
+				}
+				else if (!GenealogyGraphReader.PendingLink.isGender(p, pending.kind)) {
+					pending.link(load, p);
+					unresolved.add(pending.toString());
+					continue;
+				}
+				else if (forwardSpouses.add(p))
+					load.removeSpouse(p);
+				pending.link(load, p);
+			}
+			for (GenealogyGraphReader.PendingLink pending : backward)
+				if (!pending.link(load, idToPerson.get(pending.personId)))
+					unresolved.add(pending.toString());
+			for (ReadChunk chunk : chunks)
+				unresolved.addAll(chunk.reader.getUnresolvedReferences());
+			for (ReadChunk chunk : chunks)
+				GenealogyGraphReader.orderOffspring(load, chunk.reader.getOffspringOrder());
+			if (!unresolved.isEmpty())
+				unresolvedReferences = unresolved;
+			load.finish();
+		}
+		finally {
+			load.abort();
+		}
+	}
+
+	/**
+	 * An input stream reading the remaining content of a buffer
+	 */
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0)
+				return 0;
+			if (!buffer.hasRemaining())
+				return -1;
+			length = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, length);
+			return length;
+		}
+
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -2,108 +2,412 @@ package com.qualityeclipse.genealogy.model.io;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import javax.xml.stream.XMLStreamException;
 
 import com.qualityeclipse.genealogy.model.GenealogyElement;
 import com.qualityeclipse.genealogy.model.GenealogyGraph;
 import com.qualityeclipse.genealogy.model.Marriage;
 import com.qualityeclipse.genealogy.model.Note;
+import com.qualityeclipse.genealogy.model.NoteContainer;
 import com.qualityeclipse.genealogy.model.Person;
 
 /**
- * Loads information from an XML stream into a {@link GenealogyGraph}
+ * Loads information from an XML stream into a {@link GenealogyGraph}. The stream is read
+ * with a {@link GenealogyGraphScanner}, which identifies element and attribute names as
+ * int constants and parses numeric values without creating intermediate strings, and the
+ * graph is populated through a {@link GenealogyGraph.BulkLoad} session so that no
+ * listeners are notified until the entire stream has been read. If the stream cannot be read, the graph is left
+ * empty and listeners are notified that it has been cleared.
+ * <p>
+ * The stream is read in a single pass. A marriage may refer to a husband, wife, or child
+ * whose person element appears later in the stream, in which case the reference is
+ * recorded and the relationship established when that person is read. The offspring of
+ * each marriage are recorded in the order in which they appear in the stream, even if
+ * some were linked only when they were read later. References to people that never
+ * appear, and husband or wife references to people of the other gender, are available
+ * from {@link #getUnresolvedReferences()} once the stream has been read.
  */
-public class GenealogyGraphReader extends DefaultHandler
+public class GenealogyGraphReader
 {
 	private final GenealogyGraph graph;
-	private Map<Integer, Person> idToPerson;
+	private final boolean isChunk;
+	private GenealogyGraph.BulkLoad load;
+	private IntHashMap<Person> idToPerson;
+	private IntHashMap<PendingLink> idToPendingLinks;
+	private List<PendingLink> pendingLinks;
+	private List<PendingLink> offspringOrder;
+	private List<PendingLink> mismatchedLinks;
+	private boolean isOrderingOffspring;
+	private List<String> unresolvedReferences = Collections.emptyList();
 	private Person currentPerson;
-	private Note currentNote;
 	private Marriage currentMarriage;
+	private final StringBuilder noteText = new StringBuilder();
+
+	// Attribute values of the element currently being read
+	private int id, x, y, width, height, birthYear, deathYear, yearMarried;
+	private int husbandId, wifeId, childId;
+	private Person.Gender gender;
+	private String name, text;
 
 	public GenealogyGraphReader(GenealogyGraph graph) {
+		this(graph, false);
+	}
+
+	/**
+	 * Construct a new reader. If the reader is reading one chunk of a larger stream, then
+	 * the people read and any references to people not read are retained after the stream
+	 * has been read so that references between chunks can be resolved.
+	 * 
+	 * @see GenealogyGraphParallelReader
+	 */
+	GenealogyGraphReader(GenealogyGraph graph, boolean isChunk) {
 		this.graph = graph;
+		this.isChunk = isChunk;
 	}
 
-	public void read(InputStream stream) throws ParserConfigurationException, SAXException, IOException {
-		SAXParserFactory factory = SAXParserFactory.newInstance();
-		SAXParser parser = factory.newSAXParser();
-		idToPerson = new HashMap<Integer, Person>();
-		parser.parse(stream, this);
-		resolveRelationships();
-	}
-	
-	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-		if (qName.equals("person")) {
-			Person p = new Person(Person.Gender.valueOf(attributes.getValue("gender")));
-			idToPerson.put(readInt(attributes, "id"), p);
-			p.setName(attributes.getValue("name"));
-			p.setBirthYear(readInt(attributes, "birthYear"));
-			p.setDeathYear(readInt(attributes, "deathYear"));
-			readGenealogyElementAttributes(p, attributes);
-			graph.addPerson(p);
-			currentPerson = p;
-		}
-		else if (qName.equals("marriage")) {
-			Marriage m = new Marriage(readInt(attributes, "yearMarried"));
-			// ASSUME that all person objects have been created
-			m.setHusband(idToPerson.get(readInt(attributes, "husbandId")));
-			m.setWife(idToPerson.get(readInt(attributes, "wifeId")));
-			readGenealogyElementAttributes(m, attributes);
-			graph.addMarriage(m);
-			currentMarriage = m;
-		}
-		else if (qName.equals("offspring")) {
-			// ASSUME that all person objects have been created
-			currentMarriage.addOffspring(idToPerson.get(readInt(attributes, "childId")));
+	public void read(InputStream stream) throws IOException, XMLStreamException {
+		GenealogyGraphScanner scanner = new GenealogyGraphScanner(stream);
+		idToPerson = new IntHashMap<Person>();
+		idToPendingLinks = new IntHashMap<PendingLink>();
+		pendingLinks = new ArrayList<PendingLink>();
+		offspringOrder = new ArrayList<PendingLink>();
+		mismatchedLinks = new ArrayList<PendingLink>();
+		unresolvedReferences = Collections.emptyList();
+		load = graph.beginBulkLoad();
+		try {
+			int event;
+			while ((event = scanner.next()) != GenealogyGraphScanner.END_DOCUMENT) {
+				if (event == GenealogyGraphScanner.START_ELEMENT)
+					startElement(scanner);
+				else
+					endElement(scanner.getElement());
+			}
+			resolveRelationships();
+			load.finish();
 		}
-		else if (qName.equals("note")) {
-			Note n = new Note(attributes.getValue("text"));
-			readGenealogyElementAttributes(n, attributes);
-			if (currentPerson != null)
-				currentPerson.addNote(n);
-			else
-				graph.addNote(n);
-			currentNote = n;
+		finally {
+			if (!isChunk) {
+				idToPerson = null;
+				pendingLinks = null;
+				offspringOrder = null;
+				mismatchedLinks = null;
+			}
+			idToPendingLinks = null;
+			currentPerson = null;
+			currentMarriage = null;
+			noteText.setLength(0);
+			load.abort();
+			load = null;
 		}
 	}
-	
-	public void characters(char[] ch, int start, int length) throws SAXException {
-		if (currentNote != null)
-			currentNote.setText(new String(ch, start, length));
+
+	private void startElement(GenealogyGraphScanner scanner) throws IOException, XMLStreamException {
+		readAttributes(scanner);
+		switch (scanner.getElement()) {
+			case GenealogyGraphScanner.PERSON :
+				if (gender == null)
+					throw new XMLStreamException("Missing or invalid gender at line " + scanner.getLine());
+				Person p = load.addPerson(id, gender, name, birthYear, deathYear);
+				readGenealogyElementAttributes(p);
+				idToPerson.put(id, p);
+				linkPending(p);
+				currentPerson = p;
+				break;
+			case GenealogyGraphScanner.MARRIAGE :
+				Marriage m = load.addMarriage(yearMarried);
+				isOrderingOffspring = false;
+				link(m, PendingLink.HUSBAND, husbandId, scanner);
+				link(m, PendingLink.WIFE, wifeId, scanner);
+				readGenealogyElementAttributes(m);
+				currentMarriage = m;
+				break;
+			case GenealogyGraphScanner.OFFSPRING :
+				if (currentMarriage != null)
+					link(currentMarriage, PendingLink.CHILD, childId, scanner);
+				break;
+			case GenealogyGraphScanner.NOTE :
+				NoteContainer container = currentPerson != null ? currentPerson : graph;
+				Note n = load.addNote(container, text);
+				readGenealogyElementAttributes(n);
+
+				// Note text is the element content, which may span several lines and CDATA sections
+				scanner.readElementText(noteText);
+				if (noteText.length() > 0)
+					load.setText(n, noteText.toString());
+				break;
+		}
 	}
-	
-	public void endElement(String uri, String localName, String qName) throws SAXException {
-		if (qName.equals("person"))
+
+	private void endElement(int element) {
+		if (element == GenealogyGraphScanner.PERSON)
 			currentPerson = null;
-		else if (qName.equals("marriage"))
+		else if (element == GenealogyGraphScanner.MARRIAGE)
 			currentMarriage = null;
-		else if (qName.equals("note"))
-			currentNote = null;
 	}
 
-	private void readGenealogyElementAttributes(GenealogyElement elem, Attributes attributes) {
-		elem.setLocation(readInt(attributes, "x"), readInt(attributes, "y"));
-		elem.setSize(readInt(attributes, "width"), readInt(attributes, "height"));
+	/**
+	 * Read all attributes of the current element in a single pass, parsing numbers
+	 * directly from the scanner's buffer and identifying the gender by its first character.
+	 */
+	private void readAttributes(GenealogyGraphScanner scanner) throws XMLStreamException {
+		id = x = y = width = height = birthYear = deathYear = yearMarried = -1;
+		husbandId = wifeId = childId = -1;
+		gender = null;
+		name = text = null;
+		int count = scanner.getAttributeCount();
+		for (int i = 0; i < count; i++) {
+			switch (scanner.getAttributeName(i)) {
+				case GenealogyGraphScanner.ID :
+					id = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.X :
+					x = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.Y :
+					y = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.WIDTH :
+					width = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.HEIGHT :
+					height = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.NAME :
+					name = scanner.getStringValue(i);
+					break;
+				case GenealogyGraphScanner.GENDER :
+					char c = scanner.getFirstChar(i);
+					gender = c == 'M' ? Person.Gender.MALE : c == 'F' ? Person.Gender.FEMALE : null;
+					break;
+				case GenealogyGraphScanner.BIRTH_YEAR :
+					birthYear = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.DEATH_YEAR :
+					deathYear = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.YEAR_MARRIED :
+					yearMarried = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.HUSBAND_ID :
+					husbandId = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.WIFE_ID :
+					wifeId = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.CHILD_ID :
+					childId = scanner.getIntValue(i);
+					break;
+				case GenealogyGraphScanner.TEXT :
+					text = scanner.getStringValue(i);
+					break;
+			}
+		}
+	}
+
+	private void readGenealogyElementAttributes(GenealogyElement elem) {
+		load.setBounds(elem, x, y, width, height);
+	}
+
+	/**
+	 * Establish the relationship between the marriage and the person with the specified
+	 * id, or record the relationship to be established when that person is read
+	 */
+	private void link(Marriage m, int kind, int personId, GenealogyGraphScanner scanner) {
+		if (personId == -1)
+			return;
+		Person p = idToPerson.get(personId);
+		PendingLink pending;
+		if (p != null) {
+			if (!PendingLink.link(load, m, kind, p)) {
+				pending = new PendingLink(m, kind, personId, isChunk ? -1 : scanner.getLine());
+				pending.link(load, p);
+				mismatchedLinks.add(pending);
+				return;
+			}
+			if (kind != PendingLink.CHILD || !isOrderingOffspring)
+				return;
+			pending = new PendingLink(m, kind, personId, -1);
+			pending.person = p;
+			pending.resolved = true;
+		}
+		else {
+			int line = isChunk ? -1 : scanner.getLine();
+			pending = new PendingLink(m, kind, personId, line);
+			PendingLink first = idToPendingLinks.get(personId);
+			if (first != null)
+				first.last.next = pending;
+			else {
+				first = pending;
+				idToPendingLinks.put(personId, first);
+			}
+			first.last = pending;
+			pendingLinks.add(pending);
+		}
+
+		// Once an offspring of the marriage is pending, record that offspring and every
+		// later one so that they can be put in order once the pending ones are linked
+
+		if (kind == PendingLink.CHILD) {
+			isOrderingOffspring = true;
+			offspringOrder.add(pending);
+		}
 	}
 
-	private int readInt(Attributes attributes, String key) {
-		String value = attributes.getValue(key);
-		if (value == null)
-			return -1;
-		return Integer.parseInt(value);
+	/**
+	 * Establish any relationships recorded for the person that was just read
+	 */
+	private void linkPending(Person p) {
+		PendingLink pending = idToPendingLinks.remove(id);
+		for (; pending != null; pending = pending.next) {
+			pending.resolved = true;
+			if (!pending.link(load, p))
+				mismatchedLinks.add(pending);
+		}
 	}
 
+	/**
+	 * Record any references to people that were never read or were of the wrong gender,
+	 * and put the offspring of each marriage in the order in which they were read
+	 */
 	private void resolveRelationships() {
-		// TODO Resolve parent - marriage - child relationships
+		if (!isChunk)
+			orderOffspring(load, offspringOrder);
+		List<PendingLink> unresolved = new ArrayList<PendingLink>();
+		for (PendingLink pending : pendingLinks)
+			if (!pending.resolved)
+				unresolved.add(pending);
+		pendingLinks = unresolved;
+		if (isChunk)
+			unresolved = mismatchedLinks;
+		else
+			unresolved.addAll(mismatchedLinks);
+		if (unresolved.isEmpty())
+			return;
+		unresolvedReferences = new ArrayList<String>(unresolved.size());
+		for (PendingLink pending : unresolved)
+			unresolvedReferences.add(pending.toString());
+	}
+
+	/**
+	 * Answer a description of each reference to a person that did not appear in the
+	 * stream most recently read, and of each husband or wife reference to a person of the
+	 * other gender. The relationships described were not established. When reading a
+	 * chunk, only the references of the latter kind are described.
+	 */
+	public List<String> getUnresolvedReferences() {
+		return unresolvedReferences;
+	}
+
+	/**
+	 * Move the offspring that were recorded as they were read, and that were linked, after
+	 * the other offspring of their marriages in the order in which they were read
+	 */
+	static void orderOffspring(GenealogyGraph.BulkLoad load, List<PendingLink> offspringOrder) {
+		for (PendingLink link : offspringOrder)
+			if (link.person != null && link.person.getParentsMarriage() == link.marriage)
+				load.moveOffspringToEnd(link.marriage, link.person);
+	}
+
+	/**
+	 * Answer the people read from the chunk, keyed by id
+	 */
+	IntHashMap<Person> getPeopleById() {
+		return idToPerson;
+	}
+
+	/**
+	 * Answer the references to people that did not appear in the chunk
+	 */
+	List<PendingLink> getUnresolvedLinks() {
+		return pendingLinks;
+	}
+
+	/**
+	 * Answer the offspring references of the chunk that must be put in order once the
+	 * references to people that did not appear in the chunk have been linked
+	 */
+	List<PendingLink> getOffspringOrder() {
+		return offspringOrder;
+	}
+
+	/**
+	 * A relationship between a marriage and a person that has not yet been read, an
+	 * offspring relationship recorded so that offspring can be put in order, or a husband
+	 * or wife relationship that could not be established because the person is of the
+	 * other gender. Links to the same person are chained together in the order in which
+	 * they were read.
+	 */
+	static final class PendingLink
+	{
+		static final int HUSBAND = 0;
+		static final int WIFE = 1;
+		static final int CHILD = 2;
+		private static final String[] ATTRIBUTES = {"husbandId", "wifeId", "childId"};
+
+		final Marriage marriage;
+		final int kind;
+		final int personId;
+		final int line;
+		Person person;
+		PendingLink next;
+		PendingLink last;
+		boolean resolved;
+		boolean mismatched;
+
+		PendingLink(Marriage marriage, int kind, int personId, int line) {
+			this.marriage = marriage;
+			this.kind = kind;
+			this.personId = personId;
+			this.line = line;
+		}
+
+		/**
+		 * Establish the relationship with the specified person
+		 * 
+		 * @return <code>false</code> if the person is of the wrong gender, in which case
+		 *         the relationship is not established
+		 */
+		boolean link(GenealogyGraph.BulkLoad load, Person p) {
+			person = p;
+			mismatched = !link(load, marriage, kind, p);
+			return !mismatched;
+		}
+
+		/**
+		 * Establish the relationship between the specified marriage and person
+		 * 
+		 * @return <code>false</code> if the person is of the wrong gender, in which case
+		 *         the relationship is not established
+		 */
+		static boolean link(GenealogyGraph.BulkLoad load, Marriage m, int kind, Person p) {
+			if (kind == CHILD)
+				load.addOffspring(m, p);
+			else if (!isGender(p, kind))
+				return false;
+			else if (kind == HUSBAND)
+				load.setHusband(m, p);
+			else
+				load.setWife(m, p);
+			return true;
+		}
+
+		/**
+		 * Answer <code>true</code> if the specified person is of the gender required by
+		 * a husband or wife relationship of the specified kind
+		 */
+		static boolean isGender(Person p, int kind) {
+			return p.getGender() == (kind == HUSBAND ? Person.Gender.MALE : Person.Gender.FEMALE);
+		}
+
+		public String toString() {
+			String reference = ATTRIBUTES[kind] + "=\"" + personId + "\"" + (line != -1 ? " at line " + line : "");
+			if (mismatched)
+				return reference + " refers to a person who is not " + (kind == HUSBAND ? "male" : "female");
+			return reference + " refers to a person that does not exist";
+		}
 	}
 }
@@ -0,0 +1,223 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the XML read by {@link GenealogyGraphReader} with an {@link XMLStreamReader},
+ * identifying element and attribute names as int constants so that the reader can switch
+ * on them, and accessing attributes by index and text as characters so that no lookup
+ * strings or intermediate text strings are created. Numeric values are parsed directly
+ * from the attribute values answered by the parser.
+ * <p>
+ * Parsing, including encoding detection, document type declarations, and entities
+ * declared in them, is left to the parser, with the exception that external entities
+ * are not resolved.
+ */
+final class GenealogyGraphScanner
+{
+	static final int END_DOCUMENT = 0;
+	static final int START_ELEMENT = 1;
+	static final int END_ELEMENT = 2;
+
+	// Element names
+	static final int OTHER = 0;
+	static final int GENEALOGY = 1;
+	static final int PERSON = 2;
+	static final int MARRIAGE = 3;
+	static final int OFFSPRING = 4;
+	static final int NOTE = 5;
+	private static final String[] ELEMENT_NAMES = {
+		null, "genealogy", "person", "marriage", "offspring", "note"
+	};
+
+	// Attribute names
+	static final int ID = 1;
+	static final int X = 2;
+	static final int Y = 3;
+	static final int WIDTH = 4;
+	static final int HEIGHT = 5;
+	static final int NAME = 6;
+	static final int GENDER = 7;
+	static final int BIRTH_YEAR = 8;
+	static final int DEATH_YEAR = 9;
+	static final int YEAR_MARRIED = 10;
+	static final int HUSBAND_ID = 11;
+	static final int WIFE_ID = 12;
+	static final int CHILD_ID = 13;
+	static final int TEXT = 14;
+	private static final String[] ATTRIBUTE_NAMES = {
+		null, "id", "x", "y", "width", "height", "name", "gender", "birthYear", "deathYear",
+		"yearMarried", "husbandId", "wifeId", "childId", "text"
+	};
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static {
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.TRUE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+	}
+
+	private final XMLStreamReader reader;
+	private int element;
+	private int[] attributeNames = new int[16];
+	private int attributeCount;
+
+	GenealogyGraphScanner(InputStream stream) throws XMLStreamException {
+		reader = FACTORY.createXMLStreamReader(stream);
+	}
+
+	//============================================================
+	// Elements
+
+	/**
+	 * Advance to the next start or end tag and answer {@link #START_ELEMENT},
+	 * {@link #END_ELEMENT}, or {@link #END_DOCUMENT}
+	 */
+	int next() throws XMLStreamException {
+		while (true) {
+			switch (reader.next()) {
+				case XMLStreamConstants.START_ELEMENT :
+					element = lookup(reader.getLocalName(), ELEMENT_NAMES);
+					readAttributeNames();
+					return START_ELEMENT;
+				case XMLStreamConstants.END_ELEMENT :
+					element = lookup(reader.getLocalName(), ELEMENT_NAMES);
+					attributeCount = 0;
+					return END_ELEMENT;
+				case XMLStreamConstants.END_DOCUMENT :
+					return END_DOCUMENT;
+			}
+		}
+	}
+
+	/**
+	 * Answer the element name most recently read
+	 */
+	int getElement() {
+		return element;
+	}
+
+	/**
+	 * Answer the line number of the current position
+	 */
+	int getLine() {
+		return reader.getLocation().getLineNumber();
+	}
+
+	/**
+	 * Read the content of the text-only element most recently started, up to and
+	 * including its end tag, into the specified buffer. The buffer is cleared first.
+	 */
+	void readElementText(StringBuilder text) throws XMLStreamException {
+		text.setLength(0);
+		while (true) {
+			switch (reader.next()) {
+				case XMLStreamConstants.CHARACTERS :
+				case XMLStreamConstants.CDATA :
+				case XMLStreamConstants.SPACE :
+					text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					break;
+				case XMLStreamConstants.START_ELEMENT :
+					throw error("Unexpected element in text-only element");
+				case XMLStreamConstants.END_ELEMENT :
+					attributeCount = 0;
+					return;
+				case XMLStreamConstants.END_DOCUMENT :
+					throw error("Unexpected end of document");
+			}
+		}
+	}
+
+	//============================================================
+	// Attributes
+
+	private void readAttributeNames() {
+		attributeCount = reader.getAttributeCount();
+		if (attributeCount > attributeNames.length)
+			attributeNames = new int[Math.max(attributeCount, attributeNames.length * 2)];
+		for (int i = 0; i < attributeCount; i++) {
+			String prefix = reader.getAttributePrefix(i);
+			attributeNames[i] = prefix == null || prefix.length() == 0
+				? lookup(reader.getAttributeLocalName(i), ATTRIBUTE_NAMES)
+				: OTHER;
+		}
+	}
+
+	int getAttributeCount() {
+		return attributeCount;
+	}
+
+	/**
+	 * Answer the name of the specified attribute of the element most recently started
+	 */
+	int getAttributeName(int index) {
+		return attributeNames[index];
+	}
+
+	/**
+	 * Answer the value of the specified attribute parsed as a decimal integer
+	 */
+	int getIntValue(int index) throws XMLStreamException {
+		String value = reader.getAttributeValue(index);
+		int i = 0;
+		int end = value.length();
+		while (i < end && value.charAt(i) == ' ')
+			i++;
+		while (end > i && value.charAt(end - 1) == ' ')
+			end--;
+		boolean negative = i < end && value.charAt(i) == '-';
+		if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+'))
+			i++;
+		if (i == end)
+			throw error("Expected integer attribute value");
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw error("Expected integer attribute value");
+			result = result * 10 + digit;
+			if (result > (long) Integer.MAX_VALUE + 1)
+				throw error("Integer attribute value out of range");
+		}
+		if (negative)
+			result = -result;
+		if (result > Integer.MAX_VALUE)
+			throw error("Integer attribute value out of range");
+		return (int) result;
+	}
+
+	/**
+	 * Answer the first character of the value of the specified attribute,
+	 * or 0 if the value is empty
+	 */
+	char getFirstChar(int index) {
+		String value = reader.getAttributeValue(index);
+		return value.length() > 0 ? value.charAt(0) : 0;
+	}
+
+	String getStringValue(int index) {
+		return reader.getAttributeValue(index);
+	}
+
+	//============================================================
+	// Utility
+
+	/**
+	 * Answer the index of the specified name in the specified table, or 0 if absent
+	 */
+	private static int lookup(String name, String[] table) {
+		for (int i = 1; i < table.length; i++)
+			if (table[i].equals(name))
+				return i;
+		return 0;
+	}
+
+	private XMLStreamException error(String message) {
+		return new XMLStreamException(message, reader.getLocation());
+	}
+}
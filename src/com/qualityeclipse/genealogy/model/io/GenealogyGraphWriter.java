@@ -1,90 +1,149 @@
 package com.qualityeclipse.genealogy.model.io;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.qualityeclipse.genealogy.model.*;
 
 /**
- * Stores information from a {@link GenealogyGraph} to an XML stream
+ * Stores information from a {@link GenealogyGraph} to an XML stream. People and marriages
+ * are written in the order in which they occur in the graph, and each person is written
+ * with its {@link GenealogyElement#getId()}, so writing a graph that has not changed since
+ * it was read produces the same stream.
+ * <p>
+ * If constructed with a parallelism greater than one, the people in a large graph are
+ * encoded as XML on several threads before being written in order to the stream. The graph
+ * must not be modified while it is being written, and must not be supplying elements from
+ * a {@link GenealogyElementSource}, as is the case for a graph returned by
+ * {@link GenealogyGraph#copy()}.
  */
 public class GenealogyGraphWriter
 {
 	private static final String INDENT = "  ";
 	private static final String INDENT2 = INDENT + INDENT;
-	
+	private static final int PEOPLE_PER_TASK = 2048;
+
 	private final GenealogyGraph graph;
+	private final int parallelism;
 	private PrintWriter writer;
 
 	public GenealogyGraphWriter(GenealogyGraph graph) {
+		this(graph, 1);
+	}
+
+	/**
+	 * @param graph the graph to be written (not <code>null</code>)
+	 * @param parallelism the number of threads encoding people
+	 */
+	public GenealogyGraphWriter(GenealogyGraph graph, int parallelism) {
 		this.graph = graph;
+		this.parallelism = Math.max(1, parallelism);
 	}
 
 	public void write(PrintWriter writer) {
 		this.writer = writer;
 		writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
 		writer.println("<genealogy>");
-		Map<Person, Integer> personToId = writePeople();
-		writeMarriages(personToId);
+		if (parallelism > 1 && graph.getSource() == null && graph.getPeople().size() > PEOPLE_PER_TASK)
+			writePeopleInParallel();
+		else {
+			for (Person p : graph.getPeople())
+				writePerson(p);
+		}
+		writeMarriages();
 		writeNotes(graph, INDENT);
 		writer.println("</genealogy>");
 	}
 
-	private Map<Person, Integer> writePeople() {
-		HashMap<Person, Integer> personToId = new HashMap<Person, Integer>();
-		int id = 0;
-		Collection<Person> sorted = new TreeSet<Person>(new Comparator<Person>() {
-			public int compare(Person p1, Person p2) {
-				int delta = p1.getName().compareTo(p2.getName());
-				if (delta == 0)
-					delta = p1.hashCode() - p2.hashCode();
-				return delta;
+	/**
+	 * Encode the people in batches, each batch encoded on several threads
+	 * and then written in order so that only one batch is held in memory.
+	 */
+	private void writePeopleInParallel() {
+		final Person[] people = graph.getPeople().toArray(new Person[graph.getPeople().size()]);
+		int batchSize = PEOPLE_PER_TASK * parallelism * 4;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (int batch = 0; batch < people.length; batch += batchSize) {
+				final List<EncodePeople> tasks = new ArrayList<EncodePeople>();
+				int batchEnd = Math.min(people.length, batch + batchSize);
+				for (int start = batch; start < batchEnd; start += PEOPLE_PER_TASK)
+					tasks.add(new EncodePeople(people, start, Math.min(batchEnd, start + PEOPLE_PER_TASK)));
+				pool.invoke(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+				for (EncodePeople task : tasks)
+					writer.write(task.xml.getBuffer().toString());
 			}
-		});
-		sorted.addAll(graph.getPeople());
-		for (Person p : sorted) {
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Encode a range of people as XML
+	 */
+	private final class EncodePeople extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Person[] people;
+		private final int start, end;
+		final StringWriter xml = new StringWriter();
+
+		EncodePeople(Person[] people, int start, int end) {
+			this.people = people;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			GenealogyGraphWriter encoder = new GenealogyGraphWriter(graph);
+			encoder.writer = new PrintWriter(xml);
+			for (int i = start; i < end; i++)
+				encoder.writePerson(people[i]);
+			encoder.writer.flush();
+		}
+	}
+
+	private void writePerson(Person p) {
+		writer.print(INDENT);
+		writer.print("<person");
+		writeAttribute("id", p.getId());
+		writePresentationInfo(p);
+		writeAttribute("name", p.getName());
+		writeAttribute("gender", p.getGender().toString());
+		writeAttribute("birthYear", p.getBirthYear());
+		writeAttribute("deathYear", p.getDeathYear());
+		if (p.getNotes().size() > 0) {
+			writer.println(">");
+			writeNotes(p, INDENT2);
 			writer.print(INDENT);
-			writer.print("<person");
-			writeAttribute("id", id);
-			writePresentationInfo(p);
-			writeAttribute("name", p.getName());
-			writeAttribute("gender", p.getGender().toString());
-			writeAttribute("birthYear", p.getBirthYear());
-			writeAttribute("deathYear", p.getDeathYear());
-			if (p.getNotes().size() > 0) {
-				writer.println(">");
-				writeNotes(p, INDENT2);
-				writer.print(INDENT);
-				writer.println("</person>");
-			}
-			else
-				writer.println("/>");
-			personToId.put(p, id);
-			id++;
+			writer.println("</person>");
 		}
-		return personToId;
+		else
+			writer.println("/>");
 	}
 
-	private void writeMarriages(Map<Person, Integer> personToId) {
-		Collection<Marriage> sorted = new TreeSet<Marriage>(new Comparator<Marriage>() {
-			public int compare(Marriage m1, Marriage m2) {
-				int delta = m1.getYearMarried() - m2.getYearMarried();
-				if (delta == 0)
-					delta = m1.hashCode() - m2.hashCode();
-				return delta;
-			}
-		});
-		sorted.addAll(graph.getMarriages());
-		for (Marriage m : sorted) {
+	private void writeMarriages() {
+		for (Marriage m : graph.getMarriages()) {
 			writer.print(INDENT);
 			writer.print("<marriage");
 			writePresentationInfo(m);
 			writeAttribute("yearMarried", m.getYearMarried());
-			writeAttribute(personToId, "husbandId", m.getHusband());
-			writeAttribute(personToId, "wifeId", m.getWife());
+			writeAttribute("husbandId", m.getHusband());
+			writeAttribute("wifeId", m.getWife());
 			if (m.getOffspring().size() > 0) {
 				writer.println(">");
-				writeOffspring(personToId, m);
+				writeOffspring(m);
 				writer.print(INDENT);
 				writer.println("</marriage>");
 			}
@@ -93,18 +152,18 @@ public class GenealogyGraphWriter
 		}
 	}
 
-	private void writeOffspring(Map<Person, Integer> personToId, Marriage m) {
+	private void writeOffspring(Marriage m) {
 		for (Person p : m.getOffspring()) {
 			writer.print(INDENT2);
 			writer.print("<offspring");
-			writeAttribute(personToId, "childId", p);
+			writeAttribute("childId", p);
 			writer.println("/>");
 		}
 	}
 
-	private void writeAttribute(Map<Person, Integer> personToId, String key, Person value) {
+	private void writeAttribute(String key, Person value) {
 		if (value != null)
-			writeAttribute(key, personToId.get(value));
+			writeAttribute(key, value.getId());
 	}
 
 	private void writeNotes(NoteContainer container, String indent) {
@@ -0,0 +1,121 @@
+package com.qualityeclipse.genealogy.model.io;
+
+/**
+ * A map from primitive int keys to non-null values using open addressing, so that
+ * neither the keys nor the entries are allocated as objects. Used by the readers to
+ * map the ids in a file to the elements created for them.
+ */
+class IntHashMap<V>
+{
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	IntHashMap() {
+		this(16);
+	}
+
+	IntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2)
+			capacity <<= 1;
+		keys = new int[capacity];
+		values = new Object[capacity];
+	}
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask)
+			if (keys[i] == key)
+				return (V) values[i];
+		return null;
+	}
+
+	/**
+	 * Associate the value with the key, answering the value previously associated with
+	 * the key or <code>null</code> if none
+	 */
+	@SuppressWarnings("unchecked")
+	V put(int key, V value) {
+		if (value == null)
+			throw new IllegalArgumentException("value cannot be null");
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				V old = (V) values[i];
+				values[i] = value;
+				return old;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length)
+			grow();
+		return null;
+	}
+
+	/**
+	 * Copy all entries from the specified map into the receiver,
+	 * replacing the values of any keys already in the receiver
+	 */
+	@SuppressWarnings("unchecked")
+	void putAll(IntHashMap<? extends V> other) {
+		for (int i = 0; i < other.keys.length; i++)
+			if (other.values[i] != null)
+				put(other.keys[i], (V) other.values[i]);
+	}
+
+	/**
+	 * Remove and answer the value associated with the key, or <code>null</code> if none
+	 */
+	@SuppressWarnings("unchecked")
+	V remove(int key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		for (; values[i] != null; i = (i + 1) & mask)
+			if (keys[i] == key)
+				break;
+		V old = (V) values[i];
+		if (old == null)
+			return null;
+		values[i] = null;
+		size--;
+
+		// Shift subsequent entries in the same run back
+		// so that they can still be found by probing
+
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				values[j] = null;
+				i = j;
+			}
+		}
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new Object[oldValues.length * 2];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldValues[i] != null)
+				put(oldKeys[i], (V) oldValues[i]);
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
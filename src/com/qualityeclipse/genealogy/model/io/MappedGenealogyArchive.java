@@ -0,0 +1,222 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import static com.qualityeclipse.genealogy.model.io.GenealogyGraphIndexWriter.*;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.qualityeclipse.genealogy.model.*;
+
+/**
+ * Supplies the elements of a {@link GenealogyGraph} on demand from an indexed file written
+ * by {@link GenealogyGraphIndexWriter}. The file is memory mapped rather than read, so
+ * opening an archive only reads the header regardless of the number of elements, and each
+ * element is decoded from its fixed size record when it is first requested.
+ * <p>
+ * The mapped file must not be modified or replaced while the archive is in use, and some
+ * platforms do not permit either while the file is mapped. Before saving over the file,
+ * call {@link GenealogyGraph#detachSource()} and then {@link #close()}, which releases the
+ * mapping. Decoding and closing are synchronized so that an element being decoded on
+ * another thread is never read from a released mapping.
+ */
+public class MappedGenealogyArchive extends GenealogyElementSource
+{
+	private final ByteBuffer buffer;
+	private final int personCount;
+	private final int marriageCount;
+	private final int offspringCount;
+	private final int noteCount;
+	private final int firstGraphNote;
+	private final int graphNoteCount;
+	private final int personStart;
+	private final int marriageStart;
+	private final int offspringStart;
+	private final int noteStart;
+	private final int stringStart;
+	private boolean closed;
+
+	/**
+	 * Memory map the specified file and answer an archive for reading its content
+	 */
+	public static MappedGenealogyArchive open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException("Genealogy archive too large to map: " + file);
+			return new MappedGenealogyArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		}
+		finally {
+			// The mapping remains valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read all content from the specified stream into memory
+	 * and answer an archive for reading that content
+	 */
+	public static MappedGenealogyArchive read(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+		byte[] chunk = new byte[8192];
+		int count;
+		while ((count = stream.read(chunk)) != -1)
+			bytes.write(chunk, 0, count);
+		return new MappedGenealogyArchive(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
+	public MappedGenealogyArchive(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE)
+			throw new IOException("Not an indexed genealogy graph");
+		for (int i = 0; i < MAGIC.length; i++)
+			if (buffer.get(i) != MAGIC[i])
+				throw new IOException("Not an indexed genealogy graph");
+		int version = buffer.get(MAGIC.length);
+		if (version != VERSION)
+			throw new IOException("Unsupported indexed genealogy graph version: " + version);
+		personCount = buffer.getInt(4);
+		marriageCount = buffer.getInt(8);
+		offspringCount = buffer.getInt(12);
+		noteCount = buffer.getInt(16);
+		firstGraphNote = buffer.getInt(20);
+		graphNoteCount = buffer.getInt(24);
+		int stringsSize = buffer.getInt(28);
+
+		long start = HEADER_SIZE;
+		personStart = (int) start;
+		start += (long) personCount * PERSON_RECORD_SIZE;
+		marriageStart = (int) start;
+		start += (long) marriageCount * MARRIAGE_RECORD_SIZE;
+		offspringStart = (int) start;
+		start += (long) offspringCount * OFFSPRING_RECORD_SIZE;
+		noteStart = (int) start;
+		start += (long) noteCount * NOTE_RECORD_SIZE;
+		stringStart = (int) start;
+		if (start + stringsSize != buffer.limit())
+			throw new IOException("Corrupt indexed genealogy graph");
+	}
+
+	public int getPersonCount() {
+		return personCount;
+	}
+
+	public int getMarriageCount() {
+		return marriageCount;
+	}
+
+	public int getFirstGraphNote() {
+		return firstGraphNote;
+	}
+
+	public int getGraphNoteCount() {
+		return graphNoteCount;
+	}
+
+	/**
+	 * Release the mapping of the file, if any. Elements can no longer be decoded, and an
+	 * attempt to decode one throws {@link IllegalStateException}. Platforms that do not
+	 * permit a mapped file to be replaced permit it once the mapping has been released.
+	 */
+	public synchronized void close() {
+		if (closed)
+			return;
+		closed = true;
+		if (buffer instanceof MappedByteBuffer)
+			unmap(buffer);
+	}
+
+	/**
+	 * Release the specified mapping now rather than when it is garbage collected, using the
+	 * buffer's cleaner if the virtual machine provides one. Otherwise the mapping is
+	 * released when the buffer is garbage collected.
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch (Exception e) {
+			try {
+				// Virtual machines in which the cleaner is not accessible provide this instead
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+			}
+			catch (Exception ex) {
+				// Leave the mapping to be released when the buffer is garbage collected
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("Genealogy archive closed");
+	}
+
+	protected synchronized Person createPerson(int index) {
+		checkOpen();
+		checkIndex(index, personCount);
+		int pos = personStart + index * PERSON_RECORD_SIZE;
+		Person p = newPerson(
+			buffer.getInt(pos) == 0 ? Person.Gender.MALE : Person.Gender.FEMALE,
+			readString(buffer.getInt(pos + 4)),
+			buffer.getInt(pos + 8),
+			buffer.getInt(pos + 12),
+			buffer.getInt(pos + 32),
+			buffer.getInt(pos + 36),
+			buffer.getInt(pos + 40),
+			buffer.getInt(pos + 44));
+		readBounds(p, pos + 16);
+		return p;
+	}
+
+	protected synchronized Marriage createMarriage(int index) {
+		checkOpen();
+		checkIndex(index, marriageCount);
+		int pos = marriageStart + index * MARRIAGE_RECORD_SIZE;
+		int firstOffspring = buffer.getInt(pos + 28);
+		int[] offspring = new int[buffer.getInt(pos + 32)];
+		for (int i = 0; i < offspring.length; i++)
+			offspring[i] = buffer.getInt(offspringStart + (firstOffspring + i) * OFFSPRING_RECORD_SIZE);
+		Marriage m = newMarriage(buffer.getInt(pos + 16), buffer.getInt(pos + 20), buffer.getInt(pos + 24), offspring);
+		readBounds(m, pos);
+		return m;
+	}
+
+	protected synchronized Note createNote(int index) {
+		checkOpen();
+		checkIndex(index, noteCount);
+		int pos = noteStart + index * NOTE_RECORD_SIZE;
+		Note n = newNote(readString(buffer.getInt(pos + 16)));
+		readBounds(n, pos);
+		return n;
+	}
+
+	private void readBounds(GenealogyElement elem, int pos) {
+		setBounds(elem, buffer.getInt(pos), buffer.getInt(pos + 4), buffer.getInt(pos + 8), buffer.getInt(pos + 12));
+	}
+
+	private String readString(int offset) {
+		int pos = stringStart + offset;
+		byte[] bytes = new byte[buffer.getInt(pos)];
+		ByteBuffer source = buffer.duplicate();
+		source.position(pos + 4);
+		source.get(bytes);
+		return new String(bytes, GenealogyGraphBinaryWriter.UTF8);
+	}
+
+	private static void checkIndex(int index, int count) {
+		if (index < 0 || index >= count)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Count: " + count);
+	}
+}
@@ -0,0 +1,37 @@
+package com.qualityeclipse.genealogy.model.listener;
+
+import com.qualityeclipse.genealogy.model.GenealogyElement;
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.Marriage;
+import com.qualityeclipse.genealogy.model.Note;
+import com.qualityeclipse.genealogy.model.Person;
+
+/**
+ * Used by {@link GenealogyGraph} to notify others when any element in the graph changes,
+ * so that an index of the entire graph listens once to the graph rather than to each of
+ * its elements. Each notification follows those of the element's own listeners.
+ */
+public interface GenealogyGraphElementListener
+{
+	void locationChanged(GenealogyElement elem, int x, int y);
+	void sizeChanged(GenealogyElement elem, int width, int height);
+
+	// Person
+	void nameChanged(Person p, String newName);
+	void birthYearChanged(Person p, int birthYear);
+	void deathYearChanged(Person p, int deathYear);
+	void marriageChanged(Person p, Marriage marriage, Marriage oldMarriage);
+	void parentsMarriageChanged(Person p, Marriage marriage, Marriage oldMarriage);
+	void noteAdded(Person p, int index, Note n);
+	void noteRemoved(Person p, Note n);
+
+	// Marriage
+	void yearMarriedChanged(Marriage m, int yearMarried);
+	void husbandChanged(Marriage m, Person husband, Person oldHusband);
+	void wifeChanged(Marriage m, Person wife, Person oldWife);
+	void offspringAdded(Marriage m, Person p);
+	void offspringRemoved(Marriage m, Person p);
+
+	// Note
+	void textChanged(Note n, String newText);
+}
@@ -15,4 +15,10 @@ public interface GenealogyGraphListener
 	void marriageAdded(Marriage m);
 	void marriageRemoved(Marriage m);
 	void graphCleared();
+
+	/**
+	 * Called once when a {@link GenealogyGraph.BulkLoad} finishes,
+	 * indicating that the entire content of the graph has been replaced.
+	 */
+	void graphLoaded();
 }
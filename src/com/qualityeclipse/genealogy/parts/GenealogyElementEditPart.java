@@ -1,11 +1,12 @@
 package com.qualityeclipse.genealogy.parts;
 
-import java.util.Map;
+import java.util.List;
 
 import org.eclipse.draw2d.geometry.*;
 import org.eclipse.gef.*;
 import org.eclipse.gef.editparts.AbstractGraphicalEditPart;
 
+import com.qualityeclipse.genealogy.figures.FigureResources;
 import com.qualityeclipse.genealogy.model.*;
 import com.qualityeclipse.genealogy.model.connection.GenealogyConnection;
 
@@ -25,32 +26,66 @@ public abstract class GenealogyElementEditPart extends AbstractGraphicalEditPart
 		super.refreshVisuals();
 	}
 
+	/**
+	 * Answer the images and patterns shared by the figures in the receiver's viewer,
+	 * creating them the first time they are requested
+	 */
+	protected FigureResources getFigureResources() {
+		EditPartViewer viewer = getViewer();
+		FigureResources resources = (FigureResources) viewer.getProperty(FigureResources.VIEWER_PROPERTY);
+		if (resources == null) {
+			resources = new FigureResources(viewer.getControl());
+			viewer.setProperty(FigureResources.VIEWER_PROPERTY, resources);
+		}
+		return resources;
+	}
+
 	/**
 	 * Find an existing connection between a person and marriage
 	 * 
+	 * @param connections the receiver's source or target connections
 	 * @param p the person
 	 * @param m the marriage
 	 * @return the {@link ConnectionEditPart} or <code>null</code> if none
 	 */
-	protected ConnectionEditPart findConnection(Person p, Marriage m) {
+	protected ConnectionEditPart findConnection(List<?> connections, Person p, Marriage m) {
 		if (p == null || m == null)
 			return null;
-		Map<?, ?> registry = getViewer().getEditPartRegistry();
-		Object conn = new GenealogyConnection(p, m);
-		return (ConnectionEditPart) registry.get(conn);
+		for (Object each : connections) {
+			ConnectionEditPart part = (ConnectionEditPart) each;
+			GenealogyConnection conn = (GenealogyConnection) part.getModel();
+			if (conn.person == p && conn.marriage == m)
+				return part;
+		}
+		return null;
 	}
 
 	/**
-	 * Find an existing connection or create a new connection if one
-	 * does not exist between the specified person and marriage.
-	 * 
-	 * @param p the person (not <code>null</code>)
-	 * @param m the marriage (not <code>null</code>)
-	 * @return a {@link ConnectionEditPart} (not <code>null</code>)
+	 * Answer <code>true</code> if the specified element is displayed, or is about to be
+	 * displayed, so that a connection between the receiver and that element can be shown.
+	 * Only the elements near the visible part of a large diagram are displayed.
+	 */
+	protected boolean isRealized(GenealogyElement elem) {
+		EditPart parent = getParent();
+		return !(parent instanceof GenealogyGraphEditPart) || ((GenealogyGraphEditPart) parent).isRealized(elem);
+	}
+
+	/**
+	 * Add or remove connections to reflect which related elements are now displayed
+	 */
+	void refreshConnections() {
+		refreshSourceConnections();
+		refreshTargetConnections();
+	}
+
+	/**
+	 * Answer <code>true</code> if the receiver already has a child edit part for the
+	 * specified model object. A notification delivered at the end of a batch of model
+	 * changes may describe a child that was created from the final state of the model.
 	 */
-	protected ConnectionEditPart createOrFindConnection(Person p, Marriage m) {
-		Object conn = new GenealogyConnection(p, m);
-		return createOrFindConnection(conn);
+	protected boolean isChild(Object model) {
+		Object part = getViewer().getEditPartRegistry().get(model);
+		return part instanceof EditPart && ((EditPart) part).getParent() == this;
 	}
 
 	// ==========================================================================
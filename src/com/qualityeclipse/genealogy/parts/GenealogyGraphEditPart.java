@@ -1,14 +1,17 @@
 package com.qualityeclipse.genealogy.parts;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.*;
 
 import org.eclipse.draw2d.*;
-import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.draw2d.geometry.*;
 import org.eclipse.gef.*;
 import org.eclipse.gef.commands.Command;
-import org.eclipse.gef.editparts.AbstractGraphicalEditPart;
+import org.eclipse.gef.editparts.*;
 import org.eclipse.gef.editpolicies.*;
 import org.eclipse.gef.requests.*;
+import org.eclipse.gef.tools.MarqueeSelectionTool;
 
 import com.qualityeclipse.genealogy.commands.*;
 import com.qualityeclipse.genealogy.model.*;
@@ -19,12 +22,66 @@ import com.qualityeclipse.genealogy.policies.NonResizableMarriageEditPolicy;
  * The {@link EditPart} for the {@link GenealogyGraph} model object. This EditPart is
  * responsible for creating the layer in which all other figures are placed and for
  * returning the collection of top level model objects to be displayed in that layer.
+ * <p>
+ * When the graph has more than {@link #VIRTUAL_THRESHOLD} top level elements, only the
+ * elements near the visible part of the diagram have edit parts and figures. Those are
+ * added and removed as the diagram is scrolled and zoomed, while the layer still reports
+ * the extent of the entire diagram so that the scroll bars cover every element.
  */
 public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 	implements GenealogyGraphListener
 {
+	private static final Request MARQUEE_REQUEST = new Request(RequestConstants.REQ_SELECTION);
+
+	/**
+	 * The number of top level elements above which
+	 * only the elements near the visible part of the diagram are displayed
+	 */
+	public static final int VIRTUAL_THRESHOLD = 2000;
+
+	/**
+	 * The elements within this fraction of the visible width or height beyond each edge of
+	 * the visible part of the diagram are also displayed, so that scrolling a short
+	 * distance does not add or remove edit parts
+	 */
+	private static final float MARGIN = 0.5f;
+
+	private final BoundsIndex boundsIndex;
+
+	/**
+	 * The top level elements being displayed, or <code>null</code> if every element is
+	 * displayed
+	 */
+	private Set<GenealogyElement> realized;
+
+	/**
+	 * An element displayed wherever it is so that it can be revealed,
+	 * or <code>null</code> if none
+	 */
+	private GenealogyElement pinned;
+
+	/**
+	 * The extent of the diagram reported to the scroll bars by the layer
+	 */
+	private int[] extent;
+
+	private boolean realizePending;
+
+	private final PropertyChangeListener viewportListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			scheduleRealize();
+		}
+	};
+
+	private final ZoomListener zoomListener = new ZoomListener() {
+		public void zoomChanged(double zoom) {
+			scheduleRealize();
+		}
+	};
+
 	public GenealogyGraphEditPart(GenealogyGraph genealogyGraph) {
 		setModel(genealogyGraph);
+		boundsIndex = new BoundsIndex(genealogyGraph);
 		genealogyGraph.addGenealogyGraphListener(this);
 	}
 
@@ -33,26 +90,335 @@ public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 	}
 
 	/**
-	 * Construct and return the layer in which all other genealogy figures are displayed
+	 * Extend the superclass behavior to display other elements
+	 * as the diagram is scrolled, resized, and zoomed
+	 */
+	public void activate() {
+		super.activate();
+		Viewport viewport = getViewport();
+		if (viewport != null) {
+			viewport.getHorizontalRangeModel().addPropertyChangeListener(viewportListener);
+			viewport.getVerticalRangeModel().addPropertyChangeListener(viewportListener);
+		}
+		if (getRoot() instanceof ScalableFreeformRootEditPart)
+			((ScalableFreeformRootEditPart) getRoot()).getZoomManager().addZoomListener(zoomListener);
+	}
+
+	public void deactivate() {
+		Viewport viewport = getViewport();
+		if (viewport != null) {
+			viewport.getHorizontalRangeModel().removePropertyChangeListener(viewportListener);
+			viewport.getVerticalRangeModel().removePropertyChangeListener(viewportListener);
+		}
+		if (getRoot() instanceof ScalableFreeformRootEditPart)
+			((ScalableFreeformRootEditPart) getRoot()).getZoomManager().removeZoomListener(zoomListener);
+		super.deactivate();
+		boundsIndex.dispose();
+	}
+
+	/**
+	 * Answer the viewport through which the diagram is displayed,
+	 * or <code>null</code> if there is none
+	 */
+	private Viewport getViewport() {
+		Object figure = ((GraphicalEditPart) getRoot()).getFigure();
+		return figure instanceof Viewport ? (Viewport) figure : null;
+	}
+
+	/**
+	 * Construct and return the layer in which all other genealogy figures are displayed.
+	 * The layer finds the figure at a point by searching only the figures whose model
+	 * bounds contain that point rather than every figure in the diagram.
 	 */
 	protected IFigure createFigure() {
-		Figure figure = new FreeformLayer();
+		Figure figure = new FreeformLayer() {
+			protected IFigure findDescendantAtExcluding(int x, int y, TreeSearch search) {
+				Point point = new Point(x, y);
+				translateFromParent(point);
+				if (!getClientArea(new Rectangle()).contains(point))
+					return null;
+				for (IFigure child : getChildrenAt(point)) {
+					IFigure found = child.findFigureAt(point.x, point.y, search);
+					if (found != null)
+						return found;
+				}
+				return null;
+			}
+
+			public Rectangle getFreeformExtent() {
+				Rectangle result = super.getFreeformExtent();
+				if (realized == null || extent == null)
+					return result;
+				Rectangle all = new Rectangle(extent[0], extent[1], extent[2], extent[3]);
+				return all.expand(getInsets()).union(result);
+			}
+		};
 		figure.setBorder(new MarginBorder(3));
 		figure.setLayoutManager(new FreeformLayout());
 		return figure;
 	}
 
+	/**
+	 * Answer the visible figures of the child edit parts whose model bounds contain the
+	 * specified point, topmost first
+	 */
+	private List<IFigure> getChildrenAt(Point point) {
+		final List<?> children = getFigure().getChildren();
+		List<IFigure> result = new ArrayList<IFigure>();
+		for (GenealogyElement elem : boundsIndex.query(point.x, point.y, 1, 1)) {
+			Object part = getViewer().getEditPartRegistry().get(elem);
+			if (part instanceof GraphicalEditPart && ((EditPart) part).getParent() == this) {
+				IFigure child = ((GraphicalEditPart) part).getFigure();
+				if (child.isVisible())
+					result.add(child);
+			}
+		}
+		if (result.size() > 1) {
+			Collections.sort(result, new Comparator<IFigure>() {
+				public int compare(IFigure f1, IFigure f2) {
+					return children.indexOf(f2) - children.indexOf(f1);
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Answer the edit parts selected by a marquee covering the specified area, found by
+	 * searching only the children whose model bounds intersect that area and the
+	 * descendants of those children, or <code>null</code> if the viewer does not display a
+	 * genealogy graph or the behavior is not one of
+	 * {@link MarqueeSelectionTool#BEHAVIOR_NODES_CONTAINED} and
+	 * {@link MarqueeSelectionTool#BEHAVIOR_NODES_TOUCHED}.
+	 * 
+	 * @param viewer the viewer in which the marquee is drawn
+	 * @param area the area covered by the marquee in absolute coordinates
+	 * @param behavior the marquee behavior
+	 */
+	public static Collection<GraphicalEditPart> findMarqueeSelected(EditPartViewer viewer, Rectangle area,
+		int behavior)
+	{
+		if (!(viewer.getContents() instanceof GenealogyGraphEditPart))
+			return null;
+		boolean touched = behavior == MarqueeSelectionTool.BEHAVIOR_NODES_TOUCHED;
+		if (!touched && behavior != MarqueeSelectionTool.BEHAVIOR_NODES_CONTAINED)
+			return null;
+		GenealogyGraphEditPart contents = (GenealogyGraphEditPart) viewer.getContents();
+		Rectangle relative = area.getCopy();
+		contents.getFigure().translateToRelative(relative);
+		List<GraphicalEditPart> candidates = new ArrayList<GraphicalEditPart>();
+		for (GenealogyElement elem : contents.boundsIndex.query(relative.x, relative.y, relative.width,
+			relative.height))
+		{
+			Object part = viewer.getEditPartRegistry().get(elem);
+			if (part instanceof GraphicalEditPart && ((EditPart) part).getParent() == contents)
+				candidates.add((GraphicalEditPart) part);
+		}
+		Collection<GraphicalEditPart> result = new ArrayList<GraphicalEditPart>();
+		while (!candidates.isEmpty()) {
+			GraphicalEditPart part = candidates.remove(candidates.size() - 1);
+			for (Object child : part.getChildren())
+				candidates.add((GraphicalEditPart) child);
+			IFigure figure = part.getFigure();
+			Rectangle bounds = figure.getBounds().getCopy();
+			figure.translateToAbsolute(bounds);
+			if (touched ? !area.intersects(bounds) : !area.contains(bounds))
+				continue;
+			if (part.getTargetEditPart(MARQUEE_REQUEST) == part && part.isSelectable()
+				&& FigureUtilities.isNotFullyClipped(figure))
+				result.add(part);
+		}
+		return result;
+	}
+
+	/**
+	 * Answer a tracker that selects the figures within a marquee
+	 * when the user drags across the background of the diagram
+	 */
+	public DragTracker getDragTracker(Request request) {
+		return new GenealogyMarqueeDragTracker();
+	}
+
 	/**
 	 * Return a collection of top level genealogy model objects to be displayed
 	 */
 	protected List<GenealogyElement> getModelChildren() {
 		List<GenealogyElement> allObjects = new ArrayList<GenealogyElement>();
-		allObjects.addAll(getModel().getMarriages());
-		allObjects.addAll(getModel().getPeople());
-		allObjects.addAll(getModel().getNotes());
+		realized = isVirtual() ? findRealized() : null;
+		if (realized == null) {
+			allObjects.addAll(getModel().getMarriages());
+			allObjects.addAll(getModel().getPeople());
+			allObjects.addAll(getModel().getNotes());
+			return allObjects;
+		}
+		List<Marriage> marriages = new ArrayList<Marriage>();
+		List<Person> people = new ArrayList<Person>();
+		for (GenealogyElement elem : realized) {
+			if (elem instanceof Marriage)
+				marriages.add((Marriage) elem);
+			else if (elem instanceof Person)
+				people.add((Person) elem);
+		}
+		Collections.sort(marriages, new Comparator<Marriage>() {
+			public int compare(Marriage m1, Marriage m2) {
+				return m1.getId() - m2.getId();
+			}
+		});
+		Collections.sort(people, new Comparator<Person>() {
+			public int compare(Person p1, Person p2) {
+				return p1.getId() - p2.getId();
+			}
+		});
+		allObjects.addAll(marriages);
+		allObjects.addAll(people);
+		for (Note n : getModel().getNotes())
+			if (realized.contains(n))
+				allObjects.add(n);
 		return allObjects;
 	}
 
+	//============================================================
+	// Virtual display
+
+	/**
+	 * Answer <code>true</code> if the graph is large enough that only the elements near the
+	 * visible part of the diagram are displayed
+	 */
+	private boolean isVirtual() {
+		GenealogyGraph graph = getModel();
+		return graph.getPeople().size() + graph.getMarriages().size() + graph.getNotes().size() > VIRTUAL_THRESHOLD;
+	}
+
+	/**
+	 * Answer <code>true</code> if the specified top level element is displayed, or is about
+	 * to be displayed
+	 */
+	boolean isRealized(GenealogyElement elem) {
+		return realized == null || realized.contains(elem);
+	}
+
+	/**
+	 * Answer the top level elements near the visible part of the diagram, the selected
+	 * elements so that the selection is not lost by scrolling, and the pinned element
+	 */
+	private Set<GenealogyElement> findRealized() {
+		Set<GenealogyElement> result = new HashSet<GenealogyElement>();
+		Rectangle area = getRealizedArea();
+		result.addAll(boundsIndex.query(area.x, area.y, area.width, area.height));
+		for (Object each : getViewer().getSelectedEditParts()) {
+			EditPart part = (EditPart) each;
+			if (part.getParent() == this)
+				result.add((GenealogyElement) part.getModel());
+		}
+		if (pinned != null)
+			result.add(pinned);
+		return result;
+	}
+
+	/**
+	 * Answer the area of the diagram in which elements are displayed, which is the visible
+	 * part of the diagram and a margin around it, in the coordinates of the model
+	 */
+	private Rectangle getRealizedArea() {
+		org.eclipse.swt.graphics.Point size = getViewer().getControl() != null
+			? getViewer().getControl().getSize() : new org.eclipse.swt.graphics.Point(0, 0);
+		Rectangle area = new Rectangle(0, 0, size.x, size.y);
+		area.expand((int) (size.x * MARGIN), (int) (size.y * MARGIN));
+		getFigure().translateToRelative(area);
+		return area;
+	}
+
+	/**
+	 * Answer the top level elements that have edit parts
+	 */
+	private Set<GenealogyElement> getChildModels() {
+		Set<GenealogyElement> result = new HashSet<GenealogyElement>();
+		for (Object child : getChildren())
+			result.add((GenealogyElement) ((EditPart) child).getModel());
+		return result;
+	}
+
+	/**
+	 * Display the specified top level element wherever it is, until another element is
+	 * revealed, so that the viewer can select it and scroll to it
+	 * 
+	 * @return the edit part displaying that element, or <code>null</code> if none
+	 */
+	public EditPart realize(GenealogyElement elem) {
+		pinned = elem;
+		if (realized != null && !realized.contains(elem))
+			realizeVisibleChildren();
+		Object part = getViewer().getEditPartRegistry().get(elem);
+		return part instanceof EditPart ? (EditPart) part : null;
+	}
+
+	/**
+	 * Display the elements near the visible part of the diagram
+	 * once the current scrolling, resizing, or zooming is complete
+	 */
+	private void scheduleRealize() {
+		if (realizePending || (realized == null && !isVirtual()) || getViewer().getControl() == null)
+			return;
+		realizePending = true;
+		getViewer().getControl().getDisplay().asyncExec(new Runnable() {
+			public void run() {
+				realizePending = false;
+				if (isActive() && !getViewer().getControl().isDisposed())
+					realizeVisibleChildren();
+			}
+		});
+	}
+
+	/**
+	 * Add edit parts for the elements now near the visible part of the diagram and remove
+	 * those of the elements no longer near it, then update the connections of the
+	 * displayed relatives of those elements and the extent of the diagram.
+	 */
+	private void realizeVisibleChildren() {
+		Set<GenealogyElement> oldRealized = getChildModels();
+		refreshChildren();
+		Set<GenealogyElement> newRealized = getChildModels();
+		Set<GenealogyElement> changed = new HashSet<GenealogyElement>(oldRealized);
+		changed.removeAll(newRealized);
+		for (GenealogyElement elem : newRealized)
+			if (!oldRealized.contains(elem))
+				changed.add(elem);
+		refreshRelativeConnections(changed);
+		int[] newExtent = realized != null ? boundsIndex.getExtent() : null;
+		if (!Arrays.equals(extent, newExtent)) {
+			extent = newExtent;
+			((FreeformFigure) getFigure()).fireExtentChanged();
+			getFigure().revalidate();
+		}
+	}
+
+	/**
+	 * Update the connections of the displayed relatives of the specified elements, which
+	 * have been displayed or are no longer displayed
+	 */
+	private void refreshRelativeConnections(Collection<GenealogyElement> changed) {
+		Set<GenealogyElement> relatives = new HashSet<GenealogyElement>();
+		for (GenealogyElement elem : changed) {
+			if (elem instanceof Person) {
+				Person p = (Person) elem;
+				relatives.add(p.getMarriage());
+				relatives.add(p.getParentsMarriage());
+			}
+			else if (elem instanceof Marriage) {
+				Marriage m = (Marriage) elem;
+				relatives.add(m.getHusband());
+				relatives.add(m.getWife());
+				relatives.addAll(m.getOffspring());
+			}
+		}
+		relatives.remove(null);
+		for (GenealogyElement elem : relatives) {
+			Object part = getViewer().getEditPartRegistry().get(elem);
+			if (part instanceof GenealogyElementEditPart && ((EditPart) part).getParent() == this)
+				((GenealogyElementEditPart) part).refreshConnections();
+		}
+	}
+
 	protected void createEditPolicies() {
 		
 		// Disallows the removal of this edit part from its parent
@@ -130,10 +496,11 @@ public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 
 	/**
 	 * When a person is added to the model,
-	 * add a new EditPart to manage the corresponding figure.
+	 * add a new EditPart to manage the corresponding figure
+	 * unless there is already one for that element
 	 */
 	public void personAdded(Person p) {
-		addChild(createChild(p), 0);
+		genealogyElementAdded(p, 0);
 	}
 
 	/**
@@ -146,10 +513,11 @@ public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 
 	/**
 	 * When a marriage is added to the model,
-	 * add a new EditPart to manage the corresponding figure.
+	 * add a new EditPart to manage the corresponding figure
+	 * unless there is already one for that element
 	 */
 	public void marriageAdded(Marriage m) {
-		addChild(createChild(m), 0);
+		genealogyElementAdded(m, 0);
 	}
 
 	/**
@@ -162,10 +530,11 @@ public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 
 	/**
 	 * When a note is added to the model,
-	 * add a new EditPart to manage the corresponding figure.
+	 * add a new EditPart to manage the corresponding figure
+	 * unless there is already one for that element
 	 */
 	public void noteAdded(int index, Note n) {
-		addChild(createChild(n), index);
+		genealogyElementAdded(n, index);
 	}
 
 	/**
@@ -176,16 +545,61 @@ public class GenealogyGraphEditPart extends AbstractGraphicalEditPart
 		genealogyElementRemoved(n);
 	}
 
+	/**
+	 * Add a new EditPart for the specified element unless there is already one. If only
+	 * the elements near the visible part of the diagram are displayed, add it only if the
+	 * element is near, so that a tool creating the element can select it, and then update
+	 * the elements displayed once the change is complete.
+	 */
+	private void genealogyElementAdded(GenealogyElement elem, int index) {
+		if (realized == null) {
+			if (!isChild(elem))
+				addChild(createChild(elem), index);
+			return;
+		}
+		Rectangle bounds = new Rectangle(elem.getX(), elem.getY(), Math.max(elem.getWidth(), 1),
+			Math.max(elem.getHeight(), 1));
+		if (getRealizedArea().intersects(bounds) && !isChild(elem)) {
+			realized.add(elem);
+			addChild(createChild(elem), -1);
+			refreshRelativeConnections(Collections.singleton(elem));
+		}
+		scheduleRealize();
+	}
+
 	/**
 	 * When an element is removed from the model,
 	 * find and remove the corresponding edit part
 	 */
 	private void genealogyElementRemoved(GenealogyElement elem) {
+		if (realized != null)
+			realized.remove(elem);
+		if (elem == pinned)
+			pinned = null;
 		Object part = getViewer().getEditPartRegistry().get(elem);
 		if (part instanceof EditPart)
 			removeChild((EditPart) part);
 	}
 
+	/**
+	 * Answer <code>true</code> if the receiver already has a child edit part for the
+	 * specified model object. A notification delivered at the end of a batch of model
+	 * changes may describe a child that was created from the final state of the model.
+	 */
+	private boolean isChild(Object model) {
+		Object part = getViewer().getEditPartRegistry().get(model);
+		return part instanceof EditPart && ((EditPart) part).getParent() == this;
+	}
+
 	public void graphCleared() {
 	}
+
+	/**
+	 * When the entire content of the model has been replaced,
+	 * rebuild the child edit parts in a single pass.
+	 */
+	public void graphLoaded() {
+		pinned = null;
+		realizeVisibleChildren();
+	}
 }
\ No newline at end of file
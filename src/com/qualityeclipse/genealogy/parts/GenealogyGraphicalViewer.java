@@ -0,0 +1,18 @@
+package com.qualityeclipse.genealogy.parts;
+
+import org.eclipse.draw2d.LightweightSystem;
+import org.eclipse.gef.ui.parts.ScrollingGraphicalViewer;
+
+import com.qualityeclipse.genealogy.figures.TiledUpdateManager;
+
+/**
+ * A viewer whose canvas reports the areas to be repainted to a {@link TiledUpdateManager},
+ * so that the tiles cached by a {@link GenealogyRootEditPart} are painted again only when
+ * the figures within them change.
+ */
+public class GenealogyGraphicalViewer extends ScrollingGraphicalViewer
+{
+	protected LightweightSystem createLightweightSystem() {
+		return TiledUpdateManager.createLightweightSystem();
+	}
+}
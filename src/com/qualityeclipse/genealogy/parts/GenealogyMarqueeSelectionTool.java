@@ -0,0 +1,28 @@
+package com.qualityeclipse.genealogy.parts;
+
+import java.util.Collection;
+
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.eclipse.gef.tools.MarqueeSelectionTool;
+
+/**
+ * A marquee selection tool that finds the selected edit parts by way of the
+ * {@link GenealogyGraphEditPart}'s index of element bounds
+ * rather than by visiting every edit part in the viewer.
+ */
+public class GenealogyMarqueeSelectionTool extends MarqueeSelectionTool
+{
+	private int marqueeBehavior = BEHAVIOR_NODES_CONTAINED;
+
+	public void setMarqueeBehavior(int type) {
+		super.setMarqueeBehavior(type);
+		marqueeBehavior = type;
+	}
+
+	@SuppressWarnings("rawtypes")
+	protected Collection calculateMarqueeSelectedEditParts() {
+		Rectangle area = new Rectangle(getStartLocation(), getLocation());
+		Collection<?> parts = GenealogyGraphEditPart.findMarqueeSelected(getCurrentViewer(), area, marqueeBehavior);
+		return parts != null ? parts : super.calculateMarqueeSelectedEditParts();
+	}
+}
@@ -0,0 +1,29 @@
+package com.qualityeclipse.genealogy.parts;
+
+import org.eclipse.draw2d.*;
+import org.eclipse.gef.LayerConstants;
+import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
+
+import com.qualityeclipse.genealogy.figures.TiledLayeredPane;
+
+/**
+ * A root edit part whose scaled layers cache the diagram in tiles, so that a viewer
+ * created by {@link GenealogyGraphicalViewer} scrolls by copying those tiles rather than
+ * painting every figure again. The handles and unscaled feedback are painted above the
+ * tiles as usual.
+ */
+public class GenealogyRootEditPart extends ScalableFreeformRootEditPart
+{
+	/**
+	 * Answer the same layers as the superclass in a {@link TiledLayeredPane}
+	 */
+	protected ScalableFreeformLayeredPane createScaledLayers() {
+		ScalableFreeformLayeredPane layers = new TiledLayeredPane();
+		layers.add(createGridLayer(), LayerConstants.GRID_LAYER);
+		layers.add(getPrintableLayers(), LayerConstants.PRINTABLE_LAYERS);
+		FreeformLayer feedbackLayer = new FreeformLayer();
+		feedbackLayer.setEnabled(false);
+		layers.add(feedbackLayer, LayerConstants.SCALED_FEEDBACK_LAYER);
+		return layers;
+	}
+}
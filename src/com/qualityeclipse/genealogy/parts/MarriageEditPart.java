@@ -44,9 +44,12 @@ public class MarriageEditPart extends GenealogyElementEditPart
 	 */
 	protected List<GenealogyConnection> getModelSourceConnections() {
 		Marriage model = getModel();
-		ArrayList<GenealogyConnection> offspringList = new ArrayList<GenealogyConnection>();
-		for (Person offspring : model.getOffspring())
-			offspringList.add(new GenealogyConnection(offspring, model));
+		ArrayList<GenealogyConnection> offspringList = new ArrayList<GenealogyConnection>(model.getOffspring().size());
+		for (Person offspring : model.getOffspring()) {
+			GenealogyConnection conn = offspring.getOffspringConnection();
+			if (conn != null && conn.marriage == model && isRealized(offspring))
+				offspringList.add(conn);
+		}
 		return offspringList;
 	}
 
@@ -85,13 +88,13 @@ public class MarriageEditPart extends GenealogyElementEditPart
 	 */
 	protected List<GenealogyConnection> getModelTargetConnections() {
 		Marriage marriage = getModel();
-		ArrayList<GenealogyConnection> marriageList = new ArrayList<GenealogyConnection>(1);
+		ArrayList<GenealogyConnection> marriageList = new ArrayList<GenealogyConnection>(2);
 		Person husband = marriage.getHusband();
-		if (husband != null)
-			marriageList.add(new GenealogyConnection(husband, marriage));
+		if (husband != null && isRealized(husband))
+			marriageList.add(husband.getSpouseConnection());
 		Person wife = marriage.getWife();
-		if (wife != null)
-			marriageList.add(new GenealogyConnection(wife, marriage));
+		if (wife != null && isRealized(wife))
+			marriageList.add(wife.getSpouseConnection());
 		return marriageList;
 	}
 
@@ -209,12 +212,14 @@ public class MarriageEditPart extends GenealogyElementEditPart
 	 * Update the spouse connection to the receiver
 	 */
 	private void spouceChanged(Person spouse, Person oldSpouse) {
-		ConnectionEditPart part = findConnection(oldSpouse, getModel());
+		ConnectionEditPart part = findConnection(getTargetConnections(), oldSpouse, getModel());
 		if (part != null)
 			removeTargetConnection(part);
-		if (spouse != null) {
-			part = createOrFindConnection(spouse, getModel());
-			addTargetConnection(part, 0);
+		GenealogyConnection conn = spouse != null ? spouse.getSpouseConnection() : null;
+		if (conn != null && conn.marriage == getModel() && isRealized(spouse)) {
+			part = (ConnectionEditPart) createOrFindConnection(conn);
+			if (!getTargetConnections().contains(part))
+				addTargetConnection(part, 0);
 		}
 	}
 
@@ -222,15 +227,19 @@ public class MarriageEditPart extends GenealogyElementEditPart
 	 * Add a connection to reflect the new offspring
 	 */
 	public void offspringAdded(Person p) {
-		ConnectionEditPart part = createOrFindConnection(p, getModel());
-		addSourceConnection(part, 0);
+		GenealogyConnection conn = p.getOffspringConnection();
+		if (conn == null || conn.marriage != getModel() || !isRealized(p))
+			return;
+		ConnectionEditPart part = (ConnectionEditPart) createOrFindConnection(conn);
+		if (!getSourceConnections().contains(part))
+			addSourceConnection(part, 0);
 	}
 
 	/**
 	 * Remove a connection to reflect the removed offspring
 	 */
 	public void offspringRemoved(Person p) {
-		ConnectionEditPart part = findConnection(p, getModel());
+		ConnectionEditPart part = findConnection(getSourceConnections(), p, getModel());
 		if (part != null)
 			removeSourceConnection(part);
 	}
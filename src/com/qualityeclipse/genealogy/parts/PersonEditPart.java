@@ -10,7 +10,7 @@ import org.eclipse.gef.requests.*;
 import org.eclipse.swt.graphics.Image;
 
 import com.qualityeclipse.genealogy.commands.*;
-import com.qualityeclipse.genealogy.figures.PersonFigure;
+import com.qualityeclipse.genealogy.figures.*;
 import com.qualityeclipse.genealogy.model.*;
 import com.qualityeclipse.genealogy.model.connection.GenealogyConnection;
 import com.qualityeclipse.genealogy.model.listener.PersonListener;
@@ -37,8 +37,9 @@ public class PersonEditPart extends GenealogyElementEditPart
 	 */
 	protected IFigure createFigure() {
 		Person m = getModel();
-		Image image = m.getGender() == Person.Gender.MALE ? PersonFigure.MALE : PersonFigure.FEMALE;
-		return new PersonFigure(m.getName(), image, m.getBirthYear(), m.getDeathYear());
+		FigureResources resources = getFigureResources();
+		Image image = resources.getImage(m.getGender() == Person.Gender.MALE ? PersonFigure.MALE : PersonFigure.FEMALE);
+		return new PersonFigure(resources, m.getName(), image, m.getBirthYear(), m.getDeathYear());
 	}
 
 	/**
@@ -67,12 +68,10 @@ public class PersonEditPart extends GenealogyElementEditPart
 	 * Answer a collection of connection model objects that originate with the receiver.
 	 */
 	public List<GenealogyConnection> getModelSourceConnections() {
-		Person person = getModel();
-		Marriage marriage = person.getMarriage();
-		ArrayList<GenealogyConnection> marriageList = new ArrayList<GenealogyConnection>(1);
-		if (marriage != null)
-			marriageList.add(new GenealogyConnection(person, marriage));
-		return marriageList;
+		GenealogyConnection conn = getModel().getSpouseConnection();
+		if (conn == null || !isRealized(conn.marriage))
+			return Collections.emptyList();
+		return Collections.singletonList(conn);
 	}
 
 	/**
@@ -107,12 +106,10 @@ public class PersonEditPart extends GenealogyElementEditPart
 	 * Answer a collection of connection model objects that terminate at the receiver.
 	 */
 	protected List<GenealogyConnection> getModelTargetConnections() {
-		ArrayList<GenealogyConnection> offspringList = new ArrayList<GenealogyConnection>();
-		Person person = getModel();
-		Marriage parentsMarriage = person.getParentsMarriage();
-		if (parentsMarriage != null)
-			offspringList.add(new GenealogyConnection(person, parentsMarriage));
-		return offspringList;
+		GenealogyConnection conn = getModel().getOffspringConnection();
+		if (conn == null || !isRealized(conn.marriage))
+			return Collections.emptyList();
+		return Collections.singletonList(conn);
 	}
 
 	/**
@@ -299,12 +296,14 @@ public class PersonEditPart extends GenealogyElementEditPart
 	 * Update the spouce connection from the receiver to the marriage.
 	 */
 	public void marriageChanged(Marriage marriage, Marriage oldMarriage) {
-		ConnectionEditPart part = findConnection(getModel(), oldMarriage);
+		ConnectionEditPart part = findConnection(getSourceConnections(), getModel(), oldMarriage);
 		if (part != null)
 			removeSourceConnection(part);
-		if (marriage != null) {
-			part = createOrFindConnection(getModel(), marriage);
-			addSourceConnection(part, 0);
+		GenealogyConnection conn = getModel().getSpouseConnection();
+		if (conn != null && conn.marriage == marriage && isRealized(marriage)) {
+			part = (ConnectionEditPart) createOrFindConnection(conn);
+			if (!getSourceConnections().contains(part))
+				addSourceConnection(part, 0);
 		}
 	}
 
@@ -312,20 +311,24 @@ public class PersonEditPart extends GenealogyElementEditPart
 	 * Update the offspring connection from the marriage to the receiver.
 	 */
 	public void parentsMarriageChanged(Marriage marriage, Marriage oldMarriage) {
-		ConnectionEditPart part = findConnection(getModel(), oldMarriage);
+		ConnectionEditPart part = findConnection(getTargetConnections(), getModel(), oldMarriage);
 		if (part != null)
 			removeTargetConnection(part);
-		if (marriage != null) {
-			part = createOrFindConnection(getModel(), marriage);
-			addTargetConnection(part, 0);
+		GenealogyConnection conn = getModel().getOffspringConnection();
+		if (conn != null && conn.marriage == marriage && isRealized(marriage)) {
+			part = (ConnectionEditPart) createOrFindConnection(conn);
+			if (!getTargetConnections().contains(part))
+				addTargetConnection(part, 0);
 		}
 	}
 	
 	/**
 	 * Add a nested {@link NoteEditPart} to reflect the model change
+	 * unless the receiver already has one for the specified note
 	 */
 	public void noteAdded(int index, Note n) {
-		addChild(createChild(n), index);
+		if (!isChild(n))
+			addChild(createChild(n), index);
 	}
 
 	/**
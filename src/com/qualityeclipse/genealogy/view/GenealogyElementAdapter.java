@@ -29,6 +29,10 @@ public abstract class GenealogyElementAdapter
 		figure.addFigureListener(this);
 	}
 
+	public GenealogyElement getElement() {
+		return elem;
+	}
+
 	public IFigure getFigure() {
 		return figure;
 	}
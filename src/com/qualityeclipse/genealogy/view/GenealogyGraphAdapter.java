@@ -4,6 +4,7 @@ import java.util.*;
 
 import org.eclipse.draw2d.*;
 
+import com.qualityeclipse.genealogy.figures.FigureResources;
 import com.qualityeclipse.genealogy.listener.FigureMover;
 import com.qualityeclipse.genealogy.model.*;
 import com.qualityeclipse.genealogy.model.listener.GenealogyGraphListener;
@@ -18,12 +19,28 @@ public class GenealogyGraphAdapter
 	private final GenealogyGraph graph;
 	private final FreeformLayer primary;
 	private final ConnectionLayer connections;
-	private final Map<GenealogyElement, GenealogyElementAdapter> map = new HashMap<GenealogyElement, GenealogyElementAdapter>();
+	private final FigureResources resources;
 
-	public GenealogyGraphAdapter(GenealogyGraph graph, FreeformLayer primary, ConnectionLayer connections) {
+	// Adapters for people and marriages indexed by element identifier
+	private GenealogyElementAdapter[] personAdapters = new GenealogyElementAdapter[16];
+	private GenealogyElementAdapter[] marriageAdapters = new GenealogyElementAdapter[16];
+	private final Map<Note, GenealogyElementAdapter> noteAdapters = new HashMap<Note, GenealogyElementAdapter>();
+
+	public GenealogyGraphAdapter(GenealogyGraph graph, FreeformLayer primary, ConnectionLayer connections,
+		FigureResources resources)
+	{
 		this.graph = graph;
+		this.resources = resources;
 		this.primary = primary;
 		this.connections = connections;
+		addAllFigures();
+		this.graph.addGenealogyGraphListener(this);
+	}
+
+	/**
+	 * Add figures for all elements currently in the graph
+	 */
+	private void addAllFigures() {
 		for (Person p : graph.getPeople())
 			personAdded(p);
 		for (Marriage m : graph.getMarriages())
@@ -32,55 +49,102 @@ public class GenealogyGraphAdapter
 		int notesSize = notes.size();
 		for (int i = 0; i < notesSize; i++)
 			noteAdded(i, notes.get(i));
-		this.graph.addGenealogyGraphListener(this);
 	}
 	
 	public void graphCleared() {
 		primary.removeAll();
 		connections.removeAll();
-		map.clear();
+		personAdapters = new GenealogyElementAdapter[16];
+		marriageAdapters = new GenealogyElementAdapter[16];
+		noteAdapters.clear();
+	}
+
+	/**
+	 * The entire graph has been replaced,
+	 * so discard all existing figures and rebuild them from the model.
+	 */
+	public void graphLoaded() {
+		disposeAdapters();
+		graphCleared();
+		addAllFigures();
 	}
 
 	public void personAdded(Person p) {
-		addPrimaryFigure(p, new PersonAdapter(p));
+		personAdapters = put(personAdapters, p.getId(), addPrimaryFigure(new PersonAdapter(p, resources)));
 	}
 
 	public void personRemoved(Person p) {
-		removePrimaryFigure(p);
+		removePrimaryFigure(remove(personAdapters, p));
 	}
 
 	public void marriageAdded(Marriage m) {
-		addPrimaryFigure(m, new MarriageAdapter(m));
+		marriageAdapters = put(marriageAdapters, m.getId(), addPrimaryFigure(new MarriageAdapter(m)));
 	}
 
 	public void marriageRemoved(Marriage m) {
-		removePrimaryFigure(m);
+		removePrimaryFigure(remove(marriageAdapters, m));
 	}
 
 	public void noteAdded(int index, Note n) {
-		addPrimaryFigure(n, new NoteAdapter(n));
+		noteAdapters.put(n, addPrimaryFigure(new NoteAdapter(n)));
 	}
 
 	public void noteRemoved(Note n) {
-		removePrimaryFigure(n);
+		removePrimaryFigure(noteAdapters.remove(n));
 	}
 
-	private void addPrimaryFigure(GenealogyElement elem, GenealogyElementAdapter adapter) {
+	private GenealogyElementAdapter addPrimaryFigure(GenealogyElementAdapter adapter) {
 		IFigure figure = adapter.getFigure();
 		primary.add(figure, figure.getBounds());
-		map.put(elem, adapter);
 		adapter.setGraphAdapter(this);
 		new FigureMover(adapter.getFigure());
+		return adapter;
 	}
 
-	private void removePrimaryFigure(GenealogyElement elem) {
-		GenealogyElementAdapter adapter = map.remove(elem);
+	private void removePrimaryFigure(GenealogyElementAdapter adapter) {
+		if (adapter == null)
+			return;
 		primary.remove(adapter.getFigure());
 		adapter.dispose();
 	}
 
+	private static GenealogyElementAdapter[] put(GenealogyElementAdapter[] adapters, int id,
+		GenealogyElementAdapter adapter)
+	{
+		if (id >= adapters.length)
+			adapters = Arrays.copyOf(adapters, Math.max(id + 1, adapters.length * 2));
+		adapters[id] = adapter;
+		return adapters;
+	}
+
+	private static GenealogyElementAdapter remove(GenealogyElementAdapter[] adapters, GenealogyElement elem) {
+		GenealogyElementAdapter adapter = get(adapters, elem);
+		if (adapter != null)
+			adapters[elem.getId()] = null;
+		return adapter;
+	}
+
+	/**
+	 * Answer the adapter for the specified element, or <code>null</code> if the element
+	 * has no adapter, such as when the element is not in the graph
+	 */
+	private static GenealogyElementAdapter get(GenealogyElementAdapter[] adapters, GenealogyElement elem) {
+		int id = elem.getId();
+		if (id < 0 || id >= adapters.length)
+			return null;
+		GenealogyElementAdapter adapter = adapters[id];
+		if (adapter == null || adapter.getElement() != elem)
+			return null;
+		return adapter;
+	}
+
+	/**
+	 * Answer the figure for the specified person, or <code>null</code> if the person has
+	 * no figure, such as when the person is not in the graph
+	 */
 	public IFigure getPersonFigure(Person person) {
-		return map.get(person).getFigure();
+		GenealogyElementAdapter adapter = get(personAdapters, person);
+		return adapter != null ? adapter.getFigure() : null;
 	}
 
 	public ConnectionLayer getConnectionLayer() {
@@ -88,8 +152,18 @@ public class GenealogyGraphAdapter
 	}
 	
 	public void dispose() {
-		for (GenealogyElementAdapter adapter : map.values())
-			adapter.dispose();
+		disposeAdapters();
 		graph.removeGenealogyGraphListener(this);
 	}
+
+	private void disposeAdapters() {
+		for (GenealogyElementAdapter adapter : personAdapters)
+			if (adapter != null)
+				adapter.dispose();
+		for (GenealogyElementAdapter adapter : marriageAdapters)
+			if (adapter != null)
+				adapter.dispose();
+		for (GenealogyElementAdapter adapter : noteAdapters.values())
+			adapter.dispose();
+	}
 }
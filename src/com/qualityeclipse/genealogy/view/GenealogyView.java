@@ -18,6 +18,8 @@ import org.eclipse.swt.widgets.MenuItem;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.part.ViewPart;
 
+import com.qualityeclipse.genealogy.figures.*;
+import com.qualityeclipse.genealogy.model.BoundsIndex;
 import com.qualityeclipse.genealogy.model.GenealogyGraph;
 import com.qualityeclipse.genealogy.model.io.GenealogyGraphReader;
 import com.qualityeclipse.genealogy.model.io.GenealogyGraphWriter;
@@ -32,6 +34,8 @@ public class GenealogyView extends ViewPart
 	private ConnectionLayer connections;
 	private GenealogyGraph graph;
 	private GenealogyGraphAdapter graphAdapter;
+	private BoundsIndex boundsIndex;
+	private FigureResources resources;
 
 	/**
 	 * Add a canvas on which the diagram is rendered showing figures representing the
@@ -42,7 +46,7 @@ public class GenealogyView extends ViewPart
 	private FigureCanvas createDiagram(Composite parent) {
 
 		// Create a layered pane along with primary and connection layers
-		root = new ScalableFreeformLayeredPane();
+		root = new TiledLayeredPane();
 		root.setFont(parent.getFont());
 
 		primary = new FreeformLayer();
@@ -53,11 +57,14 @@ public class GenealogyView extends ViewPart
 		connections.setConnectionRouter(new ShortestPathConnectionRouter(primary));
 		root.add(connections, "Connections");
 
-		// Create the canvas and use it to show the root figure
-		FigureCanvas canvas = new FigureCanvas(parent, SWT.DOUBLE_BUFFERED);
+		// Create the canvas and use it to show the root figure,
+		// reporting repainted areas so that the root figure's cached tiles are kept valid
+		LightweightSystem lws = TiledUpdateManager.createLightweightSystem();
+		FigureCanvas canvas = new FigureCanvas(parent, SWT.DOUBLE_BUFFERED, lws);
 		canvas.setViewport(new FreeformViewport());
 		canvas.setBackground(ColorConstants.white);
 		canvas.setContents(root);
+		resources = new FigureResources(canvas);
 		return canvas;
 	}
 
@@ -69,11 +76,13 @@ public class GenealogyView extends ViewPart
 		if (graph != null) {
 			graphAdapter.dispose();
 			graphAdapter.graphCleared();
+			boundsIndex.dispose();
 			graph = null;
 		}
 		if (newGraph != null) {
 			graph = newGraph;
-			graphAdapter = new GenealogyGraphAdapter(graph, primary, connections);
+			graphAdapter = new GenealogyGraphAdapter(graph, primary, connections, resources);
+			boundsIndex = new BoundsIndex(graph);
 		}
 	}
 
@@ -313,14 +322,19 @@ public class GenealogyView extends ViewPart
 	}
 
 	/**
-	 * Adjust the scale so that the entire diagram fills the viewport
+	 * Adjust the scale so that the entire diagram fills the viewport. The extent of the
+	 * diagram is answered by the index of element bounds rather than by visiting every
+	 * figure.
 	 */
 	private void scaleToFit() {
 		FreeformViewport viewport = (FreeformViewport) root.getParent();
 		Rectangle viewArea = viewport.getClientArea();
 		
 		root.setScale(1);
-		Rectangle extent = root.getFreeformExtent().union(0, 0);
+		int[] bounds = boundsIndex != null ? boundsIndex.getExtent() : null;
+		if (bounds == null)
+			return;
+		Rectangle extent = new Rectangle(bounds[0], bounds[1], bounds[2], bounds[3]).union(0, 0);
 		
 		double wScale = ((double) viewArea.width) / extent.width;
 		double hScale = ((double) viewArea.height) / extent.height;
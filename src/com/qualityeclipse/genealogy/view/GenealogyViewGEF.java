@@ -3,8 +3,6 @@ package com.qualityeclipse.genealogy.view;
 import java.io.*;
 
 import org.eclipse.draw2d.*;
-import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
-import org.eclipse.gef.ui.parts.ScrollingGraphicalViewer;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.*;
@@ -15,7 +13,7 @@ import org.eclipse.ui.part.ViewPart;
 
 import com.qualityeclipse.genealogy.model.GenealogyGraph;
 import com.qualityeclipse.genealogy.model.io.*;
-import com.qualityeclipse.genealogy.parts.GenealogyEditPartFactory;
+import com.qualityeclipse.genealogy.parts.*;
 
 /**
  * A example view displaying genealogy using the Draw2D and GEF frameworks, as opposed to
@@ -23,7 +21,7 @@ import com.qualityeclipse.genealogy.parts.GenealogyEditPartFactory;
  */
 public class GenealogyViewGEF extends ViewPart
 {
-	private ScrollingGraphicalViewer viewer;
+	private GenealogyGraphicalViewer viewer;
 	private GenealogyGraph graph;
 
 	/**
@@ -33,9 +31,9 @@ public class GenealogyViewGEF extends ViewPart
 	 * @param parent the composite to which the diagram is added
 	 */
 	private FigureCanvas createDiagram(Composite parent) {
-		viewer = new ScrollingGraphicalViewer();
+		viewer = new GenealogyGraphicalViewer();
 		viewer.createControl(parent);
-		viewer.setRootEditPart(new ScalableFreeformRootEditPart());
+		viewer.setRootEditPart(new GenealogyRootEditPart());
 		viewer.getControl().setBackground(ColorConstants.white);
 		viewer.setEditPartFactory(new GenealogyEditPartFactory());
 		return (FigureCanvas) viewer.getControl();
@@ -54,9 +54,9 @@ public class MarriageAdapter extends GenealogyElementAdapter
 	private Connection parentChanged(Person p, Connection oldConnection) {
 		if (oldConnection != null)
 			oldConnection.getParent().remove(oldConnection);
-		if (p == null)
+		IFigure pf = p != null ? getGraphAdapter().getPersonFigure(p) : null;
+		if (pf == null)
 			return null;
-		IFigure pf = getGraphAdapter().getPersonFigure(p);
 		PolylineConnection connection = getFigure().addParent(pf);
 		getGraphAdapter().getConnectionLayer().add(connection);
 		return connection;
@@ -64,6 +64,8 @@ public class MarriageAdapter extends GenealogyElementAdapter
 
 	public void offspringAdded(Person p) {
 		IFigure personFigure = getGraphAdapter().getPersonFigure(p);
+		if (personFigure == null)
+			return;
 		PolylineConnection connection = getFigure().addChild(personFigure);
 		offspringConnections.put(p, connection);
 		getGraphAdapter().getConnectionLayer().add(connection);
@@ -71,7 +73,8 @@ public class MarriageAdapter extends GenealogyElementAdapter
 
 	public void offspringRemoved(Person p) {
 		Connection connection = offspringConnections.remove(p);
-		connection.getParent().remove(connection);
+		if (connection != null)
+			connection.getParent().remove(connection);
 	}
 
 	public void dispose() {
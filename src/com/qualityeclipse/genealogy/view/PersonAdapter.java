@@ -18,9 +18,9 @@ public class PersonAdapter extends GenealogyElementAdapter
 	private final Person person;
 	private final Map<Note, NoteAdapter> noteAdapters = new HashMap<Note, NoteAdapter>();
 
-	public PersonAdapter(Person person) {
-		super(person,
-			new PersonFigure(person.getName(), getImage(person), person.getBirthYear(), person.getDeathYear()));
+	public PersonAdapter(Person person, FigureResources resources) {
+		super(person, new PersonFigure(resources, person.getName(), getImage(person, resources),
+			person.getBirthYear(), person.getDeathYear()));
 		this.person = person;
 		List<Note> notes = person.getNotes();
 		int notesSize = notes.size();
@@ -29,8 +29,8 @@ public class PersonAdapter extends GenealogyElementAdapter
 		person.addPersonListener(this);
 	}
 
-	private static Image getImage(Person person) {
-		return person.getGender() == Person.Gender.MALE ? PersonFigure.MALE : PersonFigure.FEMALE;
+	private static Image getImage(Person person, FigureResources resources) {
+		return resources.getImage(person.getGender() == Person.Gender.MALE ? PersonFigure.MALE : PersonFigure.FEMALE);
 	}
 
 	public PersonFigure getFigure() {
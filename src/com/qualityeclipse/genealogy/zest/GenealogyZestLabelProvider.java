@@ -18,9 +18,11 @@ class GenealogyZestLabelProvider extends LabelProvider
 	IEntityConnectionStyleProvider
 {
 	private final Color backgroundColor;
+	private final FigureResources resources;
 
-	public GenealogyZestLabelProvider(Color backgroundColor) {
+	public GenealogyZestLabelProvider(Color backgroundColor, FigureResources resources) {
 		this.backgroundColor = backgroundColor;
+		this.resources = resources;
 	}
 
 	//==============================================================
@@ -82,9 +84,9 @@ class GenealogyZestLabelProvider extends LabelProvider
 		if (element instanceof Person) {
 			Person person = (Person) element;
 			if (person.getGender() == Person.Gender.MALE)
-				return PersonFigure.MALE;
+				return resources.getImage(PersonFigure.MALE);
 			else
-				return PersonFigure.FEMALE;
+				return resources.getImage(PersonFigure.FEMALE);
 		}
 		return null;
 	}
@@ -2,7 +2,9 @@ package com.qualityeclipse.genealogy.zest;
 
 import java.io.*;
 
+import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.viewers.ViewerFilter;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.*;
 import org.eclipse.swt.graphics.Color;
@@ -13,6 +15,7 @@ import org.eclipse.zest.core.viewers.GraphViewer;
 import org.eclipse.zest.layouts.*;
 import org.eclipse.zest.layouts.algorithms.*;
 
+import com.qualityeclipse.genealogy.figures.FigureResources;
 import com.qualityeclipse.genealogy.model.*;
 import com.qualityeclipse.genealogy.model.Person.Gender;
 import com.qualityeclipse.genealogy.model.io.GenealogyGraphReader;
@@ -20,6 +23,7 @@ import com.qualityeclipse.genealogy.model.io.GenealogyGraphReader;
 public class GenealogyZestView extends ViewPart
 {
 	private GraphViewer viewer;
+	private YearIndex yearIndex;
 
 	/**
 	 * Instantiate a {@link GraphViewer} on which the diagram is rendered showing figures
@@ -32,7 +36,7 @@ public class GenealogyZestView extends ViewPart
 		viewer = new GraphViewer(parent, SWT.NONE);
 		viewer.setContentProvider(new GenealogyZestContentProvider1());
 		Color blue = viewer.getGraphControl().LIGHT_BLUE;
-		viewer.setLabelProvider(new GenealogyZestLabelProvider(blue));
+		viewer.setLabelProvider(new GenealogyZestLabelProvider(blue, new FigureResources(viewer.getControl())));
 		int style = LayoutStyles.NO_LAYOUT_NODE_RESIZING;
 		viewer.setLayoutAlgorithm(new CompositeLayoutAlgorithm(style,
 			new LayoutAlgorithm[]{
@@ -51,6 +55,9 @@ public class GenealogyZestView extends ViewPart
 	 * @param newGraph the graph to be displayed
 	 */
 	private void setModel(GenealogyGraph newGraph) {
+		if (yearIndex != null)
+			yearIndex.dispose();
+		yearIndex = new YearIndex(newGraph);
 		viewer.setInput(newGraph);
 	}
 
@@ -67,6 +74,12 @@ public class GenealogyZestView extends ViewPart
 	public void setFocus() {
 	}
 
+	public void dispose() {
+		if (yearIndex != null)
+			yearIndex.dispose();
+		super.dispose();
+	}
+
 	//=============================================
 	// Standalone Shell
 
@@ -124,6 +137,7 @@ public class GenealogyZestView extends ViewPart
 		createFilterMenuItem(filterMenu, "Show Male Only", Gender.MALE);
 		createFilterMenuItem(filterMenu, "Show Female Only", Gender.FEMALE);
 		createFilterMenuItem(filterMenu, "Show Both", null);
+		createYearFilterMenuItem(filterMenu);
 
 		// Populate the "Layout" menu
 		createLayoutMenuItem(layoutMenu, new DirectedGraphLayoutAlgorithm(LayoutStyles.NO_LAYOUT_NODE_RESIZING));
@@ -170,6 +184,38 @@ public class GenealogyZestView extends ViewPart
 		});
 	}
 
+	/**
+	 * Create a new menu item that prompts for a year such as "1850" or a range of years
+	 * such as "1900-1920" and filters the Zest diagram to the people alive and the
+	 * marriages that took place during those years
+	 * 
+	 * @param menu the "Filter" menu item
+	 */
+	private void createYearFilterMenuItem(final Menu menu) {
+		MenuItem menuItem = new MenuItem(menu, SWT.NULL);
+		menuItem.setText("Show Years...");
+		menuItem.addSelectionListener(new SelectionListener() {
+			public void widgetSelected(SelectionEvent e) {
+				InputDialog dialog = new InputDialog(menu.getShell(), "Show Years",
+					"Show people alive and marriages during a year or range of years such as 1900-1920", "",
+					null);
+				if (dialog.open() != Window.OK)
+					return;
+				int[] range = YearIndex.parseRange(dialog.getValue());
+				if (range == null)
+					return;
+				viewer.setFilters(new ViewerFilter[]{
+					new GenealogyZestYearFilter(yearIndex, range[0], range[1])
+				});
+				viewer.applyLayout();
+			}
+
+			public void widgetDefaultSelected(SelectionEvent e) {
+				widgetSelected(e);
+			}
+		});
+	}
+
 	/**
 	 * Create a new menu item for changing the diagram's layout algorithm
 	 * 
@@ -0,0 +1,35 @@
+package com.qualityeclipse.genealogy.zest;
+
+import java.util.*;
+
+import org.eclipse.jface.viewers.*;
+
+import com.qualityeclipse.genealogy.model.*;
+
+/**
+ * Filter the {@link GenealogyZestView}'s content to the people alive during a range of
+ * years and to the marriages that took place during that range or of which either spouse
+ * was alive during that range. The matching elements are answered by a {@link YearIndex}
+ * when the filter is constructed, so the filter must be replaced if the model changes.
+ */
+class GenealogyZestYearFilter extends ViewerFilter
+{
+	private final Set<Object> selected = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+	GenealogyZestYearFilter(YearIndex index, int firstYear, int lastYear) {
+		for (Person p : index.getPeopleAlive(firstYear, lastYear))
+			selected.add(p);
+		for (Marriage m : index.getMarriages(firstYear, lastYear))
+			selected.add(m);
+	}
+
+	public boolean select(Viewer viewer, Object parent, Object element) {
+		if (element instanceof Marriage) {
+			Marriage m = (Marriage) element;
+			return selected.contains(m) || selected.contains(m.getHusband()) || selected.contains(m.getWife());
+		}
+		if (element instanceof Person)
+			return selected.contains(element);
+		return true;
+	}
+}
@@ -0,0 +1,139 @@
+package com.qualityeclipse.genealogy.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BoundsIndexTest
+{
+	@Test
+	public void testQuery() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		assertEquals("[Fred Smith]", labels(index.query(0, 0, 50, 50)));
+		assertEquals("[Fred Smith, Married 1905, Mary \"Molly\" O'Brien]", labels(index.query(100, 40, 70, 70)));
+		assertEquals("[Married 1905]", labels(index.query(85, 100, 1, 1)));
+		assertEquals("[Family papers kept by Tom]", labels(index.query(500, 0, 1000, 50)));
+		assertEquals("[]", labels(index.query(110, 0, 50, 10)));
+		assertEquals("[]", labels(index.query(0, 0, 0, 1000)));
+		assertEquals(10, index.query(-10000, -10000, 20000, 20000).size());
+		index.dispose();
+	}
+
+	@Test
+	public void testNearest() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		assertEquals("Fred Smith", label(index.nearest(-500, -500)));
+		assertEquals("Fred Smith", label(index.nearest(50, 30)));
+		assertEquals("Married -1", label(index.nearest(5000, 5000)));
+		assertEquals("Family papers kept by Tom", label(index.nearest(600, 0)));
+		assertEquals("Tom Smith", label(index.nearest(210, 500)));
+		graph.clear();
+		assertNull(index.nearest(0, 0));
+		index.dispose();
+	}
+
+	@Test
+	public void testGetExtent() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		assertArrayEquals(new int[] {10, 10, 540, 410}, index.getExtent());
+		graph.getMarriage(2).setLocation(-90, 1000);
+		assertArrayEquals(new int[] {-90, 10, 640, 1010}, index.getExtent());
+		graph.removeMarriage(graph.getMarriage(2));
+		assertArrayEquals(new int[] {10, 10, 540, 340}, index.getExtent());
+		graph.clear();
+		assertNull(index.getExtent());
+		index.dispose();
+	}
+
+	@Test
+	public void testChangesWithinBatch() throws Exception {
+		final GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		assertEquals(10, index.query(-10000, -10000, 20000, 20000).size());
+		final Person fred = graph.getPerson(0);
+		final Person ann = graph.getPerson(3);
+		final Person tom = graph.getPerson(5);
+		graph.batch(new Runnable() {
+			public void run() {
+				SampleGraphs.addPerson(graph, Person.Gender.MALE, "Added", -1, -1, 1000, 1000);
+				Person temporary = SampleGraphs.addPerson(graph, Person.Gender.MALE, "Temporary", -1, -1, 0, 0);
+				graph.removePerson(temporary);
+				tom.setLocation(2000, 2000);
+				tom.setLocation(3000, 3000);
+				fred.setSize(1, 1);
+				ann.getParentsMarriage().removeOffspring(ann);
+				graph.removePerson(ann);
+				graph.removeMarriage(graph.getMarriage(2));
+				Note note = new Note("Added note");
+				note.setLocation(-200, -200);
+				note.setSize(50, 50);
+				graph.addNote(note);
+			}
+		});
+		assertEquals("[Added]", labels(index.query(1050, 1020, 1, 1)));
+		assertEquals("[Tom Smith]", labels(index.query(2500, 2500, 1000, 1000)));
+		assertEquals("[]", labels(index.query(160, 310, 100, 40)));
+		assertEquals("[Fred Smith]", labels(index.query(0, 0, 50, 50)));
+		assertEquals("[]", labels(index.query(20, 20, 50, 50)));
+		assertEquals("[]", labels(index.query(160, 160, 100, 40)));
+		assertEquals("[]", labels(index.query(400, 400, 20, 20)));
+		assertEquals("[Added note]", labels(index.query(-180, -180, 1, 1)));
+		assertEquals(10, index.query(-10000, -10000, 20000, 20000).size());
+		assertEquals("Tom Smith", label(index.nearest(5000, 5000)));
+		assertArrayEquals(new int[] {-200, -200, 3300, 3240}, index.getExtent());
+		index.dispose();
+	}
+
+	@Test
+	public void testLargeElements() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		index.getExtent();
+		Note note = graph.getNotes().get(0);
+		note.setSize(100 * BoundsIndex.CELL_SIZE, 100 * BoundsIndex.CELL_SIZE);
+		assertEquals("[Family papers kept by Tom]", labels(index.query(10000, 10000, 1, 1)));
+		assertEquals("Family papers kept by Tom", label(index.nearest(20000, 20000)));
+		note.setSize(150, 60);
+		assertEquals("[]", labels(index.query(10000, 10000, 1, 1)));
+		index.dispose();
+	}
+
+	@Test
+	public void testPreferredSize() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		BoundsIndex index = new BoundsIndex(graph);
+		Person tom = graph.getPerson(5);
+		tom.setSize(-1, -1);
+		assertEquals("[Tom Smith]", labels(index.query(1000, 1000, 10, 10)));
+		assertEquals("[]", labels(index.query(100, 1000, 10, 10)));
+		assertEquals("Tom Smith", label(index.nearest(160, 310)));
+		index.dispose();
+	}
+
+	/**
+	 * Answer the labels of the specified elements in order,
+	 * since the index answers them in no particular order
+	 */
+	private static String labels(List<GenealogyElement> elements) {
+		List<String> labels = new ArrayList<String>();
+		for (GenealogyElement element : elements)
+			labels.add(label(element));
+		Collections.sort(labels);
+		return labels.toString();
+	}
+
+	private static String label(GenealogyElement element) {
+		if (element instanceof Person)
+			return ((Person) element).getName();
+		if (element instanceof Marriage)
+			return "Married " + ((Marriage) element).getYearMarried();
+		return ((Note) element).getText();
+	}
+}
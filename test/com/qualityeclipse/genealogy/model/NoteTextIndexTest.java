@@ -0,0 +1,128 @@
+package com.qualityeclipse.genealogy.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NoteTextIndexTest
+{
+	@Test
+	public void testSearch() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		NoteTextIndex index = new NoteTextIndex(graph);
+		assertEquals("[Blacksmith]", texts(index.search("BLACKSMITH", 10)));
+		assertEquals("[Line one\nLine two]", texts(index.search("line two", 10)));
+		assertEquals("[Emigrated from County Cork in 1899 & settled in <Boston>]",
+			texts(index.search("\"county cork\" 1899", 10)));
+		assertEquals("[]", texts(index.search("\"cork county\"", 10)));
+		assertEquals("[]", texts(index.search("black", 10)));
+		assertEquals("[Blacksmith, Family papers kept by Tom]", texts(index.search("blacksmith OR tom", 10)));
+		assertEquals("[Line one\nLine two]", texts(index.search("line -\"line three\"", 10)));
+		assertEquals("[]", texts(index.search("line -two", 10)));
+		assertEquals(1, index.search("blacksmith OR tom", 1).size());
+		assertEquals("[]", texts(index.search("", 10)));
+		index.dispose();
+	}
+
+	@Test
+	public void testGetContainer() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		NoteTextIndex index = new NoteTextIndex(graph);
+		Person fred = graph.getPerson(0);
+		assertSame(fred, index.getContainer(fred.getNotes().get(1)));
+		assertSame(graph, index.getContainer(graph.getNotes().get(0)));
+		assertNull(index.getContainer(new Note("Not in the graph")));
+		index.dispose();
+	}
+
+	@Test
+	public void testGetMatchRanges() throws Exception {
+		String text = "Emigrated from County Cork, not County Clare";
+		assertArrayEquals(new int[] {15, 21, 22, 26}, NoteTextIndex.getMatchRanges("\"county cork\"", text));
+		assertArrayEquals(new int[] {15, 21, 32, 38}, NoteTextIndex.getMatchRanges("COUNTY -cork", text));
+		assertArrayEquals(new int[0], NoteTextIndex.getMatchRanges("dublin", text));
+	}
+
+	@Test
+	public void testChangesWithinBatch() throws Exception {
+		final GenealogyGraph graph = SampleGraphs.createFamily();
+		NoteTextIndex index = new NoteTextIndex(graph);
+		assertEquals("[Emigrated from County Cork in 1899 & settled in <Boston>]",
+			texts(index.search("boston", 10)));
+		final Person fred = graph.getPerson(0);
+		final Person ann = graph.getPerson(3);
+		final Person tom = graph.getPerson(5);
+		final Note added = new Note("Moved to Boston in 1930");
+		graph.batch(new Runnable() {
+			public void run() {
+				tom.addNote(added);
+				Note temporary = new Note("Temporary Boston note");
+				graph.addNote(temporary);
+				graph.removeNote(temporary);
+				graph.addNote(new Note("Photographs of Boston"));
+				fred.getNotes().get(0).setText("Emigrated from County Kerry");
+				fred.removeNote(fred.getNotes().get(1));
+				ann.getParentsMarriage().removeOffspring(ann);
+				graph.removePerson(ann);
+				Person person = SampleGraphs.addPerson(graph, Person.Gender.MALE, "Added", -1, -1, 0, 0);
+				person.addNote(new Note("Blacksmith in Boston"));
+			}
+		});
+		assertEquals("[Blacksmith in Boston, Moved to Boston in 1930, Photographs of Boston]",
+			texts(index.search("boston", 10)));
+		assertEquals("[Emigrated from County Kerry]", texts(index.search("\"county kerry\"", 10)));
+		assertEquals("[]", texts(index.search("cork OR temporary OR line", 10)));
+		assertEquals("[Blacksmith in Boston]", texts(index.search("blacksmith", 10)));
+		assertSame(tom, index.getContainer(added));
+		assertSame(graph.getPerson(6), index.getContainer(index.search("blacksmith", 10).get(0)));
+		index.dispose();
+	}
+
+	@Test
+	public void testChangesBeforeIndexIsBuilt() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		NoteTextIndex index = new NoteTextIndex(graph);
+		Note note = graph.getNotes().get(0);
+		note.setText("Family papers kept by Ann");
+		assertEquals("[Family papers kept by Ann]", texts(index.search("ann", 10)));
+		note.setText("Family papers lost");
+		assertEquals("[]", texts(index.search("ann", 10)));
+		assertEquals("[Family papers lost]", texts(index.search("lost", 10)));
+		index.dispose();
+	}
+
+	@Test
+	public void testManyNotes() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(1000);
+		NoteTextIndex index = new NoteTextIndex(graph);
+		assertEquals(100, index.search("note", 1000).size());
+		assertEquals("[Note 370]", texts(index.search("370", 10)));
+		for (int i = 0; i < 1000; i += 20) {
+			Person child = graph.getPerson(3 * i + 2);
+			child.removeNote(child.getNotes().get(0));
+		}
+		assertEquals(50, index.search("note", 1000).size());
+		assertEquals("[]", texts(index.search("380", 10)));
+		graph.getPerson(2).addNote(new Note("Note 380"));
+		assertEquals("[Note 380]", texts(index.search("380", 10)));
+		graph.clear();
+		assertEquals("[]", texts(index.search("note", 10)));
+		index.dispose();
+	}
+
+	/**
+	 * Answer the text of the specified notes in order,
+	 * since the index answers them in no particular order
+	 */
+	private static String texts(List<Note> notes) {
+		List<String> texts = new ArrayList<String>();
+		for (Note n : notes)
+			texts.add(n.getText());
+		Collections.sort(texts);
+		return texts.toString();
+	}
+}
@@ -0,0 +1,120 @@
+package com.qualityeclipse.genealogy.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.qualityeclipse.genealogy.model.io.GenealogyGraphFormat;
+
+public class PersonNameIndexTest
+{
+	@Test
+	public void testFindByPrefix() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		assertEquals("[Ann Smith, Fred Smith, John Smith, Tom Smith]", names(index.findByPrefix("smi", 10)));
+		assertEquals("[John Smith]", names(index.findByPrefix("sm jo", 10)));
+		assertEquals("[Mary \"Molly\" O'Brien]", names(index.findByPrefix("MOL", 10)));
+		assertEquals(2, index.findByPrefix("smith", 2).size());
+		assertTrue(index.findByPrefix("x", 10).isEmpty());
+		assertTrue(index.findByPrefix("", 10).isEmpty());
+		index.dispose();
+	}
+
+	@Test
+	public void testFindBySound() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		assertEquals("[Grace M\u00fcller]", names(index.findBySound("Miller", 10)));
+		assertEquals("[John Smith]", names(index.findBySound("Jon Smyth", 10)));
+		assertTrue(index.findBySound("Jones", 10).isEmpty());
+		index.dispose();
+	}
+
+	@Test
+	public void testChangesWithinBatch() throws Exception {
+		final GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		assertEquals(4, index.findByPrefix("smith", 10).size());
+		final Person tom = graph.getPerson(5);
+		final Person ann = graph.getPerson(3);
+		graph.batch(new Runnable() {
+			public void run() {
+				SampleGraphs.addPerson(graph, Person.Gender.MALE, "Zachary Smythe", 1950, -1, 0, 0);
+				SampleGraphs.addPerson(graph, Person.Gender.FEMALE, "Temporary Smith", 1950, -1, 0, 0);
+				tom.setName("Thomas Brown");
+				tom.setName("Thomas Browning");
+				Person temporary = graph.getPerson(7);
+				graph.removePerson(temporary);
+				ann.getParentsMarriage().removeOffspring(ann);
+				graph.removePerson(ann);
+			}
+		});
+		assertEquals("[Fred Smith, John Smith]", names(index.findByPrefix("smith", 10)));
+		assertEquals("[Zachary Smythe]", names(index.findByPrefix("smy", 10)));
+		assertEquals("[Thomas Browning]", names(index.findByPrefix("brown", 10)));
+		assertTrue(index.findByPrefix("tom", 10).isEmpty());
+		assertTrue(index.findByPrefix("temp", 10).isEmpty());
+		assertEquals("[Fred Smith, John Smith, Zachary Smythe]", names(index.findBySound("Smith", 10)));
+		assertTrue(index.findBySound("Ann", 10).isEmpty());
+		index.dispose();
+	}
+
+	@Test
+	public void testChangesBeforeIndexIsBuilt() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		graph.getPerson(0).setName("Frederick Smith");
+		assertEquals("[Frederick Smith]", names(index.findByPrefix("fred", 10)));
+		graph.getPerson(0).setName("Fred Smith");
+		assertEquals("[Fred Smith]", names(index.findByPrefix("fred", 10)));
+		assertTrue(index.findByPrefix("frederick", 10).isEmpty());
+		index.dispose();
+	}
+
+	@Test
+	public void testContentReplaced() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		assertEquals(4, index.findByPrefix("smith", 10).size());
+		graph.clear();
+		assertTrue(index.findByPrefix("smith", 10).isEmpty());
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		GenealogyGraphFormat.INDEXED.write(SampleGraphs.createCouples(300), stream);
+		GenealogyGraphFormat.INDEXED.read(graph, new ByteArrayInputStream(stream.toByteArray()));
+		assertEquals("[Wife 123]", names(index.findByPrefix("wife 123", 10)));
+		graph.getPerson(3 * 123 + 1).setName("Wife Renamed");
+		assertTrue(index.findByPrefix("wife 123", 10).isEmpty());
+		assertEquals("[Wife Renamed]", names(index.findByPrefix("wife ren", 10)));
+		index.dispose();
+	}
+
+	@Test
+	public void testDispose() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		PersonNameIndex index = new PersonNameIndex(graph);
+		index.findByPrefix("smith", 10);
+		index.dispose();
+		graph.getPerson(0).setName("Frederick");
+		assertEquals("[Frederick]", names(new PersonNameIndex(graph).findByPrefix("fre", 10)));
+	}
+
+	/**
+	 * Answer the names of the specified people in order, since people matching
+	 * the same word are answered in no particular order
+	 */
+	private static String names(List<Person> people) {
+		List<String> names = new ArrayList<String>();
+		for (Person p : people)
+			names.add(p.getName());
+		Collections.sort(names);
+		return names.toString();
+	}
+}
@@ -0,0 +1,95 @@
+package com.qualityeclipse.genealogy.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.qualityeclipse.genealogy.model.io.GenealogyGraphFormat;
+
+/**
+ * Graphs shared by the model tests, and a way to compare them
+ */
+public final class SampleGraphs
+{
+	private SampleGraphs() {
+	}
+
+	/**
+	 * Answer a graph of three generations containing every kind of element and
+	 * relationship, with names and note text containing characters that must be escaped
+	 */
+	public static GenealogyGraph createFamily() {
+		GenealogyGraph graph = new GenealogyGraph();
+		Person fred = addPerson(graph, Person.Gender.MALE, "Fred Smith", 1880, 1951, 10, 10);
+		Person mary = addPerson(graph, Person.Gender.FEMALE, "Mary \"Molly\" O'Brien", 1884, -1, 160, 10);
+		Person john = addPerson(graph, Person.Gender.MALE, "John Smith", 1907, 1982, 10, 160);
+		Person ann = addPerson(graph, Person.Gender.FEMALE, "Ann Smith", 1910, 1999, 160, 160);
+		Person grace = addPerson(graph, Person.Gender.FEMALE, "Grace M\u00fcller", 1909, -1, 310, 160);
+		Person tom = addPerson(graph, Person.Gender.MALE, "Tom Smith", -1, -1, 160, 310);
+
+		Marriage parents = addMarriage(graph, 1905, fred, mary, 85, 100);
+		parents.addOffspring(john);
+		parents.addOffspring(ann);
+		Marriage children = addMarriage(graph, 1932, john, grace, 160, 250);
+		children.addOffspring(tom);
+		addMarriage(graph, -1, null, null, 400, 400);
+
+		fred.addNote(new Note("Emigrated from County Cork in 1899 & settled in <Boston>"));
+		fred.addNote(new Note("Blacksmith"));
+		ann.addNote(new Note("Line one\nLine two"));
+		Note note = new Note("Family papers kept by Tom");
+		note.setLocation(400, 10);
+		note.setSize(150, 60);
+		graph.addNote(note);
+		return graph;
+	}
+
+	/**
+	 * Answer a graph of the specified number of couples, each with one child
+	 */
+	public static GenealogyGraph createCouples(int count) {
+		GenealogyGraph graph = new GenealogyGraph();
+		for (int i = 0; i < count; i++) {
+			Person husband = addPerson(graph, Person.Gender.MALE, "Husband " + i, 1800 + i % 200, 1860 + i % 200, i * 10, 0);
+			Person wife = addPerson(graph, Person.Gender.FEMALE, "Wife " + i, 1802 + i % 200, -1, i * 10, 100);
+			Person child = addPerson(graph, Person.Gender.MALE, "Child " + i, 1830 + i % 200, -1, i * 10, 200);
+			addMarriage(graph, 1825 + i % 200, husband, wife, i * 10, 50).addOffspring(child);
+			if (i % 10 == 0)
+				child.addNote(new Note("Note " + i));
+		}
+		return graph;
+	}
+
+	public static Person addPerson(GenealogyGraph graph, Person.Gender gender, String name, int birthYear,
+		int deathYear, int x, int y)
+	{
+		Person p = new Person(gender);
+		p.setName(name);
+		p.setBirthYear(birthYear);
+		p.setDeathYear(deathYear);
+		p.setLocation(x, y);
+		p.setSize(100, 40);
+		graph.addPerson(p);
+		return p;
+	}
+
+	public static Marriage addMarriage(GenealogyGraph graph, int yearMarried, Person husband, Person wife, int x,
+		int y)
+	{
+		Marriage m = new Marriage(yearMarried);
+		m.setLocation(x, y);
+		m.setSize(20, 20);
+		graph.addMarriage(m);
+		m.setHusband(husband);
+		m.setWife(wife);
+		return m;
+	}
+
+	/**
+	 * Answer the specified graph in XML, so that two graphs can be compared
+	 */
+	public static String toXml(GenealogyGraph graph) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		GenealogyGraphFormat.XML.write(graph, stream);
+		return stream.toString("UTF-8");
+	}
+}
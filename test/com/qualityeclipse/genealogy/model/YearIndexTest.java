@@ -0,0 +1,124 @@
+package com.qualityeclipse.genealogy.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class YearIndexTest
+{
+	@Test
+	public void testGetPeopleAlive() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		YearIndex index = new YearIndex(graph);
+		assertEquals("[Fred Smith, Mary \"Molly\" O'Brien]", names(index.getPeopleAlive(1884, 1884)));
+		assertEquals("[Ann Smith, Fred Smith, Grace M\u00fcller, John Smith, Mary \"Molly\" O'Brien]",
+			names(index.getPeopleAlive(1950, 1950)));
+		assertEquals("[Ann Smith, Grace M\u00fcller, John Smith, Mary \"Molly\" O'Brien]",
+			names(index.getPeopleAlive(1980, 1990)));
+		assertEquals("[Ann Smith, Grace M\u00fcller]", names(index.getPeopleAlive(1985, 2008)));
+		assertEquals("[]", names(index.getPeopleAlive(2010, 3000)));
+		assertEquals("[]", names(index.getPeopleAlive(1000, 1879)));
+		index.dispose();
+	}
+
+	@Test
+	public void testGetMarriages() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		YearIndex index = new YearIndex(graph);
+		assertEquals("[1905]", years(index.getMarriages(1900, 1910)));
+		assertEquals("[1905, 1932]", years(index.getMarriages(1905, 1932)));
+		assertEquals("[]", years(index.getMarriages(1933, 3000)));
+		index.dispose();
+	}
+
+	@Test
+	public void testChangesWithinBatch() throws Exception {
+		final GenealogyGraph graph = SampleGraphs.createFamily();
+		YearIndex index = new YearIndex(graph);
+		assertEquals("[Fred Smith, Mary \"Molly\" O'Brien]", names(index.getPeopleAlive(1884, 1884)));
+		final Person fred = graph.getPerson(0);
+		final Person tom = graph.getPerson(5);
+		final Person ann = graph.getPerson(3);
+		graph.batch(new Runnable() {
+			public void run() {
+				SampleGraphs.addPerson(graph, Person.Gender.MALE, "Added", 1700, 1760, 0, 0);
+				Person temporary = SampleGraphs.addPerson(graph, Person.Gender.MALE, "Temporary", 1700, 1760, 0, 0);
+				graph.removePerson(temporary);
+				fred.setBirthYear(1750);
+				fred.setDeathYear(1751);
+				tom.setBirthYear(1935);
+				ann.getParentsMarriage().removeOffspring(ann);
+				graph.removePerson(ann);
+				graph.getMarriage(2).setYearMarried(1740);
+				graph.removeMarriage(graph.getMarriage(1));
+				SampleGraphs.addMarriage(graph, 1745, null, null, 0, 0);
+			}
+		});
+		assertEquals("[Added, Fred Smith]", names(index.getPeopleAlive(1750, 1750)));
+		assertEquals("[Added]", names(index.getPeopleAlive(1700, 1700)));
+		assertEquals("[Mary \"Molly\" O'Brien]", names(index.getPeopleAlive(1884, 1884)));
+		assertEquals("[Grace M\u00fcller, Tom Smith]", names(index.getPeopleAlive(1990, 1990)));
+		assertEquals("[Tom Smith]", names(index.getPeopleAlive(2010, 2035)));
+		assertEquals("[1740, 1745]", years(index.getMarriages(1700, 1800)));
+		assertEquals("[1905]", years(index.getMarriages(1900, 2000)));
+		index.dispose();
+	}
+
+	@Test
+	public void testUnknownYears() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		YearIndex index = new YearIndex(graph);
+		Person fred = graph.getPerson(0);
+		fred.setBirthYear(-1);
+		assertEquals("[Fred Smith]", names(index.getPeopleAlive(1951 - YearIndex.ASSUMED_LIFESPAN, 1860)));
+		assertEquals("[]", names(index.getPeopleAlive(0, 1950 - YearIndex.ASSUMED_LIFESPAN)));
+		fred.setDeathYear(-1);
+		assertEquals("[]", names(index.getPeopleAlive(0, 1883)));
+		graph.getMarriage(0).setYearMarried(-1);
+		assertEquals("[1932]", years(index.getMarriages(0, 3000)));
+		index.dispose();
+	}
+
+	@Test
+	public void testParseRange() throws Exception {
+		assertArrayEquals(new int[] {1850, 1850}, YearIndex.parseRange("1850"));
+		assertArrayEquals(new int[] {1900, 1920}, YearIndex.parseRange(" 1900 - 1920 "));
+		assertNull(YearIndex.parseRange("Smith"));
+	}
+
+	@Test
+	public void testContentReplaced() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		YearIndex index = new YearIndex(graph);
+		assertEquals("[1932]", years(index.getMarriages(1932, 1932)));
+		graph.clear();
+		assertEquals("[]", years(index.getMarriages(1932, 1932)));
+		SampleGraphs.addMarriage(graph, 1932, null, null, 0, 0);
+		assertEquals("[1932]", years(index.getMarriages(1932, 1932)));
+		index.dispose();
+	}
+
+	/**
+	 * Answer the names of the specified people in order by name
+	 * rather than in the order in which the index answers them
+	 */
+	private static String names(Iterable<Person> people) {
+		List<String> names = new ArrayList<String>();
+		for (Person p : people)
+			names.add(p.getName());
+		Collections.sort(names);
+		return names.toString();
+	}
+
+	private static String years(Iterable<Marriage> marriages) {
+		List<Integer> years = new ArrayList<Integer>();
+		for (Marriage m : marriages)
+			years.add(m.getYearMarried());
+		Collections.sort(years);
+		return years.toString();
+	}
+}
@@ -0,0 +1,83 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.Person;
+import com.qualityeclipse.genealogy.model.SampleGraphs;
+
+public class GenealogyGraphBinaryReaderTest
+{
+	@Test
+	public void testRoundTrip() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		GenealogyGraph copy = new GenealogyGraph();
+		new GenealogyGraphBinaryReader(copy).read(new ByteArrayInputStream(write(graph)));
+		assertNull(copy.getSource());
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+	}
+
+	@Test
+	public void testWritingUnchangedGraphIsRepeatable() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(500);
+		byte[] bytes = write(graph);
+		GenealogyGraph copy = new GenealogyGraph();
+		GenealogyGraphFormat.BINARY.read(copy, new ByteArrayInputStream(bytes));
+		assertArrayEquals(bytes, write(copy));
+	}
+
+	@Test
+	public void testColumnarRoundTrip() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(500);
+		GenealogyGraph copy = new GenealogyGraph();
+		new GenealogyGraphBinaryReader(copy, 1).read(new ByteArrayInputStream(write(graph)));
+		assertNotNull(copy.getSource());
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+
+		Person p = copy.getPerson(7);
+		p.setName("Renamed");
+		graph.getPerson(7).setName("Renamed");
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+		copy.detachSource();
+		assertNull(copy.getSource());
+		assertSame(p, copy.getPerson(7));
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+	}
+
+	@Test
+	public void testFailedReadLeavesGraphEmpty() throws Exception {
+		byte[] bytes = write(SampleGraphs.createFamily());
+		for (int threshold : new int[] {GenealogyGraphBinaryReader.COLUMNAR_THRESHOLD, 1}) {
+			GenealogyGraph graph = SampleGraphs.createFamily();
+			try {
+				new GenealogyGraphBinaryReader(graph, threshold).read(new ByteArrayInputStream(bytes, 0, bytes.length - 10));
+				fail("Truncated stream was read");
+			}
+			catch (IOException e) {
+				// expected
+			}
+			assertNull(graph.getSource());
+			assertTrue(graph.getPeople().isEmpty());
+			assertTrue(graph.getMarriages().isEmpty());
+			assertTrue(graph.getNotes().isEmpty());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotBinary() throws Exception {
+		byte[] xml = SampleGraphs.toXml(SampleGraphs.createFamily()).getBytes("UTF-8");
+		new GenealogyGraphBinaryReader(new GenealogyGraph()).read(new ByteArrayInputStream(xml));
+	}
+
+	private static byte[] write(GenealogyGraph graph) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		GenealogyGraphFormat.BINARY.write(graph, stream);
+		return stream.toByteArray();
+	}
+}
@@ -0,0 +1,199 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import org.junit.Test;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.Marriage;
+import com.qualityeclipse.genealogy.model.Note;
+import com.qualityeclipse.genealogy.model.Person;
+import com.qualityeclipse.genealogy.model.SampleGraphs;
+
+public class GenealogyGraphJournalTest
+{
+	@Test
+	public void testReplay() throws Exception {
+		for (GenealogyGraphFormat format : new GenealogyGraphFormat[] {
+			GenealogyGraphFormat.XML, GenealogyGraphFormat.BINARY
+		}) {
+			byte[] base = write(SampleGraphs.createCouples(100), format);
+			GenealogyGraph graph = read(base, format);
+			GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+			journal.start();
+			ByteArrayOutputStream journalFile = new ByteArrayOutputStream();
+			journalFile.write(GenealogyGraphJournal.header(base.length, checksum(base)));
+			editFirst(graph);
+			journalFile.write(journal.takeChanges());
+			editSecond(graph);
+			journalFile.write(journal.takeChanges());
+			assertNull(journal.takeChanges());
+
+			GenealogyGraph replayed = read(base, format);
+			long length = new GenealogyGraphJournal(replayed).replay(
+				new ByteArrayInputStream(journalFile.toByteArray()), base.length, checksum(base));
+			assertEquals(journalFile.size(), length);
+			assertEquals(format.name(), SampleGraphs.toXml(graph), SampleGraphs.toXml(replayed));
+		}
+	}
+
+	@Test
+	public void testReplayWithinBatch() throws Exception {
+		byte[] base = write(SampleGraphs.createCouples(100), GenealogyGraphFormat.XML);
+		final GenealogyGraph graph = read(base, GenealogyGraphFormat.XML);
+		GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+		journal.start();
+		graph.batch(new Runnable() {
+			public void run() {
+				editFirst(graph);
+				editSecond(graph);
+			}
+		});
+		ByteArrayOutputStream journalFile = new ByteArrayOutputStream();
+		journalFile.write(GenealogyGraphJournal.header(base.length, checksum(base)));
+		journalFile.write(journal.takeChanges());
+
+		GenealogyGraph replayed = read(base, GenealogyGraphFormat.XML);
+		new GenealogyGraphJournal(replayed).replay(new ByteArrayInputStream(journalFile.toByteArray()),
+			base.length, checksum(base));
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(replayed));
+	}
+
+	@Test
+	public void testIncompleteBlockIsIgnored() throws Exception {
+		byte[] base = write(SampleGraphs.createCouples(100), GenealogyGraphFormat.XML);
+		GenealogyGraph graph = read(base, GenealogyGraphFormat.XML);
+		GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+		journal.start();
+		ByteArrayOutputStream journalFile = new ByteArrayOutputStream();
+		journalFile.write(GenealogyGraphJournal.header(base.length, checksum(base)));
+		editFirst(graph);
+		journalFile.write(journal.takeChanges());
+		String expected = SampleGraphs.toXml(graph);
+		int complete = journalFile.size();
+		editSecond(graph);
+		byte[] block = journal.takeChanges();
+		journalFile.write(block, 0, block.length - 1);
+
+		GenealogyGraph replayed = read(base, GenealogyGraphFormat.XML);
+		long length = new GenealogyGraphJournal(replayed).replay(
+			new ByteArrayInputStream(journalFile.toByteArray()), base.length, checksum(base));
+		assertEquals(complete, length);
+		assertEquals(expected, SampleGraphs.toXml(replayed));
+	}
+
+	@Test
+	public void testJournalForOtherFileIsIgnored() throws Exception {
+		byte[] base = write(SampleGraphs.createCouples(100), GenealogyGraphFormat.XML);
+		GenealogyGraph graph = read(base, GenealogyGraphFormat.XML);
+		GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+		journal.start();
+		ByteArrayOutputStream journalFile = new ByteArrayOutputStream();
+		journalFile.write(GenealogyGraphJournal.header(base.length, checksum(base) + 1));
+		editFirst(graph);
+		journalFile.write(journal.takeChanges());
+
+		GenealogyGraph replayed = read(base, GenealogyGraphFormat.XML);
+		long length = new GenealogyGraphJournal(replayed).replay(
+			new ByteArrayInputStream(journalFile.toByteArray()), base.length, checksum(base));
+		assertEquals(-1, length);
+		assertEquals(new String(base, "UTF-8"), SampleGraphs.toXml(replayed));
+	}
+
+	@Test
+	public void testRebase() throws Exception {
+		byte[] base = write(SampleGraphs.createCouples(100), GenealogyGraphFormat.XML);
+		GenealogyGraph graph = read(base, GenealogyGraphFormat.XML);
+		GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+		journal.start();
+		editFirst(graph);
+		journal.rebase();
+		byte[] newBase = write(graph, GenealogyGraphFormat.XML);
+		editSecond(graph);
+		ByteArrayOutputStream journalFile = new ByteArrayOutputStream();
+		journalFile.write(GenealogyGraphJournal.header(newBase.length, checksum(newBase)));
+		journalFile.write(journal.takeChanges());
+
+		GenealogyGraph replayed = read(newBase, GenealogyGraphFormat.XML);
+		new GenealogyGraphJournal(replayed).replay(new ByteArrayInputStream(journalFile.toByteArray()),
+			newBase.length, checksum(newBase));
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(replayed));
+	}
+
+	@Test
+	public void testClearingGraphMakesJournalIncomplete() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		GenealogyGraphJournal journal = new GenealogyGraphJournal(graph);
+		journal.start();
+		assertTrue(journal.isComplete());
+		graph.clear();
+		assertFalse(journal.isComplete());
+		journal.rebase();
+		assertTrue(journal.isComplete());
+	}
+
+	/**
+	 * Change properties and relationships, and add and remove elements
+	 */
+	private static void editFirst(GenealogyGraph graph) {
+		Person p = graph.getPerson(4);
+		p.setName("Renamed");
+		p.setBirthYear(1700);
+		p.setDeathYear(1750);
+		p.setLocation(5, 6);
+		p.setSize(70, 30);
+		p.addNote(new Note("First note"));
+		graph.getMarriage(3).setYearMarried(1699);
+		graph.addNote(new Note("Graph note"));
+
+		Person child = graph.getPerson(8);
+		child.getParentsMarriage().removeOffspring(child);
+		graph.removePerson(child);
+		Person added = SampleGraphs.addPerson(graph, Person.Gender.FEMALE, "Added", 1900, -1, 1, 2);
+		graph.getMarriage(2).addOffspring(added);
+	}
+
+	/**
+	 * Change elements added by {@link #editFirst(GenealogyGraph)} and their relationships
+	 */
+	private static void editSecond(GenealogyGraph graph) {
+		Person added = null;
+		for (Person p : graph.getPeople())
+			added = p;
+		added.setName("Added and renamed");
+		Note note = graph.getPerson(4).getNotes().get(0);
+		note.setText("Changed note");
+		graph.getNotes().get(0).setText("Changed graph note");
+
+		Marriage m = graph.getMarriage(10);
+		Person husband = m.getHusband();
+		m.setHusband(null);
+		Marriage newMarriage = SampleGraphs.addMarriage(graph, 1950, husband, added, 3, 4);
+		newMarriage.addOffspring(graph.getPerson(32));
+		graph.removeMarriage(graph.getMarriage(20));
+		graph.getPerson(2).removeNote(graph.getPerson(2).getNotes().get(0));
+	}
+
+	private static byte[] write(GenealogyGraph graph, GenealogyGraphFormat format) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		format.write(graph, stream);
+		return stream.toByteArray();
+	}
+
+	private static GenealogyGraph read(byte[] content, GenealogyGraphFormat format) throws Exception {
+		GenealogyGraph graph = new GenealogyGraph();
+		format.read(graph, new ByteArrayInputStream(content));
+		return graph;
+	}
+
+	private static long checksum(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,175 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.Marriage;
+import com.qualityeclipse.genealogy.model.Person;
+import com.qualityeclipse.genealogy.model.SampleGraphs;
+
+public class GenealogyGraphReaderTest
+{
+	private static final String PROLOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		String xml = SampleGraphs.toXml(graph);
+		GenealogyGraph copy = new GenealogyGraph();
+		List<String> unresolved = GenealogyGraphFormat.XML.read(copy, new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		assertTrue(unresolved.isEmpty());
+		assertEquals(xml, SampleGraphs.toXml(copy));
+
+		Person fred = copy.getPeople().iterator().next();
+		assertEquals("Fred Smith", fred.getName());
+		assertEquals("Emigrated from County Cork in 1899 & settled in <Boston>", fred.getNotes().get(0).getText());
+		Marriage parents = fred.getMarriage();
+		assertSame(fred, parents.getHusband());
+		assertEquals("Mary \"Molly\" O'Brien", parents.getWife().getName());
+		assertEquals("[John Smith, Ann Smith]", names(parents.getOffspring()).toString());
+	}
+
+	@Test
+	public void testWritingUnchangedGraphIsRepeatable() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(500);
+		String xml = SampleGraphs.toXml(graph);
+		GenealogyGraph copy = read(xml);
+		assertEquals(xml, SampleGraphs.toXml(copy));
+		assertEquals(xml, SampleGraphs.toXml(copy));
+	}
+
+	@Test
+	public void testForwardReferences() throws Exception {
+		GenealogyGraph graph = read(PROLOG + "<genealogy>\n"
+			+ "<marriage yearMarried=\"1900\" husbandId=\"3\" wifeId=\"4\">\n"
+			+ "<offspring childId=\"7\"/><offspring childId=\"5\"/><offspring childId=\"6\"/>\n"
+			+ "</marriage>\n"
+			+ "<person id=\"5\" gender=\"MALE\" name=\"B\"/>\n"
+			+ "<person id=\"3\" gender=\"MALE\" name=\"H\"/>\n"
+			+ "<person id=\"6\" gender=\"FEMALE\" name=\"C\"/>\n"
+			+ "<person id=\"4\" gender=\"FEMALE\" name=\"W\"/>\n"
+			+ "<person id=\"7\" gender=\"FEMALE\" name=\"A\"/>\n"
+			+ "</genealogy>\n");
+		Marriage m = graph.getMarriages().iterator().next();
+		assertEquals("H", m.getHusband().getName());
+		assertEquals("W", m.getWife().getName());
+		assertEquals("[A, B, C]", names(m.getOffspring()).toString());
+		assertSame(m.getHusband(), graph.getPerson(3));
+	}
+
+	@Test
+	public void testUnresolvedReferences() throws Exception {
+		GenealogyGraph graph = new GenealogyGraph();
+		List<String> unresolved = GenealogyGraphFormat.XML.read(graph, stream(PROLOG + "<genealogy>\n"
+			+ "<person id=\"1\" gender=\"MALE\" name=\"H\"/>\n"
+			+ "<marriage husbandId=\"1\" wifeId=\"2\"/>\n"
+			+ "</genealogy>\n"));
+		assertEquals(1, unresolved.size());
+		assertEquals("wifeId=\"2\" at line 4 refers to a person that does not exist", unresolved.get(0));
+		Marriage m = graph.getMarriages().iterator().next();
+		assertNotNull(m.getHusband());
+		assertNull(m.getWife());
+	}
+
+	@Test
+	public void testSpouseOfWrongGenderIsReported() throws Exception {
+		GenealogyGraph graph = new GenealogyGraph();
+		List<String> unresolved = GenealogyGraphFormat.XML.read(graph, stream(PROLOG + "<genealogy>\n"
+			+ "<person id=\"1\" gender=\"FEMALE\" name=\"A\"/>\n"
+			+ "<marriage husbandId=\"1\" wifeId=\"2\"/>\n"
+			+ "<person id=\"2\" gender=\"MALE\" name=\"B\"/>\n"
+			+ "</genealogy>\n"));
+		assertEquals(2, unresolved.size());
+		assertTrue(unresolved.contains("husbandId=\"1\" at line 4 refers to a person who is not male"));
+		assertTrue(unresolved.contains("wifeId=\"2\" at line 4 refers to a person who is not female"));
+		Marriage m = graph.getMarriages().iterator().next();
+		assertNull(m.getHusband());
+		assertNull(m.getWife());
+		for (Person p : graph.getPeople())
+			assertNull(p.getMarriage());
+	}
+
+	@Test
+	public void testDeclaredEntities() throws Exception {
+		GenealogyGraph graph = read(PROLOG + "<!DOCTYPE genealogy [<!ENTITY family \"Smith\">]>\n"
+			+ "<genealogy><person id=\"0\" gender=\"MALE\" name=\"John &family;\">"
+			+ "<note>Born &amp; raised <![CDATA[<here>]]></note>"
+			+ "</person></genealogy>\n");
+		Person p = graph.getPeople().iterator().next();
+		assertEquals("John Smith", p.getName());
+		assertEquals("Born & raised <here>", p.getNotes().get(0).getText());
+	}
+
+	@Test
+	public void testFailedReadLeavesGraphEmpty() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		String xml = SampleGraphs.toXml(graph);
+		try {
+			read(graph, xml.substring(0, xml.length() / 2));
+			fail("Truncated stream was read");
+		}
+		catch (XMLStreamException e) {
+			// expected
+		}
+		assertTrue(graph.getPeople().isEmpty());
+		assertTrue(graph.getMarriages().isEmpty());
+		assertTrue(graph.getNotes().isEmpty());
+	}
+
+	@Test
+	public void testParallelReadMatchesSerialRead() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(2000);
+		File file = File.createTempFile("genealogy", ".gg");
+		try {
+			OutputStream stream = new FileOutputStream(file);
+			try {
+				GenealogyGraphFormat.XML.write(graph, stream);
+			}
+			finally {
+				stream.close();
+			}
+			GenealogyGraph copy = new GenealogyGraph();
+			GenealogyGraphParallelReader reader = new GenealogyGraphParallelReader(copy, 4);
+			reader.read(file);
+			assertTrue(reader.getUnresolvedReferences().isEmpty());
+			assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	private static GenealogyGraph read(String xml) throws Exception {
+		GenealogyGraph graph = new GenealogyGraph();
+		read(graph, xml);
+		return graph;
+	}
+
+	private static void read(GenealogyGraph graph, String xml) throws IOException, XMLStreamException {
+		new GenealogyGraphReader(graph).read(stream(xml));
+	}
+
+	private static ByteArrayInputStream stream(String xml) throws IOException {
+		return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+	}
+
+	private static List<String> names(Iterable<Person> people) {
+		List<String> names = new ArrayList<String>();
+		for (Iterator<Person> iter = people.iterator(); iter.hasNext();)
+			names.add(iter.next().getName());
+		return names;
+	}
+}
@@ -0,0 +1,125 @@
+package com.qualityeclipse.genealogy.model.io;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import com.qualityeclipse.genealogy.model.GenealogyGraph;
+import com.qualityeclipse.genealogy.model.GenealogyGraphSnapshot;
+import com.qualityeclipse.genealogy.model.Marriage;
+import com.qualityeclipse.genealogy.model.Note;
+import com.qualityeclipse.genealogy.model.Person;
+import com.qualityeclipse.genealogy.model.SampleGraphs;
+
+public class MappedGenealogyArchiveTest
+{
+	@Test
+	public void testRoundTrip() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createFamily();
+		GenealogyGraph copy = new GenealogyGraph();
+		GenealogyGraphFormat.INDEXED.read(copy, new ByteArrayInputStream(write(graph)));
+		assertNotNull(copy.getSource());
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+	}
+
+	@Test
+	public void testChangesToLazyGraph() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(300);
+		GenealogyGraph copy = new GenealogyGraph();
+		copy.load(MappedGenealogyArchive.read(new ByteArrayInputStream(write(graph))));
+		edit(graph);
+		edit(copy);
+		assertEquals(SampleGraphs.toXml(graph), SampleGraphs.toXml(copy));
+
+		GenealogyGraphSnapshot snapshot = copy.snapshot();
+		String xml = SampleGraphs.toXml(copy);
+		copy.getPerson(30).setName("Changed after the snapshot");
+		assertEquals(xml, SampleGraphs.toXml(snapshot.copy()));
+		snapshot.close();
+	}
+
+	@Test
+	public void testSaveOverMappedFile() throws Exception {
+		GenealogyGraph graph = SampleGraphs.createCouples(300);
+		File file = File.createTempFile("genealogy", ".ggi");
+		try {
+			write(graph, file);
+			GenealogyGraph copy = new GenealogyGraph();
+			MappedGenealogyArchive archive = MappedGenealogyArchive.open(file);
+			copy.load(archive);
+			edit(graph);
+			edit(copy);
+
+			copy.detachSource();
+			archive.close();
+			assertNull(copy.getSource());
+			write(copy, file);
+
+			// Identifiers are not stored in the indexed format, so compare with the
+			// original graph after it has also been written in that format
+			GenealogyGraph expected = new GenealogyGraph();
+			GenealogyGraphFormat.INDEXED.read(expected, new ByteArrayInputStream(write(graph)));
+			GenealogyGraph reread = new GenealogyGraph();
+			GenealogyGraphFormat.INDEXED.read(reread, file);
+			assertEquals(SampleGraphs.toXml(expected), SampleGraphs.toXml(reread));
+			((MappedGenealogyArchive) reread.getSource()).close();
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testClosedArchive() throws Exception {
+		MappedGenealogyArchive archive = MappedGenealogyArchive.read(new ByteArrayInputStream(write(SampleGraphs.createFamily())));
+		archive.close();
+		archive.getPerson(0);
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotIndexed() throws Exception {
+		byte[] xml = SampleGraphs.toXml(SampleGraphs.createFamily()).getBytes("UTF-8");
+		MappedGenealogyArchive.read(new ByteArrayInputStream(xml));
+	}
+
+	/**
+	 * Make the same changes to either the original graph or a graph read from it
+	 */
+	private static void edit(GenealogyGraph graph) {
+		Person p = graph.getPerson(10);
+		p.setName("Renamed");
+		p.setLocation(5, 5);
+		p.addNote(new Note("Added"));
+		Person child = graph.getPerson(20);
+		Marriage m = child.getParentsMarriage();
+		m.removeOffspring(child);
+		graph.removePerson(child);
+		Person added = SampleGraphs.addPerson(graph, Person.Gender.FEMALE, "Added", 1900, -1, 0, 0);
+		m.addOffspring(added);
+		graph.removeMarriage(graph.getMarriage(50));
+		graph.addNote(new Note("Graph note"));
+	}
+
+	private static byte[] write(GenealogyGraph graph) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		GenealogyGraphFormat.INDEXED.write(graph, stream);
+		return stream.toByteArray();
+	}
+
+	private static void write(GenealogyGraph graph, File file) throws IOException {
+		OutputStream stream = new FileOutputStream(file);
+		try {
+			GenealogyGraphFormat.INDEXED.write(graph, stream);
+		}
+		finally {
+			stream.close();
+		}
+	}
+}